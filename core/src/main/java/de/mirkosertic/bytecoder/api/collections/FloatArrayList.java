@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+public class FloatArrayList {
+
+    private static final int INITIAL_CAPACITY = 10;
+
+    private float[] data;
+    private int currentLength;
+
+    public FloatArrayList() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public FloatArrayList(int aInitialCapacity) {
+        data = new float[aInitialCapacity];
+        currentLength = 0;
+    }
+
+    public void ensureCapacity(int aMinCapacity) {
+        if (aMinCapacity > data.length) {
+            int theNewCapacity = data.length + (data.length >> 1);
+            if (theNewCapacity < aMinCapacity) {
+                theNewCapacity = aMinCapacity;
+            }
+            float[] theNewData = new float[theNewCapacity];
+            for (int i = 0; i < currentLength; i++) {
+                theNewData[i] = data[i];
+            }
+            data = theNewData;
+        }
+    }
+
+    public void add(float aValue) {
+        ensureCapacity(currentLength + 1);
+        data[currentLength++] = aValue;
+    }
+
+    public float get(int aIndex) {
+        if (aIndex >= currentLength || aIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        return data[aIndex];
+    }
+
+    public float set(int aIndex, float aValue) {
+        if (aIndex >= currentLength || aIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        float theOldValue = data[aIndex];
+        data[aIndex] = aValue;
+        return theOldValue;
+    }
+
+    public float removeAt(int aIndex) {
+        if (aIndex >= currentLength || aIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        float theOldValue = data[aIndex];
+        for (int k = aIndex + 1; k < currentLength; k++) {
+            data[k - 1] = data[k];
+        }
+        currentLength--;
+        return theOldValue;
+    }
+
+    public int indexOf(float aValue) {
+        for (int i = 0; i < currentLength; i++) {
+            if (data[i] == aValue) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(float aValue) {
+        return indexOf(aValue) >= 0;
+    }
+
+    public int size() {
+        return currentLength;
+    }
+
+    public boolean isEmpty() {
+        return currentLength == 0;
+    }
+
+    public void clear() {
+        currentLength = 0;
+    }
+
+    public float[] toArray() {
+        float[] theResult = new float[currentLength];
+        for (int i = 0; i < currentLength; i++) {
+            theResult[i] = data[i];
+        }
+        return theResult;
+    }
+}
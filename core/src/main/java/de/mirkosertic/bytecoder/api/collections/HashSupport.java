@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+/**
+ * Open addressing with linear probing over a power of two table. Subclasses
+ * hold the keys and values of each slot, this class keeps track of the used
+ * slots and moves the entries on removal and resize.
+ */
+abstract class HashSupport {
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    boolean[] used;
+    int size;
+    private int threshold;
+
+    HashSupport(int aInitialCapacity) {
+        int theTableSize = tableSizeFor(aInitialCapacity);
+        used = new boolean[theTableSize];
+        threshold = thresholdFor(theTableSize);
+    }
+
+    static int mix(int aValue) {
+        int theHash = aValue * 0x9E3779B9;
+        return theHash ^ (theHash >>> 16);
+    }
+
+    static int mix(long aValue) {
+        return mix((int) (aValue ^ (aValue >>> 32)));
+    }
+
+    static int tableSizeFor(int aCapacity) {
+        if (aCapacity >= (MAXIMUM_CAPACITY >> 2) * 3) {
+            // Doubling any further would overflow into a negative size
+            return MAXIMUM_CAPACITY;
+        }
+        // Keep the load factor at 0.75 for the requested number of entries. Four slots
+        // are the minimum, smaller tables would be full before they are resized
+        int theMinSize = aCapacity + (aCapacity / 3) + 1;
+        int theSize = 4;
+        while (theSize < theMinSize) {
+            theSize = theSize << 1;
+        }
+        return theSize;
+    }
+
+    static int thresholdFor(int aTableSize) {
+        return aTableSize - (aTableSize >> 2);
+    }
+
+    /**
+     * The mixed hash of the key in the given slot.
+     */
+    abstract int hashAt(int aSlot);
+
+    /**
+     * Copies the entry of a slot into another slot.
+     */
+    abstract void move(int aFrom, int aTo);
+
+    /**
+     * Exchanges the entries of two slots.
+     */
+    abstract void swap(int aSlot, int aOtherSlot);
+
+    /**
+     * Grows the key and value arrays, every entry keeps its slot.
+     */
+    abstract void grow(int aTableSize);
+
+    /**
+     * Drops references held by a slot that is no longer used.
+     */
+    void release(int aSlot) {
+    }
+
+    final int firstSlot(int aHash) {
+        return aHash & (used.length - 1);
+    }
+
+    final int nextSlot(int aSlot) {
+        return (aSlot + 1) & (used.length - 1);
+    }
+
+    final void occupy(int aSlot) {
+        used[aSlot] = true;
+        if (++size > threshold) {
+            resize();
+        }
+    }
+
+    final void removeAt(int aSlot) {
+        // Backward shift deletion, so lookups never have to skip tombstones
+        int theMask = used.length - 1;
+        int theGap = aSlot;
+        int theCurrent = nextSlot(theGap);
+        while (used[theCurrent]) {
+            int theHome = hashAt(theCurrent) & theMask;
+            if (((theCurrent - theHome) & theMask) >= ((theCurrent - theGap) & theMask)) {
+                move(theCurrent, theGap);
+                theGap = theCurrent;
+            }
+            theCurrent = nextSlot(theCurrent);
+        }
+        used[theGap] = false;
+        release(theGap);
+        size--;
+    }
+
+    private void resize() {
+        int theOldSize = used.length;
+        if (theOldSize == MAXIMUM_CAPACITY) {
+            // One slot always stays free, so probing for a missing key terminates
+            if (size >= theOldSize - 1) {
+                throw new IllegalStateException("Hash table is full");
+            }
+            threshold = theOldSize - 2;
+            return;
+        }
+        int theNewSize = theOldSize * 2;
+        grow(theNewSize);
+        boolean[] thePending = used;
+        used = new boolean[theNewSize];
+        threshold = thresholdFor(theNewSize);
+        // Every entry is placed exactly once. If its new slot still holds an entry
+        // waiting to be placed, both are swapped and the waiting one is placed next
+        for (int i = 0; i < theOldSize; i++) {
+            while (thePending[i]) {
+                int theSlot = firstSlot(hashAt(i));
+                while (used[theSlot]) {
+                    theSlot = nextSlot(theSlot);
+                }
+                used[theSlot] = true;
+                if (theSlot == i) {
+                    thePending[i] = false;
+                } else if (theSlot < theOldSize && thePending[theSlot]) {
+                    swap(i, theSlot);
+                    thePending[theSlot] = false;
+                } else {
+                    move(i, theSlot);
+                    release(i);
+                    thePending[i] = false;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < used.length; i++) {
+            used[i] = false;
+            release(i);
+        }
+        size = 0;
+    }
+}
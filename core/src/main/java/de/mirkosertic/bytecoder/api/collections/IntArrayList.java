@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+public class IntArrayList {
+
+    private static final int INITIAL_CAPACITY = 10;
+
+    private int[] data;
+    private int currentLength;
+
+    public IntArrayList() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public IntArrayList(int aInitialCapacity) {
+        data = new int[aInitialCapacity];
+        currentLength = 0;
+    }
+
+    public void ensureCapacity(int aMinCapacity) {
+        if (aMinCapacity > data.length) {
+            int theNewCapacity = data.length + (data.length >> 1);
+            if (theNewCapacity < aMinCapacity) {
+                theNewCapacity = aMinCapacity;
+            }
+            int[] theNewData = new int[theNewCapacity];
+            for (int i = 0; i < currentLength; i++) {
+                theNewData[i] = data[i];
+            }
+            data = theNewData;
+        }
+    }
+
+    public void add(int aValue) {
+        ensureCapacity(currentLength + 1);
+        data[currentLength++] = aValue;
+    }
+
+    public int get(int aIndex) {
+        if (aIndex >= currentLength || aIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        return data[aIndex];
+    }
+
+    public int set(int aIndex, int aValue) {
+        if (aIndex >= currentLength || aIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        int theOldValue = data[aIndex];
+        data[aIndex] = aValue;
+        return theOldValue;
+    }
+
+    public int removeAt(int aIndex) {
+        if (aIndex >= currentLength || aIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        int theOldValue = data[aIndex];
+        for (int k = aIndex + 1; k < currentLength; k++) {
+            data[k - 1] = data[k];
+        }
+        currentLength--;
+        return theOldValue;
+    }
+
+    public int indexOf(int aValue) {
+        for (int i = 0; i < currentLength; i++) {
+            if (data[i] == aValue) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int aValue) {
+        return indexOf(aValue) >= 0;
+    }
+
+    public int size() {
+        return currentLength;
+    }
+
+    public boolean isEmpty() {
+        return currentLength == 0;
+    }
+
+    public void clear() {
+        currentLength = 0;
+    }
+
+    public int[] toArray() {
+        int[] theResult = new int[currentLength];
+        for (int i = 0; i < currentLength; i++) {
+            theResult[i] = data[i];
+        }
+        return theResult;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+public class IntIntHashMap extends HashSupport {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private int[] values;
+
+    public IntIntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntIntHashMap(int aInitialCapacity) {
+        super(aInitialCapacity);
+        keys = new int[used.length];
+        values = new int[used.length];
+    }
+
+    @Override
+    int hashAt(int aSlot) {
+        return mix(keys[aSlot]);
+    }
+
+    @Override
+    void move(int aFrom, int aTo) {
+        keys[aTo] = keys[aFrom];
+        values[aTo] = values[aFrom];
+    }
+
+    @Override
+    void swap(int aSlot, int aOtherSlot) {
+        int theKey = keys[aSlot];
+        int theValue = values[aSlot];
+        keys[aSlot] = keys[aOtherSlot];
+        values[aSlot] = values[aOtherSlot];
+        keys[aOtherSlot] = theKey;
+        values[aOtherSlot] = theValue;
+    }
+
+    @Override
+    void grow(int aTableSize) {
+        int[] theKeys = new int[aTableSize];
+        int[] theValues = new int[aTableSize];
+        for (int i = 0; i < keys.length; i++) {
+            theKeys[i] = keys[i];
+            theValues[i] = values[i];
+        }
+        keys = theKeys;
+        values = theValues;
+    }
+
+    private int slotOf(int aKey) {
+        int theSlot = firstSlot(mix(aKey));
+        while (used[theSlot] && keys[theSlot] != aKey) {
+            theSlot = nextSlot(theSlot);
+        }
+        return theSlot;
+    }
+
+    public boolean containsKey(int aKey) {
+        return used[slotOf(aKey)];
+    }
+
+    public int get(int aKey, int aDefaultValue) {
+        int theSlot = slotOf(aKey);
+        if (!used[theSlot]) {
+            return aDefaultValue;
+        }
+        return values[theSlot];
+    }
+
+    public void put(int aKey, int aValue) {
+        int theSlot = slotOf(aKey);
+        values[theSlot] = aValue;
+        if (!used[theSlot]) {
+            keys[theSlot] = aKey;
+            occupy(theSlot);
+        }
+    }
+
+    public boolean remove(int aKey) {
+        int theSlot = slotOf(aKey);
+        if (!used[theSlot]) {
+            return false;
+        }
+        removeAt(theSlot);
+        return true;
+    }
+
+    public int[] keys() {
+        int[] theResult = new int[size];
+        int theIndex = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                theResult[theIndex++] = keys[i];
+            }
+        }
+        return theResult;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+public class IntObjectHashMap<V> extends HashSupport {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+
+    public IntObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectHashMap(int aInitialCapacity) {
+        super(aInitialCapacity);
+        keys = new int[used.length];
+        values = new Object[used.length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int aSlot) {
+        return (V) values[aSlot];
+    }
+
+    @Override
+    int hashAt(int aSlot) {
+        return mix(keys[aSlot]);
+    }
+
+    @Override
+    void move(int aFrom, int aTo) {
+        keys[aTo] = keys[aFrom];
+        values[aTo] = values[aFrom];
+    }
+
+    @Override
+    void swap(int aSlot, int aOtherSlot) {
+        int theKey = keys[aSlot];
+        Object theValue = values[aSlot];
+        keys[aSlot] = keys[aOtherSlot];
+        values[aSlot] = values[aOtherSlot];
+        keys[aOtherSlot] = theKey;
+        values[aOtherSlot] = theValue;
+    }
+
+    @Override
+    void grow(int aTableSize) {
+        int[] theKeys = new int[aTableSize];
+        Object[] theValues = new Object[aTableSize];
+        for (int i = 0; i < keys.length; i++) {
+            theKeys[i] = keys[i];
+            theValues[i] = values[i];
+        }
+        keys = theKeys;
+        values = theValues;
+    }
+
+    @Override
+    void release(int aSlot) {
+        values[aSlot] = null;
+    }
+
+    private int slotOf(int aKey) {
+        int theSlot = firstSlot(mix(aKey));
+        while (used[theSlot] && keys[theSlot] != aKey) {
+            theSlot = nextSlot(theSlot);
+        }
+        return theSlot;
+    }
+
+    public boolean containsKey(int aKey) {
+        return used[slotOf(aKey)];
+    }
+
+    public V get(int aKey) {
+        int theSlot = slotOf(aKey);
+        if (!used[theSlot]) {
+            return null;
+        }
+        return valueAt(theSlot);
+    }
+
+    public V put(int aKey, V aValue) {
+        int theSlot = slotOf(aKey);
+        if (used[theSlot]) {
+            V theOldValue = valueAt(theSlot);
+            values[theSlot] = aValue;
+            return theOldValue;
+        }
+        keys[theSlot] = aKey;
+        values[theSlot] = aValue;
+        occupy(theSlot);
+        return null;
+    }
+
+    public V remove(int aKey) {
+        int theSlot = slotOf(aKey);
+        if (!used[theSlot]) {
+            return null;
+        }
+        V theOldValue = valueAt(theSlot);
+        removeAt(theSlot);
+        return theOldValue;
+    }
+
+    public int[] keys() {
+        int[] theResult = new int[size];
+        int theIndex = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                theResult[theIndex++] = keys[i];
+            }
+        }
+        return theResult;
+    }
+}
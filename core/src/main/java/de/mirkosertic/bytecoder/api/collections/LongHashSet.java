@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+public class LongHashSet extends HashSupport {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongHashSet(int aInitialCapacity) {
+        super(aInitialCapacity);
+        keys = new long[used.length];
+    }
+
+    @Override
+    int hashAt(int aSlot) {
+        return mix(keys[aSlot]);
+    }
+
+    @Override
+    void move(int aFrom, int aTo) {
+        keys[aTo] = keys[aFrom];
+    }
+
+    @Override
+    void swap(int aSlot, int aOtherSlot) {
+        long theKey = keys[aSlot];
+        keys[aSlot] = keys[aOtherSlot];
+        keys[aOtherSlot] = theKey;
+    }
+
+    @Override
+    void grow(int aTableSize) {
+        long[] theKeys = new long[aTableSize];
+        for (int i = 0; i < keys.length; i++) {
+            theKeys[i] = keys[i];
+        }
+        keys = theKeys;
+    }
+
+    private int slotOf(long aKey) {
+        int theSlot = firstSlot(mix(aKey));
+        while (used[theSlot] && keys[theSlot] != aKey) {
+            theSlot = nextSlot(theSlot);
+        }
+        return theSlot;
+    }
+
+    public boolean contains(long aKey) {
+        return used[slotOf(aKey)];
+    }
+
+    public boolean add(long aKey) {
+        int theSlot = slotOf(aKey);
+        if (used[theSlot]) {
+            return false;
+        }
+        keys[theSlot] = aKey;
+        occupy(theSlot);
+        return true;
+    }
+
+    public boolean remove(long aKey) {
+        int theSlot = slotOf(aKey);
+        if (!used[theSlot]) {
+            return false;
+        }
+        removeAt(theSlot);
+        return true;
+    }
+
+    public long[] toArray() {
+        long[] theResult = new long[size];
+        int theIndex = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                theResult[theIndex++] = keys[i];
+            }
+        }
+        return theResult;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.backend;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import de.mirkosertic.bytecoder.core.BytecodeLoader;
+
+/**
+ * The configuration and all linked class files of a compile run. The output of
+ * a compile run only needs to be generated again if one of them was changed.
+ */
+public class CompileInputState {
+
+    private static final String CONFIGURATION = "configuration";
+    private static final String RESOURCE_PREFIX = "resource.";
+
+    public static CompileInputState of(String aConfiguration, BytecodeLoader aLoader) throws IOException {
+        Map<String, String> theHashes = new TreeMap<>();
+        for (String theResourceName : aLoader.getLoadedResources()) {
+            String theHash = contentHashOf(aLoader, theResourceName);
+            if (theHash != null) {
+                theHashes.put(theResourceName, theHash);
+            }
+        }
+        return new CompileInputState(aConfiguration, theHashes);
+    }
+
+    public static CompileInputState readFrom(File aFile) throws IOException {
+        Properties theProperties = new Properties();
+        try (InputStream theStream = new FileInputStream(aFile)) {
+            theProperties.load(theStream);
+        }
+        Map<String, String> theHashes = new TreeMap<>();
+        for (String theKey : theProperties.stringPropertyNames()) {
+            if (theKey.startsWith(RESOURCE_PREFIX)) {
+                theHashes.put(theKey.substring(RESOURCE_PREFIX.length()), theProperties.getProperty(theKey));
+            }
+        }
+        return new CompileInputState(theProperties.getProperty(CONFIGURATION, ""), theHashes);
+    }
+
+    private static String contentHashOf(BytecodeLoader aLoader, String aResourceName) throws IOException {
+        try (InputStream theStream = aLoader.openResource(aResourceName)) {
+            if (theStream == null) {
+                return null;
+            }
+            MessageDigest theDigest = MessageDigest.getInstance("SHA-1");
+            byte[] theBuffer = new byte[8192];
+            int theLength;
+            while ((theLength = theStream.read(theBuffer)) > 0) {
+                theDigest.update(theBuffer, 0, theLength);
+            }
+            return toHex(theDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
+    private static String toHex(byte[] aData) {
+        StringBuilder theResult = new StringBuilder();
+        for (byte theByte : aData) {
+            theResult.append(Character.forDigit((theByte >> 4) & 0xf, 16));
+            theResult.append(Character.forDigit(theByte & 0xf, 16));
+        }
+        return theResult.toString();
+    }
+
+    private final String configuration;
+    private final Map<String, String> resourceHashes;
+
+    public CompileInputState(String aConfiguration, Map<String, String> aResourceHashes) {
+        configuration = aConfiguration;
+        resourceHashes = aResourceHashes;
+    }
+
+    public String getConfiguration() {
+        return configuration;
+    }
+
+    public Map<String, String> getResourceHashes() {
+        return Collections.unmodifiableMap(resourceHashes);
+    }
+
+    public boolean isUpToDate(String aConfiguration, BytecodeLoader aLoader) throws IOException {
+        if (!configuration.equals(aConfiguration) || resourceHashes.isEmpty()) {
+            return false;
+        }
+        for (Map.Entry<String, String> theEntry : resourceHashes.entrySet()) {
+            String theHash = contentHashOf(aLoader, theEntry.getKey());
+            if (!theEntry.getValue().equals(theHash)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void writeTo(File aFile) throws IOException {
+        Properties theProperties = new Properties();
+        theProperties.setProperty(CONFIGURATION, configuration);
+        for (Map.Entry<String, String> theEntry : resourceHashes.entrySet()) {
+            theProperties.setProperty(RESOURCE_PREFIX + theEntry.getKey(), theEntry.getValue());
+        }
+        try (OutputStream theStream = new FileOutputStream(aFile)) {
+            theProperties.store(theStream, "Bytecoder compile input state");
+        }
+    }
+}
@@ -24,12 +24,18 @@ public class CompileOptions {
     private final boolean debugOutput;
     private final Optimizer optimizer;
     private final boolean relooper;
+    private final boolean preciseLongs;
 
     public CompileOptions(Logger aLogger, boolean aDebugOutput, Optimizer aOptimizer, boolean aRelooper) {
+        this(aLogger, aDebugOutput, aOptimizer, aRelooper, false);
+    }
+
+    public CompileOptions(Logger aLogger, boolean aDebugOutput, Optimizer aOptimizer, boolean aRelooper, boolean aPreciseLongs) {
         logger = aLogger;
         debugOutput = aDebugOutput;
         optimizer = aOptimizer;
         relooper = aRelooper;
+        preciseLongs = aPreciseLongs;
     }
 
     public Logger getLogger() {
@@ -47,4 +53,8 @@ public class CompileOptions {
     public boolean isRelooper() {
         return relooper;
     }
+
+    public boolean isPreciseLongs() {
+        return preciseLongs;
+    }
 }
@@ -63,6 +63,10 @@ public class CompileTarget {
         bytecodeLoader = new BytecodeLoader(aClassLoader, new BytecodePackageReplacer());
     }
 
+    public BytecodeLoader getBytecodeLoader() {
+        return bytecodeLoader;
+    }
+
     public String generatedFileName() {
         return backend.generatedFileName();
     }
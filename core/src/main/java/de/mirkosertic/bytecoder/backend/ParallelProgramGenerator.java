@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.stream.IntStream;
+
+import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeMethod;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.ProgramGenerator;
+import de.mirkosertic.bytecoder.ssa.ProgramGeneratorFactory;
+
+public class ParallelProgramGenerator {
+
+    private final ProgramGeneratorFactory programGeneratorFactory;
+
+    public ParallelProgramGenerator(ProgramGeneratorFactory aProgramGeneratorFactory) {
+        programGeneratorFactory = aProgramGeneratorFactory;
+    }
+
+    public Map<BytecodeMethod, Program> generate(BytecodeLinkerContext aLinkerContext, CompileOptions aOptions,
+            BiPredicate<BytecodeLinkedClass, BytecodeMethod> aFilter) {
+
+        List<BytecodeLinkedClass> theClasses = new ArrayList<>();
+        List<BytecodeMethod> theMethods = new ArrayList<>();
+        aLinkerContext.forEachClass(aEntry -> aEntry.getValue().forEachMethod(aMethod -> {
+            if (aFilter.test(aEntry.getValue(), aMethod)) {
+                theClasses.add(aEntry.getValue());
+                theMethods.add(aMethod);
+            }
+        }));
+
+        // Linking must be complete now, the methods are generated concurrently
+        // and only read from the linker context
+        aLinkerContext.freeze();
+
+        Program[] thePrograms = new Program[theMethods.size()];
+        IntStream.range(0, thePrograms.length).parallel().forEach(i -> {
+            ProgramGenerator theGenerator = programGeneratorFactory.createFor(aLinkerContext);
+            Program theSSAProgram = theGenerator.generateFrom(theClasses.get(i).getBytecodeClass(), theMethods.get(i));
+
+            //Run optimizer
+            aOptions.getOptimizer().optimize(theSSAProgram.getControlFlowGraph(), aLinkerContext);
+
+            thePrograms[i] = theSSAProgram;
+        });
+
+        Map<BytecodeMethod, Program> theResult = new HashMap<>();
+        for (int i = 0; i < thePrograms.length; i++) {
+            theResult.put(theMethods.get(i), thePrograms[i]);
+        }
+        return theResult;
+    }
+}
@@ -17,15 +17,20 @@ package de.mirkosertic.bytecoder.backend.js;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 
 import de.mirkosertic.bytecoder.annotations.EmulatedByRuntime;
 import de.mirkosertic.bytecoder.annotations.Import;
 import de.mirkosertic.bytecoder.annotations.OverrideParentClass;
 import de.mirkosertic.bytecoder.backend.CompileBackend;
 import de.mirkosertic.bytecoder.backend.CompileOptions;
+import de.mirkosertic.bytecoder.backend.ParallelProgramGenerator;
 import de.mirkosertic.bytecoder.classlib.ExceptionRethrower;
 import de.mirkosertic.bytecoder.classlib.java.lang.TArray;
 import de.mirkosertic.bytecoder.classlib.java.lang.TClass;
@@ -39,14 +44,15 @@ import de.mirkosertic.bytecoder.core.BytecodeExceptionTableEntry;
 import de.mirkosertic.bytecoder.core.BytecodeInstruction;
 import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
 import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeMethod;
 import de.mirkosertic.bytecoder.core.BytecodeMethodSignature;
 import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
 import de.mirkosertic.bytecoder.core.BytecodePrimitiveTypeRef;
 import de.mirkosertic.bytecoder.core.BytecodeProgram;
 import de.mirkosertic.bytecoder.core.BytecodeTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodeVirtualMethodIdentifier;
 import de.mirkosertic.bytecoder.relooper.Relooper;
 import de.mirkosertic.bytecoder.ssa.Program;
-import de.mirkosertic.bytecoder.ssa.ProgramGenerator;
 import de.mirkosertic.bytecoder.ssa.ProgramGeneratorFactory;
 import de.mirkosertic.bytecoder.ssa.Value;
 import de.mirkosertic.bytecoder.ssa.Variable;
@@ -149,27 +155,66 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
         // Construct a String
         theWriter.println("          var theNewString = " + JSWriterUtils.toClassName(theStringTypeRef) + ".emptyInstance();");
         theWriter.println("          var theBytes = " + JSWriterUtils.toClassName(theArrayTypeRef) + ".emptyInstance();");
-        theWriter.println("          theBytes.data = aByteArray;");
+        theWriter.println("          theBytes.data = new Int8Array(aByteArray);");
         theWriter.println("          " + JSWriterUtils.toClassName(theStringTypeRef) + "." + JSWriterUtils.toMethodName("init", theStringConstructorSignature) + "(theNewString, theBytes);");
         theWriter.println("          return theNewString;");
         theWriter.println("     },");
         theWriter.println();
-        theWriter.println("     newMultiArray : function(aDimensions, aDefault) {");
+
+        theWriter.println("     strings : [],");
+        theWriter.println();
+        theWriter.println("     stringPool : function(aIndex) { ");
+        theWriter.println("          var theString = bytecoder.strings[aIndex];");
+        theWriter.println("          if (theString == null) {");
+        theWriter.println("              theString = bytecoder.newString(bytecoder.stringData[aIndex]);");
+        theWriter.println("              bytecoder.strings[aIndex] = theString;");
+        theWriter.println("          }");
+        theWriter.println("          return theString;");
+        theWriter.println("     },");
+        theWriter.println();
+        // The innermost dimension of a primitive array is backed by a typed array, given as aTypedArray.
+        // For arrays of references or partially created dimensions, aTypedArray is null
+        theWriter.println("     newMultiArray : function(aDimensions, aTypedArray) {");
         theWriter.println("         var theLength = aDimensions[0];");
-        theWriter.println("         var theArray = bytecoder.newArray(theLength, aDefault);");
+        theWriter.println("         if (aDimensions.length == 1 && aTypedArray) {");
+        theWriter.println("             return bytecoder.newPrimitiveArray(theLength, aTypedArray);");
+        theWriter.println("         }");
+        theWriter.println("         var theArray = bytecoder.newArray(theLength, null);");
         theWriter.println("         if (aDimensions.length > 1) {");
         theWriter.println("             var theNewDimensions = aDimensions.slice(0);");
         theWriter.println("             theNewDimensions.shift();");
         theWriter.println("             for (var i=0;i<theLength;i++) {");
-        theWriter.println("                 theArray.data[i] = bytecoder.newMultiArray(theNewDimensions, aDefault);");
+        theWriter.println("                 theArray.data[i] = bytecoder.newMultiArray(theNewDimensions, aTypedArray);");
         theWriter.println("             }");
         theWriter.println("         }");
         theWriter.println("         return theArray;");
         theWriter.println("     },");
         theWriter.println();
-        theWriter.println("     newArray : function(aLength, aDefault) {");
 
         BytecodeObjectTypeRef theArrayType = BytecodeObjectTypeRef.fromRuntimeClass(TArray.class);
+        theWriter.println("     newPrimitiveArray : function(aLength, aTypedArray) {");
+        theWriter.println("          var theInstance = " + JSWriterUtils.toClassName(theArrayType)+ ".emptyInstance();");
+        theWriter.println("          theInstance.data = new aTypedArray(aLength);");
+        theWriter.println("          return theInstance;");
+        theWriter.println("     },");
+        theWriter.println();
+        if (aOptions.isPreciseLongs()) {
+            // Converts a number to a long with the saturation rules of Java
+            theWriter.println("     toLong : function(aValue) {");
+            theWriter.println("          if (aValue !== aValue) {");
+            theWriter.println("             return 0n;");
+            theWriter.println("          }");
+            theWriter.println("          if (aValue >= 9223372036854775807) {");
+            theWriter.println("             return 9223372036854775807n;");
+            theWriter.println("          }");
+            theWriter.println("          if (aValue <= -9223372036854775808) {");
+            theWriter.println("             return -9223372036854775808n;");
+            theWriter.println("          }");
+            theWriter.println("          return BigInt(Math.trunc(aValue));");
+            theWriter.println("     },");
+            theWriter.println();
+        }
+        theWriter.println("     newArray : function(aLength, aDefault) {");
         theWriter.println("          var theInstance = " + JSWriterUtils.toClassName(theArrayType)+ ".emptyInstance();");
         theWriter.println("          theInstance.data = [];");
         theWriter.println("          theInstance.data.length = aLength;");
@@ -191,45 +236,61 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
         theWriter.println("};");
         theWriter.println();
         theWriter.println("var RUNTIME_CLASS = {");
-        theWriter.println("     resolveVirtualMethod: function(aIdentifier) {");
-        theWriter.println("         switch(aIdentifier) {");
+        theWriter.print("     instanceOfTypes : ");
+        writeInstanceOfTypes(theWriter, theClassLinkedCass);
+        theWriter.println(",");
 
         theClassLinkedCass.forEachVirtualMethod(
                 aClassMethod -> {
                     if (!aClassMethod.getValue().getTargetMethod().getAccessFlags().isStatic()) {
-                        theWriter.println("             case " + aClassMethod.getKey().getIdentifier() + ": // " + aClassMethod.getValue().getTargetMethod().getName().stringValue());
-                        if (Objects.equals("getClass", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                            theWriter.println(
-                                    "                   return " + JSWriterUtils.toClassName(theClassLinkedCass.getClassName()));
-                        } else if (Objects
-                                .equals("toString", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                            theWriter.println("                   throw 'Not implemented';");
-                        } else if (Objects
-                                .equals("equals", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                            theWriter.println("                   throw 'Not implemented';");
-                        } else if (Objects
-                                .equals("hashCode", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                            theWriter.println("                   throw 'Not implemented';");
-                        } else if (Objects.equals("desiredAssertionStatus",
-                                aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                            theWriter.println("                   return function(callsite) {return false};");
-                        } else if (Objects
-                                .equals("getEnumConstants",
-                                        aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                            theWriter.println("                   return function(callsite) {return callsite.jsType().staticFields.$VALUES;};");
+                        String theName = aClassMethod.getValue().getTargetMethod().getName().stringValue();
+                        theWriter.print("     " + toVirtualSlot(aClassMethod.getKey()) + " : ");
+                        if (Objects.equals("getClass", theName)) {
+                            theWriter.print("function(callsite) {return " + JSWriterUtils.toClassName(theClassLinkedCass.getClassName()) + ".runtimeClass;}");
+                        } else if (Objects.equals("toString", theName) || Objects.equals("equals", theName) || Objects.equals("hashCode", theName)) {
+                            theWriter.print("function(callsite) {throw 'Not implemented';}");
+                        } else if (Objects.equals("desiredAssertionStatus", theName)) {
+                            theWriter.print("function(callsite) {return false;}");
+                        } else if (Objects.equals("getEnumConstants", theName)) {
+                            theWriter.print("function(callsite) {return callsite.jsType().staticFields.$VALUES;}");
                         } else {
-                            theWriter.println("                   throw {type: 'not implemented virtual name'} // " + aClassMethod.getValue().getTargetMethod().getName().stringValue());
+                            theWriter.print("function(callsite) {throw {type: 'not implemented virtual name'};}");
                         }
+                        theWriter.println(", // " + theName);
                     }
                 });
 
-        theWriter.println("             default:");
-        theWriter.println("                 throw {type: 'unknown virtual name'}");
-        theWriter.println("         }");
-        theWriter.println("     }");
         theWriter.println("};");
         theWriter.println();
 
+        // Lambda instances do not have a type of their own, every interface method
+        // is routed to the implementation function captured at creation time
+        Set<BytecodeVirtualMethodIdentifier> theLambdaSlots = new TreeSet<>(Comparator.comparingInt(BytecodeVirtualMethodIdentifier::getIdentifier));
+        aLinkerContext.forEachClass(theEntry -> {
+            if (theEntry.getValue().getAccessFlags().isInterface()) {
+                theEntry.getValue().forEachVirtualMethod(aVirtualMethod -> {
+                    if (!aVirtualMethod.getValue().getTargetMethod().getAccessFlags().isStatic()) {
+                        theLambdaSlots.add(aVirtualMethod.getKey());
+                    }
+                });
+            }
+        });
+        theWriter.println("var LAMBDA_CLASS = {");
+        theWriter.println("     instanceOfTypes : {},");
+        for (BytecodeVirtualMethodIdentifier theSlot : theLambdaSlots) {
+            theWriter.println("     " + toVirtualSlot(theSlot)
+                    + " : function(inst, _p1, _p2, _p3, _p4, _p5, _p6, _p7, _p8, _p9) {return inst.implementation(_p1, _p2, _p3, _p4, _p5, _p6, _p7, _p8, _p9);},");
+        }
+        theWriter.println("};");
+        theWriter.println();
+
+        // String constants are collected while the methods are written, and materialized once on first use
+        Map<String, Integer> theStringPool = new LinkedHashMap<>();
+        JSSSAWriter.IDResolver theResolver = aValue -> theStringPool.computeIfAbsent(aValue, k -> theStringPool.size());
+
+        Map<BytecodeMethod, Program> thePrograms = new ParallelProgramGenerator(programGeneratorFactory).generate(aLinkerContext, aOptions,
+                (aClass, aMethod) -> !aClass.getBytecodeClass().getAccessFlags().isInterface() && !aMethod.getAccessFlags().isAbstract());
+
         aLinkerContext.forEachClass(theEntry -> {
 
             if (theEntry.getValue().getBytecodeClass().getAccessFlags().isInterface()) {
@@ -250,7 +311,8 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
                 theWriter.println("        staticCallSites : [],");
                 theWriter.println("        classInitialized : false,");
                 theEntry.getValue().forEachStaticField(
-                        aFieldEntry -> theWriter.println("        " + aFieldEntry.getKey() + " : null, // declared in " + aFieldEntry.getValue().getDeclaringType().name() ));
+                        aFieldEntry -> theWriter.println("        " + aFieldEntry.getKey() + " : " + JSWriterUtils.toDefaultValue(aFieldEntry.getValue().getField().getTypeRef(), aOptions.isPreciseLongs())
+                                + ", // declared in " + aFieldEntry.getValue().getDeclaringType().name() ));
                 theWriter.println("    },");
                 theWriter.println();
 
@@ -274,35 +336,18 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
                 theWriter.println("    },");
                 theWriter.println();
 
-                theWriter.println("    resolveVirtualMethod : function(aIdentifier) {");
-                theWriter.println("        switch(aIdentifier) {");
-                theEntry.getValue().forEachVirtualMethod(aVirtualMethod -> {
-                    BytecodeLinkedClass.LinkedMethod theLinkTarget = aVirtualMethod.getValue();
-                    if (!aVirtualMethod.getValue().getTargetMethod().getAccessFlags().isAbstract() &&
-                            !aVirtualMethod.getValue().getTargetMethod().getAccessFlags().isStatic()) {
-
-                        theWriter.println("            case " + aVirtualMethod.getKey().getIdentifier() + ":");
-                        if (theLinkTarget.getTargetMethod() != BytecodeLinkedClass.GET_CLASS_PLACEHOLDER) {
-                            theWriter.println(
-                                    "                return " + JSWriterUtils.toClassName(theLinkTarget.getDeclaringType()) + "."
-                                            + JSWriterUtils.toMethodName(
-                                            theLinkTarget.getTargetMethod().getName().stringValue(),
-                                            theLinkTarget.getTargetMethod().getSignature()) + ";");
-                        } else {
-                            theWriter.println(
-                                    "                return function(callsite) {return " + theJSClassName + ".runtimeClass;};");
-                        }
-                    }
-                });
-                theWriter.println("            default:");
-                theWriter.println("                throw {type: 'unknown virtual name'}");
-                theWriter.println("        }");
-                theWriter.println("    },");
-                theWriter.println();
-
                 theWriter.println("    emptyInstance : function() {");
                 theWriter.println("        return {");
-                theEntry.getValue().forEachMemberField(aField -> theWriter.println("            " + aField.getKey() + " : null, // declared in " + aField.getValue().getDeclaringType().name()));
+                // Fields only accessed by the code of a superclass are linked there, but are part of the instance too
+                Set<String> theWrittenFields = new HashSet<>();
+                for (BytecodeLinkedClass theClass = theEntry.getValue(); theClass != null; theClass = theClass.getSuperClass()) {
+                    theClass.forEachMemberField(aField -> {
+                        if (theWrittenFields.add(aField.getKey())) {
+                            theWriter.println("            " + aField.getKey() + " : " + JSWriterUtils.toDefaultValue(aField.getValue().getField().getTypeRef(), aOptions.isPreciseLongs())
+                                    + ", // declared in " + aField.getValue().getDeclaringType().name());
+                        }
+                    });
+                }
                 theWriter.println("            clazz: " + JSWriterUtils.toClassName(theEntry.getKey())+ "};");
                 theWriter.println("    },");
                 theWriter.println();
@@ -312,18 +357,9 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
                 theWriter.println("    },");
                 theWriter.println();
 
-                theWriter.println("    instanceOfType : function(aType) {");
-                theWriter.println("        switch(aType) {");
-
-                for (BytecodeLinkedClass theType : theEntry.getValue().getImplementingTypes()) {
-                    theWriter.println("            case " + theType.getUniqueId() +":");
-                    theWriter.println("                return 1;");
-                }
-
-                theWriter.println("            default:");
-                theWriter.println("                return 0;");
-                theWriter.println("        }");
-                theWriter.println("    },");
+                theWriter.print("    instanceOfTypes : ");
+                writeInstanceOfTypes(theWriter, theEntry.getValue());
+                theWriter.println(",");
             }
 
             Set<BytecodeObjectTypeRef> theStaticReferences = new HashSet<>();
@@ -335,11 +371,7 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
                     return;
                 }
 
-                ProgramGenerator theGenerator = programGeneratorFactory.createFor(aLinkerContext);
-                Program theSSAProgram = theGenerator.generateFrom(theEntry.getValue().getBytecodeClass(), theMethod);
-
-                //Run optimizer
-                aOptions.getOptimizer().optimize(theSSAProgram.getControlFlowGraph(), aLinkerContext);
+                Program theSSAProgram = thePrograms.get(theMethod);
 
                 BytecodeMethodSignature theCurrentMethodSignature = theMethod.getSignature();
                 StringBuilder theArguments = new StringBuilder();
@@ -363,7 +395,12 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
                     JSFunction theFunction = theModule.resolveFunction(theImportAnnotation.getElementValueByName("name").stringValue());
                     theWriter.println();
                     theWriter.println("    " + JSWriterUtils.toMethodName(theMethod.getName().stringValue(), theCurrentMethodSignature) + " : function(" + theArguments.toString() + ") {");
-                    theWriter.println("         " + theFunction.generateCode(theCurrentMethodSignature));
+                    if (aOptions.isPreciseLongs() && theCurrentMethodSignature.getReturnType() == BytecodePrimitiveTypeRef.LONG) {
+                        // Imported functions return plain numbers
+                        theWriter.println("         return bytecoder.toLong((function(" + theArguments.toString() + ") {" + theFunction.generateCode(theCurrentMethodSignature) + "})(" + theArguments.toString() + "));");
+                    } else {
+                        theWriter.println("         " + theFunction.generateCode(theCurrentMethodSignature));
+                    }
                     theWriter.println("    },");
                     return;
                 }
@@ -382,7 +419,7 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
                     theWriter.println("        */");
                 }
 
-                JSSSAWriter theVariablesWriter = new JSSSAWriter(aOptions, theSSAProgram,"        ", theWriter, aLinkerContext);
+                JSSSAWriter theVariablesWriter = new JSSSAWriter(aOptions, theSSAProgram,"        ", theWriter, aLinkerContext, theResolver);
                 for (Variable theVariable : theSSAProgram.globalVariables()) {
                     if (!theVariable.isSynthetic()) {
                         theVariablesWriter.print("var ");
@@ -438,11 +475,60 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
             theWriter.println();
         });
 
+        theWriter.println("bytecoder.stringData = [");
+        for (String theString : theStringPool.keySet()) {
+            theWriter.println("    " + JSWriterUtils.toArray(theString.getBytes()) + ",");
+        }
+        theWriter.println("];");
+        theWriter.println();
+
+        // Virtual method tables. Every class gets one slot per virtual method, including the inherited ones,
+        // so a virtual invocation is a plain property lookup on the class of the target
+        aLinkerContext.forEachClass(theEntry -> {
+            if (theEntry.getValue().getAccessFlags().isInterface()) {
+                return;
+            }
+            String theJSClassName = JSWriterUtils.toClassName(theEntry.getKey());
+            theEntry.getValue().forEachVirtualMethod(aVirtualMethod -> {
+                BytecodeLinkedClass.LinkedMethod theLinkTarget = aVirtualMethod.getValue();
+                if (!theLinkTarget.getTargetMethod().getAccessFlags().isAbstract() &&
+                        !theLinkTarget.getTargetMethod().getAccessFlags().isStatic()) {
+                    theWriter.print(theJSClassName + "." + toVirtualSlot(aVirtualMethod.getKey()) + " = ");
+                    if (theLinkTarget.getTargetMethod() != BytecodeLinkedClass.GET_CLASS_PLACEHOLDER) {
+                        theWriter.println(JSWriterUtils.toClassName(theLinkTarget.getDeclaringType()) + "."
+                                + JSWriterUtils.toMethodName(
+                                theLinkTarget.getTargetMethod().getName().stringValue(),
+                                theLinkTarget.getTargetMethod().getSignature()) + ";");
+                    } else {
+                        theWriter.println("function(callsite) {return " + theJSClassName + ".runtimeClass;};");
+                    }
+                }
+            });
+        });
+        theWriter.println();
+
         theWriter.flush();
 
         return new JSCompileResult(theStrWriter.toString());
     }
 
+    static String toVirtualSlot(BytecodeVirtualMethodIdentifier aIdentifier) {
+        return "v" + aIdentifier.getIdentifier();
+    }
+
+    private void writeInstanceOfTypes(PrintWriter aWriter, BytecodeLinkedClass aClass) {
+        aWriter.print("{");
+        boolean theFirst = true;
+        for (BytecodeLinkedClass theType : aClass.getImplementingTypes()) {
+            if (!theFirst) {
+                aWriter.print(", ");
+            }
+            aWriter.print(theType.getUniqueId() + " : 1");
+            theFirst = false;
+        }
+        aWriter.print("}");
+    }
+
     private void writeExceptionHandlerCode(BytecodeLinkerContext aLinkerContext, BytecodeLinkedClass aExceptionRethrower,
             PrintWriter aWriter, BytecodeProgram aProgram,
             String aInset, BytecodeInstruction aInstruction, String aExceptionVariableName) {
@@ -459,8 +545,8 @@ public class JSSSACompilerBackend implements CompileBackend<JSCompileResult> {
                     BytecodeLinkedClass theLinkedClass = aLinkerContext.isLinkedOrNull(theConstant.getConstant());
                     if (theLinkedClass != null) {
                         aWriter.println(
-                                aInset + "if (" + aExceptionVariableName + ".clazz.instanceOfType(" + theLinkedClass.getUniqueId()
-                                        + ")) {");
+                                aInset + "if (" + aExceptionVariableName + ".clazz.instanceOfTypes[" + theLinkedClass.getUniqueId()
+                                        + "] === 1) {");
                         aWriter.println(aInset + "    currentLabel = " + theEntry.getHandlerPc().getAddress() + ";");
                         aWriter.println(aInset + "    continue controlflowloop;");
                         aWriter.println(aInset + "}");
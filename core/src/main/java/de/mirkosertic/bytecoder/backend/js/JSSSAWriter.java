@@ -17,11 +17,13 @@ package de.mirkosertic.bytecoder.backend.js;
 
 import de.mirkosertic.bytecoder.backend.CompileOptions;
 import de.mirkosertic.bytecoder.backend.IndentSSAWriter;
+import de.mirkosertic.bytecoder.core.BytecodeArrayTypeRef;
 import de.mirkosertic.bytecoder.core.BytecodeFieldRefConstant;
 import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
 import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
 import de.mirkosertic.bytecoder.core.BytecodeMethodSignature;
 import de.mirkosertic.bytecoder.core.BytecodeOpcodeAddress;
+import de.mirkosertic.bytecoder.core.BytecodePrimitiveTypeRef;
 import de.mirkosertic.bytecoder.core.BytecodeTypeRef;
 import de.mirkosertic.bytecoder.core.BytecodeVirtualMethodIdentifier;
 import de.mirkosertic.bytecoder.relooper.Relooper;
@@ -42,6 +44,7 @@ import de.mirkosertic.bytecoder.ssa.CurrentExceptionValue;
 import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodExpression;
 import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodValue;
 import de.mirkosertic.bytecoder.ssa.DoubleValue;
+import de.mirkosertic.bytecoder.ssa.ExceptionDispatchExpression;
 import de.mirkosertic.bytecoder.ssa.Expression;
 import de.mirkosertic.bytecoder.ssa.ExpressionList;
 import de.mirkosertic.bytecoder.ssa.FixedBinaryValue;
@@ -51,7 +54,6 @@ import de.mirkosertic.bytecoder.ssa.GetFieldValue;
 import de.mirkosertic.bytecoder.ssa.GetStaticValue;
 import de.mirkosertic.bytecoder.ssa.GotoExpression;
 import de.mirkosertic.bytecoder.ssa.GraphNode;
-import de.mirkosertic.bytecoder.ssa.GraphNodePath;
 import de.mirkosertic.bytecoder.ssa.IFExpression;
 import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
 import de.mirkosertic.bytecoder.ssa.InstanceOfValue;
@@ -103,12 +105,20 @@ import java.util.Objects;
 
 public class JSSSAWriter extends IndentSSAWriter {
 
-    public JSSSAWriter(CompileOptions aOptions, Program aProgram, String aIndent, PrintWriter aWriter, BytecodeLinkerContext aLinkerContext) {
+    public interface IDResolver {
+
+        int resolveStringPoolIndex(String aValue);
+    }
+
+    private final IDResolver idResolver;
+
+    public JSSSAWriter(CompileOptions aOptions, Program aProgram, String aIndent, PrintWriter aWriter, BytecodeLinkerContext aLinkerContext, IDResolver aIDResolver) {
         super(aOptions, aProgram, aIndent, aWriter, aLinkerContext);
+        idResolver = aIDResolver;
     }
 
     private JSSSAWriter withDeeperIndent() {
-        return new JSSSAWriter(options, program, indent + "    ", writer, linkerContext);
+        return new JSSSAWriter(options, program, indent + "    ", writer, linkerContext, idResolver);
     }
 
     private void print(Value aValue) {
@@ -244,10 +254,9 @@ public class JSSSAWriter extends IndentSSAWriter {
     }
 
     private void print(RuntimeGeneratedTypeValue aValue) {
-        print("{clazz: { resolveVirtualMethod : function(aIdentifier) {return function(inst, _p1, _p2, _p3, _p4, _p5, _p6, _p7, _p8, _p9) {return ");
+        print("{clazz: LAMBDA_CLASS, implementation: ");
         print(aValue.getMethodRef());
-        print("(_p1, _p2, _p3, _p4, _p5, _p6, _p7, _p8, _p9);");
-        print("}}}}");
+        print("}");
     }
 
     private void print(MethodTypeValue aValue) {
@@ -283,9 +292,28 @@ public class JSSSAWriter extends IndentSSAWriter {
     }
 
     private void print(FloorValue aValue) {
-        print("Math.floor(");
-        print((Value) aValue.resolveFirstArgument());
-        print(")");
+        Value theValue = aValue.resolveFirstArgument();
+        switch (aValue.resolveType().resolve()) {
+            case INT:
+                // Integer division is already truncated to int32
+                print(theValue);
+                break;
+            case LONG:
+                if (options.isPreciseLongs()) {
+                    // BigInt division is already truncated
+                    print(theValue);
+                    break;
+                }
+                print("Math.trunc(");
+                print(theValue);
+                print(")");
+                break;
+            default:
+                print("Math.floor(");
+                print(theValue);
+                print(")");
+                break;
+        }
     }
 
     private void print(UnknownValue aValue) {
@@ -293,8 +321,7 @@ public class JSSSAWriter extends IndentSSAWriter {
     }
 
     private void print(CurrentExceptionValue aValue) {
-        //TODO: Fix this
-        print("'current exception'");
+        print("__exception__");
     }
 
     private void print(MethodParameterValue aValue) {
@@ -306,12 +333,14 @@ public class JSSSAWriter extends IndentSSAWriter {
     }
 
     private void print(NewMultiArrayValue aValue) {
-        BytecodeTypeRef theType = aValue.getType();
-        Object theDefaultValue = theType.defaultValue();
-        String theStrDefault = theDefaultValue != null ? theDefaultValue.toString() : "null";
+        BytecodeArrayTypeRef theType = (BytecodeArrayTypeRef) aValue.getType();
+        List<Value> theDimensions = aValue.consumedValues(Value.ConsumptionType.ARGUMENT);
+        String theTypedArray = "null";
+        if (theType.getType().isPrimitive() && theDimensions.size() == theType.getDepth()) {
+            theTypedArray = JSWriterUtils.toTypedArrayConstructor((BytecodePrimitiveTypeRef) theType.getType(), options.isPreciseLongs());
+        }
         print("bytecoder.newMultiArray(");
         print("[");
-        List<Value> theDimensions = aValue.consumedValues(Value.ConsumptionType.ARGUMENT);
         for (int i=0;i<theDimensions.size();i++) {
             if (i>0) {
                 print(",");
@@ -320,7 +349,7 @@ public class JSSSAWriter extends IndentSSAWriter {
         }
         print("]");
         print(",");
-        print(theStrDefault);
+        print(theTypedArray);
         print(")");
     }
 
@@ -333,18 +362,22 @@ public class JSSSAWriter extends IndentSSAWriter {
         Value theValue = aValue.resolveFirstArgument();
         print("(");
         print(theValue);
-        print(" == null ? false : ");
+        print(" == null ? 0 : (");
         print(theValue);
-        print(".clazz.instanceOfType(");
+        print(".clazz.instanceOfTypes[");
 
         BytecodeLinkedClass theLinkedClass = linkerContext.isLinkedOrNull(aValue.getType().getConstant());
         print(theLinkedClass.getUniqueId());
 
-        print(")");
+        print("] | 0)");
         print(")");
     }
 
     private void print(LongValue aValue) {
+        if (options.isPreciseLongs()) {
+            print(aValue.getLongValue() + "n");
+            return;
+        }
         print(aValue.getLongValue());
     }
 
@@ -354,8 +387,19 @@ public class JSSSAWriter extends IndentSSAWriter {
 
     private void print(NegatedValue aValue) {
         Value theValue = aValue.resolveFirstArgument();
+        if (options.isPreciseLongs() && aValue.resolveType().resolve() == TypeRef.Native.LONG) {
+            // Negating Long.MIN_VALUE must wrap around
+            print("BigInt.asIntN(64, -");
+            print(theValue);
+            print(")");
+            return;
+        }
         print("(-");
         print(theValue);
+        if (aValue.resolveType().resolve() == TypeRef.Native.INT) {
+            // Negating Integer.MIN_VALUE must wrap around
+            print(" | 0");
+        }
         print(")");
     }
 
@@ -377,6 +421,14 @@ public class JSSSAWriter extends IndentSSAWriter {
     private void print(NewArrayValue aValue) {
         BytecodeTypeRef theType = aValue.getType();
         Value theLength = aValue.resolveFirstArgument();
+        if (theType.isPrimitive()) {
+            print("bytecoder.newPrimitiveArray(");
+            print(theLength);
+            print(",");
+            print(JSWriterUtils.toTypedArrayConstructor((BytecodePrimitiveTypeRef) theType, options.isPreciseLongs()));
+            print(")");
+            return;
+        }
         Object theDefaultValue = theType.defaultValue();
         String theStrDefault = theDefaultValue != null ? theDefaultValue.toString() : "null";
         print("bytecoder.newArray(");
@@ -391,7 +443,8 @@ public class JSSSAWriter extends IndentSSAWriter {
     }
 
     private void print(FloatValue aValue) {
-        print(aValue.getFloatValue());
+        // Print the exact value of the float, as the shortest float representation is not exact as a double
+        print((double) aValue.getFloatValue());
     }
 
     private void print(DoubleValue aValue) {
@@ -399,9 +452,8 @@ public class JSSSAWriter extends IndentSSAWriter {
     }
 
     private void print(StringValue aValue) {
-        String theData = JSWriterUtils.toArray(aValue.getStringValue().getBytes());
-        print("bytecoder.newString(");
-        print(theData);
+        print("bytecoder.stringPool(");
+        print(idResolver.resolveStringPoolIndex(aValue.getStringValue()));
         print(")");
     }
 
@@ -426,13 +478,43 @@ public class JSSSAWriter extends IndentSSAWriter {
     private void print(TypeConversionValue aValue) {
         TypeRef theTargetType = aValue.resolveType();
         Value theValue = aValue.resolveFirstArgument();
+        if (options.isPreciseLongs() && printPreciseLongConversion(theValue, theTargetType.resolve())) {
+            return;
+        }
         switch (theTargetType.resolve()) {
             case FLOAT:
+                print("Math.fround(");
                 print(theValue);
+                print(")");
                 break;
             case DOUBLE:
                 print(theValue);
                 break;
+            case INT:
+                print("(");
+                print(theValue);
+                print(" | 0)");
+                break;
+            case BYTE:
+                print("((");
+                print(theValue);
+                print(" << 24) >> 24)");
+                break;
+            case SHORT:
+                print("((");
+                print(theValue);
+                print(" << 16) >> 16)");
+                break;
+            case CHAR:
+                print("(");
+                print(theValue);
+                print(" & 0xFFFF)");
+                break;
+            case LONG:
+                print("Math.trunc(");
+                print(theValue);
+                print(")");
+                break;
             default:
                 print("Math.floor(");
                 print(theValue);
@@ -441,6 +523,40 @@ public class JSSSAWriter extends IndentSSAWriter {
         }
     }
 
+    private boolean printPreciseLongConversion(Value aValue, TypeRef.Native aTargetType) {
+        TypeRef.Native theSourceType = aValue.resolveType().resolve();
+        if (aTargetType == TypeRef.Native.LONG) {
+            if (theSourceType == TypeRef.Native.FLOAT || theSourceType == TypeRef.Native.DOUBLE) {
+                print("bytecoder.toLong(");
+            } else {
+                print("BigInt(");
+            }
+            print(aValue);
+            print(")");
+            return true;
+        }
+        if (theSourceType == TypeRef.Native.LONG) {
+            switch (aTargetType) {
+                case INT:
+                    print("Number(BigInt.asIntN(32, ");
+                    print(aValue);
+                    print("))");
+                    return true;
+                case FLOAT:
+                    print("Math.fround(Number(");
+                    print(aValue);
+                    print("))");
+                    return true;
+                case DOUBLE:
+                    print("Number(");
+                    print(aValue);
+                    print(")");
+                    return true;
+            }
+        }
+        return false;
+    }
+
     private void print(GetFieldValue aValue) {
         Value theTarget = aValue.resolveFirstArgument();
         BytecodeFieldRefConstant theField = aValue.getField();
@@ -449,6 +565,28 @@ public class JSSSAWriter extends IndentSSAWriter {
     }
 
     private void print(BinaryValue aValue) {
+        if (aValue.resolveType().resolve() == TypeRef.Native.INT) {
+            switch (aValue.getOperator()) {
+                case ADD:
+                case SUB:
+                case DIV:
+                    printInt32Arithmetic(aValue);
+                    return;
+                case MUL:
+                    // Math.imul gives the exact low 32 bits of the product
+                    Value theFirst = aValue.resolveFirstArgument();
+                    Value theSecond = aValue.resolveSecondArgument();
+                    print("Math.imul(");
+                    print(theFirst);
+                    print(", ");
+                    print(theSecond);
+                    print(")");
+                    return;
+            }
+        }
+        if (options.isPreciseLongs() && aValue.resolveType().resolve() == TypeRef.Native.LONG && printPreciseLongArithmetic(aValue)) {
+            return;
+        }
         Value theValue1 = aValue.resolveFirstArgument();
         print(theValue1);
         switch (aValue.getOperator()) {
@@ -510,6 +648,82 @@ public class JSSSAWriter extends IndentSSAWriter {
         print(theValue2);
     }
 
+    private boolean printPreciseLongArithmetic(BinaryValue aValue) {
+        Value theValue1 = aValue.resolveFirstArgument();
+        Value theValue2 = aValue.resolveSecondArgument();
+        // BigInt.asIntN wraps the result around like a Java long
+        switch (aValue.getOperator()) {
+            case ADD:
+                printWrappedLong(theValue1, " + ", theValue2);
+                return true;
+            case SUB:
+                printWrappedLong(theValue1, " - ", theValue2);
+                return true;
+            case MUL:
+                printWrappedLong(theValue1, " * ", theValue2);
+                return true;
+            case DIV:
+                printWrappedLong(theValue1, " / ", theValue2);
+                return true;
+            case BINARYSHIFTLEFT:
+                // The shift distance is an int, and only its lowest six bits are used
+                print("BigInt.asIntN(64, ");
+                print(theValue1);
+                print(" << BigInt(");
+                print(theValue2);
+                print(" & 63))");
+                return true;
+            case BINARYSHIFTRIGHT:
+                print("(");
+                print(theValue1);
+                print(" >> BigInt(");
+                print(theValue2);
+                print(" & 63))");
+                return true;
+            case BINARYUNSIGNEDSHIFTRIGHT:
+                print("BigInt.asIntN(64, BigInt.asUintN(64, ");
+                print(theValue1);
+                print(") >> BigInt(");
+                print(theValue2);
+                print(" & 63))");
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void printWrappedLong(Value aValue1, String aOperator, Value aValue2) {
+        print("BigInt.asIntN(64, ");
+        print(aValue1);
+        print(aOperator);
+        print(aValue2);
+        print(")");
+    }
+
+    private void printInt32Arithmetic(BinaryValue aValue) {
+        // The |0 coercion keeps the result in int32 range with Java overflow semantics,
+        // and also truncates the result of an integer division towards zero
+        Value theFirst = aValue.resolveFirstArgument();
+        Value theSecond = aValue.resolveSecondArgument();
+        print("((");
+        print(theFirst);
+        switch (aValue.getOperator()) {
+            case ADD:
+                print(" + ");
+                break;
+            case SUB:
+                print(" - ");
+                break;
+            case DIV:
+                print(" / ");
+                break;
+            default:
+                throw new IllegalStateException("Unsupported operator : " + aValue.getOperator());
+        }
+        print(theSecond);
+        print(") | 0)");
+    }
+
     private void print(FixedBinaryValue aValue) {
         Value theValue1 = aValue.resolveFirstArgument();
         print(theValue1);
@@ -591,9 +805,9 @@ public class JSSSAWriter extends IndentSSAWriter {
             print("(");
         } else {
             print(theTarget);
-            print(".clazz.resolveVirtualMethod(");
-            print(theMethodIdentifier.getIdentifier());
-            print(")(");
+            print(".clazz.");
+            print(JSSSACompilerBackend.toVirtualSlot(theMethodIdentifier));
+            print("(");
         }
 
         print(theTarget);
@@ -632,7 +846,9 @@ public class JSSSAWriter extends IndentSSAWriter {
     }
 
     private void writeExpressions(ExpressionList aExpressions) {
-        for (Expression theExpression : aExpressions.toList()) {
+        List<Expression> theExpressions = aExpressions.toList();
+        for (int i = 0; i < theExpressions.size(); i++) {
+            Expression theExpression = theExpressions.get(i);
             if (options.isDebugOutput()) {
                 String theComment = theExpression.getComment();
                 if (theComment != null && theComment.length() > 0) {
@@ -640,6 +856,11 @@ public class JSSSAWriter extends IndentSSAWriter {
                     println(theComment);
                 }
             }
+            if (i < theExpressions.size() - 1 && theExpressions.get(i + 1) instanceof ExceptionDispatchExpression
+                    && !((ExceptionDispatchExpression) theExpressions.get(i + 1)).isThrowing()) {
+                // The invocation might continue at an exception handler, the following dispatch closes the try block
+                println("try {");
+            }
             if (theExpression instanceof ReturnExpression) {
                 ReturnExpression theE = (ReturnExpression) theExpression;
                 print("return");
@@ -796,6 +1017,22 @@ public class JSSSAWriter extends IndentSSAWriter {
                 println(";");
             } else if (theExpression instanceof UnreachableExpression) {
                 println("throw 'Unreachable';");
+            } else if (theExpression instanceof ExceptionDispatchExpression) {
+                ExceptionDispatchExpression theE = (ExceptionDispatchExpression) theExpression;
+                if (theE.isThrowing()) {
+                    // The following throw passes the exception on to our caller if no handler matches
+                    print("var __exception__ = ");
+                    print(theE.getThrownValue());
+                    println(";");
+                    writeExceptionDispatch(theE);
+                } else if (i > 0) {
+                    println("} catch (e) {");
+                    JSSSAWriter theDeeper = withDeeperIndent();
+                    theDeeper.println("var __exception__ = e;");
+                    theDeeper.writeExceptionDispatch(theE);
+                    theDeeper.println("throw e;");
+                    println("}");
+                }
             } else if (theExpression instanceof BreakExpression) {
                 BreakExpression theBreak = (BreakExpression) theExpression;
                 print("__label__ = ");
@@ -818,18 +1055,33 @@ public class JSSSAWriter extends IndentSSAWriter {
         }
     }
 
+    private void writeExceptionDispatch(ExceptionDispatchExpression aExpression) {
+        // The first matching handler wins, every handler continues somewhere else in the method
+        for (ExceptionDispatchExpression.Handler theHandler : aExpression.getHandlers()) {
+            if (theHandler.isCatchAll()) {
+                writeExpressions(theHandler.getExpressions());
+                return;
+            }
+            BytecodeLinkedClass theCatchType = linkerContext.isLinkedOrNull(theHandler.getCatchType().getConstant());
+            if (theCatchType == null) {
+                // The exception type was never linked, so there are no instances of it
+                continue;
+            }
+            // Native JavaScript errors have no class, so they are only caught by catch all handlers
+            print("if (__exception__.clazz && __exception__.clazz.instanceOfTypes[");
+            print(theCatchType.getUniqueId());
+            println("] === 1) {");
+            withDeeperIndent().writeExpressions(theHandler.getExpressions());
+            println("}");
+        }
+    }
+
     private void printNodeDebug(GraphNode aNode) {
         if (options.isDebugOutput()) {
 
-            for (GraphNodePath thePath : aNode.reachableBy()) {
-                print("// Reachable by path [");
-
-                for (GraphNode theNode : thePath.nodes()) {
-                    print(theNode.getStartAddress().getAddress());
-                    print(" ");
-                }
-
-                println("]");
+            GraphNode theImmediateDominator = program.getControlFlowGraph().dominatorTree().immediateDominatorOf(aNode);
+            if (theImmediateDominator != null) {
+                printlnComment("Immediate dominator of this block is " + theImmediateDominator.getStartAddress().getAddress());
             }
 
             for (GraphNode thePrececessor : aNode.getPredecessors()) {
@@ -65,6 +65,42 @@ public class JSWriterUtils {
         return toClassNameInternal(aTypeRef.getConstant().stringValue().replace("/","."));
     }
 
+    public static String toTypedArrayConstructor(BytecodePrimitiveTypeRef aElementType, boolean aPreciseLongs) {
+        switch (aElementType) {
+            case BOOLEAN:
+            case BYTE:
+                return "Int8Array";
+            case SHORT:
+                return "Int16Array";
+            case CHAR:
+                return "Uint16Array";
+            case INT:
+                return "Int32Array";
+            case FLOAT:
+                return "Float32Array";
+            case LONG:
+                if (aPreciseLongs) {
+                    return "BigInt64Array";
+                }
+                // Longs are plain JavaScript numbers unless precise longs are enabled
+                return "Float64Array";
+            case DOUBLE:
+                return "Float64Array";
+            default:
+                throw new IllegalArgumentException("No typed array for " + aElementType);
+        }
+    }
+
+    public static String toDefaultValue(BytecodeTypeRef aTypeRef, boolean aPreciseLongs) {
+        if (!aTypeRef.isPrimitive()) {
+            return "null";
+        }
+        if (aTypeRef == BytecodePrimitiveTypeRef.LONG && aPreciseLongs) {
+            return "0n";
+        }
+        return "0";
+    }
+
     public static String toArray(byte[] aData) {
         StringBuilder theResult = new StringBuilder("[");
         for (int i=0;i<aData.length;i++) {
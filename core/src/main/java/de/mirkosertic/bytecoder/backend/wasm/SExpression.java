@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.backend.wasm;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SExpression {
+
+    public static SExpression parse(String aText) {
+        Parser theParser = new Parser(aText);
+        SExpression theResult = theParser.next();
+        if (theResult == null) {
+            throw new IllegalArgumentException("Empty expression");
+        }
+        if (theParser.next() != null) {
+            throw new IllegalArgumentException("Only one toplevel expression is supported");
+        }
+        return theResult;
+    }
+
+    private final String atom;
+    private final byte[] string;
+    private final List<SExpression> children;
+
+    private SExpression(String aAtom, byte[] aString, List<SExpression> aChildren) {
+        atom = aAtom;
+        string = aString;
+        children = aChildren;
+    }
+
+    public boolean isList() {
+        return children != null;
+    }
+
+    public boolean isString() {
+        return string != null;
+    }
+
+    public boolean isAtom() {
+        return atom != null;
+    }
+
+    public boolean isName() {
+        return atom != null && atom.startsWith("$");
+    }
+
+    public String atom() {
+        return atom;
+    }
+
+    public byte[] stringBytes() {
+        return string;
+    }
+
+    public String stringValue() {
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    public List<SExpression> children() {
+        return children;
+    }
+
+    public String keyword() {
+        if (children == null || children.isEmpty() || !children.get(0).isAtom()) {
+            return null;
+        }
+        return children.get(0).atom;
+    }
+
+    public boolean is(String aKeyword) {
+        return aKeyword.equals(keyword());
+    }
+
+    @Override
+    public String toString() {
+        if (atom != null) {
+            return atom;
+        }
+        if (string != null) {
+            return "\"" + stringValue() + "\"";
+        }
+        StringBuilder theResult = new StringBuilder("(");
+        for (int i = 0; i < children.size(); i++) {
+            if (i > 0) {
+                theResult.append(' ');
+            }
+            theResult.append(children.get(i));
+        }
+        return theResult.append(')').toString();
+    }
+
+    private static class Parser {
+
+        private final String text;
+        private int position;
+
+        Parser(String aText) {
+            text = aText;
+        }
+
+        SExpression next() {
+            skipWhitespaceAndComments();
+            if (position >= text.length()) {
+                return null;
+            }
+            char theCurrent = text.charAt(position);
+            if (theCurrent == '(') {
+                position++;
+                List<SExpression> theChildren = new ArrayList<>();
+                while (true) {
+                    skipWhitespaceAndComments();
+                    if (position >= text.length()) {
+                        throw new IllegalArgumentException("Unexpected end of input, missing )");
+                    }
+                    if (text.charAt(position) == ')') {
+                        position++;
+                        return new SExpression(null, null, theChildren);
+                    }
+                    theChildren.add(next());
+                }
+            }
+            if (theCurrent == ')') {
+                throw new IllegalArgumentException("Unexpected ) at position " + position);
+            }
+            if (theCurrent == '"') {
+                return new SExpression(null, readString(), null);
+            }
+            int theStart = position;
+            while (position < text.length()) {
+                char theChar = text.charAt(position);
+                if (Character.isWhitespace(theChar) || theChar == '(' || theChar == ')' || theChar == '"' || theChar == ';') {
+                    break;
+                }
+                position++;
+            }
+            return new SExpression(text.substring(theStart, position), null, null);
+        }
+
+        private byte[] readString() {
+            ByteArrayOutputStream theResult = new ByteArrayOutputStream();
+            position++;
+            while (true) {
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated string");
+                }
+                int theChar = text.codePointAt(position);
+                position += Character.charCount(theChar);
+                if (theChar == '"') {
+                    return theResult.toByteArray();
+                }
+                if (theChar != '\\') {
+                    byte[] theBytes = new String(Character.toChars(theChar)).getBytes(StandardCharsets.UTF_8);
+                    theResult.write(theBytes, 0, theBytes.length);
+                    continue;
+                }
+                char theEscape = text.charAt(position++);
+                switch (theEscape) {
+                    case 'n':
+                        theResult.write('\n');
+                        break;
+                    case 't':
+                        theResult.write('\t');
+                        break;
+                    case 'r':
+                        theResult.write('\r');
+                        break;
+                    case '"':
+                    case '\'':
+                    case '\\':
+                        theResult.write(theEscape);
+                        break;
+                    default:
+                        theResult.write(Integer.parseInt(text.substring(position - 1, position + 1), 16));
+                        position++;
+                }
+            }
+        }
+
+        private void skipWhitespaceAndComments() {
+            while (position < text.length()) {
+                char theChar = text.charAt(position);
+                if (Character.isWhitespace(theChar)) {
+                    position++;
+                } else if (text.startsWith(";;", position)) {
+                    int theEnd = text.indexOf('\n', position);
+                    position = theEnd < 0 ? text.length() : theEnd + 1;
+                } else if (text.startsWith("(;", position)) {
+                    int theEnd = text.indexOf(";)", position);
+                    if (theEnd < 0) {
+                        throw new IllegalArgumentException("Unterminated block comment");
+                    }
+                    position = theEnd + 2;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,1100 @@
+/*
+ * Copyright 2017 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.backend.wasm;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates a module in the WebAssembly text format, as it is written by the
+ * {@link WASMSSACompilerBackend}, into the binary format. This replaces the round trip
+ * through libwabt.js and a browser.
+ */
+public class WASMBinaryEncoder {
+
+    private static final int SECTION_CUSTOM = 0;
+    private static final int SECTION_TYPE = 1;
+    private static final int SECTION_IMPORT = 2;
+    private static final int SECTION_FUNCTION = 3;
+    private static final int SECTION_TABLE = 4;
+    private static final int SECTION_MEMORY = 5;
+    private static final int SECTION_GLOBAL = 6;
+    private static final int SECTION_EXPORT = 7;
+    private static final int SECTION_START = 8;
+    private static final int SECTION_ELEMENT = 9;
+    private static final int SECTION_CODE = 10;
+    private static final int SECTION_DATA = 11;
+
+    private static final int KIND_FUNCTION = 0;
+    private static final int KIND_TABLE = 1;
+    private static final int KIND_MEMORY = 2;
+    private static final int KIND_GLOBAL = 3;
+
+    private static final int BLOCKTYPE_EMPTY = 0x40;
+
+    private static final Map<String, Integer> OPCODES = new HashMap<>();
+    private static final Map<String, Integer> ALIGNMENTS = new HashMap<>();
+
+    static {
+        register("unreachable", 0x00);
+        register("nop", 0x01);
+        register("br", 0x0c);
+        register("br_if", 0x0d);
+        register("br_table", 0x0e);
+        register("return", 0x0f);
+        register("call", 0x10);
+        register("call_indirect", 0x11);
+        register("drop", 0x1a);
+        register("select", 0x1b);
+        register("get_local", 0x20);
+        register("set_local", 0x21);
+        register("tee_local", 0x22);
+        register("get_global", 0x23);
+        register("set_global", 0x24);
+
+        registerMemoryAccess("i32.load", 0x28, 2);
+        registerMemoryAccess("i64.load", 0x29, 3);
+        registerMemoryAccess("f32.load", 0x2a, 2);
+        registerMemoryAccess("f64.load", 0x2b, 3);
+        registerMemoryAccess("i32.load8_s", 0x2c, 0);
+        registerMemoryAccess("i32.load8_u", 0x2d, 0);
+        registerMemoryAccess("i32.load16_s", 0x2e, 1);
+        registerMemoryAccess("i32.load16_u", 0x2f, 1);
+        registerMemoryAccess("i64.load8_s", 0x30, 0);
+        registerMemoryAccess("i64.load8_u", 0x31, 0);
+        registerMemoryAccess("i64.load16_s", 0x32, 1);
+        registerMemoryAccess("i64.load16_u", 0x33, 1);
+        registerMemoryAccess("i64.load32_s", 0x34, 2);
+        registerMemoryAccess("i64.load32_u", 0x35, 2);
+        registerMemoryAccess("i32.store", 0x36, 2);
+        registerMemoryAccess("i64.store", 0x37, 3);
+        registerMemoryAccess("f32.store", 0x38, 2);
+        registerMemoryAccess("f64.store", 0x39, 3);
+        registerMemoryAccess("i32.store8", 0x3a, 0);
+        registerMemoryAccess("i32.store16", 0x3b, 1);
+        registerMemoryAccess("i64.store8", 0x3c, 0);
+        registerMemoryAccess("i64.store16", 0x3d, 1);
+        registerMemoryAccess("i64.store32", 0x3e, 2);
+
+        register("current_memory", 0x3f);
+        register("grow_memory", 0x40);
+        register("i32.const", 0x41);
+        register("i64.const", 0x42);
+        register("f32.const", 0x43);
+        register("f64.const", 0x44);
+
+        String[] theIntCompare = {"eqz", "eq", "ne", "lt_s", "lt_u", "gt_s", "gt_u", "le_s", "le_u", "ge_s", "ge_u"};
+        String[] theFloatCompare = {"eq", "ne", "lt", "gt", "le", "ge"};
+        String[] theIntArithmetic = {"clz", "ctz", "popcnt", "add", "sub", "mul", "div_s", "div_u", "rem_s", "rem_u",
+                "and", "or", "xor", "shl", "shr_s", "shr_u", "rotl", "rotr"};
+        String[] theFloatArithmetic = {"abs", "neg", "ceil", "floor", "trunc", "nearest", "sqrt", "add", "sub", "mul",
+                "div", "min", "max", "copysign"};
+        registerAll("i32.", theIntCompare, 0x45);
+        registerAll("i64.", theIntCompare, 0x50);
+        registerAll("f32.", theFloatCompare, 0x5b);
+        registerAll("f64.", theFloatCompare, 0x61);
+        registerAll("i32.", theIntArithmetic, 0x67);
+        registerAll("i64.", theIntArithmetic, 0x79);
+        registerAll("f32.", theFloatArithmetic, 0x8b);
+        registerAll("f64.", theFloatArithmetic, 0x99);
+        registerAll("", new String[] {"i32.wrap/i64", "i32.trunc_s/f32", "i32.trunc_u/f32", "i32.trunc_s/f64",
+                "i32.trunc_u/f64", "i64.extend_s/i32", "i64.extend_u/i32", "i64.trunc_s/f32", "i64.trunc_u/f32",
+                "i64.trunc_s/f64", "i64.trunc_u/f64", "f32.convert_s/i32", "f32.convert_u/i32", "f32.convert_s/i64",
+                "f32.convert_u/i64", "f32.demote/f64", "f64.convert_s/i32", "f64.convert_u/i32", "f64.convert_s/i64",
+                "f64.convert_u/i64", "f64.promote/f32", "i32.reinterpret/f32", "i64.reinterpret/f64",
+                "f32.reinterpret/i32", "f64.reinterpret/i64"}, 0xa7);
+    }
+
+    private static void registerAll(String aPrefix, String[] aNames, int aFirstOpcode) {
+        for (int i = 0; i < aNames.length; i++) {
+            register(aPrefix + aNames[i], aFirstOpcode + i);
+        }
+    }
+
+    private static void registerMemoryAccess(String aName, int aOpcode, int aNaturalAlignment) {
+        register(aName, aOpcode);
+        ALIGNMENTS.put(aName, aNaturalAlignment);
+    }
+
+    private static void register(String aName, int aOpcode) {
+        OPCODES.put(aName, aOpcode);
+        // The standardized text format renamed some instructions, both spellings are accepted
+        int theSlash = aName.indexOf('/');
+        if (theSlash > 0) {
+            String theOperation = aName.substring(0, theSlash);
+            String theSource = aName.substring(theSlash + 1);
+            if (theOperation.endsWith("_s") || theOperation.endsWith("_u")) {
+                int theSuffix = theOperation.length() - 2;
+                OPCODES.put(theOperation.substring(0, theSuffix) + "_" + theSource + theOperation.substring(theSuffix), aOpcode);
+            } else {
+                OPCODES.put(theOperation + "_" + theSource, aOpcode);
+            }
+        } else if (aName.startsWith("get_") || aName.startsWith("set_") || aName.startsWith("tee_")) {
+            OPCODES.put(aName.substring(4) + "." + aName.substring(0, 3), aOpcode);
+        } else if (aName.equals("current_memory")) {
+            OPCODES.put("memory.size", aOpcode);
+        } else if (aName.equals("grow_memory")) {
+            OPCODES.put("memory.grow", aOpcode);
+        }
+    }
+
+    private static class FunctionType {
+
+        private final List<Integer> params = new ArrayList<>();
+        private final List<Integer> results = new ArrayList<>();
+
+        String signature() {
+            return params + "->" + results;
+        }
+    }
+
+    private static class FunctionDefinition {
+
+        private String name;
+        private String importModule;
+        private String importName;
+        private int typeIndex;
+        private final List<String> localNames = new ArrayList<>();
+        private final List<Integer> localTypes = new ArrayList<>();
+        private final List<String> exportNames = new ArrayList<>();
+        private List<SExpression> body = Collections.emptyList();
+        private int bodyStart;
+
+        boolean isImport() {
+            return importModule != null;
+        }
+    }
+
+    private static class GlobalDefinition {
+
+        private int type;
+        private boolean mutable;
+        private SExpression init;
+    }
+
+    private static class Export {
+
+        private final String name;
+        private final int kind;
+        private final int index;
+
+        Export(String aName, int aKind, int aIndex) {
+            name = aName;
+            kind = aKind;
+            index = aIndex;
+        }
+    }
+
+    private final List<FunctionType> types = new ArrayList<>();
+    private final Map<String, Integer> typeIndexByName = new HashMap<>();
+    private final Map<String, Integer> typeIndexBySignature = new HashMap<>();
+    private final List<FunctionDefinition> functions = new ArrayList<>();
+    private final Map<String, Integer> functionIndexByName = new HashMap<>();
+    private final List<GlobalDefinition> globals = new ArrayList<>();
+    private final Map<String, Integer> globalIndexByName = new HashMap<>();
+    private final List<SExpression> exportDeclarations = new ArrayList<>();
+    private final List<Export> exports = new ArrayList<>();
+    private final List<SExpression> elements = new ArrayList<>();
+    private final List<SExpression> datas = new ArrayList<>();
+    private long[] table;
+    private long[] memory;
+    private SExpression start;
+
+    public WASMBinaryEncoder(String aModuleText) {
+        SExpression theModule = SExpression.parse(aModuleText);
+        if (!theModule.is("module")) {
+            throw new IllegalArgumentException("Expected a module, got " + theModule.keyword());
+        }
+        readModule(theModule);
+    }
+
+    private void readModule(SExpression aModule) {
+        List<SExpression> theFields = aModule.children();
+        // Types can be declared after they are used, so they are read first
+        for (SExpression theField : theFields) {
+            if (theField.is("type")) {
+                int theIndex = types.size();
+                int theDefinition = 1;
+                if (theField.children().get(1).isName()) {
+                    typeIndexByName.put(theField.children().get(1).atom(), theIndex);
+                    theDefinition = 2;
+                }
+                FunctionType theType = new FunctionType();
+                readSignature(theField.children().get(theDefinition), 1, theType, null);
+                types.add(theType);
+                typeIndexBySignature.putIfAbsent(theType.signature(), theIndex);
+            }
+        }
+
+        List<FunctionDefinition> theImports = new ArrayList<>();
+        List<FunctionDefinition> theDefinitions = new ArrayList<>();
+        for (SExpression theField : theFields) {
+            String theKeyword = theField.keyword();
+            if (theKeyword == null) {
+                continue;
+            }
+            switch (theKeyword) {
+                case "func": {
+                    FunctionDefinition theFunction = readFunction(theField);
+                    if (theFunction.isImport()) {
+                        theImports.add(theFunction);
+                    } else {
+                        theDefinitions.add(theFunction);
+                    }
+                    break;
+                }
+                case "import": {
+                    SExpression theDescriptor = theField.children().get(3);
+                    if (!theDescriptor.is("func")) {
+                        throw new IllegalArgumentException("Only function imports are supported : " + theField);
+                    }
+                    FunctionDefinition theFunction = readFunction(theDescriptor);
+                    theFunction.importModule = theField.children().get(1).stringValue();
+                    theFunction.importName = theField.children().get(2).stringValue();
+                    theImports.add(theFunction);
+                    break;
+                }
+                case "table":
+                    table = readLimits(theField);
+                    break;
+                case "memory":
+                    memory = readLimits(theField);
+                    for (String theName : readInlineExports(theField)) {
+                        exports.add(new Export(theName, KIND_MEMORY, 0));
+                    }
+                    break;
+                case "global":
+                    readGlobal(theField);
+                    break;
+                case "export":
+                    exportDeclarations.add(theField);
+                    break;
+                case "elem":
+                    elements.add(theField);
+                    break;
+                case "data":
+                    datas.add(theField);
+                    break;
+                case "start":
+                    start = theField.children().get(1);
+                    break;
+                case "type":
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported module field : " + theKeyword);
+            }
+        }
+
+        // Imported functions come first in the function index space
+        functions.addAll(theImports);
+        functions.addAll(theDefinitions);
+        for (int i = 0; i < functions.size(); i++) {
+            FunctionDefinition theFunction = functions.get(i);
+            if (theFunction.name != null) {
+                functionIndexByName.put(theFunction.name, i);
+            }
+            for (String theExport : theFunction.exportNames) {
+                exports.add(new Export(theExport, KIND_FUNCTION, i));
+            }
+        }
+    }
+
+    private FunctionDefinition readFunction(SExpression aFunction) {
+        FunctionDefinition theResult = new FunctionDefinition();
+        List<SExpression> theChildren = aFunction.children();
+        FunctionType theType = new FunctionType();
+        Integer theExplicitType = null;
+        int i = 1;
+        if (i < theChildren.size() && theChildren.get(i).isName()) {
+            theResult.name = theChildren.get(i).atom();
+            i++;
+        }
+        for (; i < theChildren.size(); i++) {
+            SExpression theChild = theChildren.get(i);
+            String theKeyword = theChild.keyword();
+            if ("export".equals(theKeyword)) {
+                theResult.exportNames.add(theChild.children().get(1).stringValue());
+            } else if ("import".equals(theKeyword)) {
+                theResult.importModule = theChild.children().get(1).stringValue();
+                theResult.importName = theChild.children().get(2).stringValue();
+            } else if ("type".equals(theKeyword)) {
+                theExplicitType = resolve(theChild.children().get(1), typeIndexByName, "type");
+            } else if ("param".equals(theKeyword) || "result".equals(theKeyword)) {
+                readSignature(aFunction, i, theType, theResult.localNames);
+                while (i + 1 < theChildren.size() && (theChildren.get(i + 1).is("param") || theChildren.get(i + 1).is("result"))) {
+                    i++;
+                }
+            } else if ("local".equals(theKeyword)) {
+                readValueTypes(theChild, theResult.localTypes, theResult.localNames);
+            } else {
+                break;
+            }
+        }
+        theResult.body = theChildren;
+        theResult.bodyStart = i;
+        if (theExplicitType != null) {
+            theResult.typeIndex = theExplicitType;
+            int theParamCount = types.get(theExplicitType).params.size();
+            if (theType.params.isEmpty() && theParamCount > 0) {
+                theResult.localNames.addAll(0, Collections.nCopies(theParamCount, null));
+            }
+        } else {
+            theResult.typeIndex = typeIndexFor(theType);
+        }
+        return theResult;
+    }
+
+    private int typeIndexFor(FunctionType aType) {
+        String theSignature = aType.signature();
+        Integer theIndex = typeIndexBySignature.get(theSignature);
+        if (theIndex == null) {
+            theIndex = types.size();
+            types.add(aType);
+            typeIndexBySignature.put(theSignature, theIndex);
+        }
+        return theIndex;
+    }
+
+    private static void readSignature(SExpression aDefinition, int aStart, FunctionType aType, List<String> aParamNames) {
+        List<SExpression> theChildren = aDefinition.children();
+        for (int i = aStart; i < theChildren.size(); i++) {
+            SExpression theChild = theChildren.get(i);
+            if (theChild.is("param")) {
+                readValueTypes(theChild, aType.params, aParamNames);
+            } else if (theChild.is("result")) {
+                readValueTypes(theChild, aType.results, null);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void readValueTypes(SExpression aDeclaration, List<Integer> aTypes, List<String> aNames) {
+        List<SExpression> theChildren = aDeclaration.children();
+        if (theChildren.size() == 3 && theChildren.get(1).isName()) {
+            aTypes.add(valueType(theChildren.get(2).atom()));
+            if (aNames != null) {
+                aNames.add(theChildren.get(1).atom());
+            }
+            return;
+        }
+        for (int i = 1; i < theChildren.size(); i++) {
+            aTypes.add(valueType(theChildren.get(i).atom()));
+            if (aNames != null) {
+                aNames.add(null);
+            }
+        }
+    }
+
+    private static int valueType(String aType) {
+        switch (aType) {
+            case "i32":
+                return 0x7f;
+            case "i64":
+                return 0x7e;
+            case "f32":
+                return 0x7d;
+            case "f64":
+                return 0x7c;
+            default:
+                throw new IllegalArgumentException("Unknown value type : " + aType);
+        }
+    }
+
+    private static List<String> readInlineExports(SExpression aField) {
+        List<String> theResult = new ArrayList<>();
+        for (SExpression theChild : aField.children()) {
+            if (theChild.is("export")) {
+                theResult.add(theChild.children().get(1).stringValue());
+            }
+        }
+        return theResult;
+    }
+
+    private static long[] readLimits(SExpression aField) {
+        List<Long> theLimits = new ArrayList<>();
+        for (SExpression theChild : aField.children()) {
+            if (theChild.isAtom() && Character.isDigit(theChild.atom().charAt(0))) {
+                theLimits.add(parseInteger(theChild.atom()));
+            }
+        }
+        if (theLimits.isEmpty()) {
+            throw new IllegalArgumentException("Missing limits : " + aField);
+        }
+        return new long[] {theLimits.get(0), theLimits.size() > 1 ? theLimits.get(1) : -1};
+    }
+
+    private void readGlobal(SExpression aField) {
+        GlobalDefinition theGlobal = new GlobalDefinition();
+        int theIndex = globals.size();
+        List<SExpression> theChildren = aField.children();
+        int i = 1;
+        if (theChildren.get(i).isName()) {
+            globalIndexByName.put(theChildren.get(i).atom(), theIndex);
+            i++;
+        }
+        for (; theChildren.get(i).is("export"); i++) {
+            exports.add(new Export(theChildren.get(i).children().get(1).stringValue(), KIND_GLOBAL, theIndex));
+        }
+        SExpression theType = theChildren.get(i);
+        if (theType.is("mut")) {
+            theGlobal.mutable = true;
+            theGlobal.type = valueType(theType.children().get(1).atom());
+        } else {
+            theGlobal.type = valueType(theType.atom());
+        }
+        theGlobal.init = theChildren.get(i + 1);
+        globals.add(theGlobal);
+    }
+
+    public byte[] encode(boolean aWithNames) {
+        for (SExpression theExport : exportDeclarations) {
+            SExpression theDescriptor = theExport.children().get(2);
+            SExpression theReference = theDescriptor.children().get(1);
+            int theKind;
+            int theIndex;
+            switch (theDescriptor.keyword()) {
+                case "func":
+                    theKind = KIND_FUNCTION;
+                    theIndex = resolve(theReference, functionIndexByName, "function");
+                    break;
+                case "global":
+                    theKind = KIND_GLOBAL;
+                    theIndex = resolve(theReference, globalIndexByName, "global");
+                    break;
+                case "memory":
+                    theKind = KIND_MEMORY;
+                    theIndex = 0;
+                    break;
+                case "table":
+                    theKind = KIND_TABLE;
+                    theIndex = 0;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported export : " + theExport);
+            }
+            exports.add(new Export(theExport.children().get(1).stringValue(), theKind, theIndex));
+        }
+        exportDeclarations.clear();
+
+        Output theResult = new Output();
+        theResult.writeFixed(0x6d736100, 4);
+        theResult.writeFixed(1, 4);
+
+        Output theSection = new Output();
+        theSection.writeUnsigned(types.size());
+        for (FunctionType theType : types) {
+            theSection.write(0x60);
+            theSection.writeUnsigned(theType.params.size());
+            for (int theParam : theType.params) {
+                theSection.write(theParam);
+            }
+            theSection.writeUnsigned(theType.results.size());
+            for (int theResultType : theType.results) {
+                theSection.write(theResultType);
+            }
+        }
+        theResult.writeVectorSection(SECTION_TYPE, theSection);
+
+        List<FunctionDefinition> theImports = new ArrayList<>();
+        List<FunctionDefinition> theDefinitions = new ArrayList<>();
+        for (FunctionDefinition theFunction : functions) {
+            if (theFunction.isImport()) {
+                theImports.add(theFunction);
+            } else {
+                theDefinitions.add(theFunction);
+            }
+        }
+
+        theSection = new Output();
+        theSection.writeUnsigned(theImports.size());
+        for (FunctionDefinition theFunction : theImports) {
+            theSection.writeName(theFunction.importModule);
+            theSection.writeName(theFunction.importName);
+            theSection.write(KIND_FUNCTION);
+            theSection.writeUnsigned(theFunction.typeIndex);
+        }
+        theResult.writeVectorSection(SECTION_IMPORT, theSection);
+
+        theSection = new Output();
+        theSection.writeUnsigned(theDefinitions.size());
+        for (FunctionDefinition theFunction : theDefinitions) {
+            theSection.writeUnsigned(theFunction.typeIndex);
+        }
+        theResult.writeVectorSection(SECTION_FUNCTION, theSection);
+
+        if (table != null) {
+            theSection = new Output();
+            theSection.writeUnsigned(1);
+            theSection.write(0x70);
+            theSection.writeLimits(table);
+            theResult.writeSection(SECTION_TABLE, theSection);
+        }
+
+        if (memory != null) {
+            theSection = new Output();
+            theSection.writeUnsigned(1);
+            theSection.writeLimits(memory);
+            theResult.writeSection(SECTION_MEMORY, theSection);
+        }
+
+        theSection = new Output();
+        theSection.writeUnsigned(globals.size());
+        for (GlobalDefinition theGlobal : globals) {
+            theSection.write(theGlobal.type);
+            theSection.write(theGlobal.mutable ? 1 : 0);
+            writeConstantExpression(theGlobal.init, theSection);
+        }
+        theResult.writeVectorSection(SECTION_GLOBAL, theSection);
+
+        theSection = new Output();
+        theSection.writeUnsigned(exports.size());
+        for (Export theExport : exports) {
+            theSection.writeName(theExport.name);
+            theSection.write(theExport.kind);
+            theSection.writeUnsigned(theExport.index);
+        }
+        theResult.writeVectorSection(SECTION_EXPORT, theSection);
+
+        if (start != null) {
+            theSection = new Output();
+            theSection.writeUnsigned(resolve(start, functionIndexByName, "function"));
+            theResult.writeSection(SECTION_START, theSection);
+        }
+
+        theSection = new Output();
+        theSection.writeUnsigned(elements.size());
+        for (SExpression theElement : elements) {
+            List<SExpression> theChildren = theElement.children();
+            int i = 1;
+            if (theChildren.get(i).is("table") || theChildren.get(i).isName()) {
+                i++;
+            }
+            theSection.writeUnsigned(0);
+            writeConstantExpression(theChildren.get(i++), theSection);
+            if (i < theChildren.size() && "func".equals(theChildren.get(i).atom())) {
+                i++;
+            }
+            theSection.writeUnsigned(theChildren.size() - i);
+            for (; i < theChildren.size(); i++) {
+                theSection.writeUnsigned(resolve(theChildren.get(i), functionIndexByName, "function"));
+            }
+        }
+        theResult.writeVectorSection(SECTION_ELEMENT, theSection);
+
+        theSection = new Output();
+        theSection.writeUnsigned(theDefinitions.size());
+        for (FunctionDefinition theFunction : theDefinitions) {
+            Output theBody = new Output();
+            writeLocals(theFunction, theBody);
+            Context theContext = new Context(theFunction.localNames);
+            writeInstructions(theFunction.body, theFunction.bodyStart, theContext, theBody);
+            theBody.write(0x0b);
+            theSection.writeUnsigned(theBody.size());
+            theSection.writeData(theBody.toByteArray());
+        }
+        theResult.writeVectorSection(SECTION_CODE, theSection);
+
+        theSection = new Output();
+        theSection.writeUnsigned(datas.size());
+        for (SExpression theData : datas) {
+            List<SExpression> theChildren = theData.children();
+            int i = 1;
+            if (theChildren.get(i).isAtom() || theChildren.get(i).is("memory")) {
+                i++;
+            }
+            theSection.writeUnsigned(0);
+            writeConstantExpression(theChildren.get(i++), theSection);
+            Output theBytes = new Output();
+            for (; i < theChildren.size(); i++) {
+                theBytes.writeData(theChildren.get(i).stringBytes());
+            }
+            theSection.writeUnsigned(theBytes.size());
+            theSection.writeData(theBytes.toByteArray());
+        }
+        theResult.writeVectorSection(SECTION_DATA, theSection);
+
+        if (aWithNames) {
+            writeNames(theResult);
+        }
+        return theResult.toByteArray();
+    }
+
+    private static void writeLocals(FunctionDefinition aFunction, Output aOutput) {
+        List<int[]> theGroups = new ArrayList<>();
+        for (int theType : aFunction.localTypes) {
+            if (!theGroups.isEmpty() && theGroups.get(theGroups.size() - 1)[1] == theType) {
+                theGroups.get(theGroups.size() - 1)[0]++;
+            } else {
+                theGroups.add(new int[] {1, theType});
+            }
+        }
+        aOutput.writeUnsigned(theGroups.size());
+        for (int[] theGroup : theGroups) {
+            aOutput.writeUnsigned(theGroup[0]);
+            aOutput.write(theGroup[1]);
+        }
+    }
+
+    private void writeNames(Output aOutput) {
+        Output theFunctionNames = new Output();
+        Output theLocalNames = new Output();
+        int theNamedFunctions = 0;
+        int theFunctionsWithNamedLocals = 0;
+        for (int i = 0; i < functions.size(); i++) {
+            FunctionDefinition theFunction = functions.get(i);
+            if (theFunction.name != null) {
+                theFunctionNames.writeUnsigned(i);
+                theFunctionNames.writeName(theFunction.name.substring(1));
+                theNamedFunctions++;
+            }
+            int theNamedLocals = 0;
+            Output theLocals = new Output();
+            for (int j = 0; j < theFunction.localNames.size(); j++) {
+                String theName = theFunction.localNames.get(j);
+                if (theName != null) {
+                    theLocals.writeUnsigned(j);
+                    theLocals.writeName(theName.substring(1));
+                    theNamedLocals++;
+                }
+            }
+            if (theNamedLocals > 0) {
+                theLocalNames.writeUnsigned(i);
+                theLocalNames.writeUnsigned(theNamedLocals);
+                theLocalNames.writeData(theLocals.toByteArray());
+                theFunctionsWithNamedLocals++;
+            }
+        }
+
+        Output theSection = new Output();
+        theSection.writeName("name");
+        Output theSubsection = new Output();
+        theSubsection.writeUnsigned(theNamedFunctions);
+        theSubsection.writeData(theFunctionNames.toByteArray());
+        theSection.writeSection(1, theSubsection);
+        theSubsection = new Output();
+        theSubsection.writeUnsigned(theFunctionsWithNamedLocals);
+        theSubsection.writeData(theLocalNames.toByteArray());
+        theSection.writeSection(2, theSubsection);
+        aOutput.writeSection(SECTION_CUSTOM, theSection);
+    }
+
+    private void writeConstantExpression(SExpression aExpression, Output aOutput) {
+        Context theContext = new Context(Collections.emptyList());
+        if (aExpression.is("offset")) {
+            writeInstructions(aExpression.children(), 1, theContext, aOutput);
+        } else {
+            writeInstruction(aExpression, theContext, aOutput);
+        }
+        aOutput.write(0x0b);
+    }
+
+    private static class Context {
+
+        private final Map<String, Integer> locals = new HashMap<>();
+        private final List<String> labels = new ArrayList<>();
+
+        Context(List<String> aLocalNames) {
+            for (int i = 0; i < aLocalNames.size(); i++) {
+                if (aLocalNames.get(i) != null) {
+                    locals.put(aLocalNames.get(i), i);
+                }
+            }
+        }
+
+        int labelDepth(SExpression aLabel) {
+            if (!aLabel.isName()) {
+                return (int) parseInteger(aLabel.atom());
+            }
+            for (int i = labels.size() - 1; i >= 0; i--) {
+                if (aLabel.atom().equals(labels.get(i))) {
+                    return labels.size() - 1 - i;
+                }
+            }
+            throw new IllegalArgumentException("Unknown label : " + aLabel);
+        }
+    }
+
+    private void writeInstructions(List<SExpression> aInstructions, int aStart, Context aContext, Output aOutput) {
+        for (int i = aStart; i < aInstructions.size(); i++) {
+            SExpression theInstruction = aInstructions.get(i);
+            if (theInstruction.isList()) {
+                writeInstruction(theInstruction, aContext, aOutput);
+                continue;
+            }
+            String theOperator = theInstruction.atom();
+            switch (theOperator) {
+                case "block":
+                case "loop":
+                case "if":
+                    i = writeBlockStart(theOperator, aInstructions, i + 1, false, aContext, aOutput) - 1;
+                    break;
+                case "else":
+                    aOutput.write(0x05);
+                    if (i + 1 < aInstructions.size() && aInstructions.get(i + 1).isName()) {
+                        i++;
+                    }
+                    break;
+                case "end":
+                    aContext.labels.remove(aContext.labels.size() - 1);
+                    aOutput.write(0x0b);
+                    if (i + 1 < aInstructions.size() && aInstructions.get(i + 1).isName()) {
+                        i++;
+                    }
+                    break;
+                default: {
+                    int theEnd = immediatesEnd(theOperator, aInstructions, i + 1);
+                    writeOperator(theOperator, aInstructions.subList(i + 1, theEnd), aContext, aOutput);
+                    i = theEnd - 1;
+                }
+            }
+        }
+    }
+
+    private int writeBlockStart(String aOperator, List<SExpression> aDefinition, int aStart, boolean aFolded, Context aContext,
+            Output aOutput) {
+        int i = aStart;
+        String theLabel = null;
+        if (i < aDefinition.size() && aDefinition.get(i).isName()) {
+            theLabel = aDefinition.get(i++).atom();
+        }
+        int theBlockType = BLOCKTYPE_EMPTY;
+        if (i < aDefinition.size() && aDefinition.get(i).is("result")) {
+            List<SExpression> theResults = aDefinition.get(i++).children();
+            if (theResults.size() > 1) {
+                theBlockType = valueType(theResults.get(1).atom());
+            }
+        }
+        if (aFolded && "if".equals(aOperator)) {
+            // The condition of a folded if is evaluated first
+            for (; i < aDefinition.size() && !aDefinition.get(i).is("then"); i++) {
+                writeInstruction(aDefinition.get(i), aContext, aOutput);
+            }
+        }
+        switch (aOperator) {
+            case "block":
+                aOutput.write(0x02);
+                break;
+            case "loop":
+                aOutput.write(0x03);
+                break;
+            default:
+                aOutput.write(0x04);
+                break;
+        }
+        aOutput.write(theBlockType);
+        aContext.labels.add(theLabel);
+        return i;
+    }
+
+    private void writeInstruction(SExpression aInstruction, Context aContext, Output aOutput) {
+        List<SExpression> theChildren = aInstruction.children();
+        String theOperator = aInstruction.keyword();
+        if (theOperator == null) {
+            throw new IllegalArgumentException("Invalid instruction : " + aInstruction);
+        }
+        switch (theOperator) {
+            case "block":
+            case "loop": {
+                int theStart = writeBlockStart(theOperator, theChildren, 1, true, aContext, aOutput);
+                writeInstructions(theChildren, theStart, aContext, aOutput);
+                aContext.labels.remove(aContext.labels.size() - 1);
+                aOutput.write(0x0b);
+                return;
+            }
+            case "if": {
+                int theStart = writeBlockStart(theOperator, theChildren, 1, true, aContext, aOutput);
+                for (int i = theStart; i < theChildren.size(); i++) {
+                    SExpression theBranch = theChildren.get(i);
+                    if (theBranch.is("else")) {
+                        aOutput.write(0x05);
+                    } else if (!theBranch.is("then")) {
+                        throw new IllegalArgumentException("Expected then or else : " + theBranch);
+                    }
+                    writeInstructions(theBranch.children(), 1, aContext, aOutput);
+                }
+                aContext.labels.remove(aContext.labels.size() - 1);
+                aOutput.write(0x0b);
+                return;
+            }
+            default: {
+                int theEnd = immediatesEnd(theOperator, theChildren, 1);
+                writeInstructions(theChildren, theEnd, aContext, aOutput);
+                writeOperator(theOperator, theChildren.subList(1, theEnd), aContext, aOutput);
+            }
+        }
+    }
+
+    private static int immediatesEnd(String aOperator, List<SExpression> aList, int aStart) {
+        int i = aStart;
+        if (ALIGNMENTS.containsKey(aOperator)) {
+            while (i < aList.size() && aList.get(i).isAtom()
+                    && (aList.get(i).atom().startsWith("offset=") || aList.get(i).atom().startsWith("align="))) {
+                i++;
+            }
+            return i;
+        }
+        Integer theOpcode = OPCODES.get(aOperator);
+        if (theOpcode == null) {
+            throw new IllegalArgumentException("Unknown instruction : " + aOperator);
+        }
+        switch (theOpcode) {
+            case 0x0e:
+                while (i < aList.size() && aList.get(i).isAtom() && isIndex(aList.get(i).atom())) {
+                    i++;
+                }
+                return i;
+            case 0x11:
+                if (i < aList.size() && (aList.get(i).isName() || aList.get(i).is("type"))) {
+                    i++;
+                }
+                return i;
+            case 0x0c:
+            case 0x0d:
+            case 0x10:
+            case 0x20:
+            case 0x21:
+            case 0x22:
+            case 0x23:
+            case 0x24:
+            case 0x41:
+            case 0x42:
+            case 0x43:
+            case 0x44:
+                return i + 1;
+            default:
+                return i;
+        }
+    }
+
+    private static boolean isIndex(String aAtom) {
+        return aAtom.startsWith("$") || Character.isDigit(aAtom.charAt(0));
+    }
+
+    private void writeOperator(String aOperator, List<SExpression> aImmediates, Context aContext, Output aOutput) {
+        int theOpcode = OPCODES.get(aOperator);
+        aOutput.write(theOpcode);
+        switch (theOpcode) {
+            case 0x0c:
+            case 0x0d:
+                aOutput.writeUnsigned(aContext.labelDepth(aImmediates.get(0)));
+                return;
+            case 0x0e:
+                aOutput.writeUnsigned(aImmediates.size() - 1);
+                for (SExpression theLabel : aImmediates) {
+                    aOutput.writeUnsigned(aContext.labelDepth(theLabel));
+                }
+                return;
+            case 0x10:
+                aOutput.writeUnsigned(resolve(aImmediates.get(0), functionIndexByName, "function"));
+                return;
+            case 0x11: {
+                SExpression theType = aImmediates.get(0);
+                if (theType.is("type")) {
+                    theType = theType.children().get(1);
+                }
+                aOutput.writeUnsigned(resolve(theType, typeIndexByName, "type"));
+                aOutput.write(0x00);
+                return;
+            }
+            case 0x20:
+            case 0x21:
+            case 0x22:
+                aOutput.writeUnsigned(resolve(aImmediates.get(0), aContext.locals, "local"));
+                return;
+            case 0x23:
+            case 0x24:
+                aOutput.writeUnsigned(resolve(aImmediates.get(0), globalIndexByName, "global"));
+                return;
+            case 0x3f:
+            case 0x40:
+                aOutput.write(0x00);
+                return;
+            case 0x41:
+                aOutput.writeSigned((int) parseInteger(aImmediates.get(0).atom()));
+                return;
+            case 0x42:
+                aOutput.writeSigned(parseInteger(aImmediates.get(0).atom()));
+                return;
+            case 0x43:
+                aOutput.writeFixed(parseF32(aImmediates.get(0).atom()), 4);
+                return;
+            case 0x44:
+                aOutput.writeFixed(parseF64(aImmediates.get(0).atom()), 8);
+                return;
+            default:
+        }
+        Integer theAlignment = ALIGNMENTS.get(aOperator);
+        if (theAlignment != null) {
+            long theOffset = 0;
+            for (SExpression theImmediate : aImmediates) {
+                String theValue = theImmediate.atom();
+                if (theValue.startsWith("offset=")) {
+                    theOffset = parseInteger(theValue.substring(7));
+                } else {
+                    theAlignment = Long.numberOfTrailingZeros(parseInteger(theValue.substring(6)));
+                }
+            }
+            aOutput.writeUnsigned(theAlignment);
+            aOutput.writeUnsigned(theOffset);
+        }
+    }
+
+    private static int resolve(SExpression aReference, Map<String, Integer> aIndexByName, String aKind) {
+        if (!aReference.isName()) {
+            return (int) parseInteger(aReference.atom());
+        }
+        Integer theIndex = aIndexByName.get(aReference.atom());
+        if (theIndex == null) {
+            throw new IllegalArgumentException("Unknown " + aKind + " : " + aReference);
+        }
+        return theIndex;
+    }
+
+    static long parseInteger(String aValue) {
+        String theValue = aValue.replace("_", "");
+        boolean theNegative = theValue.startsWith("-");
+        if (theNegative || theValue.startsWith("+")) {
+            theValue = theValue.substring(1);
+        }
+        long theResult;
+        if (theValue.startsWith("0x")) {
+            theResult = Long.parseUnsignedLong(theValue.substring(2), 16);
+        } else {
+            theResult = Long.parseUnsignedLong(theValue);
+        }
+        return theNegative ? -theResult : theResult;
+    }
+
+    static long parseF32(String aValue) {
+        String theValue = aValue.replace("_", "");
+        boolean theNegative = theValue.startsWith("-");
+        if (theNegative || theValue.startsWith("+")) {
+            theValue = theValue.substring(1);
+        }
+        long theBits;
+        if ("inf".equals(theValue) || "Infinity".equals(theValue)) {
+            theBits = Float.floatToRawIntBits(Float.POSITIVE_INFINITY);
+        } else if ("nan".equals(theValue) || "NaN".equals(theValue)) {
+            theBits = 0x7fc00000L;
+        } else if (theValue.startsWith("nan:0x")) {
+            theBits = 0x7f800000L | Long.parseLong(theValue.substring(6), 16);
+        } else {
+            theBits = Float.floatToRawIntBits(Float.parseFloat(hexFloat(theValue))) & 0xffffffffL;
+        }
+        return theNegative ? theBits | 0x80000000L : theBits;
+    }
+
+    static long parseF64(String aValue) {
+        String theValue = aValue.replace("_", "");
+        boolean theNegative = theValue.startsWith("-");
+        if (theNegative || theValue.startsWith("+")) {
+            theValue = theValue.substring(1);
+        }
+        long theBits;
+        if ("inf".equals(theValue) || "Infinity".equals(theValue)) {
+            theBits = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        } else if ("nan".equals(theValue) || "NaN".equals(theValue)) {
+            theBits = 0x7ff8000000000000L;
+        } else if (theValue.startsWith("nan:0x")) {
+            theBits = 0x7ff0000000000000L | Long.parseLong(theValue.substring(6), 16);
+        } else {
+            theBits = Double.doubleToRawLongBits(Double.parseDouble(hexFloat(theValue)));
+        }
+        return theNegative ? theBits | 0x8000000000000000L : theBits;
+    }
+
+    private static String hexFloat(String aValue) {
+        if (aValue.startsWith("0x") && aValue.indexOf('p') < 0 && aValue.indexOf('P') < 0) {
+            return aValue + "p0";
+        }
+        return aValue;
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+
+        void writeUnsigned(long aValue) {
+            long theValue = aValue;
+            do {
+                int theByte = (int) (theValue & 0x7f);
+                theValue >>>= 7;
+                if (theValue != 0) {
+                    theByte |= 0x80;
+                }
+                write(theByte);
+            } while (theValue != 0);
+        }
+
+        void writeSigned(long aValue) {
+            long theValue = aValue;
+            while (true) {
+                int theByte = (int) (theValue & 0x7f);
+                theValue >>= 7;
+                boolean theSignBit = (theByte & 0x40) != 0;
+                if (theValue == 0 && !theSignBit || theValue == -1 && theSignBit) {
+                    write(theByte);
+                    return;
+                }
+                write(theByte | 0x80);
+            }
+        }
+
+        void writeFixed(long aValue, int aLength) {
+            for (int i = 0; i < aLength; i++) {
+                write((int) (aValue >>> (i * 8)) & 0xff);
+            }
+        }
+
+        void writeData(byte[] aData) {
+            write(aData, 0, aData.length);
+        }
+
+        void writeName(String aName) {
+            byte[] theData = aName.getBytes(StandardCharsets.UTF_8);
+            writeUnsigned(theData.length);
+            writeData(theData);
+        }
+
+        void writeLimits(long[] aLimits) {
+            if (aLimits[1] < 0) {
+                write(0x00);
+                writeUnsigned(aLimits[0]);
+            } else {
+                write(0x01);
+                writeUnsigned(aLimits[0]);
+                writeUnsigned(aLimits[1]);
+            }
+        }
+
+        void writeVectorSection(int aId, Output aContent) {
+            // Sections without any entries are omitted
+            if (aContent.size() > 1 || aContent.buf[0] != 0) {
+                writeSection(aId, aContent);
+            }
+        }
+
+        void writeSection(int aId, Output aContent) {
+            write(aId);
+            writeUnsigned(aContent.size());
+            write(aContent.buf, 0, aContent.size());
+        }
+    }
+}
@@ -44,15 +44,16 @@ public class WASMCompileResult implements CompileResult<String> {
         return theLayout.instanceSize();
     }
 
-    public int getVTableIndexOf(BytecodeObjectTypeRef aObjectType) {
-        String theClassName = WASMWriterUtils.toClassName(aObjectType);
-
-        String theMethodName = theClassName + "__resolvevtableindex";
-        return generatedFunctions.indexOf(theMethodName);
+    public int getVTableAddressOf(BytecodeObjectTypeRef aObjectType) {
+        return memoryLayouter.vtableAddressFor(aObjectType);
     }
 
     @Override
     public String getData() {
         return data;
     }
+
+    public byte[] getBinary(boolean aWithNames) {
+        return new WASMBinaryEncoder(data).encode(aWithNames);
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.backend.wasm;
+
+import de.mirkosertic.bytecoder.annotations.NoExceptionCheck;
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeMethod;
+import de.mirkosertic.bytecoder.core.BytecodeMethodSignature;
+import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodValue;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.InvokeStaticMethodValue;
+import de.mirkosertic.bytecoder.ssa.InvokeVirtualMethodValue;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.ThrowExpression;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class WASMExceptionAnalysis {
+
+    private final Set<String> throwingFunctions;
+    private final Set<String> throwingVirtualMethods;
+    private final Set<String> interfaceMethods;
+
+    public WASMExceptionAnalysis(BytecodeLinkerContext aLinkerContext, Map<BytecodeMethod, Program> aPrograms) {
+        throwingFunctions = new HashSet<>();
+        throwingVirtualMethods = new HashSet<>();
+        interfaceMethods = new HashSet<>();
+
+        Map<String, Program> theCandidates = new HashMap<>();
+        Map<String, String> theVirtualMethods = new HashMap<>();
+        aLinkerContext.forEachClass(aEntry -> aEntry.getValue().forEachMethod(t -> {
+            boolean theVirtual = !t.getAccessFlags().isStatic() && !t.isConstructor();
+            if (aEntry.getValue().getBytecodeClass().getAccessFlags().isInterface()) {
+                if (theVirtual) {
+                    interfaceMethods.add(toVirtualMethod(t.getName().stringValue(), t.getSignature()));
+                }
+                return;
+            }
+            // Native, abstract and runtime emulated methods have no program and cannot throw
+            Program theProgram = aPrograms.get(t);
+            if (theProgram == null || t.getAttributes().getAnnotationByType(NoExceptionCheck.class.getName()) != null) {
+                return;
+            }
+            String theFunctionName = WASMWriterUtils.toMethodName(aEntry.getKey(), t.getName(), t.getSignature());
+            theCandidates.put(theFunctionName, theProgram);
+            if (theVirtual) {
+                theVirtualMethods.put(theFunctionName, toVirtualMethod(t.getName().stringValue(), t.getSignature()));
+            }
+        }));
+
+        // A method might throw if it contains a throw or invokes a method that might throw,
+        // so we have to iterate until nothing changes anymore
+        boolean theChanged = true;
+        while (theChanged) {
+            theChanged = false;
+            for (Map.Entry<String, Program> theEntry : theCandidates.entrySet()) {
+                if (!throwingFunctions.contains(theEntry.getKey()) && mayThrow(theEntry.getValue())) {
+                    throwingFunctions.add(theEntry.getKey());
+                    String theVirtualMethod = theVirtualMethods.get(theEntry.getKey());
+                    if (theVirtualMethod != null) {
+                        throwingVirtualMethods.add(theVirtualMethod);
+                    }
+                    theChanged = true;
+                }
+            }
+        }
+    }
+
+    private static String toVirtualMethod(String aMethodName, BytecodeMethodSignature aSignature) {
+        return aMethodName + aSignature;
+    }
+
+    private boolean mayThrow(Program aProgram) {
+        for (GraphNode theNode : aProgram.getControlFlowGraph().getKnownNodes()) {
+            if (mayThrow(theNode.getExpressions())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean mayThrow(ExpressionList aList) {
+        for (Expression theExpression : aList.toList()) {
+            if (theExpression instanceof ThrowExpression || mayThrow(theExpression)) {
+                return true;
+            }
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    if (mayThrow(theList)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean mayThrow(Value aValue) {
+        if (aValue instanceof Variable) {
+            // The variable was computed by its own initialization
+            return false;
+        }
+        if (aValue instanceof InvokeStaticMethodValue) {
+            InvokeStaticMethodValue theInvocation = (InvokeStaticMethodValue) aValue;
+            if (throwingFunctions.contains(WASMWriterUtils.toMethodName(theInvocation.getClassName(), theInvocation.getMethodName(), theInvocation.getSignature()))) {
+                return true;
+            }
+        }
+        if (aValue instanceof DirectInvokeMethodValue) {
+            DirectInvokeMethodValue theInvocation = (DirectInvokeMethodValue) aValue;
+            if (throwingFunctions.contains(WASMWriterUtils.toMethodName(theInvocation.getClazz(), theInvocation.getMethodName(), theInvocation.getSignature()))) {
+                return true;
+            }
+        }
+        if (aValue instanceof InvokeVirtualMethodValue) {
+            InvokeVirtualMethodValue theInvocation = (InvokeVirtualMethodValue) aValue;
+            String theVirtualMethod = toVirtualMethod(theInvocation.getMethodName(), theInvocation.getSignature());
+            if (throwingVirtualMethods.contains(theVirtualMethod)) {
+                return true;
+            }
+            // Interface methods might also be implemented by lambdas, which can invoke any method
+            if (interfaceMethods.contains(theVirtualMethod) && !throwingFunctions.isEmpty()) {
+                return true;
+            }
+        }
+        for (Value theValue : aValue.consumedValues(Value.ConsumptionType.INVOCATIONTARGET)) {
+            if (mayThrow(theValue)) {
+                return true;
+            }
+        }
+        for (Value theValue : aValue.consumedValues(Value.ConsumptionType.ARGUMENT)) {
+            if (mayThrow(theValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
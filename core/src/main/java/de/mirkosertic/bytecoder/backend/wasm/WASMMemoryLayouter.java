@@ -16,20 +16,44 @@
 package de.mirkosertic.bytecoder.backend.wasm;
 
 import com.google.common.collect.Lists;
+import de.mirkosertic.bytecoder.annotations.EmulatedByRuntime;
+import de.mirkosertic.bytecoder.classlib.MemoryManager;
+import de.mirkosertic.bytecoder.classlib.java.lang.TArray;
+import de.mirkosertic.bytecoder.classlib.java.lang.TClass;
 import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
 import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
 import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodeVirtualMethodIdentifier;
+import de.mirkosertic.bytecoder.ssa.TypeRef;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class WASMMemoryLayouter {
 
     public static final int CLASS_HEADER_SIZE = 16; // Object header plus initialization status + enum values offset
     public static final int OBJECT_HEADER_SIZE = 8;
     public static final int OBJECT_FIELDSIZE = 4;
+    public static final int WIDE_FIELDSIZE = 8; // long and double values
+
+    public static final int HEAP_BASE_ADDRESS = MemoryManager.HEAP_BASE_ADDRESS; // The memory manager reads the first free address from here
+    public static final int STATIC_DATA_START = 32;
+    public static final int VTABLE_SLOTSIZE = 4;
+    public static final int VTABLE_CLASSID_OFFSET = 0; // Number of the class in a depth first traversal of the class hierarchy
+    public static final int VTABLE_POINTERMAP_OFFSET = MemoryManager.VTABLE_POINTERMAP_OFFSET; // References to follow during garbage collection
+    public static final int VTABLE_INTERFACES_OFFSET = 8; // Bitset of all implemented interfaces
+    public static final int RUNTIME_GENERATED_TYPE_CLASSID = -1; // Outside of every class interval
 
     public interface MemoryLayout {
 
@@ -44,13 +68,233 @@ public class WASMMemoryLayouter {
 
     private final Map<BytecodeObjectTypeRef, List<BytecodeLinkedClass.LinkedField>> classes;
     private final Map<BytecodeObjectTypeRef, BytecodeObjectTypeRef> superClasses;
+    private final Map<BytecodeVirtualMethodIdentifier, Integer> vtableSlots;
+    private final Map<BytecodeObjectTypeRef, Integer> vtableSlotCounts;
+    private final Map<BytecodeObjectTypeRef, Integer> vtableAddresses;
+    private final Map<BytecodeObjectTypeRef, Integer> runtimeClassVTableAddresses;
+    private final Map<BytecodeObjectTypeRef, Integer> pointerMapAddresses;
+    private final Map<BytecodeObjectTypeRef, Integer> classPointerMapAddresses;
+    private final Map<Integer, int[]> pointerMaps;
+    private final Map<BytecodeObjectTypeRef, Integer> classIds;
+    private final Map<BytecodeObjectTypeRef, Integer> lastSubclassIds;
+    private final Map<BytecodeObjectTypeRef, Integer> interfaceBits;
+    private final Map<BytecodeObjectTypeRef, Set<BytecodeObjectTypeRef>> implementedInterfaces;
+    private final int interfaceWords;
+    private final BytecodeObjectTypeRef runtimeClassType;
+    private final BytecodeObjectTypeRef arrayType;
+    private final int primitiveArrayVTableAddress;
+    private final int heapBase;
 
     public WASMMemoryLayouter(BytecodeLinkerContext aLinkerContext) {
         classes = new HashMap<>();
         superClasses = new HashMap<>();
+        vtableSlots = new HashMap<>();
+        vtableSlotCounts = new LinkedHashMap<>();
+        vtableAddresses = new HashMap<>();
+        runtimeClassVTableAddresses = new HashMap<>();
+        pointerMapAddresses = new HashMap<>();
+        classPointerMapAddresses = new HashMap<>();
+        pointerMaps = new LinkedHashMap<>();
+        classIds = new HashMap<>();
+        lastSubclassIds = new HashMap<>();
+        interfaceBits = new HashMap<>();
+        implementedInterfaces = new HashMap<>();
+        runtimeClassType = BytecodeObjectTypeRef.fromRuntimeClass(TClass.class);
+        arrayType = BytecodeObjectTypeRef.fromRuntimeClass(TArray.class);
         aLinkerContext.forEachClass(aEntry -> registerClass(aEntry.getValue()));
+
+        numberClassHierarchy(aLinkerContext);
+        interfaceWords = (interfaceBits.size() + 31) / 32;
+
+        // Every virtual method signature known to the program gets a dense slot number
+        TreeSet<Integer> theIdentifiers = new TreeSet<>();
+        aLinkerContext.forEachClass(aEntry -> aEntry.getValue().forEachVirtualMethod(t -> {
+            if (isDispatchable(t.getValue())) {
+                theIdentifiers.add(t.getKey().getIdentifier());
+            }
+        }));
+        int theSlot = vtableHeaderSlots();
+        for (Integer theIdentifier : theIdentifiers) {
+            vtableSlots.put(new BytecodeVirtualMethodIdentifier(theIdentifier), theSlot++);
+        }
+
+        aLinkerContext.forEachClass(aEntry -> {
+            BytecodeLinkedClass theClass = aEntry.getValue();
+            if (theClass.getBytecodeClass().getAccessFlags().isInterface()) {
+                return;
+            }
+            boolean theRuntimeClass = Objects.equals(aEntry.getKey(), runtimeClassType);
+            if (!theRuntimeClass && theClass.getBytecodeClass().getAttributes().getAnnotationByType(EmulatedByRuntime.class.getName()) != null) {
+                return;
+            }
+            int[] theSlotCount = new int[] {vtableHeaderSlots()};
+            theClass.forEachVirtualMethod(t -> {
+                if (isDispatchable(t.getValue()) && !t.getValue().getTargetMethod().getAccessFlags().isAbstract()) {
+                    theSlotCount[0] = Math.max(theSlotCount[0], vtableSlots.get(t.getKey()) + 1);
+                }
+            });
+            vtableSlotCounts.put(aEntry.getKey(), theSlotCount[0]);
+        });
+
+        // Virtual method tables are static data, so they are placed in front of the heap
+        int theAddress = STATIC_DATA_START;
+        for (Map.Entry<BytecodeObjectTypeRef, Integer> theEntry : vtableSlotCounts.entrySet()) {
+            if (Objects.equals(theEntry.getKey(), runtimeClassType)) {
+                continue;
+            }
+            vtableAddresses.put(theEntry.getKey(), theAddress);
+            theAddress += theEntry.getValue() * VTABLE_SLOTSIZE;
+        }
+
+        // Every runtime class gets its own copy of the vtable, as the pointer maps for the static fields differ
+        for (BytecodeObjectTypeRef theType : vtableAddresses.keySet()) {
+            runtimeClassVTableAddresses.put(theType, theAddress);
+            theAddress += vtableSlotCountFor(runtimeClassType) * VTABLE_SLOTSIZE;
+        }
+
+        // Arrays of primitive values are not scanned for references, so they need a table of their own
+        primitiveArrayVTableAddress = theAddress;
+        if (vtableSlotCounts.containsKey(arrayType)) {
+            theAddress += vtableSlotCountFor(arrayType) * VTABLE_SLOTSIZE;
+        }
+
+        // Pointer maps are shared by all types with the same reference offsets
+        Map<List<Integer>, Integer> theKnownMaps = new HashMap<>();
+        for (BytecodeObjectTypeRef theType : vtableSlotCounts.keySet()) {
+            List<Integer> theInstanceMap;
+            if (Objects.equals(theType, arrayType)) {
+                theInstanceMap = Collections.singletonList(MemoryManager.ARRAY_OF_REFERENCES);
+            } else {
+                theInstanceMap = referenceOffsets(theType, false);
+            }
+            theAddress = registerPointerMap(theType, theInstanceMap, pointerMapAddresses, theKnownMaps, theAddress);
+            theAddress = registerPointerMap(theType, referenceOffsets(theType, true), classPointerMapAddresses, theKnownMaps, theAddress);
+        }
+
+        heapBase = (theAddress + 7) & ~7;
    }
 
+    private int registerPointerMap(BytecodeObjectTypeRef aType, List<Integer> aOffsets, Map<BytecodeObjectTypeRef, Integer> aAddresses,
+            Map<List<Integer>, Integer> aKnownMaps, int aAddress) {
+        if (aOffsets.isEmpty()) {
+            // Nothing to scan
+            aAddresses.put(aType, 0);
+            return aAddress;
+        }
+        Integer theKnown = aKnownMaps.get(aOffsets);
+        if (theKnown != null) {
+            aAddresses.put(aType, theKnown);
+            return aAddress;
+        }
+
+        int[] theMap;
+        if (aOffsets.size() == 1 && aOffsets.get(0) == MemoryManager.ARRAY_OF_REFERENCES) {
+            theMap = new int[] {MemoryManager.ARRAY_OF_REFERENCES};
+        } else {
+            theMap = new int[aOffsets.size() + 1];
+            theMap[0] = aOffsets.size();
+            for (int i = 0; i < aOffsets.size(); i++) {
+                theMap[i + 1] = aOffsets.get(i);
+            }
+        }
+        aKnownMaps.put(aOffsets, aAddress);
+        aAddresses.put(aType, aAddress);
+        pointerMaps.put(aAddress, theMap);
+        return aAddress + theMap.length * VTABLE_SLOTSIZE;
+    }
+
+    private List<Integer> referenceOffsets(BytecodeObjectTypeRef aType, boolean aStatic) {
+        List<Integer> theResult = new ArrayList<>();
+        int theOffset = aStatic ? CLASS_HEADER_SIZE : OBJECT_HEADER_SIZE;
+        for (BytecodeLinkedClass.LinkedField theField : allFieldsFor(aType)) {
+            if (theField.getField().getAccessFlags().isStatic() == aStatic) {
+                if (!theField.getField().getTypeRef().isPrimitive()) {
+                    theResult.add(theOffset);
+                }
+                theOffset += sizeOf(theField);
+            }
+        }
+        return theResult;
+    }
+
+    private static int sizeOf(BytecodeLinkedClass.LinkedField aField) {
+        return sizeOf(TypeRef.toType(aField.getField().getTypeRef()));
+    }
+
+    public static int sizeOf(TypeRef aType) {
+        switch (aType.resolve()) {
+            case LONG:
+            case DOUBLE:
+                return WIDE_FIELDSIZE;
+            default:
+                return OBJECT_FIELDSIZE;
+        }
+    }
+
+    private void numberClassHierarchy(BytecodeLinkerContext aLinkerContext) {
+        // Classes are numbered in depth first order, so every class and its subclasses
+        // form a contiguous interval. Interfaces are numbered separately, as a class
+        // can implement more than one of them
+        Map<BytecodeLinkedClass, List<BytecodeLinkedClass>> theSubclasses = new HashMap<>();
+        List<BytecodeLinkedClass> theRoots = new ArrayList<>();
+        List<BytecodeLinkedClass> theInterfaces = new ArrayList<>();
+        aLinkerContext.forEachClass(aEntry -> {
+            BytecodeLinkedClass theClass = aEntry.getValue();
+            if (theClass.getBytecodeClass().getAccessFlags().isInterface()) {
+                theInterfaces.add(theClass);
+            } else if (theClass.getSuperClass() == null) {
+                theRoots.add(theClass);
+            } else {
+                theSubclasses.computeIfAbsent(theClass.getSuperClass(), k -> new ArrayList<>()).add(theClass);
+            }
+        });
+
+        theInterfaces.sort(Comparator.comparingInt(BytecodeLinkedClass::getUniqueId));
+        for (BytecodeLinkedClass theInterface : theInterfaces) {
+            interfaceBits.put(theInterface.getClassName(), interfaceBits.size());
+        }
+
+        theRoots.sort(Comparator.comparingInt(BytecodeLinkedClass::getUniqueId));
+        int theCounter = 0;
+        Deque<BytecodeLinkedClass> theStack = new ArrayDeque<>();
+        for (int i = theRoots.size() - 1; i >= 0; i--) {
+            theStack.push(theRoots.get(i));
+        }
+        while (!theStack.isEmpty()) {
+            BytecodeLinkedClass theClass = theStack.peek();
+            if (!classIds.containsKey(theClass.getClassName())) {
+                classIds.put(theClass.getClassName(), theCounter++);
+
+                Set<BytecodeObjectTypeRef> theImplemented = new HashSet<>();
+                for (BytecodeLinkedClass theType : theClass.getImplementingTypes()) {
+                    if (theType.getBytecodeClass().getAccessFlags().isInterface()) {
+                        theImplemented.add(theType.getClassName());
+                    }
+                }
+                implementedInterfaces.put(theClass.getClassName(), theImplemented);
+
+                List<BytecodeLinkedClass> theChildren = theSubclasses.getOrDefault(theClass, Collections.emptyList());
+                theChildren.sort(Comparator.comparingInt(BytecodeLinkedClass::getUniqueId));
+                for (int i = theChildren.size() - 1; i >= 0; i--) {
+                    theStack.push(theChildren.get(i));
+                }
+            } else {
+                theStack.pop();
+                lastSubclassIds.put(theClass.getClassName(), theCounter - 1);
+            }
+        }
+    }
+
+    private int vtableHeaderSlots() {
+        return 2 + interfaceWords;
+    }
+
+    private static boolean isDispatchable(BytecodeLinkedClass.LinkedMethod aMethod) {
+        // getClass() is never dispatched, as it is handled by TypeOfValue
+        return aMethod.getTargetMethod() != BytecodeLinkedClass.GET_CLASS_PLACEHOLDER
+                && !aMethod.getTargetMethod().getAccessFlags().isStatic();
+    }
+
     private List<BytecodeLinkedClass.LinkedField> collectFields(BytecodeLinkedClass aClass) {
         List<BytecodeLinkedClass.LinkedField> theFields = new ArrayList<>();
 
@@ -96,6 +340,129 @@ public class WASMMemoryLayouter {
     }
 
 
+    /**
+     * Byte offset of a virtual method inside every virtual method table.
+     */
+    public int vtableOffsetFor(BytecodeVirtualMethodIdentifier aIdentifier) {
+        Integer theSlot = vtableSlots.get(aIdentifier);
+        if (theSlot == null) {
+            throw new IllegalArgumentException("No vtable slot for method identifier " + aIdentifier.getIdentifier());
+        }
+        return theSlot * VTABLE_SLOTSIZE;
+    }
+
+    public int vtableAddressFor(BytecodeObjectTypeRef aType) {
+        Integer theAddress = vtableAddresses.get(aType);
+        if (theAddress == null) {
+            throw new IllegalArgumentException("No vtable for type " + aType.name());
+        }
+        return theAddress;
+    }
+
+    public int vtableSlotCountFor(BytecodeObjectTypeRef aType) {
+        Integer theCount = vtableSlotCounts.get(aType);
+        if (theCount == null) {
+            throw new IllegalArgumentException("No vtable for type " + aType.name());
+        }
+        return theCount;
+    }
+
+    public int runtimeClassVTableAddressFor(BytecodeObjectTypeRef aType) {
+        Integer theAddress = runtimeClassVTableAddresses.get(aType);
+        if (theAddress == null) {
+            throw new IllegalArgumentException("No runtime class vtable for type " + aType.name());
+        }
+        return theAddress;
+    }
+
+    public int primitiveArrayVTableAddress() {
+        return primitiveArrayVTableAddress;
+    }
+
+    /**
+     * Address of the pointer map for the static fields of a type, or zero if there are no references.
+     */
+    public int classPointerMapAddressFor(BytecodeObjectTypeRef aType) {
+        Integer theAddress = classPointerMapAddresses.get(aType);
+        if (theAddress == null) {
+            throw new IllegalArgumentException("No pointer map for type " + aType.name());
+        }
+        return theAddress;
+    }
+
+    /**
+     * All pointer maps by their address. A map holds the number of references followed by their offsets,
+     * or just MemoryManager.ARRAY_OF_REFERENCES for arrays of objects.
+     */
+    public Map<Integer, int[]> pointerMaps() {
+        return Collections.unmodifiableMap(pointerMaps);
+    }
+
+    /**
+     * Size in bytes of a vtable covering every known slot. Such tables are used for
+     * runtime generated types, as the invoked method is not known at compile time.
+     */
+    public int fullVTableSize() {
+        return (vtableHeaderSlots() + vtableSlots.size()) * VTABLE_SLOTSIZE;
+    }
+
+    public int vtableHeaderSize() {
+        return vtableHeaderSlots() * VTABLE_SLOTSIZE;
+    }
+
+    /**
+     * The type information stored in front of the method slots of a vtable, the class id,
+     * the pointer map and the bitset of implemented interfaces.
+     */
+    public int[] vtableHeaderFor(BytecodeObjectTypeRef aType) {
+        int[] theResult = new int[vtableHeaderSlots()];
+        theResult[VTABLE_CLASSID_OFFSET / VTABLE_SLOTSIZE] = classIdFor(aType);
+        theResult[VTABLE_POINTERMAP_OFFSET / VTABLE_SLOTSIZE] = pointerMapAddresses.get(aType);
+        for (BytecodeObjectTypeRef theInterface : implementedInterfaces.get(aType)) {
+            theResult[interfaceOffsetFor(theInterface) / VTABLE_SLOTSIZE] |= interfaceMaskFor(theInterface);
+        }
+        return theResult;
+    }
+
+    public int classIdFor(BytecodeObjectTypeRef aType) {
+        Integer theId = classIds.get(aType);
+        if (theId == null) {
+            throw new IllegalArgumentException("No class id for type " + aType.name());
+        }
+        return theId;
+    }
+
+    /**
+     * Number of subclasses, an object is an instance of the type if its class id is
+     * in the interval from the class id of the type up to the class id plus this range.
+     */
+    public int subclassRangeFor(BytecodeObjectTypeRef aType) {
+        return lastSubclassIds.get(aType) - classIdFor(aType);
+    }
+
+    /**
+     * Byte offset of the bitset word for an interface inside every virtual method table.
+     */
+    public int interfaceOffsetFor(BytecodeObjectTypeRef aType) {
+        return VTABLE_INTERFACES_OFFSET + interfaceBitFor(aType) / 32 * VTABLE_SLOTSIZE;
+    }
+
+    public int interfaceMaskFor(BytecodeObjectTypeRef aType) {
+        return 1 << (interfaceBitFor(aType) % 32);
+    }
+
+    private int interfaceBitFor(BytecodeObjectTypeRef aType) {
+        Integer theBit = interfaceBits.get(aType);
+        if (theBit == null) {
+            throw new IllegalArgumentException("No interface bit for type " + aType.name());
+        }
+        return theBit;
+    }
+
+    public int heapBase() {
+        return heapBase;
+    }
+
     public MemoryLayout layoutFor(BytecodeObjectTypeRef aType) {
         if (!classes.containsKey(aType)) {
             throw new IllegalArgumentException("No field information found for " + aType.name());
@@ -108,7 +475,7 @@ public class WASMMemoryLayouter {
                 int theOffset = OBJECT_HEADER_SIZE;
                 for (BytecodeLinkedClass.LinkedField theField : theFields) {
                     if (!theField.getField().getAccessFlags().isStatic()) {
-                        theOffset+= OBJECT_FIELDSIZE;
+                        theOffset+= sizeOf(theField);
                     }
                 }
                 return theOffset;
@@ -120,7 +487,7 @@ public class WASMMemoryLayouter {
                 int theOffset = CLASS_HEADER_SIZE;
                 for (BytecodeLinkedClass.LinkedField theField : theFields) {
                     if (theField.getField().getAccessFlags().isStatic()) {
-                        theOffset+= OBJECT_FIELDSIZE;
+                        theOffset+= sizeOf(theField);
                     }
                 }
                 return theOffset;
@@ -135,7 +502,7 @@ public class WASMMemoryLayouter {
                         if (aName.equals(theField.getField().getName().stringValue())) {
                             return theOffset;
                         }
-                        theOffset+= OBJECT_FIELDSIZE;
+                        theOffset+= sizeOf(theField);
                     }
                 }
                 throw new IllegalArgumentException("Field " + aName + " not found for type " + aType.name());
@@ -150,7 +517,7 @@ public class WASMMemoryLayouter {
                         if (aName.equals(theField.getField().getName().stringValue())) {
                             return theOffset;
                         }
-                        theOffset+= OBJECT_FIELDSIZE;
+                        theOffset+= sizeOf(theField);
                     }
                 }
                 throw new IllegalArgumentException("Static field " + aName + " not found for type " + aType.name());
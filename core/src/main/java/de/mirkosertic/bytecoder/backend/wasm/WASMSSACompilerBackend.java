@@ -30,15 +30,18 @@ import de.mirkosertic.bytecoder.annotations.Export;
 import de.mirkosertic.bytecoder.annotations.Import;
 import de.mirkosertic.bytecoder.backend.CompileBackend;
 import de.mirkosertic.bytecoder.backend.CompileOptions;
+import de.mirkosertic.bytecoder.backend.ParallelProgramGenerator;
 import de.mirkosertic.bytecoder.backend.js.JSWriterUtils;
 import de.mirkosertic.bytecoder.classlib.Address;
 import de.mirkosertic.bytecoder.classlib.MemoryManager;
+import de.mirkosertic.bytecoder.classlib.java.lang.TArray;
 import de.mirkosertic.bytecoder.classlib.java.lang.TClass;
 import de.mirkosertic.bytecoder.classlib.java.lang.TString;
 import de.mirkosertic.bytecoder.core.BytecodeAnnotation;
 import de.mirkosertic.bytecoder.core.BytecodeClass;
 import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
 import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeMethod;
 import de.mirkosertic.bytecoder.core.BytecodeMethodSignature;
 import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
 import de.mirkosertic.bytecoder.core.BytecodePrimitiveTypeRef;
@@ -47,7 +50,6 @@ import de.mirkosertic.bytecoder.relooper.Relooper;
 import de.mirkosertic.bytecoder.ssa.ControlFlowGraph;
 import de.mirkosertic.bytecoder.ssa.GraphNode;
 import de.mirkosertic.bytecoder.ssa.Program;
-import de.mirkosertic.bytecoder.ssa.ProgramGenerator;
 import de.mirkosertic.bytecoder.ssa.ProgramGeneratorFactory;
 import de.mirkosertic.bytecoder.ssa.TypeRef;
 import de.mirkosertic.bytecoder.ssa.Variable;
@@ -84,21 +86,25 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
                 Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT}));
         theManagerClass.linkStaticMethod("newObject", new BytecodeMethodSignature(BytecodeObjectTypeRef.fromRuntimeClass(
                 Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
-        theManagerClass.linkStaticMethod("newArray", new BytecodeMethodSignature(BytecodeObjectTypeRef.fromRuntimeClass(
-                Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
         theManagerClass.linkStaticMethod("newArray", new BytecodeMethodSignature(BytecodeObjectTypeRef.fromRuntimeClass(
                 Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
+        theManagerClass.linkStaticMethod("newArray", new BytecodeMethodSignature(BytecodeObjectTypeRef.fromRuntimeClass(
+                Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
 
         BytecodeLinkedClass theStringClass = aLinkerContext.linkClass(BytecodeObjectTypeRef.fromRuntimeClass(TString.class));
         theStringClass.linkConstructorInvocation(new BytecodeMethodSignature(BytecodePrimitiveTypeRef.VOID, new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT}));
         theStringClass.linkVirtualMethod("setCharAt", new BytecodeMethodSignature(BytecodePrimitiveTypeRef.VOID, new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.BYTE}));
 
+        // Runtime classes need a virtual method table
+        BytecodeLinkedClass theClassLinkedCass = aLinkerContext.linkClass(BytecodeObjectTypeRef.fromRuntimeClass(TClass.class));
+
         StringWriter theStringWriter = new StringWriter();
         PrintWriter theWriter = new PrintWriter(theStringWriter);
 
         theWriter.println("(module");
 
-        theWriter.println("   (func $float_remainder (import \"math\" \"float_rem\") (param $p1 f32) (param $p2 f32) (result f32))\n");
+        theWriter.println("   (func $float_remainder (import \"math\" \"float_rem\") (param $p1 f32) (param $p2 f32) (result f32))");
+        theWriter.println("   (func $double_remainder (import \"math\" \"float_rem\") (param $p1 f64) (param $p2 f64) (result f64))\n");
 
         // Print imported functions first
         aLinkerContext.forEachClass(aEntry -> {
@@ -160,14 +166,11 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
 
 
         final Map<String, String> theGlobalTypes = new HashMap<>();
-        theGlobalTypes.put("RESOLVEMETHOD", "(func (param i32) (param i32) (result i32))");
-        theGlobalTypes.put("INSTANCEOF", "(func (param i32) (param i32) (result i32))");
 
         theWriter.println();
 
         List<String> theGeneratedFunctions = new ArrayList<>();
-        theGeneratedFunctions.add("LAMBDA__resolvevtableindex");
-        theGeneratedFunctions.add("RUNTIMECLASS__resolvevtableindex");
+        theGeneratedFunctions.add("UNRESOLVED_VIRTUAL_METHOD");
         theGeneratedFunctions.add("TClass_A1TObjectgetEnumConstants");
         theGeneratedFunctions.add("TClass_desiredAssertionStatus");
 
@@ -177,18 +180,6 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
 
         WASMSSAWriter.IDResolver theResolver = new WASMSSAWriter.IDResolver() {
 
-            @Override
-            public int resolveVTableMethodByType(BytecodeObjectTypeRef aObjectType) {
-                String theClassName = WASMWriterUtils.toClassName(aObjectType);
-
-                String theMethodName = theClassName + "__resolvevtableindex";
-                int theIndex = theGeneratedFunctions.indexOf(theMethodName);
-                if (theIndex < 0) {
-                    throw new IllegalStateException("Cannot resolve vtable method for " + theClassName);
-                }
-                return theIndex;
-            }
-
             @Override
             public String resolveStringPoolFunctionName(String aValue) {
                 int theIndex = theStringCache.indexOf(aValue);
@@ -242,8 +233,6 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
 
             if (aEntry.getValue().getBytecodeClass().getAttributes().getAnnotationByType(EmulatedByRuntime.class.getName()) == null) {
                 theGeneratedFunctions.add(theClassName + "__classinitcheck");
-                theGeneratedFunctions.add(theClassName + "__resolvevtableindex");
-                theGeneratedFunctions.add(theClassName + "__instanceof");
             }
 
             aEntry.getValue().forEachMethod(t -> {
@@ -288,6 +277,107 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
         // Initialize memory layout for classes and instances
         WASMMemoryLayouter theMemoryLayout = new WASMMemoryLayouter(aLinkerContext);
 
+        // Static data, the memory manager places the heap behind it
+        writeData(theWriter, WASMMemoryLayouter.HEAP_BASE_ADDRESS, new int[] {theMemoryLayout.heapBase()});
+
+        // Virtual method tables, one load of the slot gives the table index of the implementation
+        aLinkerContext.forEachClass(aEntry -> {
+
+            if (aEntry.getValue().getBytecodeClass().getAccessFlags().isInterface()) {
+                return;
+            }
+            if (aEntry.getValue().getBytecodeClass().getAttributes().getAnnotationByType(EmulatedByRuntime.class.getName()) != null) {
+                return;
+            }
+
+            String theClassName = WASMWriterUtils.toClassName(aEntry.getKey());
+            int[] theVTable = new int[theMemoryLayout.vtableSlotCountFor(aEntry.getKey())];
+            int[] theHeader = theMemoryLayout.vtableHeaderFor(aEntry.getKey());
+            System.arraycopy(theHeader, 0, theVTable, 0, theHeader.length);
+
+            aEntry.getValue().forEachVirtualMethod(t -> {
+
+                if (!t.getValue().getTargetMethod().getAccessFlags().isAbstract() &&
+                        !t.getValue().getTargetMethod().getAccessFlags().isStatic()) {
+
+                    if (t.getValue().getTargetMethod() == BytecodeLinkedClass.GET_CLASS_PLACEHOLDER) {
+                        // This method cannot be called as it is handled by TypeOfValue
+                        return;
+                    }
+
+                    BytecodeLinkedClass.LinkedMethod theMethod = t.getValue();
+                    String theFullMethodName = WASMWriterUtils.toMethodName(theMethod.getDeclaringType(),
+                            theMethod.getTargetMethod().getName(),
+                            theMethod.getTargetMethod().getSignature());
+
+                    int theIndex = theGeneratedFunctions.indexOf(theFullMethodName);
+                    if (theIndex < 0) {
+                        throw new IllegalStateException("Unknown index : " + theFullMethodName);
+                    }
+
+                    theVTable[theMemoryLayout.vtableOffsetFor(t.getKey()) / WASMMemoryLayouter.VTABLE_SLOTSIZE] = theIndex;
+                }
+            });
+
+            theWriter.print("   ;; vtable of ");
+            theWriter.println(theClassName);
+            writeData(theWriter, theMemoryLayout.vtableAddressFor(aEntry.getKey()), theVTable);
+
+            if (Objects.equals(aEntry.getKey(), BytecodeObjectTypeRef.fromRuntimeClass(TArray.class))) {
+                theVTable[WASMMemoryLayouter.VTABLE_POINTERMAP_OFFSET / WASMMemoryLayouter.VTABLE_SLOTSIZE] = 0;
+                theWriter.println("   ;; vtable of arrays of primitive values");
+                writeData(theWriter, theMemoryLayout.primitiveArrayVTableAddress(), theVTable);
+            }
+        });
+
+        int[] theRuntimeClassVTable = new int[theMemoryLayout.vtableSlotCountFor(theClassLinkedCass.getClassName())];
+        int[] theRuntimeClassHeader = theMemoryLayout.vtableHeaderFor(theClassLinkedCass.getClassName());
+        System.arraycopy(theRuntimeClassHeader, 0, theRuntimeClassVTable, 0, theRuntimeClassHeader.length);
+        theClassLinkedCass.forEachVirtualMethod(aClassMethod -> {
+            if (aClassMethod.getValue().getTargetMethod() == BytecodeLinkedClass.GET_CLASS_PLACEHOLDER ||
+                    aClassMethod.getValue().getTargetMethod().getAccessFlags().isStatic() ||
+                    aClassMethod.getValue().getTargetMethod().getAccessFlags().isAbstract()) {
+                return;
+            }
+            int theSlot = theMemoryLayout.vtableOffsetFor(aClassMethod.getKey()) / WASMMemoryLayouter.VTABLE_SLOTSIZE;
+            if (Objects.equals("desiredAssertionStatus", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
+                theRuntimeClassVTable[theSlot] = theGeneratedFunctions.indexOf("TClass_desiredAssertionStatus");
+            } else if (Objects.equals("getEnumConstants", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
+                theRuntimeClassVTable[theSlot] = theGeneratedFunctions.indexOf("TClass_A1TObjectgetEnumConstants");
+            }
+        });
+        aLinkerContext.forEachClass(aEntry -> {
+
+            if (aEntry.getValue().getBytecodeClass().getAccessFlags().isInterface()) {
+                return;
+            }
+            if (aEntry.getValue().getBytecodeClass().getAttributes().getAnnotationByType(EmulatedByRuntime.class.getName()) != null) {
+                return;
+            }
+
+            // Static fields are stored in the runtime class, so every runtime class has its own pointer map
+            theRuntimeClassVTable[WASMMemoryLayouter.VTABLE_POINTERMAP_OFFSET / WASMMemoryLayouter.VTABLE_SLOTSIZE] =
+                    theMemoryLayout.classPointerMapAddressFor(aEntry.getKey());
+
+            theWriter.print("   ;; vtable of runtime class ");
+            theWriter.println(WASMWriterUtils.toClassName(aEntry.getKey()));
+            writeData(theWriter, theMemoryLayout.runtimeClassVTableAddressFor(aEntry.getKey()), theRuntimeClassVTable);
+        });
+
+        for (Map.Entry<Integer, int[]> theEntry : theMemoryLayout.pointerMaps().entrySet()) {
+            theWriter.println("   ;; pointer map");
+            writeData(theWriter, theEntry.getKey(), theEntry.getValue());
+        }
+        theWriter.println();
+
+        Map<BytecodeMethod, Program> thePrograms = new ParallelProgramGenerator(programGeneratorFactory).generate(aLinkerContext, aOptions,
+                (aClass, aMethod) -> !aClass.getBytecodeClass().getAccessFlags().isInterface()
+                        && !Objects.equals(aClass.getClassName(), BytecodeObjectTypeRef.fromRuntimeClass(Address.class))
+                        && aClass.getBytecodeClass().getAttributes().getAnnotationByType(EmulatedByRuntime.class.getName()) == null
+                        && !aMethod.getAccessFlags().isAbstract() && !aMethod.getAccessFlags().isNative());
+
+        WASMExceptionAnalysis theExceptionAnalysis = new WASMExceptionAnalysis(aLinkerContext, thePrograms);
+
         // Now everything else
         aLinkerContext.forEachClass(aEntry -> {
 
@@ -317,11 +407,7 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
 
                 BytecodeMethodSignature theSignature = t.getSignature();
 
-                ProgramGenerator theGenerator = programGeneratorFactory.createFor(aLinkerContext);
-                Program theSSAProgram = theGenerator.generateFrom(aEntry.getValue().getBytecodeClass(), t);
-
-                //Run optimizer
-                aOptions.getOptimizer().optimize(theSSAProgram.getControlFlowGraph(), aLinkerContext);
+                Program theSSAProgram = thePrograms.get(t);
 
                 theWriter.print("   (func ");
                 theWriter.print("$");
@@ -355,7 +441,8 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
 
                 theStaticReferences.addAll(theSSAProgram.getStaticReferences());
 
-                WASMSSAWriter theSSAWriter = new WASMSSAWriter(aOptions, theSSAProgram, "         ", theWriter, aLinkerContext, theResolver, theMemoryLayout);
+                WASMSSAWriter theSSAWriter = new WASMSSAWriter(aOptions, theSSAProgram, "         ", theWriter, aLinkerContext, theResolver, theMemoryLayout,
+                        theExceptionAnalysis, TypeRef.toType(theSignature.getReturnType()));
 
                 for (Variable theVariable : theSSAProgram.getVariables()) {
 
@@ -394,94 +481,6 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
             BytecodeLinkedClass theLinkedClass = aEntry.getValue();
             String theClassName = WASMWriterUtils.toClassName(aEntry.getKey());
 
-            theWriter.print("   (func ");
-            theWriter.print("$");
-            theWriter.print(theClassName);
-            theWriter.println("__resolvevtableindex (param $thisRef i32) (param $p1 i32) (result i32)");
-
-            theLinkedClass.forEachVirtualMethod(t -> {
-
-                if (!t.getValue().getTargetMethod().getAccessFlags().isAbstract() &&
-                        !t.getValue().getTargetMethod().getAccessFlags().isStatic()) {
-
-                    if (t.getValue().getTargetMethod() == BytecodeLinkedClass.GET_CLASS_PLACEHOLDER) {
-                        // This method cannot be called as it is handled by TypeOfValue
-                        return;
-                    }
-
-                    theWriter.println("         (block $b");
-                    theWriter.print("             (br_if $b (i32.ne (get_local $p1) (i32.const ");
-                    theWriter.print(t.getKey().getIdentifier());
-                    theWriter.println(")))");
-
-                    BytecodeLinkedClass.LinkedMethod theMethod = t.getValue();
-                    String theFullMethodName = WASMWriterUtils.toMethodName(theMethod.getDeclaringType(),
-                            theMethod.getTargetMethod().getName(),
-                            theMethod.getTargetMethod().getSignature());
-
-                    int theIndex = theGeneratedFunctions.indexOf(theFullMethodName);
-                    if (theIndex < 0) {
-                        throw new IllegalStateException("Unknown index : " + theFullMethodName);
-                    }
-
-                    theWriter.print("             (return (i32.const ");
-                    theWriter.print(theIndex);
-                    theWriter.println("))");
-                    theWriter.println("         )");
-                }
-
-            });
-
-            theWriter.println("         (block $b");
-            theWriter.print("             (br_if $b (i32.ne (get_local $p1) (i32.const ");
-            theWriter.print(WASMSSAWriter.GENERATED_INSTANCEOF_METHOD_ID);
-            theWriter.println(")))");
-
-            String theFullMethodName = theClassName + "__instanceof";
-
-            int theIndex = theGeneratedFunctions.indexOf(theFullMethodName);
-            if (theIndex < 0) {
-                throw new IllegalStateException("Unknown index : " + theFullMethodName);
-            }
-
-            theWriter.print("             (return (i32.const ");
-            theWriter.print(theIndex);
-            theWriter.println("))");
-            theWriter.println("         )");
-
-
-            theWriter.println("         (unreachable)");
-            theWriter.println("   )");
-            theWriter.println();
-
-            // Instanceof method
-            theWriter.print("   (func ");
-            theWriter.print("$");
-            theWriter.print(theClassName);
-            theWriter.println("__instanceof (param $thisRef i32) (param $p1 i32) (result i32)");
-
-            for (BytecodeLinkedClass theType : theLinkedClass.getImplementingTypes()) {
-
-                theWriter.print("         (block $block");
-                theWriter.print(theType.getUniqueId());
-                theWriter.println();
-
-                theWriter.print("             (br_if $block");
-                theWriter.print(theType.getUniqueId());
-                theWriter.print(" (i32.ne (get_local $p1) (i32.const ");
-                theWriter.print(theType.getUniqueId());
-                theWriter.println(")))");
-
-                theWriter.println("             (return (i32.const 1))");
-
-                theWriter.println("         )");
-            }
-
-            theWriter.println("         (return (i32.const 0))");
-            theWriter.println("   )");
-            theWriter.println();
-
-
             theWriter.print("   (func ");
             theWriter.print("$");
             theWriter.print(theClassName);
@@ -531,7 +530,8 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
 
             Program theSSAProgram = theEntry.getValue().program;
 
-            WASMSSAWriter theSSAWriter = new WASMSSAWriter(aOptions, theSSAProgram, "         ", theWriter, aLinkerContext, theResolver, theMemoryLayout);
+            WASMSSAWriter theSSAWriter = new WASMSSAWriter(aOptions, theSSAProgram, "         ", theWriter, aLinkerContext, theResolver, theMemoryLayout,
+                    theExceptionAnalysis, TypeRef.Native.REFERENCE);
 
             for (Variable theVariable : theSSAProgram.getVariables()) {
 
@@ -554,92 +554,119 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
             theWriter.println();
         }
 
-        theWriter.println("   (func $newRuntimeClass (param $type i32) (param $staticSize i32) (param $enumValuesOffset i32) (result i32)");
+        theWriter.println("   (func $newRuntimeClass (param $type i32) (param $staticSize i32) (param $enumValuesOffset i32) (param $vtable i32) (result i32)");
         theWriter.println("         (local $newRef i32)");
         theWriter.println("         (set_local $newRef");
-        theWriter.print("              (call $MemoryManager_AddressnewObjectINTINTINT (i32.const 0) (get_local $staticSize) (i32.const -1) (i32.const ");
-        theWriter.print(theGeneratedFunctions.indexOf("RUNTIMECLASS__resolvevtableindex"));
-        theWriter.println("))");
+        theWriter.println("              (call $MemoryManager_AddressnewObjectINTINTINT (i32.const 0) (get_local $staticSize) (i32.const -1) (get_local $vtable))");
         theWriter.println("         )");
         theWriter.println("         (i32.store offset=12 (get_local $newRef) (i32.add (get_local $newRef) (get_local $enumValuesOffset)))");
         theWriter.println("         (return (get_local $newRef))");
         theWriter.println("   )");
         theWriter.println();
 
-        theWriter.println("   (func $LAMBDA__resolvevtableindex (param $thisRef i32) (param $methodId i32) (result i32)");
-        theWriter.println("         (return (i32.load offset=8 (get_local $thisRef)))");
+        theWriter.println("   (func $UNRESOLVED_VIRTUAL_METHOD");
+        theWriter.println("         (unreachable)");
         theWriter.println("   )");
         theWriter.println();
 
-        int theLambdaVTableResolveIndex = theGeneratedFunctions.indexOf("LAMBDA__resolvevtableindex");
-        if (theLambdaVTableResolveIndex < 0) {
-            throw new IllegalStateException("Cannot resolve LAMBDA__resolvevtableindex");
-        }
-
+        // The invoked method of a runtime generated type is not known at compile time, so every
+        // slot of its vtable points to the implementation method
         theWriter.println("   (func $newLambda (param $type i32) (param $implMethodNumber i32) (result i32)");
         theWriter.println("         (local $newRef i32)");
-        theWriter.println("         (set_local $newRef");
-        theWriter.print("            (call $MemoryManager_AddressnewObjectINTINTINT (i32.const 0) (i32.const 12) (get_local $type) (i32.const ");
-        theWriter.print(theLambdaVTableResolveIndex);
+        theWriter.println("         (local $vtable i32)");
+        theWriter.println("         (local $offset i32)");
+        theWriter.println("         (set_local $vtable");
+        theWriter.print("            (call $MemoryManager_AddressmallocINT (i32.const 0) (i32.const ");
+        theWriter.print(theMemoryLayout.fullVTableSize());
         theWriter.println("))");
         theWriter.println("         )");
-        theWriter.println("         (i32.store offset=8 (get_local $newRef) (get_local $implMethodNumber))");
+        theWriter.println("         (block $filled");
+        theWriter.println("             (loop $fill");
+        theWriter.print("                 (br_if $filled (i32.ge_s (get_local $offset) (i32.const ");
+        theWriter.print(theMemoryLayout.fullVTableSize());
+        theWriter.println(")))");
+        theWriter.println("                 (i32.store (i32.add (get_local $vtable) (get_local $offset)) (get_local $implMethodNumber))");
+        theWriter.print("                 (set_local $offset (i32.add (get_local $offset) (i32.const ");
+        theWriter.print(WASMMemoryLayouter.VTABLE_SLOTSIZE);
+        theWriter.println(")))");
+        theWriter.println("                 (br $fill)");
+        theWriter.println("             )");
+        theWriter.println("         )");
+        // Lambda instances do not hold references
+        theWriter.print("         (i32.store offset=");
+        theWriter.print(WASMMemoryLayouter.VTABLE_POINTERMAP_OFFSET);
+        theWriter.println(" (get_local $vtable) (i32.const 0))");
+        // The implemented interface is not known either, so such an instance passes every interface check
+        theWriter.print("         (i32.store offset=");
+        theWriter.print(WASMMemoryLayouter.VTABLE_CLASSID_OFFSET);
+        theWriter.print(" (get_local $vtable) (i32.const ");
+        theWriter.print(WASMMemoryLayouter.RUNTIME_GENERATED_TYPE_CLASSID);
+        theWriter.println("))");
+        for (int theOffset = WASMMemoryLayouter.VTABLE_INTERFACES_OFFSET; theOffset < theMemoryLayout.vtableHeaderSize(); theOffset += WASMMemoryLayouter.VTABLE_SLOTSIZE) {
+            theWriter.print("         (i32.store offset=");
+            theWriter.print(theOffset);
+            theWriter.println(" (get_local $vtable) (i32.const -1))");
+        }
+        theWriter.println("         (set_local $newRef");
+        theWriter.print("            (call $MemoryManager_AddressnewObjectINTINTINT (i32.const 0) (i32.const ");
+        theWriter.print(WASMMemoryLayouter.OBJECT_HEADER_SIZE);
+        theWriter.println(") (get_local $type) (get_local $vtable))");
+        theWriter.println("         )");
         theWriter.println("         (return (get_local $newRef))");
         theWriter.println("   )");
         theWriter.println();
 
-        theWriter.println("   (func $compareValueI32 (param $p1 i32) (param $p2 i32) (result i32)");
-        theWriter.println("     (block $b1");
-        theWriter.println("         (br_if $b1");
-        theWriter.println("             (i32.ne (get_local $p1) (get_local $p2))");
-        theWriter.println("         )");
-        theWriter.println("         (return (i32.const 0))");
-        theWriter.println("     )");
-        theWriter.println("     (block $b2");
-        theWriter.println("         (br_if $b2");
-        theWriter.println("             (i32.ge_s (get_local $p1) (get_local $p2))");
-        theWriter.println("         )");
-        theWriter.println("         (return (i32.const -1))");
+        // Implementation of the lcmp, fcmpx and dcmpx instructions
+        for (String theType : new String[] {"i32", "i64", "f32", "f64"}) {
+            String theGreaterOrEqual = theType.startsWith("i") ? "ge_s" : "ge";
+            theWriter.print("   (func $compareValue");
+            theWriter.print(theType.toUpperCase());
+            theWriter.print(" (param $p1 ");
+            theWriter.print(theType);
+            theWriter.print(") (param $p2 ");
+            theWriter.print(theType);
+            theWriter.println(") (result i32)");
+            theWriter.println("     (block $b1");
+            theWriter.println("         (br_if $b1");
+            theWriter.println("             (" + theType + ".ne (get_local $p1) (get_local $p2))");
+            theWriter.println("         )");
+            theWriter.println("         (return (i32.const 0))");
+            theWriter.println("     )");
+            theWriter.println("     (block $b2");
+            theWriter.println("         (br_if $b2");
+            theWriter.println("             (" + theType + "." + theGreaterOrEqual + " (get_local $p1) (get_local $p2))");
+            theWriter.println("         )");
+            theWriter.println("         (return (i32.const -1))");
+            theWriter.println("     )");
+            theWriter.println("     (return (i32.const 1))");
+            theWriter.println("   )");
+            theWriter.println();
+        }
+
+        theWriter.println("   (func $INSTANCEOF_CLASS (param $thisRef i32) (param $classId i32) (param $range i32) (result i32)");
+        theWriter.println("     (if (result i32) (i32.eqz (get_local $thisRef))");
+        theWriter.println("         (then (i32.const 0))");
+        theWriter.print("         (else (i32.le_u (i32.sub (i32.load offset=");
+        theWriter.print(WASMMemoryLayouter.VTABLE_CLASSID_OFFSET);
+        theWriter.println(" (i32.load offset=4 (get_local $thisRef))) (get_local $classId)) (get_local $range)))");
         theWriter.println("     )");
-        theWriter.println("     (return (i32.const 1))");
         theWriter.println("   )");
         theWriter.println();
 
-        theWriter.println("   (func $compareValueF32 (param $p1 f32) (param $p2 f32) (result i32)");
-        theWriter.println("     (block $b1");
-        theWriter.println("         (br_if $b1");
-        theWriter.println("             (f32.ne (get_local $p1) (get_local $p2))");
-        theWriter.println("         )");
-        theWriter.println("         (return (i32.const 0))");
-        theWriter.println("     )");
-        theWriter.println("     (block $b2");
-        theWriter.println("         (br_if $b2");
-        theWriter.println("             (f32.ge (get_local $p1) (get_local $p2))");
-        theWriter.println("         )");
-        theWriter.println("         (return (i32.const -1))");
+        theWriter.println("   (func $INSTANCEOF_INTERFACE (param $thisRef i32) (param $offset i32) (param $mask i32) (result i32)");
+        theWriter.println("     (if (result i32) (i32.eqz (get_local $thisRef))");
+        theWriter.println("         (then (i32.const 0))");
+        theWriter.println("         (else (i32.ne (i32.and (i32.load (i32.add (i32.load offset=4 (get_local $thisRef)) (get_local $offset))) (get_local $mask)) (i32.const 0)))");
         theWriter.println("     )");
-        theWriter.println("     (return (i32.const 1))");
         theWriter.println("   )");
         theWriter.println();
 
-        theWriter.println("   (func $INSTANCEOF_CHECK (param $thisRef i32) (param $type i32) (result i32)");
-        theWriter.println("     (block $nullcheck");
-        theWriter.println("         (br_if $nullcheck");
-        theWriter.println("             (i32.ne (get_local $thisRef) (i32.const 0))");
-        theWriter.println("         )");
-        theWriter.println("         (return (i32.const 0))");
-        theWriter.println("     )");
-        theWriter.println("     (call_indirect $t_INSTANCEOF");
-        theWriter.println("         (get_local $thisRef)");
-        theWriter.println("         (get_local $type)");
-        theWriter.println("         (call_indirect $t_RESOLVEMETHOD");
-        theWriter.println("             (get_local $thisRef)");
-        theWriter.print("             (i32.const ");
-        theWriter.print(WASMSSAWriter.GENERATED_INSTANCEOF_METHOD_ID);
-        theWriter.println(")");
-        theWriter.println("             (i32.load offset=4 (get_local $thisRef))");
-        theWriter.println("         )");
-        theWriter.println("      )");
+        // A thrown exception is kept here until it is caught by a handler
+        theWriter.println("   (func $takePendingException (result i32)");
+        theWriter.println("     (local $exception i32)");
+        theWriter.println("     (set_local $exception (get_global $PENDING_EXCEPTION))");
+        theWriter.println("     (set_global $PENDING_EXCEPTION (i32.const 0))");
+        theWriter.println("     (return (get_local $exception))");
         theWriter.println("   )");
         theWriter.println();
 
@@ -653,42 +680,6 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
         theWriter.println("   )");
         theWriter.println();
 
-        theWriter.println("   (func $RUNTIMECLASS__resolvevtableindex (param $thisRef i32) (param $methodId i32) (result i32)");
-
-        BytecodeLinkedClass theClassLinkedCass = aLinkerContext.linkClass(BytecodeObjectTypeRef.fromRuntimeClass(TClass.class));
-        theClassLinkedCass.forEachVirtualMethod(
-                aClassMethod -> {
-                    theWriter.println("     (block $m" + aClassMethod.getKey().getIdentifier());
-                    theWriter.println("         (br_if $m" + aClassMethod.getKey().getIdentifier() + " (i32.ne (get_local $methodId) (i32.const " + aClassMethod.getKey().getIdentifier() + ")))");
-                    if (Objects.equals("getClass", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                        theWriter.println("         (unreachable)");
-                    } else if (Objects
-                            .equals("toString", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                        theWriter.println("         (unreachable)");
-                    } else if (Objects
-                            .equals("equals", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                        theWriter.println("         (unreachable)");
-                    } else if (Objects
-                            .equals("hashCode", aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                        theWriter.println("         (unreachable)");
-                    } else if (Objects.equals("desiredAssertionStatus",
-                            aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                        theWriter.println("         (return (i32.const " + theGeneratedFunctions.indexOf("TClass_desiredAssertionStatus") + "))");
-                    } else if (Objects
-                            .equals("getEnumConstants",
-                                    aClassMethod.getValue().getTargetMethod().getName().stringValue())) {
-                        theWriter.println("         (return (i32.const " + theGeneratedFunctions.indexOf("TClass_A1TObjectgetEnumConstants") + "))");
-                    } else {
-                        theWriter.println("         (unreachable)");
-                    }
-                    theWriter.println("     )");
-                });
-
-
-        theWriter.println("     (unreachable)");
-        theWriter.println("   )");
-        theWriter.println();
-
         List<String> theGlobalVariables = new ArrayList<>();
 
         theWriter.println("   (func $bootstrap");
@@ -727,11 +718,15 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
             if (aEntry.getValue().staticFieldByName("$VALUES") != null) {
                 theWriter.print(" (i32.const ");
                 theWriter.print(theLayout.offsetForClassMember("$VALUES"));
-                theWriter.println(")");
+                theWriter.print(")");
             } else {
                 theWriter.print(" (i32.const -1)");
             }
 
+            theWriter.print(" (i32.const ");
+            theWriter.print(theMemoryLayout.runtimeClassVTableAddressFor(aEntry.getKey()));
+            theWriter.print(")");
+
             theWriter.println("))");
         });
 
@@ -760,7 +755,7 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
             theWriter.print(")");
 
             theWriter.print(" (i32.const ");
-            theWriter.print(theResolver.resolveVTableMethodByType(theStringClass.getClassName()));
+            theWriter.print(theMemoryLayout.vtableAddressFor(theStringClass.getClassName()));
             theWriter.print(")");
             theWriter.println("))");
 
@@ -830,6 +825,7 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
         }
 
         theWriter.println("   (global $STACKTOP (mut i32) (i32.const 0))");
+        theWriter.println("   (global $PENDING_EXCEPTION (mut i32) (i32.const 0))");
 
         // Globals for static class data
         aLinkerContext.forEachClass(aEntry -> {
@@ -852,6 +848,7 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
         theWriter.println();
 
         theWriter.println("   (export \"bootstrap\" (func $bootstrap))");
+        theWriter.println("   (export \"takePendingException\" (func $takePendingException))");
 
         // Write exports
         aLinkerContext.forEachClass(aEntry -> {
@@ -892,6 +889,23 @@ public class WASMSSACompilerBackend implements CompileBackend<WASMCompileResult>
         return new WASMCompileResult(aLinkerContext, theGeneratedFunctions, theStringWriter.toString(), theMemoryLayout);
     }
 
+    private static void writeData(PrintWriter aWriter, int aAddress, int[] aValues) {
+        aWriter.print("   (data (i32.const ");
+        aWriter.print(aAddress);
+        aWriter.print(") \"");
+        for (int theValue : aValues) {
+            // Little endian, as required by the WebAssembly memory model
+            for (int i = 0; i < 4; i++) {
+                int theByte = (theValue >>> (i * 8)) & 0xff;
+                aWriter.print("\\");
+                if (theByte < 16) {
+                    aWriter.print("0");
+                }
+                aWriter.print(Integer.toHexString(theByte));
+            }
+        }
+        aWriter.println("\")");
+    }
 
     @Override
     public String generatedFileName() {
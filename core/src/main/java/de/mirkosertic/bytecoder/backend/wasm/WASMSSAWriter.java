@@ -15,11 +15,13 @@
  */
 package de.mirkosertic.bytecoder.backend.wasm;
 
+import de.mirkosertic.bytecoder.annotations.EmulatedByRuntime;
 import de.mirkosertic.bytecoder.backend.CompileOptions;
 import de.mirkosertic.bytecoder.backend.IndentSSAWriter;
 import de.mirkosertic.bytecoder.classlib.Address;
 import de.mirkosertic.bytecoder.classlib.MemoryManager;
 import de.mirkosertic.bytecoder.classlib.java.lang.TArray;
+import de.mirkosertic.bytecoder.core.BytecodeArrayTypeRef;
 import de.mirkosertic.bytecoder.core.BytecodeClass;
 import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
 import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
@@ -46,8 +48,10 @@ import de.mirkosertic.bytecoder.ssa.CurrentExceptionValue;
 import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodExpression;
 import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodValue;
 import de.mirkosertic.bytecoder.ssa.DoubleValue;
+import de.mirkosertic.bytecoder.ssa.ExceptionDispatchExpression;
 import de.mirkosertic.bytecoder.ssa.Expression;
 import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
 import de.mirkosertic.bytecoder.ssa.FixedBinaryValue;
 import de.mirkosertic.bytecoder.ssa.FloatValue;
 import de.mirkosertic.bytecoder.ssa.FloorValue;
@@ -103,12 +107,8 @@ import java.util.Map;
 
 public class WASMSSAWriter extends IndentSSAWriter {
 
-    public static final int GENERATED_INSTANCEOF_METHOD_ID = -1;
-
     public interface IDResolver {
 
-        int resolveVTableMethodByType(BytecodeObjectTypeRef aObjectType);
-
         String resolveStringPoolFunctionName(String aValue);
 
         String resolveCallsiteBootstrapFor(BytecodeClass aOwningClass, String aCallsiteId, Program aProgram, GraphNode aBootstrapMethod);
@@ -121,13 +121,17 @@ public class WASMSSAWriter extends IndentSSAWriter {
     private final List<Variable> stackVariables;
     private final IDResolver idResolver;
     private final WASMMemoryLayouter memoryLayouter;
+    private final WASMExceptionAnalysis exceptionAnalysis;
+    private final TypeRef returnType;
 
     public WASMSSAWriter(CompileOptions aOptions, Program aProgram, String aIndent, PrintWriter aWriter, BytecodeLinkerContext aLinkerContext, IDResolver aIDResolver,
-                         WASMMemoryLayouter aMemoryLayouter) {
+                         WASMMemoryLayouter aMemoryLayouter, WASMExceptionAnalysis aExceptionAnalysis, TypeRef aReturnType) {
         super(aOptions, aProgram, aIndent, aWriter, aLinkerContext);
         stackVariables = new ArrayList<>();
         idResolver = aIDResolver;
         memoryLayouter = aMemoryLayouter;
+        exceptionAnalysis = aExceptionAnalysis;
+        returnType = aReturnType;
         for (Variable theVariable : aProgram.getVariables()) {
             if (theVariable.resolveType().resolve() == TypeRef.Native.REFERENCE) {
                 stackVariables.add(theVariable);
@@ -160,7 +164,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     private WASMSSAWriter withDeeperIndent() {
-        return new WASMSSAWriter(options, program, indent + "    ", writer, linkerContext, idResolver, memoryLayouter);
+        return new WASMSSAWriter(options, program, indent + "    ", writer, linkerContext, idResolver, memoryLayouter, exceptionAnalysis, returnType);
     }
 
     public void writeStartNode(ControlFlowGraph.Node aNode) {
@@ -224,9 +228,47 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     public void writeExpressionList(ExpressionList aList) {
-        for (Expression theExpression : aList.toList()) {
+        List<Expression> theExpressions = aList.toList();
+        for (int i = 0; i < theExpressions.size(); i++) {
+            Expression theExpression = theExpressions.get(i);
+            if (theExpression instanceof ExceptionDispatchExpression && !((ExceptionDispatchExpression) theExpression).isThrowing()
+                    && (i == 0 || !requiresExceptionCheck(theExpressions.get(i - 1)))) {
+                // The preceding invocation cannot throw, so there is nothing to dispatch
+                continue;
+            }
             writeExpression(theExpression);
+
+            // Exceptions thrown by an invoked method are passed on to our caller, unless the
+            // following expression dispatches them to an exception handler
+            if (requiresExceptionCheck(theExpression)) {
+                boolean theDispatched = i < theExpressions.size() - 1 && theExpressions.get(i + 1) instanceof ExceptionDispatchExpression;
+                if (!theDispatched) {
+                    print("(if (i32.ne (get_global $PENDING_EXCEPTION) (i32.const 0)) (then ");
+                    writeExceptionPropagation();
+                    println("))");
+                }
+            }
+        }
+    }
+
+    private boolean requiresExceptionCheck(Expression aExpression) {
+        if (aExpression instanceof ExpressionListContainer || aExpression instanceof ReturnValueExpression
+                || aExpression instanceof ThrowExpression) {
+            return false;
+        }
+        return exceptionAnalysis.mayThrow(aExpression);
+    }
+
+    private void writeExceptionPropagation() {
+        printStackExit();
+        if (returnType.resolve() == TypeRef.Native.VOID) {
+            print("(return)");
+            return;
         }
+        // The returned value is ignored by the caller, as the exception is pending
+        print("(return (");
+        print(WASMWriterUtils.toType(returnType));
+        print(".const 0))");
     }
 
     private void writeExpression(Expression aExpression) {
@@ -239,6 +281,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
         }
 
         if (aExpression instanceof CheckCastExpression) {
+            writeCheckCastExpression((CheckCastExpression) aExpression);
             return;
         }
         if (aExpression instanceof ReturnExpression) {
@@ -305,6 +348,10 @@ public class WASMSSAWriter extends IndentSSAWriter {
             writeUnreachable((UnreachableExpression) aExpression);
             return;
         }
+        if (aExpression instanceof ExceptionDispatchExpression) {
+            writeExceptionDispatchExpression((ExceptionDispatchExpression) aExpression);
+            return;
+        }
         if (aExpression instanceof BreakExpression) {
             BreakExpression theBreak = (BreakExpression) aExpression;
             print("(set_local $__label__ (i32.const ");
@@ -395,12 +442,13 @@ public class WASMSSAWriter extends IndentSSAWriter {
         theChild3.print(aExpression.getHighValue());
         theChild3.println(")))");
 
-        theChild3.writeExpressionList(aExpression.getDefaultExpressions());
-        theChild3.println();
+        theChild2.println(")");
 
-        theChild3.println("(br $tableswitch)");
+        // Values out of range continue here with the default jump
+        theChild2.writeExpressionList(aExpression.getDefaultExpressions());
+        theChild2.println();
 
-        theChild2.println(")");
+        theChild2.println("(br $tableswitch)");
 
         theChild1.println(")");
 
@@ -441,20 +489,13 @@ public class WASMSSAWriter extends IndentSSAWriter {
 
     private void writeArrayStoreExpression(ArrayStoreExpression aExpression) {
         // If the index is a constant, we can precompute the offset.
+        int theElementSize = WASMMemoryLayouter.sizeOf(aExpression.getArrayType());
         if (aExpression.getIndex() instanceof IntegerValue) {
-            int offset = 20 + ((IntegerValue)aExpression.getIndex()).getIntValue() * 4;
+            int offset = 20 + ((IntegerValue)aExpression.getIndex()).getIntValue() * theElementSize;
 
-            switch (aExpression.getArrayType().resolve()) {
-                case DOUBLE:
-                case FLOAT: {
-                    print("(f32.store ");
-                    break;
-                }
-                default: {
-                    print("(i32.store ");
-                    break;
-                }
-            }
+            print("(");
+            print(WASMWriterUtils.toType(aExpression.getArrayType()));
+            print(".store ");
 
             print("offset="+offset+" ");
 
@@ -467,17 +508,9 @@ public class WASMSSAWriter extends IndentSSAWriter {
             return;
         }
 
-        switch (aExpression.getArrayType().resolve()) {
-            case DOUBLE:
-            case FLOAT: {
-                println("(f32.store offset=20 ");
-                break;
-            }
-            default: {
-                println("(i32.store offset=20 ");
-                break;
-            }
-        }
+        print("(");
+        print(WASMWriterUtils.toType(aExpression.getArrayType()));
+        println(".store offset=20 ");
 
         WASMSSAWriter theChild = withDeeperIndent();
 
@@ -485,7 +518,9 @@ public class WASMSSAWriter extends IndentSSAWriter {
         theChild.writeValue(aExpression.getArray());
         theChild.print(" (i32.mul ");
         theChild.writeValue(aExpression.getIndex());
-        theChild.print(" (i32.const 4)");
+        theChild.print(" (i32.const ");
+        theChild.print(theElementSize);
+        theChild.print(")");
         theChild.println("))");
 
         theChild.writeValue(aExpression.getValue());
@@ -495,8 +530,62 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     private void writeThrowExpression(ThrowExpression aExpression) {
-        printStackExit();
-        println("(unreachable)");
+        print("(set_global $PENDING_EXCEPTION ");
+        writeValue(aExpression.getValue());
+        println(")");
+        writeExceptionPropagation();
+        println();
+    }
+
+    private void writeExceptionDispatchExpression(ExceptionDispatchExpression aExpression) {
+        if (aExpression.isThrowing()) {
+            print("(set_global $PENDING_EXCEPTION ");
+            writeValue(aExpression.getThrownValue());
+            println(")");
+        }
+
+        println("(if (i32.ne (get_global $PENDING_EXCEPTION) (i32.const 0)) (then");
+
+        // The first matching handler wins, every handler continues somewhere else in the method
+        WASMSSAWriter theChild = withDeeperIndent();
+        for (ExceptionDispatchExpression.Handler theHandler : aExpression.getHandlers()) {
+            if (theHandler.isCatchAll()) {
+                theChild.writeExpressionList(theHandler.getExpressions());
+                println("))");
+                return;
+            }
+            BytecodeLinkedClass theCatchType = linkerContext.isLinkedOrNull(theHandler.getCatchType().getConstant());
+            if (theCatchType == null) {
+                // The exception type was never linked, so there are no instances of it
+                continue;
+            }
+            if (theCatchType.getSuperClass() == null) {
+                theChild.writeExpressionList(theHandler.getExpressions());
+                println("))");
+                return;
+            }
+            theChild.print("(if ");
+            if (theCatchType.getBytecodeClass().getAccessFlags().isInterface()) {
+                theChild.print("(call $INSTANCEOF_INTERFACE (get_global $PENDING_EXCEPTION) (i32.const ");
+                theChild.print(memoryLayouter.interfaceOffsetFor(theCatchType.getClassName()));
+                theChild.print(") (i32.const ");
+                theChild.print(memoryLayouter.interfaceMaskFor(theCatchType.getClassName()));
+                theChild.println(")) (then");
+            } else {
+                theChild.print("(call $INSTANCEOF_CLASS (get_global $PENDING_EXCEPTION) (i32.const ");
+                theChild.print(memoryLayouter.classIdFor(theCatchType.getClassName()));
+                theChild.print(") (i32.const ");
+                theChild.print(memoryLayouter.subclassRangeFor(theCatchType.getClassName()));
+                theChild.println(")) (then");
+            }
+            theChild.withDeeperIndent().writeExpressionList(theHandler.getExpressions());
+            theChild.println("))");
+        }
+
+        // No matching handler, so the exception is passed on to our caller
+        theChild.writeExceptionPropagation();
+        theChild.println();
+        println("))");
     }
 
     private void writeInvokeStaticExpression(InvokeStaticMethodExpression aExpression) {
@@ -510,18 +599,9 @@ public class WASMSSAWriter extends IndentSSAWriter {
         int theMemoryOffset = theLayout.offsetForClassMember(aExpression.getField().getNameAndTypeIndex().getNameAndType().getNameIndex().getName().stringValue());
 
         String theClassName = WASMWriterUtils.toClassName(aExpression.getField().getClassIndex().getClassConstant());
-        switch (aExpression.getValue().resolveType().resolve()) {
-            case DOUBLE:
-            case FLOAT: {
-                print("(f32.store offset=");
-                break;
-            }
-            default: {
-                print("(i32.store offset=");
-                break;
-            }
-
-        }
+        print("(");
+        print(WASMWriterUtils.toType(aExpression.getValue().resolveType()));
+        print(".store offset=");
         print(theMemoryOffset);
         println();
 
@@ -554,15 +634,9 @@ public class WASMSSAWriter extends IndentSSAWriter {
         BytecodeLinkedClass theLinkedClass = linkerContext.linkClass(BytecodeObjectTypeRef.fromUtf8Constant(aExpression.getField().getClassIndex().getClassConstant().getConstant()));
         BytecodeLinkedClass.LinkedField theField = theLinkedClass.memberFieldByName(aExpression.getField().getNameAndTypeIndex().getNameAndType().getNameIndex().getName().stringValue());
 
-        switch (TypeRef.toType(theField.getField().getTypeRef()).resolve()) {
-            case DOUBLE:
-            case FLOAT:
-                print("(f32.store offset=");
-                break;
-            default:
-                print("(i32.store offset=");
-                break;
-        }
+        print("(");
+        print(WASMWriterUtils.toType(TypeRef.toType(theField.getField().getTypeRef())));
+        print(".store offset=");
         print(theMemoryOffset);
         println();
 
@@ -618,19 +692,12 @@ public class WASMSSAWriter extends IndentSSAWriter {
         }
 
         if (isStackVariable(theVariable)) {
-            switch (theVariable.resolveType().resolve()) {
-                case DOUBLE:
-                case FLOAT: {
-                    print("(f32.store offset=");
-                    break;
-                }
-                case UNKNOWN:
-                    throw new IllegalStateException();
-                default: {
-                    print("(i32.store offset=");
-                    break;
-                }
+            if (theVariable.resolveType().resolve() == TypeRef.Native.UNKNOWN) {
+                throw new IllegalStateException();
             }
+            print("(");
+            print(WASMWriterUtils.toType(theVariable.resolveType()));
+            print(".store offset=");
             print(stackOffsetFor(theVariable));
             println(" (get_local $SP)");
 
@@ -815,7 +882,9 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     private void writeSqrtValue(SqrtValue aValue) {
-        print("(f32.sqrt ");
+        print("(");
+        print(WASMWriterUtils.toType(aValue.resolveType()));
+        print(".sqrt ");
         writeValue(aValue.resolveFirstArgument());
         print(")");
     }
@@ -832,14 +901,14 @@ public class WASMSSAWriter extends IndentSSAWriter {
                         BytecodeObjectTypeRef.fromRuntimeClass(MemoryManager.class),
                         "newArray",
                         new BytecodeMethodSignature(BytecodeObjectTypeRef.fromRuntimeClass(
-                                Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
+                                Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
                 break;
             case 2:
                 theMethodName = WASMWriterUtils.toMethodName(
                         BytecodeObjectTypeRef.fromRuntimeClass(MemoryManager.class),
                         "newArray",
                         new BytecodeMethodSignature(BytecodeObjectTypeRef.fromRuntimeClass(
-                                Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
+                                Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
                 break;
             default:
                 throw new IllegalStateException("Unsupported number of dimensions : " + theDimensions.size());
@@ -854,16 +923,39 @@ public class WASMSSAWriter extends IndentSSAWriter {
             writeValue(theDimension);
         }
 
-        // We also need the runtime class
-        print(" (get_global $TArray__runtimeClass)");
-        // Plus the vtable index
+        // The size of the elements of the innermost allocated arrays
+        BytecodeArrayTypeRef theArrayType = (BytecodeArrayTypeRef) theType;
         print(" (i32.const ");
-        print(idResolver.resolveVTableMethodByType(BytecodeObjectTypeRef.fromRuntimeClass(TArray.class)));
+        if (theDimensions.size() < theArrayType.getDepth()) {
+            print(WASMMemoryLayouter.OBJECT_FIELDSIZE);
+        } else {
+            print(WASMMemoryLayouter.sizeOf(TypeRef.toType(theArrayType.getType())));
+        }
         print(")");
 
+        // We also need the runtime class
+        print(" (get_global $TArray__runtimeClass)");
+        // Plus the vtables, only the innermost arrays can hold primitive values
+        for (int i = 0; i < theDimensions.size(); i++) {
+            print(" (i32.const ");
+            if (i < theArrayType.getDepth() - 1) {
+                print(arrayVTableAddressFor(theArrayType));
+            } else {
+                print(arrayVTableAddressFor(theArrayType.getType()));
+            }
+            print(")");
+        }
+
         println(") ;; new array of type " + theType);
     }
 
+    private int arrayVTableAddressFor(BytecodeTypeRef aElementType) {
+        if (aElementType.isPrimitive()) {
+            return memoryLayouter.primitiveArrayVTableAddress();
+        }
+        return memoryLayouter.vtableAddressFor(BytecodeObjectTypeRef.fromRuntimeClass(TArray.class));
+    }
+
     private void writeMethodRefValue(MethodRefValue aValue) {
         print("(i32.const ");
         
@@ -901,7 +993,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     private void writeCurrentException(CurrentExceptionValue aValue) {
-        print("(i32.const 0)");
+        print("(call $takePendingException)");
     }
 
     private void writeMethodTypeValue(MethodTypeValue aValue) {
@@ -929,20 +1021,110 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     private void writeDoubleValue(DoubleValue aValue) {
-        print("(f32.const ");
-        print(aValue.getDoubleValue());
-        print(")");
+        if (aValue.getDoubleValue() == Double.POSITIVE_INFINITY) {
+            print("(f64.const inf)");
+        } else if (aValue.getDoubleValue() == Double.NEGATIVE_INFINITY) {
+            print("(f64.const -inf)");
+        } else if (Double.isNaN(aValue.getDoubleValue())) {
+            print("(f64.const nan)");
+        } else {
+            print("(f64.const ");
+            print(aValue.getDoubleValue());
+            print(")");
+        }
     }
 
     private void writeInstanceOfValue(InstanceOfValue aValue) {
 
         BytecodeLinkedClass theClass = linkerContext.linkClass(BytecodeObjectTypeRef.fromUtf8Constant(aValue.getType().getConstant()));
+        Value theValue = aValue.resolveFirstArgument();
 
-        print("(call $INSTANCEOF_CHECK ");
-        writeValue(aValue.resolveFirstArgument());
-        print(" (i32.const ");
-        print(theClass.getUniqueId());
-        println("))");
+        if (theClass.getSuperClass() == null && !theClass.getBytecodeClass().getAccessFlags().isInterface()) {
+            // Everything not null is an instance of the root class
+            print("(i32.ne ");
+            writeValue(theValue);
+            print(" (i32.const 0))");
+            return;
+        }
+
+        if (!(theValue instanceof Variable)) {
+            // The value must be evaluated only once, so the check is delegated
+            if (theClass.getBytecodeClass().getAccessFlags().isInterface()) {
+                print("(call $INSTANCEOF_INTERFACE ");
+                writeValue(theValue);
+                print(" (i32.const ");
+                print(memoryLayouter.interfaceOffsetFor(theClass.getClassName()));
+                print(") (i32.const ");
+                print(memoryLayouter.interfaceMaskFor(theClass.getClassName()));
+                print("))");
+            } else {
+                print("(call $INSTANCEOF_CLASS ");
+                writeValue(theValue);
+                print(" (i32.const ");
+                print(memoryLayouter.classIdFor(theClass.getClassName()));
+                print(") (i32.const ");
+                print(memoryLayouter.subclassRangeFor(theClass.getClassName()));
+                print("))");
+            }
+            return;
+        }
+
+        print("(if (result i32) (i32.eqz ");
+        writeValue(theValue);
+        print(") (then (i32.const 0)) (else ");
+        writeTypeCheck(theClass, theValue);
+        print("))");
+    }
+
+    private void writeTypeCheck(BytecodeLinkedClass aClass, Value aValue) {
+        if (aClass.getBytecodeClass().getAccessFlags().isInterface()) {
+            print("(i32.ne (i32.and (i32.load offset=");
+            print(memoryLayouter.interfaceOffsetFor(aClass.getClassName()));
+            print(" (i32.load offset=4 ");
+            writeValue(aValue);
+            print(")) (i32.const ");
+            print(memoryLayouter.interfaceMaskFor(aClass.getClassName()));
+            print(")) (i32.const 0))");
+            return;
+        }
+        // The class and its subclasses form an interval of class ids, an unsigned
+        // compare checks both bounds at once
+        print("(i32.le_u (i32.sub (i32.load offset=");
+        print(WASMMemoryLayouter.VTABLE_CLASSID_OFFSET);
+        print(" (i32.load offset=4 ");
+        writeValue(aValue);
+        print(")) (i32.const ");
+        print(memoryLayouter.classIdFor(aClass.getClassName()));
+        print(")) (i32.const ");
+        print(memoryLayouter.subclassRangeFor(aClass.getClassName()));
+        print("))");
+    }
+
+    private void writeCheckCastExpression(CheckCastExpression aExpression) {
+        // Array types do not carry their component type at runtime
+        if (aExpression.getType().getConstant().stringValue().startsWith("[")) {
+            return;
+        }
+        BytecodeLinkedClass theClass = linkerContext.isLinkedOrNull(aExpression.getType().getConstant());
+        if (theClass == null || theClass.getSuperClass() == null && !theClass.getBytecodeClass().getAccessFlags().isInterface()) {
+            return;
+        }
+        if (theClass.getBytecodeClass().getAttributes().getAnnotationByType(EmulatedByRuntime.class.getName()) != null) {
+            return;
+        }
+        Value theValue = aExpression.getValue();
+        if (!(theValue instanceof Variable)) {
+            return;
+        }
+
+        print("(if (i32.ne ");
+        writeValue(theValue);
+        println(" (i32.const 0))");
+        WASMSSAWriter theChild = withDeeperIndent();
+        theChild.print("(then (if (i32.eqz ");
+        theChild.writeTypeCheck(theClass, theValue);
+        theChild.println(") (then (unreachable))))");
+        println(")");
     }
 
     private void writeNegateValue(NegatedValue aValue) {
@@ -950,11 +1132,18 @@ public class WASMSSAWriter extends IndentSSAWriter {
         switch (theValue.resolveType().resolve()) {
             case DOUBLE:
             case FLOAT: {
-                    print("(f32.neg ");
+                    print("(");
+                    print(WASMWriterUtils.toType(theValue.resolveType()));
+                    print(".neg ");
                     writeValue(theValue);
                     print(")");
                 }
                 break;
+            case LONG:
+                print("(i64.sub (i64.const 0) ");
+                writeValue(theValue);
+                print(")");
+                break;
             default:
                 print("(i32.mul (i32.const -1) ");
                 writeValue(theValue);
@@ -973,15 +1162,9 @@ public class WASMSSAWriter extends IndentSSAWriter {
             throw new IllegalStateException("Does not support mixed types : " + theValue1Type + " -> " + theValue2Type);
         }
 
-        switch (theValue1Type) {
-            case DOUBLE:
-            case FLOAT:
-                print("(call $compareValueF32 ");
-                break;
-            default:
-                print("(call $compareValueI32 ");
-                break;
-        }
+        print("(call $compareValue");
+        print(WASMWriterUtils.toType(theValue1Type).toUpperCase());
+        print(" ");
         writeValue(theValue1);
         print(" ");
         writeValue(theValue2);
@@ -989,23 +1172,17 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     private void writeArrayEntryValue(ArrayEntryValue aValue) {
-        switch (aValue.resolveType().resolve()) {
-            case DOUBLE:
-            case FLOAT: {
-                print("(f32.load offset=20 ");
-                break;
-            }
-            default: {
-                print("(i32.load offset=20 ");
-                break;
-            }
-        }
+        print("(");
+        print(WASMWriterUtils.toType(aValue.resolveType()));
+        print(".load offset=20 ");
 
         print("(i32.add ");
         writeValue(aValue.resolveFirstArgument());
         print(" (i32.mul ");
         writeValue(aValue.resolveSecondArgument());
-        print(" (i32.const 4)");
+        print(" (i32.const ");
+        print(WASMMemoryLayouter.sizeOf(aValue.resolveType()));
+        print(")");
         println("))");
 
         println(")");
@@ -1025,7 +1202,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 BytecodeObjectTypeRef.fromRuntimeClass(MemoryManager.class),
                 "newArray",
                 new BytecodeMethodSignature(BytecodeObjectTypeRef.fromRuntimeClass(
-                        Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
+                        Address.class), new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT, BytecodePrimitiveTypeRef.INT}));
 
         print("(call $");
         print(theMethodName);
@@ -1033,11 +1210,16 @@ public class WASMSSAWriter extends IndentSSAWriter {
 
         withDeeperIndent().writeValue(aValue.resolveFirstArgument());
 
+        // The size of the elements
+        print(" (i32.const ");
+        print(WASMMemoryLayouter.sizeOf(TypeRef.toType(theType)));
+        print(")");
+
         // We also need the runtime class
         print(" (get_global $TArray__runtimeClass)");
-        // Plus the vtable index
+        // Plus the vtable
         print(" (i32.const ");
-        print(idResolver.resolveVTableMethodByType(BytecodeObjectTypeRef.fromRuntimeClass(TArray.class)));
+        print(arrayVTableAddressFor(theType));
         print(")");
 
         println(") ;; new array of type " + theType);
@@ -1051,8 +1233,21 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     private void writeFloorValue(FloorValue aValue) {
-        println("(i32.trunc_s/f32 (f32.floor ");
-        withDeeperIndent().writeValue(aValue.resolveFirstArgument());
+        Value theValue = aValue.resolveFirstArgument();
+        String theSourceType = WASMWriterUtils.toType(theValue.resolveType());
+        if (isIntegral(theSourceType)) {
+            // Integer division already truncates the result
+            writeValue(theValue);
+            return;
+        }
+        print("(");
+        print(WASMWriterUtils.toType(aValue.resolveType()));
+        print(".trunc_s/");
+        print(theSourceType);
+        print(" (");
+        print(theSourceType);
+        println(".floor ");
+        withDeeperIndent().writeValue(theValue);
         println("))");
     }
 
@@ -1075,29 +1270,15 @@ public class WASMSSAWriter extends IndentSSAWriter {
             println();
         }
 
-
-        WASMSSAWriter theChild = withDeeperIndent();
-        theChild.println("(call_indirect $t_RESOLVEMETHOD");
-
-        WASMSSAWriter theChild2 = theChild.withDeeperIndent();
-
-        theChild2.writeValue(theTarget);
-        theChild2.println();
-
-        // This is the method number
-        theChild2.print("(i32.const ");
-
         BytecodeVirtualMethodIdentifier theMethodIdentifier = linkerContext.getMethodCollection().identifierFor(aValue.getMethodName(), aValue.getSignature());
-        theChild2.print(theMethodIdentifier.getIdentifier());
 
-        theChild2.println(")");
-
-        // And this is the pointer into the function table
-        theChild2.print("(i32.load offset=4 ");
-        theChild2.writeValue(theTarget);
-        theChild2.println(")");   // This is id of the virtual table method
-
-        theChild.println(")");
+        // The vtable slot contains the index of the implementation in the function table
+        WASMSSAWriter theChild = withDeeperIndent();
+        theChild.print("(i32.load offset=");
+        theChild.print(memoryLayouter.vtableOffsetFor(theMethodIdentifier));
+        theChild.print(" (i32.load offset=4 ");
+        theChild.writeValue(theTarget);
+        theChild.println("))");
 
         println(")");
 
@@ -1136,71 +1317,51 @@ public class WASMSSAWriter extends IndentSSAWriter {
     private void writeTypeConversion(TypeConversionValue aValue) {
         TypeRef theTargetType = aValue.resolveType();
         Value theSource = aValue.resolveFirstArgument();
-        if (theTargetType.resolve().equals(theSource.resolveType().resolve())) {
-            // No conversion needed!
-            writeValue(theSource);
-            return;
-        }
         switch (theSource.resolveType().resolve()) {
             case DOUBLE:
-            case FLOAT: {
-                // Convert floating point to something else
-                switch (aValue.resolveType().resolve()) {
-                    case DOUBLE:
-                    case FLOAT: {
-                        // No conversion needed
-                        writeValue(theSource);
-                        return;
-                    }
-                    case INT:
-                    case SHORT:
-                    case BYTE:
-                    case LONG:
-                    case CHAR: {
-                        // Convert f32 to i32
-                        print("(i32.trunc_s/f32 ");
-                        writeValue(theSource);
-                        print(")");
-                        return;
-                    }
-                    default:
-                        throw new IllegalStateException("target type " + aValue.resolveType() + " not supported!");
-                }
-            }
+            case FLOAT:
             case INT:
             case LONG:
             case BYTE:
             case SHORT:
-            case CHAR: {
-                // Convert integer type to something else
-                // Convert floating point to something else
-                switch (aValue.resolveType().resolve()) {
-                case DOUBLE:
-                case FLOAT: {
-                    // Convert i32 to f32
-                    print("(f32.convert_s/i32 ");
-                    writeValue(theSource);
-                    print(")");
-                    return;
-                }
-                case INT:
-                case SHORT:
-                case BYTE:
-                case LONG:
-                case CHAR: {
-                    // No conversion needed
-                    writeValue(theSource);
-                    return;
-                }
-                default:
-                    throw new IllegalStateException("target type " + aValue.resolveType() + " not supported!");
-                }
-            }
+            case CHAR:
+                writeValueAs(theSource, WASMWriterUtils.toType(theTargetType));
+                return;
             default:
                 throw new IllegalStateException("Conversion of " + theSource.resolveType() + " not supported!");
         }
     }
 
+    private void writeValueAs(Value aValue, String aTargetType) {
+        String theSourceType = WASMWriterUtils.toType(aValue.resolveType());
+        if (theSourceType.equals(aTargetType)) {
+            // No conversion needed!
+            writeValue(aValue);
+            return;
+        }
+        print("(");
+        print(aTargetType);
+        print(".");
+        if (isIntegral(theSourceType) && isIntegral(aTargetType)) {
+            print("i64".equals(aTargetType) ? "extend_s" : "wrap");
+        } else if (isIntegral(aTargetType)) {
+            print("trunc_s");
+        } else if (isIntegral(theSourceType)) {
+            print("convert_s");
+        } else {
+            print("f64".equals(aTargetType) ? "promote" : "demote");
+        }
+        print("/");
+        print(theSourceType);
+        print(" ");
+        writeValue(aValue);
+        print(")");
+    }
+
+    private static boolean isIntegral(String aWASMType) {
+        return "i32".equals(aWASMType) || "i64".equals(aWASMType);
+    }
+
     private void writeComputedMemoryLocationValue(ComputedMemoryLocationWriteValue aValue) {
         println("(i32.add ");
 
@@ -1250,7 +1411,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
     }
 
     private void writeLongValue(LongValue aValue) {
-        print("(i32.const ");
+        print("(i64.const ");
         print(aValue.getLongValue());
         print(")");
     }
@@ -1266,17 +1427,9 @@ public class WASMSSAWriter extends IndentSSAWriter {
         );
 
         String theClassName = WASMWriterUtils.toClassName(aValue.getField().getClassIndex().getClassConstant());
-        switch (TypeRef.toType(theField.getField().getTypeRef()).resolve()) {
-            case DOUBLE:
-            case FLOAT: {
-                print("(f32.load offset=");
-                break;
-            }
-            default: {
-                print("(i32.load offset=");
-                break;
-            }
-        }
+        print("(");
+        print(WASMWriterUtils.toType(TypeRef.toType(theField.getField().getTypeRef())));
+        print(".load offset=");
         print(theMemoryOffset);
         println();
 
@@ -1309,7 +1462,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
         print(") (get_global $");
         print(WASMWriterUtils.toClassName(theLinkedClass.getClassName()));
         print("__runtimeClass) (i32.const ");
-        print(idResolver.resolveVTableMethodByType(theType));
+        print(memoryLayouter.vtableAddressFor(theType));
         print(")) ;; object of type " + aValue.getType().getConstant().stringValue());
     }
 
@@ -1323,15 +1476,9 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 aValue.getField().getNameAndTypeIndex().getNameAndType().getNameIndex().getName().stringValue()
         );
 
-        switch (TypeRef.toType(theField.getField().getTypeRef()).resolve()) {
-            case DOUBLE:
-            case FLOAT:
-                print("(f32.load offset=");
-                break;
-            default:
-                print("(i32.load offset=");
-                break;
-        }
+        print("(");
+        print(WASMWriterUtils.toType(TypeRef.toType(theField.getField().getTypeRef())));
+        print(".load offset=");
         print(theMemoryOffset);
         println();
 
@@ -1418,7 +1565,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 break;
             }
             case LESSTHAN: {
-                if ("i32".equals(theType1)) {
+                if (isIntegral(theType1)) {
                     println("(" + theType1 + ".lt_s ");
                 } else {
                     println("(" + theType1 + ".lt ");
@@ -1433,7 +1580,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 break;
             }
             case LESSTHANOREQUALS: {
-                if ("i32".equals(theType1)) {
+                if (isIntegral(theType1)) {
                     println("(" + theType1 + ".le_s ");
                 } else {
                     println("(" + theType1 + ".le ");
@@ -1448,7 +1595,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 break;
             }
             case GREATEROREQUALS: {
-                if ("i32".equals(theType1)) {
+                if (isIntegral(theType1)) {
                     println("(" + theType1 + ".ge_s ");
                 } else {
                     println("(" + theType1 + ".ge ");
@@ -1463,7 +1610,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 break;
             }
             case GREATERTHAN: {
-                if ("i32".equals(theType1)) {
+                if (isIntegral(theType1)) {
                     println("(" + theType1 + ".gt_s ");
                 } else {
                     println("(" + theType1 + ".gt ");
@@ -1502,20 +1649,24 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 break;
             }
             case DIV: {
-                println("(f32.div ");
+                if (isIntegral(theType1)) {
+                    println("(" + theType1 + ".div_s ");
+                } else {
+                    println("(" + theType1 + ".div ");
+                }
 
                 WASMSSAWriter theChild = withDeeperIndent();
-                theChild.printVariableNameOrValueAsFloat(theValue1);
+                theChild.writeValue(theValue1);
                 theChild.println();
-                theChild.printVariableNameOrValueAsFloat(theValue2);
+                theChild.writeValue(theValue2);
                 theChild.println();
 
                 println(")");
                 break;
             }
             case REMAINDER: {
-                if (theValue1.resolveType().resolve() == TypeRef.Native.INT) {
-                    println("(i32.rem_s ");
+                if (isIntegral(theType1)) {
+                    println("(" + theType1 + ".rem_s ");
 
                     WASMSSAWriter theChild = withDeeperIndent();
                     theChild.writeValue(theValue1);
@@ -1526,7 +1677,11 @@ public class WASMSSAWriter extends IndentSSAWriter {
                     println(")");
                     break;
                 }
-                print("(call $float_remainder ");
+                if ("f64".equals(theType1)) {
+                    print("(call $double_remainder ");
+                } else {
+                    print("(call $float_remainder ");
+                }
 
                 WASMSSAWriter theChild = withDeeperIndent();
                 theChild.writeValue(theValue1);
@@ -1591,7 +1746,8 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 WASMSSAWriter theChild = withDeeperIndent();
                 theChild.writeValue(theValue1);
                 theChild.println();
-                theChild.writeValue(theValue2);
+                // The shift distance is always an int
+                theChild.writeValueAs(theValue2, theType1);
                 theChild.println();
 
                 println(")");
@@ -1603,7 +1759,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 WASMSSAWriter theChild = withDeeperIndent();
                 theChild.writeValue(theValue1);
                 theChild.println();
-                theChild.writeValue(theValue2);
+                theChild.writeValueAs(theValue2, theType1);
                 theChild.println();
 
                 println(")");
@@ -1615,7 +1771,7 @@ public class WASMSSAWriter extends IndentSSAWriter {
                 WASMSSAWriter theChild = withDeeperIndent();
                 theChild.writeValue(theValue1);
                 theChild.println();
-                theChild.writeValue(theValue2);
+                theChild.writeValueAs(theValue2, theType1);
                 theChild.println();
 
                 println(")");
@@ -1638,33 +1794,14 @@ public class WASMSSAWriter extends IndentSSAWriter {
         println(")");
     }
 
-    private void printVariableNameOrValueAsFloat(Value aValue) {
-        switch (aValue.resolveType().resolve()) {
-            case DOUBLE:
-            case FLOAT:
-                writeValue(aValue);
-                break;
-            default:
-                print("(f32.convert_s/i32 ");
-                writeValue(aValue);
-                print(")");
-                break;
-        }
-    }
-
     private void printVariableName(Variable aVariable) {
         if (isStackVariable(aVariable)) {
-            switch (aVariable.resolveType().resolve()) {
-                case DOUBLE:
-                case FLOAT:
-                    print("(f32.load offset=");
-                    break;
-                case UNKNOWN:
-                    throw new IllegalStateException();
-                default:
-                    print("(i32.load offset=");
-                    break;
+            if (aVariable.resolveType().resolve() == TypeRef.Native.UNKNOWN) {
+                throw new IllegalStateException();
             }
+            print("(");
+            print(WASMWriterUtils.toType(aVariable.resolveType()));
+            print(".load offset=");
             print(stackOffsetFor(aVariable));
             print(" (get_local $SP)");
             print(")");
@@ -20,6 +20,9 @@ import de.mirkosertic.bytecoder.annotations.EmulatedByRuntime;
 @EmulatedByRuntime
 public class Address {
 
+    // Size of the emulated stack, it grows down from the end of the memory
+    private static int stackSize;
+
     private int start;
 
     public Address(int aStart) {
@@ -31,7 +34,12 @@ public class Address {
     }
 
     public static int getIntValue(Address aAddress, int aIndex) {
-        return (int) MemoryManager.data[aAddress.start + aIndex];
+        Object theValue = MemoryManager.data[aAddress.start + aIndex];
+        if (theValue == null) {
+            // Memory is filled with zeros by default
+            return 0;
+        }
+        return (int) theValue;
     }
 
     public static void setIntValue(Address aAddress, int aIndex, int aValue) {
@@ -39,11 +47,15 @@ public class Address {
     }
 
     public static int getStackTop() {
-        return 0;
+        return getMemorySize() - stackSize;
     }
 
     public static int getMemorySize() {
-        return 0;
+        return MemoryManager.data.length;
+    }
+
+    public static void setStackSize(int aStackSize) {
+        stackSize = aStackSize;
     }
 
     public static void unreachable() {
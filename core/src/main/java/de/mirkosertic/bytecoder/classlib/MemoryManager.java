@@ -21,11 +21,59 @@ import de.mirkosertic.bytecoder.annotations.Import;
 /**
  * A simple Memory Manager.
  *
- * It basically holds zwo linked lists. One for the free memory blocks,
- * and one for the reserved blocks.
+ * Small blocks are organized in segregated size classes, every size class has its
+ * own list of free blocks. If such a list is empty, a new block is taken from a bump pointer
+ * region. Allocating and freeing small blocks is done in constant time. Larger blocks
+ * are kept in a first fit free list.
+ *
+ * Every block starts with a header holding its size and a link to the next free block.
+ * Blocks are placed one after another, so the whole heap can be walked by adding
+ * the block sizes.
+ *
+ * Garbage is collected by a mark and sweep collector. Objects reachable from the stack
+ * are marked using an explicit mark stack, their references are found using the pointer map
+ * of their virtual method table. Sweeping rebuilds the free lists and joins adjacent
+ * free blocks.
  */
 public class MemoryManager {
 
+    private static final int CONTROL_BLOCK_POINTER = 4;
+
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int GRANULARITY = 8;
+    private static final int MAX_SMALL_BLOCK_SIZE = 256;
+    private static final int SIZE_CLASSES = MAX_SMALL_BLOCK_SIZE / GRANULARITY + 1;
+
+    // Block sizes are multiples of the granularity, so the lower bits can be used as flags
+    private static final int FREE_FLAG = 1;
+    private static final int MARK_FLAG = 2;
+    private static final int OBJECT_FLAG = 4;
+    private static final int SIZE_MASK = ~(GRANULARITY - 1);
+
+    // Static data like virtual method tables is placed in front of the heap, the
+    // compiler stores the first usable address at this address
+    public static final int HEAP_BASE_ADDRESS = 12;
+
+    // Offset of the pointer map inside every virtual method table. A pointer map starts with
+    // the number of references, followed by their offsets inside the object
+    public static final int VTABLE_POINTERMAP_OFFSET = 4;
+    public static final int ARRAY_OF_REFERENCES = -1;
+    private static final int ARRAY_LENGTH_OFFSET = 16;
+    private static final int ARRAY_DATA_OFFSET = 20;
+
+    // Layout of the control block
+    private static final int BUMP_POINTER = 0;
+    private static final int HEAP_LIMIT = 4;
+    private static final int HEAP_START = 8;
+    private static final int USED_BYTES = 12;
+    private static final int MARK_STACK_BASE = 16;
+    private static final int MARK_STACK_POINTER = 20;
+    private static final int MARK_STACK_LIMIT = 24;
+    private static final int MARK_STACK_OVERFLOW = 28;
+    private static final int LARGE_FREE_LIST = 32;
+    private static final int SIZE_CLASS_FREE_LISTS = 36;
+    private static final int CONTROL_BLOCK_SIZE = SIZE_CLASS_FREE_LISTS + SIZE_CLASSES * 4;
+
     public static Object[] data;
 
     public static void initTestMemory(int aSize) {
@@ -34,214 +82,198 @@ public class MemoryManager {
 
     public static void initWithSize(int aSize) {
         initTestMemory(aSize);
-        initInternal(aSize);
+        // Like in compiled code, static data is placed in front of the heap
+        initInternal(64, aSize);
     }
 
     @Export("initMemory")
     public static void initNative() {
-        initInternal(Address.getMemorySize());
+        Address theHeapBase = new Address(HEAP_BASE_ADDRESS);
+        initInternal(Address.getIntValue(theHeapBase, 0), Address.getMemorySize());
     }
 
     @Import(module = "profiler", name = "logMemoryLayoutBlock")
     public static native void logMemoryLayoutBlock(int aStart, int aUsed, int aNext);
 
-    private static void initInternal(int aSize) {
-        // This is the list of free blocks
-        Address theFreeStart = new Address(4); // At the beginning, we have one giant free block
-        Address.setIntValue(theFreeStart, 0, 28);
+    private static void initInternal(int aHeapStart, int aSize) {
+        // The control block is placed at the start of the heap, and all blocks follow it
+        Address.setIntValue(new Address(CONTROL_BLOCK_POINTER), 0, aHeapStart);
+
+        Address theControl = new Address(aHeapStart);
+        int theFirstBlock = aHeapStart + CONTROL_BLOCK_SIZE;
+        Address.setIntValue(theControl, BUMP_POINTER, theFirstBlock);
+        Address.setIntValue(theControl, HEAP_LIMIT, aSize);
+        Address.setIntValue(theControl, HEAP_START, theFirstBlock);
+        Address.setIntValue(theControl, USED_BYTES, 0);
+        clearFreeLists(theControl);
+    }
 
-        // Free memory block
-        Address theFree = new Address(28);
-        Address.setIntValue(theFree, 0, aSize);
-        Address.setIntValue(theFree, 4, 0);
+    private static void clearFreeLists(Address aControl) {
+        Address.setIntValue(aControl, LARGE_FREE_LIST, 0);
+        for (int i=0;i<SIZE_CLASSES;i++) {
+            Address.setIntValue(aControl, SIZE_CLASS_FREE_LISTS + i * 4, 0);
+        }
+    }
 
-        // This is the List of reserved blocks
-        Address theReserved = new Address(8);
-        Address.setIntValue(theReserved, 0, 0);
+    private static Address controlBlock() {
+        return new Address(Address.getIntValue(new Address(CONTROL_BLOCK_POINTER), 0));
     }
 
     @Export("freeMem")
     public static long freeMem() {
-        long theResult = 0;
-
-        Address theFreeStart = new Address(4);
-        int theFreeStartPtr = Address.getIntValue(theFreeStart, 0);
-
-        Address theCurrent = new Address(theFreeStartPtr);
-        while (Address.getStart(theCurrent) != 0) {
-            int theSize = Address.getIntValue(theCurrent, 0);
-            theResult += theSize;
-            int theNext = Address.getIntValue(theCurrent, 4);
-            theCurrent = new Address(theNext);
-        }
-        return theResult;
+        Address theControl = controlBlock();
+        int theCapacity = Address.getIntValue(theControl, HEAP_LIMIT) - Address.getIntValue(theControl, HEAP_START);
+        return theCapacity - Address.getIntValue(theControl, USED_BYTES);
     }
 
     @Export("usedMem")
     public static long usedMem() {
-        long theResult = 0;
-
-        Address theUsedStart = new Address(8);
-        int theUsedStartPtr = Address.getIntValue(theUsedStart, 0);
-
-        Address theCurrent = new Address(theUsedStartPtr);
-        while (Address.getStart(theCurrent) != 0) {
-            int theSize = Address.getIntValue(theCurrent, 0);
-            theResult += theSize;
-            int theNext = Address.getIntValue(theCurrent, 4);
-            theCurrent = new Address(theNext);
-        }
-        return theResult;
+        Address theControl = controlBlock();
+        return Address.getIntValue(theControl, USED_BYTES);
     }
 
     @Export("logMemoryLayout")
     public static void logMemoryLayout() {
+        Address theControl = controlBlock();
+        int theCurrentStart = Address.getIntValue(theControl, HEAP_START);
+        int theEnd = Address.getIntValue(theControl, BUMP_POINTER);
+        while (theCurrentStart < theEnd) {
+            int theHeader = Address.getIntValue(new Address(theCurrentStart), 0);
+            int theNext = theCurrentStart + (theHeader & SIZE_MASK);
+            if ((theHeader & FREE_FLAG) == 0) {
+                logMemoryLayoutBlock(theCurrentStart, 1, theNext);
+            } else {
+                logMemoryLayoutBlock(theCurrentStart, 0, theNext);
+            }
+            theCurrentStart = theNext;
+        }
+    }
 
-        Address theFreeStart = new Address(4);
-        int theFreeStartPtr = Address.getIntValue(theFreeStart, 0);
-
-        Address theCurrent = new Address(theFreeStartPtr);
-        while (Address.getStart(theCurrent) != 0) {
-            int theNext = Address.getIntValue(theCurrent, 4);
-            int theStart = Address.getStart(theCurrent);
+    private static int freeListOffsetFor(int aBlockSize) {
+        if (aBlockSize <= MAX_SMALL_BLOCK_SIZE) {
+            return SIZE_CLASS_FREE_LISTS + aBlockSize / GRANULARITY * 4;
+        }
+        return LARGE_FREE_LIST;
+    }
 
-            logMemoryLayoutBlock(theStart, 0, theNext);
+    private static void addToFreeList(Address aControl, Address aBlock, int aBlockSize) {
+        int theListOffset = freeListOffsetFor(aBlockSize);
+        Address.setIntValue(aBlock, 0, aBlockSize | FREE_FLAG);
+        Address.setIntValue(aBlock, 4, Address.getIntValue(aControl, theListOffset));
+        Address.setIntValue(aControl, theListOffset, Address.getStart(aBlock));
+    }
 
-            theCurrent = new Address(theNext);
+    private static void internalFree(Address aBlock) {
+        int theHeader = Address.getIntValue(aBlock, 0);
+        if ((theHeader & FREE_FLAG) != 0) {
+            // Already released
+            return;
         }
 
-        Address theUsedStart = new Address(8);
-        int theUsedStartPtr = Address.getIntValue(theUsedStart, 0);
-
-        theCurrent = new Address(theUsedStartPtr);
-        while (Address.getStart(theCurrent) != 0) {
-            int theStart = Address.getStart(theCurrent);
-            int theNext = Address.getIntValue(theCurrent, 4);
+        Address theControl = controlBlock();
+        int theSize = theHeader & SIZE_MASK;
+        Address.setIntValue(theControl, USED_BYTES, Address.getIntValue(theControl, USED_BYTES) - theSize);
+        addToFreeList(theControl, aBlock, theSize);
+    }
 
-            logMemoryLayoutBlock(theStart, 1, theNext);
+    @Export("free")
+    public static void free(Address aPointer) {
 
-            theCurrent = new Address(theNext);
-        }
-   }
+        int theStart = Address.getStart(aPointer);
+        theStart-=BLOCK_HEADER_SIZE;
 
-    private static void internalFree(Address aPointer) {
+        internalFree(new Address(theStart));
+    }
 
-        int theStart = Address.getStart(aPointer);
+    private static Address reserve(Address aControl, Address aBlock, int aBlockSize) {
+        Address.setIntValue(aBlock, 0, aBlockSize);
+        Address.setIntValue(aBlock, 4, 0);
+        Address.setIntValue(aControl, USED_BYTES, Address.getIntValue(aControl, USED_BYTES) + aBlockSize);
+        return new Address(Address.getStart(aBlock) + BLOCK_HEADER_SIZE);
+    }
 
-        // Remove the block from the list of allocated blocks
-        Address theAllocatedStart = new Address(8);
-        int theAllocatedStartPtr = Address.getIntValue(theAllocatedStart, 0);
+    private static void clear(Address aBlock, int aBlockSize) {
+        // Block sizes are a multiple of the granularity, so two words are wiped out at once
+        for (int i=BLOCK_HEADER_SIZE;i<aBlockSize;i+=8) {
+            Address.setIntValue(aBlock, i, 0);
+            Address.setIntValue(aBlock, i + 4, 0);
+        }
+    }
 
-        Address theCurrent = new Address(theAllocatedStartPtr);
+    private static int takeFromLargeFreeList(Address aControl, int aBlockSize) {
+        // We search the large free list for a suitable sized block
         int thePrevious = 0;
-        while(Address.getStart(theCurrent) != 0) {
-
-            int theCurrentStart = Address.getStart(theCurrent);
+        int theCurrentStart = Address.getIntValue(aControl, LARGE_FREE_LIST);
+        while (theCurrentStart != 0) {
+            Address theCurrent = new Address(theCurrentStart);
+            int theSize = Address.getIntValue(theCurrent, 0) & SIZE_MASK;
             int theNext = Address.getIntValue(theCurrent, 4);
-
-            if (theCurrentStart == theStart) {
-                // This is the block
-                // Remove it from the list of allocated blocks
+            if (theSize >= aBlockSize) {
                 if (thePrevious == 0) {
-                    Address.setIntValue(theAllocatedStart, 0, theNext);
+                    Address.setIntValue(aControl, LARGE_FREE_LIST, theNext);
                 } else {
-                    Address thePrevPtr = new Address(thePrevious);
-                    Address.setIntValue(thePrevPtr, 4, theNext);
+                    Address.setIntValue(new Address(thePrevious), 4, theNext);
                 }
 
-                // Ok, now we prepend it to the list of free blocks
-                Address theFreeStart = new Address(4);
-                int theFreeStartPtr = Address.getIntValue(theFreeStart, 0);
-
-                Address.setIntValue(theCurrent, 4, theFreeStartPtr);
-                Address.setIntValue(theFreeStart, 0, theCurrentStart);
-                return;
+                int theRemaining = theSize - aBlockSize;
+                if (theRemaining > 0) {
+                    // The remainder is a free block on its own, maybe of a small size class
+                    addToFreeList(aControl, new Address(theCurrentStart + aBlockSize), theRemaining);
+                }
+                return theCurrentStart;
             }
 
             thePrevious = theCurrentStart;
-            theCurrent = new Address(theNext);
+            theCurrentStart = theNext;
         }
-    }
-
-    @Export("free")
-    public static void free(Address aPointer) {
-
-        int theStart = Address.getStart(aPointer);
-        theStart-=8;
-
-        internalFree(new Address(theStart));
+        return 0;
     }
 
     @Export("malloc")
     public static Address malloc(int aSize) {
 
         // Overhead for header
-        aSize+=8;
-
-        Address theFreeStart = new Address(4);
-        int theFreeStartPtr = Address.getIntValue(theFreeStart, 0);
-
-        // We search the free list for a suitable sized block
-        int thePrevious = 0;
-        Address theCurrent = new Address(theFreeStartPtr);
-        while(Address.getStart(theCurrent) != 0) {
-            int theSize = Address.getIntValue(theCurrent, 0);
-            int theNext = Address.getIntValue(theCurrent, 4);
-            if (theSize >= aSize) {
-                int theRemaining = theSize - aSize;
-
-
-                if (theRemaining > 8) {
-                    Address.setIntValue(theCurrent, 0, aSize);
-
-                    // Block can be safely split
-                    int theNewFreeStart = Address.getStart(theCurrent) + aSize;
-                    int theNewFreeSize = theSize - aSize;
-                    Address theNewFree = new Address(theNewFreeStart);
-                    Address.setIntValue(theNewFree, 0, theNewFreeSize);
-                    Address.setIntValue(theNewFree, 4, theNext);
-
-                    if (thePrevious == 0) {
-                        Address.setIntValue(theFreeStart, 0, theNewFreeStart);
-                    } else {
-                        Address thePrev = new Address(thePrevious);
-                        Address.setIntValue(thePrev, 4, theNewFreeStart);
-                    }
-                } else {
-                    // Remaining size would be too small, be have to completely occupy it
-                    Address.setIntValue(theCurrent, 0, theSize);
-
-                    if (thePrevious == 0) {
-                        Address.setIntValue(theFreeStart, 0, theNext);
-                    } else {
-                        Address thePrev = new Address(thePrevious);
-                        Address.setIntValue(thePrev, 4, theNext);
-                    }
-                }
-
-                // Add the current block to the allocated block ist by prepending it to the list
-                Address theReservedListStart = new Address(8);
-
-                int theReservedListPtr = Address.getIntValue(theReservedListStart, 0);
-                int theCurrentStart = Address.getStart(theCurrent);
-
-                Address.setIntValue(theCurrent, 4, theReservedListPtr);
-                Address.setIntValue(theReservedListStart, 0, theCurrentStart);
-
-                // Wipeout data
-                int theDataStart = theCurrentStart + 8;
-                Address theNewData = new Address(theDataStart);
+        int theBlockSize = (aSize + BLOCK_HEADER_SIZE + GRANULARITY - 1) & SIZE_MASK;
+
+        Address theControl = controlBlock();
+        int theListOffset = freeListOffsetFor(theBlockSize);
+
+        if (theListOffset != LARGE_FREE_LIST) {
+            // Every block in the list of a size class fits
+            int theFreeStart = Address.getIntValue(theControl, theListOffset);
+            if (theFreeStart != 0) {
+                Address theBlock = new Address(theFreeStart);
+                Address.setIntValue(theControl, theListOffset, Address.getIntValue(theBlock, 4));
+                clear(theBlock, theBlockSize);
+                return reserve(theControl, theBlock, theBlockSize);
+            }
+        } else {
+            int theFreeStart = takeFromLargeFreeList(theControl, theBlockSize);
+            if (theFreeStart != 0) {
+                Address theBlock = new Address(theFreeStart);
+                clear(theBlock, theBlockSize);
+                return reserve(theControl, theBlock, theBlockSize);
+            }
+        }
 
-                for (int i=0;i<aSize-16;i+=4) {
-                    Address.setIntValue(theNewData, i, 0);
-                }
+        // Nothing to reuse, so the block is taken from the bump pointer region.
+        // This memory was never used before, and is already filled with zeros
+        int theBumpPointer = Address.getIntValue(theControl, BUMP_POINTER);
+        if (theBumpPointer + theBlockSize <= Address.getIntValue(theControl, HEAP_LIMIT)) {
+            Address.setIntValue(theControl, BUMP_POINTER, theBumpPointer + theBlockSize);
+            return reserve(theControl, new Address(theBumpPointer), theBlockSize);
+        }
 
-                return theNewData;
+        // As a last resort, small blocks are split from larger ones
+        if (theListOffset != LARGE_FREE_LIST) {
+            int theFreeStart = takeFromLargeFreeList(theControl, theBlockSize);
+            if (theFreeStart != 0) {
+                Address theBlock = new Address(theFreeStart);
+                clear(theBlock, theBlockSize);
+                return reserve(theControl, theBlock, theBlockSize);
             }
-
-            thePrevious = Address.getStart(theCurrent);
-            theCurrent = new Address(theNext);
         }
+
         Address.unreachable();
         return new Address(0);
     }
@@ -253,87 +285,181 @@ public class MemoryManager {
         Address.setIntValue(theAddress, 0, aType);
         Address.setIntValue(theAddress, 4, aVTableIndex);
 
+        // Only objects are scanned for references, raw memory blocks are not
+        Address theBlock = new Address(Address.getStart(theAddress) - BLOCK_HEADER_SIZE);
+        Address.setIntValue(theBlock, 0, Address.getIntValue(theBlock, 0) | OBJECT_FLAG);
+
         return theAddress;
     }
 
-    private static boolean isUsed(Address aOwningBlock) {
+    private static boolean isObject(Address aControl, int aReference) {
+        if (aReference < Address.getIntValue(aControl, HEAP_START) + BLOCK_HEADER_SIZE) {
+            return false;
+        }
+        if (aReference >= Address.getIntValue(aControl, BUMP_POINTER)) {
+            return false;
+        }
+        int theHeader = Address.getIntValue(new Address(aReference - BLOCK_HEADER_SIZE), 0);
+        return (theHeader & (OBJECT_FLAG | FREE_FLAG)) == OBJECT_FLAG;
+    }
 
-        int theOwningStart = Address.getStart(aOwningBlock);
-        int theOwningData = theOwningStart + 8;
+    private static void mark(Address aControl, int aReference) {
+        if (!isObject(aControl, aReference)) {
+            return;
+        }
 
-        // First of all we check the stack
-        int theStackStart = Address.getStackTop();
-        int theStackTop = Address.getMemorySize();
-        while(theStackStart < theStackTop) {
-            Address theCurrent = new Address(theStackStart);
-            int theReference = Address.getIntValue(theCurrent, 0);
-            if (theReference == theOwningData) {
-                return true;
-            }
-            theStackStart += 4;
+        Address theBlock = new Address(aReference - BLOCK_HEADER_SIZE);
+        int theHeader = Address.getIntValue(theBlock, 0);
+        if ((theHeader & MARK_FLAG) != 0) {
+            return;
         }
+        Address.setIntValue(theBlock, 0, theHeader | MARK_FLAG);
 
-        // Nothing on the stack, we check the allocated memory blovks
-        Address theAllocatedStart= new Address(8);
-        int theAllocatedStartPtr = Address.getIntValue(theAllocatedStart, 0);
-
-        Address theCurrent = new Address(theAllocatedStartPtr);
-        while(Address.getStart(theCurrent) != 0) {
-
-            int theCurrentStart = Address.getStart(theCurrent);
-            if (theOwningStart != theCurrentStart) {
-                int theSize = Address.getIntValue(theCurrent, 0) - 8;
-                int thePosition = 8;
-                while(thePosition < theSize) {
-                    int theReference = Address.getIntValue(theCurrent, thePosition);
-                    if (theReference == theOwningData) {
-                        return true;
-                    }
-                    thePosition += 4;
-                }
+        int theMarkStack = Address.getIntValue(aControl, MARK_STACK_POINTER);
+        if (theMarkStack + 4 > Address.getIntValue(aControl, MARK_STACK_LIMIT)) {
+            // No more room, the object is scanned later by walking the heap
+            Address.setIntValue(aControl, MARK_STACK_OVERFLOW, 1);
+            return;
+        }
+        Address.setIntValue(new Address(theMarkStack), 0, aReference);
+        Address.setIntValue(aControl, MARK_STACK_POINTER, theMarkStack + 4);
+    }
+
+    private static void scan(Address aControl, int aReference) {
+        Address theObject = new Address(aReference);
+        int theVTable = Address.getIntValue(theObject, 4);
+        if (theVTable >= Address.getIntValue(aControl, HEAP_START)) {
+            // Runtime generated types have their virtual method table allocated on the heap
+            Address theBlock = new Address(theVTable - BLOCK_HEADER_SIZE);
+            Address.setIntValue(theBlock, 0, Address.getIntValue(theBlock, 0) | MARK_FLAG);
+        }
+
+        int thePointerMap = Address.getIntValue(new Address(theVTable), VTABLE_POINTERMAP_OFFSET);
+        if (thePointerMap == 0) {
+            return;
+        }
+        Address theMap = new Address(thePointerMap);
+        int theCount = Address.getIntValue(theMap, 0);
+        if (theCount == ARRAY_OF_REFERENCES) {
+            int theLength = Address.getIntValue(theObject, ARRAY_LENGTH_OFFSET);
+            for (int i=0;i<theLength;i++) {
+                mark(aControl, Address.getIntValue(theObject, ARRAY_DATA_OFFSET + i * 4));
             }
+            return;
+        }
+        for (int i=1;i<=theCount;i++) {
+            mark(aControl, Address.getIntValue(theObject, Address.getIntValue(theMap, i * 4)));
+        }
+    }
 
-            int theNext = Address.getIntValue(theCurrent, 4);
-            theCurrent = new Address(theNext);
+    private static void drainMarkStack(Address aControl) {
+        int theBase = Address.getIntValue(aControl, MARK_STACK_BASE);
+        int theMarkStack = Address.getIntValue(aControl, MARK_STACK_POINTER);
+        while (theMarkStack > theBase) {
+            theMarkStack -= 4;
+            Address theEntry = new Address(theMarkStack);
+            int theReference = Address.getIntValue(theEntry, 0);
+            // The mark stack lives in memory the allocator expects to be zero
+            Address.setIntValue(theEntry, 0, 0);
+            Address.setIntValue(aControl, MARK_STACK_POINTER, theMarkStack);
+
+            scan(aControl, theReference);
+
+            theMarkStack = Address.getIntValue(aControl, MARK_STACK_POINTER);
         }
+    }
 
-        return false;
+    private static void rescanMarkedObjects(Address aControl) {
+        int theCurrentStart = Address.getIntValue(aControl, HEAP_START);
+        int theEnd = Address.getIntValue(aControl, BUMP_POINTER);
+        while (theCurrentStart < theEnd) {
+            int theHeader = Address.getIntValue(new Address(theCurrentStart), 0);
+            if ((theHeader & (MARK_FLAG | OBJECT_FLAG)) == (MARK_FLAG | OBJECT_FLAG)) {
+                scan(aControl, theCurrentStart + BLOCK_HEADER_SIZE);
+                drainMarkStack(aControl);
+            }
+            theCurrentStart += theHeader & SIZE_MASK;
+        }
+    }
+
+    private static void sweep(Address aControl) {
+        clearFreeLists(aControl);
+
+        int theUsed = 0;
+        int theFreeStart = 0;
+        int theFreeSize = 0;
+        int theCurrentStart = Address.getIntValue(aControl, HEAP_START);
+        int theEnd = Address.getIntValue(aControl, BUMP_POINTER);
+        while (theCurrentStart < theEnd) {
+            Address theCurrent = new Address(theCurrentStart);
+            int theHeader = Address.getIntValue(theCurrent, 0);
+            int theSize = theHeader & SIZE_MASK;
+            if ((theHeader & MARK_FLAG) != 0) {
+                Address.setIntValue(theCurrent, 0, theHeader & ~MARK_FLAG);
+                theUsed += theSize;
+                if (theFreeStart != 0) {
+                    addToFreeList(aControl, new Address(theFreeStart), theFreeSize);
+                    theFreeStart = 0;
+                }
+            } else if (theFreeStart == 0) {
+                // Dead or already free, so it is joined with the following free blocks
+                theFreeStart = theCurrentStart;
+                theFreeSize = theSize;
+            } else {
+                theFreeSize += theSize;
+            }
+            theCurrentStart += theSize;
+        }
+        if (theFreeStart != 0) {
+            addToFreeList(aControl, new Address(theFreeStart), theFreeSize);
+        }
+        Address.setIntValue(aControl, USED_BYTES, theUsed);
     }
 
     @Export("GC")
     public static void GC() {
-        Address theUsedStart = new Address(8);
-
-        int theUsedStartPtr = Address.getIntValue(theUsedStart, 0);
-        Address theCurrent = new Address(theUsedStartPtr);
-        while(Address.getStart(theCurrent) != 0) {
+        Address theControl = controlBlock();
 
-            int theNext = Address.getIntValue(theCurrent, 4);
+        // The mark stack is placed in the unused memory between the heap and the stack
+        int theMarkStack = Address.getIntValue(theControl, BUMP_POINTER);
+        Address.setIntValue(theControl, MARK_STACK_BASE, theMarkStack);
+        Address.setIntValue(theControl, MARK_STACK_POINTER, theMarkStack);
+        Address.setIntValue(theControl, MARK_STACK_LIMIT, Address.getStackTop());
+        Address.setIntValue(theControl, MARK_STACK_OVERFLOW, 0);
 
-            if (!isUsed(theCurrent)) {
-                internalFree(theCurrent);
-            }
+        // Every reference on the stack is a root, this includes the static data pinned by the bootstrap
+        int theStackStart = Address.getStackTop();
+        int theStackEnd = Address.getMemorySize();
+        while (theStackStart + 4 <= theStackEnd) {
+            mark(theControl, Address.getIntValue(new Address(theStackStart), 0));
+            drainMarkStack(theControl);
+            theStackStart += 4;
+        }
 
-            theCurrent = new Address(theNext);
+        while (Address.getIntValue(theControl, MARK_STACK_OVERFLOW) != 0) {
+            Address.setIntValue(theControl, MARK_STACK_OVERFLOW, 0);
+            rescanMarkedObjects(theControl);
         }
+
+        sweep(theControl);
     }
 
-    public static Address newArray(int aSize, int aType, int aVTableIndex) {
+    public static Address newArray(int aSize, int aElementSize, int aType, int aVTableIndex) {
 
         // Arrays are normal objects. Their data are a length field plus n * data
-        Address theObject = newObject(16 + 4 + 4 * aSize, aType, aVTableIndex);
+        Address theObject = newObject(16 + 4 + aElementSize * aSize, aType, aVTableIndex);
 
         Address.setIntValue(theObject, 16, aSize);
         return theObject;
     }
 
-    public static Address newArray(int aSize1, int aSize2, int aType, int aVTableIndex) {
-        Address theResult = newArray(aSize1, aType, aVTableIndex);
+    public static Address newArray(int aSize1, int aSize2, int aElementSize, int aType, int aVTableIndex, int aSubArrayVTableIndex) {
+        Address theResult = newArray(aSize1, 4, aType, aVTableIndex);
         for (int i=0;i<aSize1;i++) {
             int theOffset = 16 + 4 + 4 * i;
-            Address theSubArray = newArray(aSize2, aType, aVTableIndex);
+            Address theSubArray = newArray(aSize2, aElementSize, aType, aSubArrayVTableIndex);
             Address.setIntValue(theResult, theOffset, Address.getStart(theSubArray));
         }
         return theResult;
     }
-}
\ No newline at end of file
+}
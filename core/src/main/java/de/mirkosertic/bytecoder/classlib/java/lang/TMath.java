@@ -71,8 +71,12 @@ public class TMath extends TObject {
     @Import(module = "math", name = "tan")
     public static native double tan(double aValue);
 
-    @Import(module = "math", name = "max")
-    public static native long max(long aValue1, long aValue2);
+    public static long max(long aValue1, long aValue2) {
+        if (aValue1 > aValue2) {
+            return aValue1;
+        }
+        return aValue2;
+    }
 
     @Import(module = "math", name = "max")
     public static native int max(int aValue1, int aValue2);
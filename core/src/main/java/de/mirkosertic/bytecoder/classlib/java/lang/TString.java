@@ -74,8 +74,19 @@ public class TString extends TObject implements TSerializable, TComparable<TStri
     }
 
     @Override
-    public int compareTo(TString o) {
-        return 0;
+    public int compareTo(TString aOtherString) {
+        byte[] theOtherData = aOtherString.data;
+        int theLength = data.length;
+        if (theOtherData.length < theLength) {
+            theLength = theOtherData.length;
+        }
+        for (int i = 0; i < theLength; i++) {
+            int theDifference = data[i] - theOtherData[i];
+            if (theDifference != 0) {
+                return theDifference;
+            }
+        }
+        return data.length - theOtherData.length;
     }
 
     @Override
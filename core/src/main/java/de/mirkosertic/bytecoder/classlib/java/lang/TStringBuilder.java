@@ -22,21 +22,36 @@ public class TStringBuilder extends TAbstractStringBuilder implements TSerializa
 
     private static final TDecimalFormatSymbols FORMAT_SYMBOLS = new TDecimalFormatSymbols();
 
+    private static final int DEFAULT_CAPACITY = 16;
+
     private byte[] byteData;
+    private int length;
 
     @NoExceptionCheck
     public TStringBuilder() {
-        byteData = new byte[0];
+        byteData = new byte[DEFAULT_CAPACITY];
+        length = 0;
+    }
+
+    @NoExceptionCheck
+    public TStringBuilder(int aCapacity) {
+        byteData = new byte[aCapacity];
+        length = 0;
     }
 
     @NoExceptionCheck
     public TStringBuilder(byte[] aData) {
         byteData = aData;
+        length = aData.length;
     }
 
     @Override
     @NoExceptionCheck
     public int length() {
+        return length;
+    }
+
+    public int capacity() {
         return byteData.length;
     }
 
@@ -45,27 +60,71 @@ public class TStringBuilder extends TAbstractStringBuilder implements TSerializa
         return (char) byteData[aIndex];
     }
 
-    public void internalAdd(byte[] aOtherData) {
-        byte[] theNewData = new byte[byteData.length + aOtherData.length];
-        int offset = 0;
-        for (int i = 0; i< byteData.length; i++) {
-            theNewData[offset++] = byteData[i];
+    public void setCharAt(int aIndex, char aValue) {
+        byteData[aIndex] = (byte) aValue;
+    }
+
+    public void ensureCapacity(int aMinimumCapacity) {
+        if (aMinimumCapacity > byteData.length) {
+            int theNewCapacity = byteData.length * 2 + 2;
+            if (theNewCapacity < aMinimumCapacity) {
+                theNewCapacity = aMinimumCapacity;
+            }
+            byte[] theNewData = new byte[theNewCapacity];
+            for (int i = 0; i < length; i++) {
+                theNewData[i] = byteData[i];
+            }
+            byteData = theNewData;
         }
-        for (int i=0;i<aOtherData.length;i++) {
-            theNewData[offset++] = aOtherData[i];
+    }
+
+    public void setLength(int aNewLength) {
+        ensureCapacity(aNewLength);
+        for (int i = length; i < aNewLength; i++) {
+            byteData[i] = 0;
         }
-        byteData = theNewData;
+        length = aNewLength;
     }
 
-    public TStringBuilder reverse() {
-        byte[] theReversed = new byte[byteData.length];
-        for (int i=0;i<byteData.length;i++) {
-            theReversed[byteData.length -1 -i] = byteData[i];
+    public void trimToSize() {
+        if (length < byteData.length) {
+            byteData = copyOfData();
         }
-        byteData = theReversed;
+    }
+
+    public void internalAdd(byte[] aOtherData) {
+        int theOtherLength = aOtherData.length;
+        ensureCapacity(length + theOtherLength);
+        for (int i = 0; i < theOtherLength; i++) {
+            byteData[length++] = aOtherData[i];
+        }
+    }
+
+    public TStringBuilder reverse() {
+        reverse(0, length - 1);
         return this;
     }
 
+    private void reverse(int aStart, int aEnd) {
+        int theCount = (aEnd - aStart + 1) / 2;
+        for (int i = 0; i < theCount; i++) {
+            int theLeft = aStart + i;
+            int theRight = aEnd - i;
+            byte theTemp = byteData[theLeft];
+            byteData[theLeft] = byteData[theRight];
+            byteData[theRight] = theTemp;
+        }
+    }
+
+    /**
+     * Moves everything appended after aAppendStart to aOffset, the data between is moved behind it.
+     */
+    private void moveAppendedTo(int aOffset, int aAppendStart) {
+        reverse(aOffset, aAppendStart - 1);
+        reverse(aAppendStart, length - 1);
+        reverse(aOffset, length - 1);
+    }
+
     @Override
     public TStringBuilder append(TCharSequence aCharSequence) {
         byte[] theOtherData = aCharSequence.getBytes();
@@ -80,7 +139,8 @@ public class TStringBuilder extends TAbstractStringBuilder implements TSerializa
     }
 
     public TStringBuilder append(char aValue) {
-        internalAdd(new byte[] {(byte) aValue});
+        ensureCapacity(length + 1);
+        byteData[length++] = (byte) aValue;
         return this;
     }
 
@@ -95,69 +155,77 @@ public class TStringBuilder extends TAbstractStringBuilder implements TSerializa
     }
 
     public void appendInternal(double aValue, long aMultiplier) {
-        long theA;
-        long theB;
         if (aValue < 0) {
-            theA = (long) Math.ceil(aValue);
-            theB = - (long) Math.ceil((aValue % 1) * 10000);
-        } else {
-            theA = (long) Math.floor(aValue);
-            theB = (long) Math.floor((aValue % 1) * 10000);
+            append('-');
+            aValue = -aValue;
+        }
+        long theA = (long) Math.floor(aValue);
+        // Round the fraction, so values not exactly representable as float or double print as expected
+        int theB = (int) Math.floor((aValue % 1) * 10000 + 0.5);
+        if (theB >= 10000) {
+            theA++;
+            theB -= 10000;
         }
         append(theA);
 
-        StringBuilder theTemp = new StringBuilder();
-        theTemp.append(theB);
-
-        for (int i=theTemp.length()-1;i>=0;i--) {
-            char theChar = theTemp.charAt(i);
-            if (theChar != '0') {
-                append(FORMAT_SYMBOLS.getDecimalSeparator());
-                for (int j=0;j<=i;j++) {
-                    append(theTemp.charAt(j));
-                }
-                return;
-            }
+        // Four fraction digits without trailing zeros, but at least one
+        int theDigits = 4;
+        while (theDigits > 1 && theB % 10 == 0) {
+            theB = theB / 10;
+            theDigits--;
         }
 
-        append(FORMAT_SYMBOLS.getDecimalSeparator());
-        append('0');
+        ensureCapacity(length + theDigits + 1);
+        byteData[length++] = (byte) FORMAT_SYMBOLS.getDecimalSeparator();
+        for (int i = length + theDigits - 1; i >= length; i--) {
+            byteData[i] = (byte) ('0' + theB % 10);
+            theB = theB / 10;
+        }
+        length += theDigits;
     }
 
     public TStringBuilder append(long aValue) {
-        boolean isNegative = false;
+        if (aValue == Long.MIN_VALUE) {
+            internalAdd("-9223372036854775808".getBytes());
+            return this;
+        }
         if (aValue < 0) {
-            isNegative = true;
-            aValue=-aValue;
-        }
-        byte[] theBytes = new byte[20];
-        int theOffset = 0;
-        do {
-            int theRemainder = (int) aValue % 10;
-            theBytes[theOffset++] = (byte) theRemainder;
-            aValue = aValue / 10;
-        } while (aValue > 0);
-
-        byte[] theNewData;
-        int theStart;
-        if (isNegative) {
-            theNewData = new byte[theOffset + 1];
-            theNewData[0] = '-';
-            theStart = 1;
-        } else {
-            theNewData = new byte[theOffset];
-            theStart = 0;
+            append('-');
+            aValue = -aValue;
         }
-        for (int i=0;i<theOffset;i++) {
-            theNewData[theStart + i] = (byte) (48 + theBytes[theOffset - 1 - i]);
+        int theDigits = 1;
+        for (long theRemaining = aValue / 10; theRemaining > 0; theRemaining = theRemaining / 10) {
+            theDigits++;
         }
-
-        internalAdd(theNewData);
+        ensureCapacity(length + theDigits);
+        for (int i = length + theDigits - 1; i >= length; i--) {
+            byteData[i] = (byte) ('0' + (int) (aValue % 10));
+            aValue = aValue / 10;
+        }
+        length += theDigits;
         return this;
     }
 
     public TStringBuilder append(int aValue) {
-        return append((long) aValue);
+        if (aValue == Integer.MIN_VALUE) {
+            internalAdd("-2147483648".getBytes());
+            return this;
+        }
+        if (aValue < 0) {
+            append('-');
+            aValue = -aValue;
+        }
+        int theDigits = 1;
+        for (int theRemaining = aValue / 10; theRemaining > 0; theRemaining = theRemaining / 10) {
+            theDigits++;
+        }
+        ensureCapacity(length + theDigits);
+        for (int i = length + theDigits - 1; i >= length; i--) {
+            byteData[i] = (byte) ('0' + aValue % 10);
+            aValue = aValue / 10;
+        }
+        length += theDigits;
+        return this;
     }
 
     public TStringBuilder append(Object aObject) {
@@ -191,15 +259,86 @@ public class TStringBuilder extends TAbstractStringBuilder implements TSerializa
         return this;
     }
 
+    public TStringBuilder insert(int aOffset, TString aString) {
+        int theStart = length;
+        append(aString);
+        moveAppendedTo(aOffset, theStart);
+        return this;
+    }
+
+    public TStringBuilder insert(int aOffset, TCharSequence aCharSequence) {
+        int theStart = length;
+        append(aCharSequence);
+        moveAppendedTo(aOffset, theStart);
+        return this;
+    }
+
+    public TStringBuilder insert(int aOffset, char aValue) {
+        ensureCapacity(length + 1);
+        for (int i = length; i > aOffset; i--) {
+            byteData[i] = byteData[i - 1];
+        }
+        byteData[aOffset] = (byte) aValue;
+        length++;
+        return this;
+    }
+
+    public TStringBuilder insert(int aOffset, int aValue) {
+        int theStart = length;
+        append(aValue);
+        moveAppendedTo(aOffset, theStart);
+        return this;
+    }
+
+    public TStringBuilder insert(int aOffset, long aValue) {
+        int theStart = length;
+        append(aValue);
+        moveAppendedTo(aOffset, theStart);
+        return this;
+    }
+
+    public TStringBuilder insert(int aOffset, Object aObject) {
+        int theStart = length;
+        append(aObject);
+        moveAppendedTo(aOffset, theStart);
+        return this;
+    }
+
+    public TStringBuilder delete(int aStart, int aEnd) {
+        if (aEnd > length) {
+            aEnd = length;
+        }
+        int theCount = aEnd - aStart;
+        if (theCount > 0) {
+            for (int i = aEnd; i < length; i++) {
+                byteData[i - theCount] = byteData[i];
+            }
+            length -= theCount;
+        }
+        return this;
+    }
+
+    public TStringBuilder deleteCharAt(int aIndex) {
+        return delete(aIndex, aIndex + 1);
+    }
+
+    private byte[] copyOfData() {
+        byte[] theResult = new byte[length];
+        for (int i = 0; i < length; i++) {
+            theResult[i] = byteData[i];
+        }
+        return theResult;
+    }
+
     @Override
     @NoExceptionCheck
     public byte[] getBytes() {
-        return byteData;
+        return copyOfData();
     }
 
     @Override
     @NoExceptionCheck
     public String toString() {
-        return new String(byteData);
+        return new String(copyOfData());
     }
-}
\ No newline at end of file
+}
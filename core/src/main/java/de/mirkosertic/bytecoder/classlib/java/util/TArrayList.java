@@ -16,6 +16,8 @@
 package de.mirkosertic.bytecoder.classlib.java.util;
 
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.function.Predicate;
 
 import de.mirkosertic.bytecoder.classlib.java.lang.TSystem;
 
@@ -23,11 +25,19 @@ public class TArrayList<T> implements TList<T> {
 
     private static final int INITIAL_CAPACITY = 10;
 
+    private static final int INSERTION_SORT_THRESHOLD = 8;
+
     private Object[] data;
     private int currentLength;
 
     public TArrayList(TCollection<T> aData) {
-        this();
+        data = aData.toArray();
+        currentLength = data.length;
+    }
+
+    public TArrayList(int aInitialCapacity) {
+        data = new Object[aInitialCapacity];
+        currentLength = 0;
     }
 
     public TArrayList() {
@@ -35,6 +45,24 @@ public class TArrayList<T> implements TList<T> {
         currentLength =0;
     }
 
+    public void ensureCapacity(int aMinCapacity) {
+        if (aMinCapacity > data.length) {
+            int theNewCapacity = data.length + (data.length >> 1);
+            if (theNewCapacity < aMinCapacity) {
+                theNewCapacity = aMinCapacity;
+            }
+            Object[] theNewData = new Object[theNewCapacity];
+            TSystem.arraycopy(data, 0, theNewData, 0, currentLength);
+            data = theNewData;
+        }
+    }
+
+    public void trimToSize() {
+        if (currentLength < data.length) {
+            data = toArray();
+        }
+    }
+
     @Override
     public Object[] toArray() {
         Object[] theNewArray = new Object[currentLength];
@@ -50,13 +78,8 @@ public class TArrayList<T> implements TList<T> {
 
     @Override
     public boolean add(T aObject) {
-        currentLength++;
-        if (currentLength >= data.length) {
-            Object[] theNewData = new Object[data.length + INITIAL_CAPACITY];
-            TSystem.arraycopy(data, 0, theNewData, 0, data.length);
-            data = theNewData;
-        }
-        data[currentLength-1] = aObject;
+        ensureCapacity(currentLength + 1);
+        data[currentLength++] = aObject;
         return true;
     }
 
@@ -65,7 +88,7 @@ public class TArrayList<T> implements TList<T> {
         if (aIndex >=currentLength || aIndex < 0) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        return (T) data[aIndex];
+        return elementOf(data[aIndex]);
     }
 
     @Override
@@ -76,15 +99,19 @@ public class TArrayList<T> implements TList<T> {
 
     @Override
     public boolean contains(T aObject) {
+        return indexOf(aObject) >= 0;
+    }
+
+    public int indexOf(Object aObject) {
         for (int i = 0; i<currentLength; i++) {
             Object theData = data[i];
             if (theData != null) {
-                if (data[i].equals(aObject)) {
-                    return true;
+                if (theData.equals(aObject)) {
+                    return i;
                 }
             }
         }
-        return false;
+        return -1;
     }
 
     @Override
@@ -94,21 +121,15 @@ public class TArrayList<T> implements TList<T> {
 
     @Override
     public boolean remove(Object aObject) {
-        for (int i = 0; i < currentLength ; i++) {
-            Object theData = data[i];
-            if (theData != null) {
-                if (data[i].equals(aObject)) {
-                    if (i!= currentLength -1) {
-                        for (int k = i + 1; k < currentLength; k++) {
-                            data[k - 1] = data[k];
-                        }
-                    }
-                    currentLength--;
-                    return true;
-                }
-            }
+        int theIndex = indexOf(aObject);
+        if (theIndex < 0) {
+            return false;
+        }
+        for (int k = theIndex + 1; k < currentLength; k++) {
+            data[k - 1] = data[k];
         }
-        return false;
+        data[--currentLength] = null;
+        return true;
     }
 
     @Override
@@ -124,7 +145,7 @@ public class TArrayList<T> implements TList<T> {
 
             @Override
             public T next() {
-                return (T) data[index++];
+                return elementOf(data[index++]);
             }
 
             @Override
@@ -136,23 +157,109 @@ public class TArrayList<T> implements TList<T> {
 
     @Override
     public boolean addAll(Collection<T> aOtherCollection) {
-        boolean theChanged = false;
-        for (T aValue : aOtherCollection) {
-            if (add(aValue)) {
-                theChanged = true;
-            }
+        Object[] theOtherData = aOtherCollection.toArray();
+        int theOtherLength = theOtherData.length;
+        if (theOtherLength == 0) {
+            return false;
         }
-        return theChanged;
+        ensureCapacity(currentLength + theOtherLength);
+        TSystem.arraycopy(theOtherData, 0, data, currentLength, theOtherLength);
+        currentLength += theOtherLength;
+        return true;
     }
 
     @Override
     public boolean removeAll(Collection<T> aOtherCollection) {
-        boolean theChanged = false;
-        for (T aValue : aOtherCollection) {
-            if (remove(aValue)) {
-                theChanged = true;
+        int theNewLength = 0;
+        for (int i = 0; i < currentLength; i++) {
+            T theData = elementOf(data[i]);
+            if (theData == null || !aOtherCollection.contains(theData)) {
+                data[theNewLength++] = theData;
+            }
+        }
+        return truncateTo(theNewLength);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super T> aFilter) {
+        int theNewLength = 0;
+        for (int i = 0; i < currentLength; i++) {
+            T theData = elementOf(data[i]);
+            if (!aFilter.test(theData)) {
+                data[theNewLength++] = theData;
+            }
+        }
+        return truncateTo(theNewLength);
+    }
+
+    private boolean truncateTo(int aNewLength) {
+        int theOldLength = currentLength;
+        if (aNewLength == theOldLength) {
+            return false;
+        }
+        currentLength = aNewLength;
+        for (int i = aNewLength; i < theOldLength; i++) {
+            data[i] = null;
+        }
+        return true;
+    }
+
+    @Override
+    public void sort(Comparator<? super T> aComparator) {
+        if (currentLength > 1) {
+            mergeSort(data, new Object[currentLength], 0, currentLength, aComparator);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T elementOf(Object aElement) {
+        return (T) aElement;
+    }
+
+    private static <T> int compare(Comparator<? super T> aComparator, Object aObject1, Object aObject2) {
+        T theObject1 = elementOf(aObject1);
+        T theObject2 = elementOf(aObject2);
+        if (aComparator == null) {
+            // Without a comparator the elements are sorted by their natural order
+            Comparable<T> theComparable = elementOf(theObject1);
+            return theComparable.compareTo(theObject2);
+        }
+        return aComparator.compare(theObject1, theObject2);
+    }
+
+    private static <T> void mergeSort(Object[] aData, Object[] aBuffer, int aFrom, int aTo, Comparator<? super T> aComparator) {
+        if (aTo - aFrom <= INSERTION_SORT_THRESHOLD) {
+            for (int i = aFrom + 1; i < aTo; i++) {
+                Object theCurrent = aData[i];
+                int j = i - 1;
+                while (j >= aFrom && compare(aComparator, aData[j], theCurrent) > 0) {
+                    aData[j + 1] = aData[j];
+                    j--;
+                }
+                aData[j + 1] = theCurrent;
+            }
+            return;
+        }
+
+        int theMiddle = (aFrom + aTo) / 2;
+        mergeSort(aData, aBuffer, aFrom, theMiddle, aComparator);
+        mergeSort(aData, aBuffer, theMiddle, aTo, aComparator);
+        if (compare(aComparator, aData[theMiddle - 1], aData[theMiddle]) <= 0) {
+            // Both halves are already in order
+            return;
+        }
+
+        for (int i = aFrom; i < aTo; i++) {
+            aBuffer[i] = aData[i];
+        }
+        int theLeft = aFrom;
+        int theRight = theMiddle;
+        for (int i = aFrom; i < aTo; i++) {
+            if (theRight >= aTo || (theLeft < theMiddle && compare(aComparator, aBuffer[theLeft], aBuffer[theRight]) <= 0)) {
+                aData[i] = aBuffer[theLeft++];
+            } else {
+                aData[i] = aBuffer[theRight++];
             }
         }
-        return theChanged;
     }
-}
\ No newline at end of file
+}
@@ -15,139 +15,197 @@
  */
 package de.mirkosertic.bytecoder.classlib.java.util;
 
-import java.util.Map;
-
 import de.mirkosertic.bytecoder.classlib.java.io.TSerializable;
 import de.mirkosertic.bytecoder.classlib.java.lang.TCloneable;
 
 public class THashMap<K, V> extends TAbstractMap<K, V> implements TSerializable, TCloneable {
 
-    private static class Bucket<K, V> {
+    private static final int DEFAULT_CAPACITY = 16;
 
-        private final int hashCode;
-        private final TArrayList<AbstractEntry<K, V>> values;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
 
-        public Bucket(int aHashCode) {
-            hashCode = aHashCode;
-            values = new TArrayList<>();
-        }
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
-        public boolean containsKey(K aKey) {
-            for (int i=0;i<values.size();i++) {
-                Entry<K, V> theEntry = values.get(i);
-                if (theEntry.getKey().equals(aKey)) {
-                    return true;
-                }
-            }
-            return false;
-        }
+    private static class HashEntry<K, V> extends AbstractEntry<K, V> {
 
-        public V put(K aKey, V aValue) {
-            for (int i=0;i<values.size();i++) {
-                AbstractEntry<K, V> theEntry = values.get(i);
-                if (theEntry.key.equals(aKey)) {
-                    V theOldValue = theEntry.value;
-                    theEntry.value = aValue;
-                    return theOldValue;
-                }
-            }
-            AbstractEntry<K, V> theNewEntry = new AbstractEntry<>(aKey, aValue);
-            values.add(theNewEntry);
-            return null;
-        }
+        private final int hash;
+        private HashEntry<K, V> next;
 
-        public V get(K aKey) {
-            for (int i=0;i<values.size();i++) {
-                AbstractEntry<K, V> theEntry = values.get(i);
-                if (theEntry.key.equals(aKey)) {
-                    return theEntry.value;
-                }
-            }
-            return null;
+        public HashEntry(int aHash, K aKey, V aValue, HashEntry<K, V> aNext) {
+            super(aKey, aValue);
+            hash = aHash;
+            next = aNext;
         }
+    }
 
-        public V remove(K aKey) {
-            for (int i=0;i<values.size();i++) {
-                AbstractEntry<K, V> theEntry = values.get(i);
-                if (theEntry.key.equals(aKey)) {
-                    V theOldValue = theEntry.value;
-                    values.remove(theEntry);
-                    return theOldValue;
-                }
-            }
-            return null;
+    private static int spread(Object aKey) {
+        if (aKey == null) {
+            return 0;
         }
+        int theHashCode = aKey.hashCode();
+        return theHashCode ^ (theHashCode >>> 16);
+    }
 
-        public boolean isEmpty() {
-            return values.isEmpty();
+    static int tableSizeFor(int aCapacity) {
+        if (aCapacity >= MAXIMUM_CAPACITY) {
+            // Doubling any further would overflow into a negative size
+            return MAXIMUM_CAPACITY;
+        }
+        int theSize = 1;
+        while (theSize < aCapacity) {
+            theSize = theSize << 1;
         }
+        return theSize;
     }
 
-    private final TArrayList<Bucket> buckets;
+    private final float loadFactor;
+    private HashEntry<K, V>[] table;
+    private int size;
+    private int threshold;
 
     public THashMap() {
-        buckets = new TArrayList<>();
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public THashMap(int aInitialCapacity) {
+        this(aInitialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public THashMap(int aInitialCapacity, float aLoadFactor) {
+        loadFactor = aLoadFactor;
+        table = newTable(tableSizeFor(aInitialCapacity));
+        size = 0;
+        threshold = (int) (table.length * aLoadFactor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> HashEntry<K, V>[] newTable(int aLength) {
+        return (HashEntry<K, V>[]) new HashEntry<?, ?>[aLength];
     }
 
-    private Bucket<K, V> findByHashCode(int aHashCode) {
-        for (int i=0;i<buckets.size();i++) {
-            Bucket<K, V> theBuckets = buckets.get(i);
-            if (theBuckets.hashCode == aHashCode) {
-                return theBuckets;
+    private static boolean keyEquals(Object aKey, Object aOtherKey) {
+        return aKey == aOtherKey || (aKey != null && aKey.equals(aOtherKey));
+    }
+
+    private HashEntry<K, V> findEntry(Object aKey) {
+        int theHash = spread(aKey);
+        for (HashEntry<K, V> theEntry = table[theHash & (table.length - 1)]; theEntry != null; theEntry = theEntry.next) {
+            if (theEntry.hash == theHash && keyEquals(theEntry.key, aKey)) {
+                return theEntry;
             }
         }
         return null;
     }
 
+    private void resize() {
+        HashEntry<K, V>[] theOldTable = table;
+        if (theOldTable.length == MAXIMUM_CAPACITY) {
+            // The table cannot grow anymore, so the chains just get longer
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        HashEntry<K, V>[] theNewTable = newTable(theOldTable.length * 2);
+        int theMask = theNewTable.length - 1;
+        for (int i = 0; i < theOldTable.length; i++) {
+            HashEntry<K, V> theEntry = theOldTable[i];
+            while (theEntry != null) {
+                HashEntry<K, V> theNext = theEntry.next;
+                int theIndex = theEntry.hash & theMask;
+                theEntry.next = theNewTable[theIndex];
+                theNewTable[theIndex] = theEntry;
+                theEntry = theNext;
+            }
+        }
+        table = theNewTable;
+        threshold = (int) (theNewTable.length * loadFactor);
+    }
+
     @Override
     public boolean containsKey(K aKey) {
-        Bucket<K, V> theBucket = findByHashCode(aKey.hashCode());
-        if (theBucket != null) {
-            return theBucket.containsKey(aKey);
-        }
-        return false;
+        return findEntry(aKey) != null;
     }
 
     @Override
     public V put(K aKey, V aValue) {
-        int theHashCode = aKey.hashCode();
-        Bucket<K, V> theBucket = findByHashCode(theHashCode);
-        if (theBucket == null) {
-            theBucket = new Bucket<>(theHashCode);
-            buckets.add(theBucket);
+        int theHash = spread(aKey);
+        int theIndex = theHash & (table.length - 1);
+        for (HashEntry<K, V> theEntry = table[theIndex]; theEntry != null; theEntry = theEntry.next) {
+            if (theEntry.hash == theHash && keyEquals(theEntry.key, aKey)) {
+                V theOldValue = theEntry.value;
+                theEntry.value = aValue;
+                return theOldValue;
+            }
+        }
+        table[theIndex] = new HashEntry<>(theHash, aKey, aValue, table[theIndex]);
+        if (++size > threshold) {
+            resize();
         }
-        return theBucket.put(aKey, aValue);
+        return null;
     }
 
     @Override
     public V get(K aKey) {
-        Bucket<K, V> theBucket = findByHashCode(aKey.hashCode());
-        if (theBucket != null) {
-            return theBucket.get(aKey);
+        HashEntry<K, V> theEntry = findEntry(aKey);
+        if (theEntry != null) {
+            return theEntry.value;
         }
         return null;
     }
 
     @Override
     public V remove(K aKey) {
-        Bucket<K, V> theBucket = findByHashCode(aKey.hashCode());
-        if (theBucket != null) {
-            V theOldValue = theBucket.remove(aKey);
-            if (theBucket.isEmpty()) {
-                buckets.remove(theBucket);
+        int theHash = spread(aKey);
+        int theIndex = theHash & (table.length - 1);
+        HashEntry<K, V> thePrevious = null;
+        for (HashEntry<K, V> theEntry = table[theIndex]; theEntry != null; theEntry = theEntry.next) {
+            if (theEntry.hash == theHash && keyEquals(theEntry.key, aKey)) {
+                if (thePrevious == null) {
+                    table[theIndex] = theEntry.next;
+                } else {
+                    thePrevious.next = theEntry.next;
+                }
+                size--;
+                return theEntry.value;
             }
-            return theOldValue;
+            thePrevious = theEntry;
         }
         return null;
     }
 
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = null;
+        }
+        size = 0;
+    }
+
+    Object[] keysToArray(Object[] aTarget) {
+        int theIndex = 0;
+        for (int i = 0; i < table.length; i++) {
+            for (HashEntry<K, V> theEntry = table[i]; theEntry != null; theEntry = theEntry.next) {
+                aTarget[theIndex++] = theEntry.key;
+            }
+        }
+        return aTarget;
+    }
+
     @Override
     public TCollection<V> values() {
-        TSet<V> theResult = new THashSet<>();
-        for (int i=0;i<buckets.size();i++) {
-            TArrayList<Map.Entry<K,V>> theEntries = buckets.get(i).values;
-            for (int k=0;k<theEntries.size();k++) {
-                theResult.add(theEntries.get(k).getValue());
+        TArrayList<V> theResult = new TArrayList<>(size);
+        for (int i = 0; i < table.length; i++) {
+            for (HashEntry<K, V> theEntry = table[i]; theEntry != null; theEntry = theEntry.next) {
+                theResult.add(theEntry.value);
             }
         }
         return theResult;
@@ -155,11 +213,10 @@ public class THashMap<K, V> extends TAbstractMap<K, V> implements TSerializable,
 
     @Override
     public TSet<TMap.Entry<K, V>> entrySet() {
-        TSet<TMap.Entry<K,V>> theResult = new THashSet<>();
-        for (int i=0;i<buckets.size();i++) {
-            TArrayList<AbstractEntry<K, V>> theValues = buckets.get(i).values;
-            for (int j=0;j<theValues.size();j++) {
-                theResult.add(theValues.get(j));
+        TSet<TMap.Entry<K,V>> theResult = new THashSet<>(size);
+        for (int i = 0; i < table.length; i++) {
+            for (HashEntry<K, V> theEntry = table[i]; theEntry != null; theEntry = theEntry.next) {
+                theResult.add(theEntry);
             }
         }
         return theResult;
@@ -167,13 +224,12 @@ public class THashMap<K, V> extends TAbstractMap<K, V> implements TSerializable,
 
     @Override
     public TSet<K> keySet() {
-        TSet<K> theResult = new THashSet<>();
-        for (int i=0;i<buckets.size();i++) {
-            TArrayList<AbstractEntry<K,V>> theEntries = buckets.get(i).values;
-            for (int k=0;k<theEntries.size();k++) {
-                theResult.add(theEntries.get(k).key);
+        TSet<K> theResult = new THashSet<>(size);
+        for (int i = 0; i < table.length; i++) {
+            for (HashEntry<K, V> theEntry = table[i]; theEntry != null; theEntry = theEntry.next) {
+                theResult.add(theEntry.key);
             }
         }
         return theResult;
     }
-}
\ No newline at end of file
+}
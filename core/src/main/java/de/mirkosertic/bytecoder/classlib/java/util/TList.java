@@ -15,7 +15,14 @@
  */
 package de.mirkosertic.bytecoder.classlib.java.util;
 
+import java.util.Comparator;
+import java.util.function.Predicate;
+
 public interface TList<T> extends TCollection<T> {
 
     T get(int aIndex);
+
+    boolean removeIf(Predicate<? super T> aFilter);
+
+    void sort(Comparator<? super T> aComparator);
 }
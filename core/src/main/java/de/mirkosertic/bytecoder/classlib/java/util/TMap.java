@@ -32,6 +32,12 @@ public interface TMap<K, V> {
 
     V remove(K aKey);
 
+    int size();
+
+    boolean isEmpty();
+
+    void clear();
+
     TCollection<V> values();
 
     TSet<K> keySet();
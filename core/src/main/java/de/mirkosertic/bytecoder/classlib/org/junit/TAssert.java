@@ -17,6 +17,7 @@ package de.mirkosertic.bytecoder.classlib.org.junit;
 
 import de.mirkosertic.bytecoder.classlib.java.lang.TDouble;
 import de.mirkosertic.bytecoder.classlib.java.lang.TFloat;
+import de.mirkosertic.bytecoder.classlib.java.lang.TLong;
 import de.mirkosertic.bytecoder.classlib.java.lang.TMath;
 
 public class TAssert {
@@ -58,6 +59,16 @@ public class TAssert {
         }
     }
 
+    public static void assertEquals(String message, long expected, long actual) {
+        if (expected != actual) {
+            failNotEquals(message, new TLong(expected), new TLong(actual));
+        }
+    }
+
+    public static void assertEquals(long expected, long actual) {
+        assertEquals(null, expected, actual);
+    }
+
     public static void assertEquals(float expected, float actual, float delta) {
         assertEquals((String)null, expected, actual, delta);
     }
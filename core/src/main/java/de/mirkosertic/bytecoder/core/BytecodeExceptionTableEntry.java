@@ -43,6 +43,11 @@ public class BytecodeExceptionTableEntry {
         return handlerPc;
     }
 
+    public boolean covers(BytecodeOpcodeAddress aAddress) {
+        // The start address is inclusive, the end address is exclusive
+        return aAddress.getAddress() >= startPC.getAddress() && aAddress.getAddress() < endPc.getAddress();
+    }
+
     public boolean isFinally() {
         return catchType == 0;
     }
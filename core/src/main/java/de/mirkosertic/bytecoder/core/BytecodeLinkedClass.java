@@ -94,9 +94,9 @@ public class BytecodeLinkedClass {
         uniqueId = aUniqueId;
         className = aClassName;
         bytecodeClass = aBytecodeClass;
-        linkedMethods = new HashMap<>();
+        linkedMethods = new LinkedHashMap<>();
         linkerContext = aLinkerContext;
-        knownMethods = new HashSet<>();
+        knownMethods = new LinkedHashSet<>();
         superClass = aSuperClass;
         staticFields = new HashMap<>();
         memberFields = new HashMap<>();
@@ -119,7 +119,7 @@ public class BytecodeLinkedClass {
     }
 
     public Set<BytecodeLinkedClass> getImplementingTypes(boolean aIncludeSuperClass, boolean aIncludeSelf) {
-        Set<BytecodeLinkedClass> theResult = new HashSet<>();
+        Set<BytecodeLinkedClass> theResult = new LinkedHashSet<>();
         if (aIncludeSelf) {
             theResult.add(this);
         }
@@ -159,6 +159,7 @@ public class BytecodeLinkedClass {
     public void linkStaticField(BytecodeUtf8Constant aName) {
         String theFieldName = aName.stringValue();
         if (!staticFields.containsKey(theFieldName)) {
+            linkerContext.checkNotFrozen("static field " + theFieldName + " in " + className.name());
             BytecodeField theField = bytecodeClass.fieldByName(aName.stringValue());
             if (theField == null) {
                 throw new RuntimeException("No field " + aName.stringValue() + " in " + className.name());
@@ -171,6 +172,7 @@ public class BytecodeLinkedClass {
     public void linkField(BytecodeUtf8Constant aName) {
         String theFieldName = aName.stringValue();
         if (!memberFields.containsKey(theFieldName)) {
+            linkerContext.checkNotFrozen("field " + theFieldName + " in " + className.name());
 
             BytecodeObjectTypeRef theClassName = className;
             BytecodeLinkedClass theClass = this;
@@ -240,6 +242,7 @@ public class BytecodeLinkedClass {
 
                 if (!linkedMethods.containsKey(theIdentifier)) {
 
+                    linkerContext.checkNotFrozen("method getClass in " + className.name());
                     linkedMethods.put(theIdentifier, new LinkedMethod(theClassName, GET_CLASS_PLACEHOLDER));
                     // We also have to propagate this to the subclasses
                     for (BytecodeLinkedClass theSubClass : linkerContext.getSubclassesOf(this)) {
@@ -260,6 +263,7 @@ public class BytecodeLinkedClass {
                             // Already linked, nothing to do
                             return;
                         }
+                        linkerContext.checkNotFrozen("method " + aMethodName + " in " + className.name());
                         linkedMethods.put(theIdentifier, new LinkedMethod(theClassName, theMethod));
                     }
                     linkMethodInternal(theMethod, theClass == bytecodeClass);
@@ -329,6 +333,11 @@ public class BytecodeLinkedClass {
 
         BytecodeMethod theMethod = bytecodeClass.methodByNameAndSignatureOrNull(aMethodName, aMethodSignature);
         if (theMethod != null) {
+            if (knownMethods.contains(theMethod)) {
+                // Already linked, this also terminates the linking of recursive methods
+                return this;
+            }
+            linkerContext.checkNotFrozen("static method " + aMethodName + " in " + className.name());
             if (!theMethod.isClassInitializer()) {
                 BytecodeVirtualMethodIdentifier theIdentifier = linkerContext.getMethodCollection().identifierFor(theMethod);
                 linkedMethods.put(theIdentifier, new LinkedMethod(className, theMethod));
@@ -346,6 +355,7 @@ public class BytecodeLinkedClass {
     }
 
     private void linkMethodInternal(BytecodeMethod aMethod, boolean isLocal) {
+        linkerContext.checkNotFrozen("method " + aMethod.getName().stringValue() + " in " + className.name());
         BytecodeMethodSignature theSignature = aMethod.getSignature();
         if (isLocal) {
             knownMethods.add(aMethod);
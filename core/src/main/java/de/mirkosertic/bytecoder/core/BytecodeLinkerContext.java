@@ -17,7 +17,7 @@ package de.mirkosertic.bytecoder.core;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,6 +31,7 @@ public class BytecodeLinkerContext {
     private final BytecodeLoader loader;
     private final BytecodeMethodCollection methodCollection;
     private final Logger logger;
+    private boolean frozen;
 
     public BytecodeLinkerContext(BytecodeLoader aLoader, Logger aLogger) {
         linkedClasses = new HashMap<>();
@@ -51,6 +52,29 @@ public class BytecodeLinkerContext {
         return methodCollection;
     }
 
+    public void freeze() {
+        // Programs are generated in parallel once linking is frozen. Virtual method identifiers are
+        // numbered now, so they do not depend on the order methods are generated in
+        for (BytecodeLinkedClass theClass : linkedClasses.values()) {
+            for (BytecodeMethod theMethod : theClass.getBytecodeClass().getMethods()) {
+                if (!theMethod.isClassInitializer()) {
+                    methodCollection.identifierFor(theMethod);
+                }
+            }
+        }
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    void checkNotFrozen(String aElement) {
+        if (frozen) {
+            throw new IllegalStateException("Linking is frozen, cannot link " + aElement);
+        }
+    }
+
     public BytecodeLinkedClass isLinkedOrNull(BytecodeUtf8Constant aConstant) {
         BytecodeObjectTypeRef theTypeRef = BytecodeObjectTypeRef.fromUtf8Constant(aConstant);
         return linkedClasses.get(theTypeRef);
@@ -63,6 +87,8 @@ public class BytecodeLinkerContext {
             return theLinkedClass;
         }
 
+        checkNotFrozen("class " + aTypeRef.name());
+
         try {
             BytecodeLinkedClass theParentClass = null;
             BytecodeClass theLoadedClass = loader.loadByteCode(aTypeRef);
@@ -156,13 +182,13 @@ public class BytecodeLinkerContext {
     }
 
     public Set<BytecodeLinkedClass> getSubclassesOf(BytecodeLinkedClass aParentClass) {
-        Set<BytecodeLinkedClass> theClasses = new HashSet<>();
+        Set<BytecodeLinkedClass> theClasses = new LinkedHashSet<>();
         addSubclassesOfToSet(theClasses, aParentClass);
         return theClasses;
     }
 
     public Set<BytecodeLinkedClass> getImplementingClassesOf(BytecodeLinkedClass aInterface) {
-        Set<BytecodeLinkedClass> theClasses = new HashSet<>();
+        Set<BytecodeLinkedClass> theClasses = new LinkedHashSet<>();
         for (BytecodeLinkedClass theClass : linkedClasses.values()) {
             if (theClass.getImplementingTypes(true, false).contains(aInterface)) {
                 theClasses.add(theClass);
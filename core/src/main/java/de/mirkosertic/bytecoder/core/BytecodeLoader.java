@@ -19,36 +19,60 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class BytecodeLoader {
 
     private final BytecodePackageReplacer packageReplacer;
     private final BytecodeSignatureParser signatureParser;
     private final ClassLoader classLoader;
+    private final Set<String> loadedResources;
 
     public BytecodeLoader(ClassLoader aClassLoader, BytecodePackageReplacer aPackageReplacer) {
         classLoader = aClassLoader;
         packageReplacer = aPackageReplacer;
         signatureParser = new BytecodeSignatureParser(aPackageReplacer);
+        loadedResources = new LinkedHashSet<>();
     }
 
     public BytecodeSignatureParser getSignatureParser() {
         return signatureParser;
     }
 
+    public String resourceNameFor(BytecodeObjectTypeRef aTypeRef) {
+        return packageReplacer.replaceTypeIn(aTypeRef).name().replace(".", "/") + ".class";
+    }
+
     public BytecodeClass loadByteCode(BytecodeObjectTypeRef aTypeRef) throws IOException, ClassNotFoundException {
 
-        String theResourceName = packageReplacer.replaceTypeIn(aTypeRef).name().replace(".", "/") + ".class";
+        String theResourceName = resourceNameFor(aTypeRef);
         InputStream theStream = classLoader.getResourceAsStream(theResourceName);
         if (theStream == null) {
             throw new ClassNotFoundException(theResourceName);
         }
+        loadedResources.add(theResourceName);
         try (DataInputStream dis = new DataInputStream(theStream)) {
             BytecodeClassParser parser = parseHeader(dis);
             return parser.parseBody(dis);
         }
     }
 
+    /**
+     * Resource names of all class files loaded so far.
+     */
+    public Set<String> getLoadedResources() {
+        return Collections.unmodifiableSet(loadedResources);
+    }
+
+    /**
+     * The content of a resource, or null if the resource does not exist.
+     */
+    public InputStream openResource(String aResourceName) {
+        return classLoader.getResourceAsStream(aResourceName);
+    }
+
     private BytecodeClassParser parseHeader(DataInput aStream) throws IOException {
         int theMagic = aStream.readInt();
         if (!(theMagic == 0xCAFEBABE)) {
@@ -15,23 +15,26 @@
  */
 package de.mirkosertic.bytecoder.core;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class BytecodeMethodCollection {
 
     private final Map<String, BytecodeVirtualMethodIdentifier> knownIdentifier;
 
     public BytecodeMethodCollection() {
-        knownIdentifier = new HashMap<>();
+        knownIdentifier = new ConcurrentHashMap<>();
     }
 
     public BytecodeVirtualMethodIdentifier identifierFor(String aMethodName, BytecodeMethodSignature aSignature) {
         String theSignature = toSignature(aMethodName, aSignature);
         BytecodeVirtualMethodIdentifier theIdentifier = knownIdentifier.get(theSignature);
         if (theIdentifier == null) {
-            theIdentifier = new BytecodeVirtualMethodIdentifier(knownIdentifier.size());
-            knownIdentifier.put(theSignature, theIdentifier);
+            // Programs are generated in parallel, so new identifiers are numbered one at a time
+            synchronized (knownIdentifier) {
+                theIdentifier = knownIdentifier.computeIfAbsent(theSignature,
+                        aKey -> new BytecodeVirtualMethodIdentifier(knownIdentifier.size()));
+            }
         }
         return theIdentifier;
     }
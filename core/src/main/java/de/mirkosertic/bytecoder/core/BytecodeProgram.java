@@ -55,6 +55,17 @@ public class BytecodeProgram {
         return theResult.toArray(new BytecodeExceptionTableEntry[theResult.size()]);
     }
 
+    public List<BytecodeExceptionTableEntry> getCoveringExceptionHandlers(BytecodeOpcodeAddress aAddress) {
+        // The order of the exception table is kept, as the first matching handler wins
+        List<BytecodeExceptionTableEntry> theResult = new ArrayList<>();
+        for (BytecodeExceptionTableEntry theEntry : exceptionHandlers) {
+            if (theEntry.covers(aAddress)) {
+                theResult.add(theEntry);
+            }
+        }
+        return theResult;
+    }
+
     public int getNextInstructionAddress(BytecodeInstruction aInstruction) {
         int p = instructions.indexOf(aInstruction);
         if (p== instructions.size() -1) {
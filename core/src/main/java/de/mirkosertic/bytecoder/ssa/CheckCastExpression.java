@@ -25,4 +25,12 @@ public class CheckCastExpression extends Expression {
         consume(ConsumptionType.ARGUMENT, aValue);
         type = aType;
     }
+
+    public Value getValue() {
+        return resolveFirstArgument();
+    }
+
+    public BytecodeClassinfoConstant getType() {
+        return type;
+    }
 }
\ No newline at end of file
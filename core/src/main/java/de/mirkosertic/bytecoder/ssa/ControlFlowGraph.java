@@ -57,6 +57,8 @@ public class ControlFlowGraph {
     private final List<GraphNode> dominatedNodes;
     private final List<GraphNode> knownNodes;
     private final Program program;
+    private DominatorTree dominatorTree;
+    private LoopNestingForest loopNestingForest;
 
     public ControlFlowGraph(Program aProgram) {
         program = aProgram;
@@ -85,26 +87,31 @@ public class ControlFlowGraph {
     }
 
     public void calculateReachabilityAndMarkBackEdges() {
-        calculateReachabilityAndMarkBackEdges(new GraphNodePath(), startNode());
+        invalidateAnalysis();
+        dominatorTree();
     }
 
-    private void calculateReachabilityAndMarkBackEdges(GraphNodePath aPath, GraphNode aNode) {
-        aNode.addReachablePath(aPath);
-        for (Map.Entry<GraphNode.Edge, GraphNode> theEdge : aNode.getSuccessors().entrySet()) {
-            GraphNodePath theChildPath = aPath.clone();
-            theChildPath.addToPath(aNode);
-            if (aPath.contains(theEdge.getValue())) {
-                // This is a back edge
-                theEdge.getKey().changeTo(GraphNode.EdgeType.BACK);
-                theEdge.getValue().addReachablePath(theChildPath);
-                // We have already visited the back edge, so we do not to continue here
-                // As this would lead to an endless loop
-            } else {
-                // Normal edge
-                // Continue with graph traversal
-                calculateReachabilityAndMarkBackEdges(theChildPath, theEdge.getValue());
-            }
+    public DominatorTree dominatorTree() {
+        if (dominatorTree == null) {
+            dominatorTree = new DominatorTree(this);
         }
+        return dominatorTree;
+    }
+
+    public LoopNestingForest loopNestingForest() {
+        if (loopNestingForest == null) {
+            loopNestingForest = new LoopNestingForest(dominatorTree());
+        }
+        return loopNestingForest;
+    }
+
+    /**
+     * Must be called after every structural change of the graph. The dominator tree
+     * and the loop nesting forest are recomputed the next time they are requested.
+     */
+    public void invalidateAnalysis() {
+        dominatorTree = null;
+        loopNestingForest = null;
     }
 
     public GraphNode createAt(BytecodeOpcodeAddress aAddress, GraphNode.BlockType aType) {
@@ -116,6 +123,7 @@ public class ControlFlowGraph {
     public void addDominatedNode(GraphNode aGraphNode) {
         dominatedNodes.add(aGraphNode);
         knownNodes.add(aGraphNode);
+        invalidateAnalysis();
     }
 
     public GraphNode startNode() {
@@ -274,22 +282,15 @@ public class ControlFlowGraph {
     }
 
     protected Set<GraphNode> dominatedNodesOf(GraphNode aNode) {
-        Set<GraphNode> theResult = new HashSet<>();
-        theResult.add(aNode);
-        for (GraphNode theNode : knownNodes) {
-            if (theNode.isOnlyReachableThru(aNode)) {
-                theResult.add(theNode);
-            }
-        }
-        return theResult;
+        return new HashSet<>(dominatorTree().dominatedNodesOf(aNode));
     }
 
     public void delete(GraphNode aNode) {
         for (GraphNode theNode : knownNodes) {
             theNode.removeEdgesTo(aNode);
-            theNode.removeFromPaths(aNode);
         }
         knownNodes.remove(aNode);
         dominatedNodes.remove(aNode);
+        invalidateAnalysis();
     }
 }
\ No newline at end of file
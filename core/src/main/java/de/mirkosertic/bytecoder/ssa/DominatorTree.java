@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dominator tree of a control flow graph, computed with the iterative algorithm
+ * described by Cooper, Harvey and Kennedy in "A Simple, Fast Dominance Algorithm".
+ *
+ * The tree is built from a single depth first traversal of all nodes reachable
+ * from the start node. This traversal also classifies the edges of the graph, every
+ * edge pointing to a node still on the traversal stack is marked as a back edge.
+ * Nodes not reachable from the start node, for instance exception handlers, are
+ * not part of the tree.
+ *
+ * After construction, the tree is numbered by another depth first traversal, so
+ * dominance queries can be answered in constant time by comparing interval bounds.
+ */
+public class DominatorTree {
+
+    private final ControlFlowGraph graph;
+    private final GraphNode start;
+    private final List<GraphNode> reversePostOrder;
+    private final Map<GraphNode, Integer> postOrderNumber;
+    private final Map<GraphNode, List<GraphNode>> predecessors;
+    private final Set<GraphNode.Edge> backEdges;
+    private final Map<GraphNode, GraphNode> immediateDominator;
+    private final Map<GraphNode, List<GraphNode>> children;
+    private final Map<GraphNode, Integer> treeEnter;
+    private final Map<GraphNode, Integer> treeExit;
+
+    public DominatorTree(ControlFlowGraph aGraph) {
+        graph = aGraph;
+        start = aGraph.startNode();
+        reversePostOrder = new ArrayList<>();
+        postOrderNumber = new HashMap<>();
+        predecessors = new HashMap<>();
+        backEdges = new HashSet<>();
+        immediateDominator = new HashMap<>();
+        children = new HashMap<>();
+        treeEnter = new HashMap<>();
+        treeExit = new HashMap<>();
+
+        computeDepthFirstOrderAndMarkBackEdges();
+        computePredecessors();
+        computeImmediateDominators();
+        computeTreeNumbering();
+    }
+
+    private static class TraversalEntry {
+
+        private final GraphNode node;
+        private final Iterator<Map.Entry<GraphNode.Edge, GraphNode>> successors;
+
+        private TraversalEntry(GraphNode aNode) {
+            node = aNode;
+            successors = aNode.getSuccessors().entrySet().iterator();
+        }
+    }
+
+    private void computeDepthFirstOrderAndMarkBackEdges() {
+        // Iterative traversal, recursion would overflow the stack on large methods
+        Set<GraphNode> theVisited = new HashSet<>();
+        Set<GraphNode> theOnStack = new HashSet<>();
+        Deque<TraversalEntry> theStack = new ArrayDeque<>();
+        List<GraphNode> thePostOrder = new ArrayList<>();
+
+        theVisited.add(start);
+        theOnStack.add(start);
+        theStack.push(new TraversalEntry(start));
+        while (!theStack.isEmpty()) {
+            TraversalEntry theCurrent = theStack.peek();
+            if (theCurrent.successors.hasNext()) {
+                Map.Entry<GraphNode.Edge, GraphNode> theEdge = theCurrent.successors.next();
+                GraphNode theTarget = theEdge.getValue();
+                if (theOnStack.contains(theTarget)) {
+                    theEdge.getKey().changeTo(GraphNode.EdgeType.BACK);
+                    backEdges.add(theEdge.getKey());
+                } else {
+                    theEdge.getKey().changeTo(GraphNode.EdgeType.NORMAL);
+                    if (theVisited.add(theTarget)) {
+                        theOnStack.add(theTarget);
+                        theStack.push(new TraversalEntry(theTarget));
+                    }
+                }
+            } else {
+                theStack.pop();
+                theOnStack.remove(theCurrent.node);
+                postOrderNumber.put(theCurrent.node, thePostOrder.size());
+                thePostOrder.add(theCurrent.node);
+            }
+        }
+
+        for (int i = thePostOrder.size() - 1; i >= 0; i--) {
+            reversePostOrder.add(thePostOrder.get(i));
+        }
+    }
+
+    private void computePredecessors() {
+        // Known nodes are used to get a stable ordering of the predecessors
+        for (GraphNode theNode : graph.getKnownNodes()) {
+            if (isReachable(theNode)) {
+                for (GraphNode theSuccessor : theNode.getSuccessors().values()) {
+                    predecessors.computeIfAbsent(theSuccessor, k -> new ArrayList<>()).add(theNode);
+                }
+            }
+        }
+    }
+
+    private void computeImmediateDominators() {
+        immediateDominator.put(start, start);
+        boolean theChanged = true;
+        while (theChanged) {
+            theChanged = false;
+            for (GraphNode theNode : reversePostOrder) {
+                if (theNode == start) {
+                    continue;
+                }
+                GraphNode theNewIDom = null;
+                for (GraphNode thePredecessor : predecessorsOf(theNode)) {
+                    if (immediateDominator.containsKey(thePredecessor)) {
+                        if (theNewIDom == null) {
+                            theNewIDom = thePredecessor;
+                        } else {
+                            theNewIDom = intersect(thePredecessor, theNewIDom);
+                        }
+                    }
+                }
+                if (immediateDominator.get(theNode) != theNewIDom) {
+                    immediateDominator.put(theNode, theNewIDom);
+                    theChanged = true;
+                }
+            }
+        }
+        immediateDominator.remove(start);
+
+        for (GraphNode theNode : reversePostOrder) {
+            GraphNode theIDom = immediateDominator.get(theNode);
+            if (theIDom != null) {
+                children.computeIfAbsent(theIDom, k -> new ArrayList<>()).add(theNode);
+            }
+        }
+    }
+
+    private GraphNode intersect(GraphNode aNode1, GraphNode aNode2) {
+        GraphNode theFinger1 = aNode1;
+        GraphNode theFinger2 = aNode2;
+        while (theFinger1 != theFinger2) {
+            while (postOrderNumber.get(theFinger1) < postOrderNumber.get(theFinger2)) {
+                theFinger1 = immediateDominator.get(theFinger1);
+            }
+            while (postOrderNumber.get(theFinger2) < postOrderNumber.get(theFinger1)) {
+                theFinger2 = immediateDominator.get(theFinger2);
+            }
+        }
+        return theFinger1;
+    }
+
+    private void computeTreeNumbering() {
+        int theCounter = 0;
+        Deque<GraphNode> theStack = new ArrayDeque<>();
+        theStack.push(start);
+        while (!theStack.isEmpty()) {
+            GraphNode theNode = theStack.peek();
+            if (!treeEnter.containsKey(theNode)) {
+                treeEnter.put(theNode, theCounter++);
+                for (GraphNode theChild : childrenOf(theNode)) {
+                    theStack.push(theChild);
+                }
+            } else {
+                theStack.pop();
+                treeExit.put(theNode, theCounter++);
+            }
+        }
+    }
+
+    public GraphNode getStart() {
+        return start;
+    }
+
+    public boolean isReachable(GraphNode aNode) {
+        return postOrderNumber.containsKey(aNode);
+    }
+
+    /**
+     * All nodes reachable from the start node in reverse post order. Every node
+     * is listed before its successors, ignoring back edges.
+     */
+    public List<GraphNode> reversePostOrder() {
+        return Collections.unmodifiableList(reversePostOrder);
+    }
+
+    public List<GraphNode> predecessorsOf(GraphNode aNode) {
+        List<GraphNode> theResult = predecessors.get(aNode);
+        if (theResult == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(theResult);
+    }
+
+    public boolean isBackEdge(GraphNode.Edge aEdge) {
+        return backEdges.contains(aEdge);
+    }
+
+    public GraphNode immediateDominatorOf(GraphNode aNode) {
+        return immediateDominator.get(aNode);
+    }
+
+    public List<GraphNode> childrenOf(GraphNode aNode) {
+        List<GraphNode> theResult = children.get(aNode);
+        if (theResult == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(theResult);
+    }
+
+    public boolean dominates(GraphNode aDominator, GraphNode aNode) {
+        Integer theDominatorEnter = treeEnter.get(aDominator);
+        Integer theNodeEnter = treeEnter.get(aNode);
+        if (theDominatorEnter == null || theNodeEnter == null) {
+            return false;
+        }
+        return theDominatorEnter <= theNodeEnter && treeExit.get(aNode) <= treeExit.get(aDominator);
+    }
+
+    public boolean strictlyDominates(GraphNode aDominator, GraphNode aNode) {
+        return aDominator != aNode && dominates(aDominator, aNode);
+    }
+
+    /**
+     * The node itself and all nodes in its dominator subtree.
+     */
+    public Set<GraphNode> dominatedNodesOf(GraphNode aNode) {
+        Set<GraphNode> theResult = new LinkedHashSet<>();
+        Deque<GraphNode> theWorkList = new ArrayDeque<>();
+        theWorkList.push(aNode);
+        while (!theWorkList.isEmpty()) {
+            GraphNode theNode = theWorkList.pop();
+            theResult.add(theNode);
+            for (GraphNode theChild : childrenOf(theNode)) {
+                theWorkList.push(theChild);
+            }
+        }
+        return theResult;
+    }
+}
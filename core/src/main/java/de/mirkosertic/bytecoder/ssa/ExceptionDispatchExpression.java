@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa;
+
+import de.mirkosertic.bytecoder.core.BytecodeClassinfoConstant;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ExceptionDispatchExpression extends Expression implements ExpressionListContainer {
+
+    public static class Handler {
+
+        private final BytecodeClassinfoConstant catchType;
+        private final ExpressionList expressions;
+
+        public Handler(BytecodeClassinfoConstant aCatchType, ExpressionList aExpressions) {
+            catchType = aCatchType;
+            expressions = aExpressions;
+        }
+
+        public boolean isCatchAll() {
+            return catchType == null;
+        }
+
+        public BytecodeClassinfoConstant getCatchType() {
+            return catchType;
+        }
+
+        public ExpressionList getExpressions() {
+            return expressions;
+        }
+    }
+
+    private final List<Handler> handlers;
+
+    public ExceptionDispatchExpression() {
+        handlers = new ArrayList<>();
+    }
+
+    public ExceptionDispatchExpression(Value aThrownValue) {
+        this();
+        consume(ConsumptionType.ARGUMENT, aThrownValue);
+    }
+
+    public void addHandler(BytecodeClassinfoConstant aCatchType, ExpressionList aExpressions) {
+        handlers.add(new Handler(aCatchType, aExpressions));
+    }
+
+    public boolean isThrowing() {
+        return !consumedValues(ConsumptionType.ARGUMENT).isEmpty();
+    }
+
+    public Value getThrownValue() {
+        return resolveFirstArgument();
+    }
+
+    public List<Handler> getHandlers() {
+        return handlers;
+    }
+
+    @Override
+    public Set<ExpressionList> getExpressionLists() {
+        Set<ExpressionList> theResult = new HashSet<>();
+        for (Handler theHandler : handlers) {
+            theResult.add(theHandler.expressions);
+        }
+        return theResult;
+    }
+}
@@ -18,6 +18,7 @@ package de.mirkosertic.bytecoder.ssa;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,7 +61,6 @@ public class GraphNode {
     private final BlockType type;
     private final Map<VariableDescription, Value> imported;
     private final Map<VariableDescription, Value> exported;
-    private final List<GraphNodePath> reachableBy;
     private final ControlFlowGraph owningGraph;
 
     protected GraphNode(ControlFlowGraph aOwningGraph, BlockType aType, Program aProgram, BytecodeOpcodeAddress aStartAddress) {
@@ -72,15 +72,6 @@ public class GraphNode {
         successors = new HashMap<>();
         imported = new HashMap<>();
         exported = new HashMap<>();
-        reachableBy = new ArrayList<>();
-    }
-
-    public void addReachablePath(GraphNodePath aPath) {
-        reachableBy.add(aPath);
-    }
-
-    public List<GraphNodePath> reachableBy() {
-        return reachableBy;
     }
 
     public BlockType getType() {
@@ -88,13 +79,7 @@ public class GraphNode {
     }
 
     public List<GraphNode> getPredecessors() {
-        List<GraphNode> theResult = new ArrayList<>();
-        for (GraphNodePath thePath : reachableBy) {
-            if (!thePath.isEmpty()) {
-                theResult.add(thePath.lastElement());
-            }
-        }
-        return theResult;
+        return new ArrayList<>(owningGraph.dominatorTree().predecessorsOf(this));
     }
 
     public boolean hasBackEdgeTo(GraphNode aNode) {
@@ -109,13 +94,10 @@ public class GraphNode {
     }
 
     public Set<GraphNode> getPredecessorsIgnoringBackEdges() {
-        Set<GraphNode> theResult = new HashSet<>();
-        for (GraphNodePath thePath : reachableBy) {
-            if (!thePath.isEmpty()) {
-                GraphNode theLastElement = thePath.lastElement();
-                if (!theLastElement.hasBackEdgeTo(this)) {
-                    theResult.add(theLastElement);
-                }
+        Set<GraphNode> theResult = new LinkedHashSet<>();
+        for (GraphNode thePredecessor : owningGraph.dominatorTree().predecessorsOf(this)) {
+            if (!thePredecessor.hasBackEdgeTo(this)) {
+                theResult.add(thePredecessor);
             }
         }
         return theResult;
@@ -124,6 +106,7 @@ public class GraphNode {
     public void addSuccessor(GraphNode aBlock) {
         if (!successors.values().contains(aBlock)) {
             successors.put(new Edge(EdgeType.NORMAL), aBlock);
+            owningGraph.invalidateAnalysis();
         }
     }
 
@@ -214,7 +197,7 @@ public class GraphNode {
     }
 
     public boolean isStrictlyDominatedBy(GraphNode aNode) {
-        List<GraphNode> thePredecessors = new ArrayList<>(getPredecessors());
+        List<GraphNode> thePredecessors = owningGraph.dominatorTree().predecessorsOf(this);
         return thePredecessors.size() == 1 && thePredecessors.contains(aNode);
     }
 
@@ -261,17 +244,8 @@ public class GraphNode {
     }
 
     public boolean isOnlyReachableThru(GraphNode aOtherNode) {
-        // Start nodes are not reachable by anything
-        if (reachableBy.isEmpty()) {
-            return false;
-        }
         // All paths to this node must go thru aOtherNode
-        for (GraphNodePath thePath : reachableBy) {
-            if (!thePath.contains(aOtherNode)) {
-                return false;
-            }
-        }
-        return true;
+        return owningGraph.dominatorTree().strictlyDominates(aOtherNode, this);
     }
 
     public Set<GraphNode> forwardReachableNodes() {
@@ -303,17 +277,16 @@ public class GraphNode {
         }
         successors.clear();
         successors.putAll(theNewSucc);
-    }
-
-    public void removeFromPaths(GraphNode aNode) {
-        for (GraphNodePath thePath : reachableBy) {
-            thePath.remove(aNode);
-        }
+        owningGraph.invalidateAnalysis();
     }
 
     public void inheritSuccessorsOf(GraphNode aNode) {
         for (Map.Entry<Edge, GraphNode> theEntry : aNode.successors.entrySet()) {
-            successors.put(theEntry.getKey(), theEntry.getValue());
+            // Both nodes might jump to the same successor, as the branches of an inlined diamond do
+            if (!successors.values().contains(theEntry.getValue())) {
+                successors.put(theEntry.getKey(), theEntry.getValue());
+            }
         }
+        owningGraph.invalidateAnalysis();
     }
 }
\ No newline at end of file
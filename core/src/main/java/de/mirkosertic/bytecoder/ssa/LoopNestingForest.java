@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The natural loops of a control flow graph, organized by nesting.
+ *
+ * Every back edge whose target dominates its source defines a natural loop. Loops sharing
+ * the same header are merged. A loop is nested in another loop if its header is part of the
+ * other loops body.
+ */
+public class LoopNestingForest {
+
+    public static class Loop {
+
+        private final GraphNode header;
+        private final Set<GraphNode> body;
+        private final List<GraphNode> latches;
+        private final List<Loop> children;
+        private Loop parent;
+
+        private Loop(GraphNode aHeader) {
+            header = aHeader;
+            body = new LinkedHashSet<>();
+            latches = new ArrayList<>();
+            children = new ArrayList<>();
+        }
+
+        public GraphNode getHeader() {
+            return header;
+        }
+
+        public Set<GraphNode> getBody() {
+            return Collections.unmodifiableSet(body);
+        }
+
+        public boolean contains(GraphNode aNode) {
+            return body.contains(aNode);
+        }
+
+        /**
+         * Nodes with a back edge to the loop header.
+         */
+        public List<GraphNode> getLatches() {
+            return Collections.unmodifiableList(latches);
+        }
+
+        public Loop getParent() {
+            return parent;
+        }
+
+        public List<Loop> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        public int getDepth() {
+            int theDepth = 1;
+            for (Loop theLoop = parent; theLoop != null; theLoop = theLoop.parent) {
+                theDepth++;
+            }
+            return theDepth;
+        }
+    }
+
+    private final Map<GraphNode, Loop> loopsByHeader;
+    private final Map<GraphNode, Loop> innermostLoop;
+    private final List<Loop> roots;
+
+    public LoopNestingForest(DominatorTree aDominatorTree) {
+        loopsByHeader = new LinkedHashMap<>();
+        innermostLoop = new HashMap<>();
+        roots = new ArrayList<>();
+
+        // Collect natural loops, visiting the nodes in reverse post order to get
+        // outer loops before inner loops
+        for (GraphNode theNode : aDominatorTree.reversePostOrder()) {
+            for (GraphNode thePredecessor : aDominatorTree.predecessorsOf(theNode)) {
+                if (thePredecessor.hasBackEdgeTo(theNode) && aDominatorTree.dominates(theNode, thePredecessor)) {
+                    Loop theLoop = loopsByHeader.computeIfAbsent(theNode, Loop::new);
+                    theLoop.latches.add(thePredecessor);
+                }
+            }
+        }
+
+        for (Loop theLoop : loopsByHeader.values()) {
+            collectBody(aDominatorTree, theLoop);
+        }
+
+        // Outer loops are processed first, so every node finally points
+        // to the innermost loop containing it
+        List<Loop> theLoops = new ArrayList<>(loopsByHeader.values());
+        theLoops.sort((o1, o2) -> Integer.compare(o2.body.size(), o1.body.size()));
+        for (Loop theLoop : theLoops) {
+            Loop theParent = innermostLoop.get(theLoop.header);
+            if (theParent != null) {
+                theLoop.parent = theParent;
+                theParent.children.add(theLoop);
+            } else {
+                roots.add(theLoop);
+            }
+            for (GraphNode theNode : theLoop.body) {
+                innermostLoop.put(theNode, theLoop);
+            }
+        }
+    }
+
+    private static void collectBody(DominatorTree aDominatorTree, Loop aLoop) {
+        aLoop.body.add(aLoop.header);
+        Deque<GraphNode> theWorkList = new ArrayDeque<>(aLoop.latches);
+        while (!theWorkList.isEmpty()) {
+            GraphNode theNode = theWorkList.pop();
+            if (aLoop.body.add(theNode)) {
+                theWorkList.addAll(aDominatorTree.predecessorsOf(theNode));
+            }
+        }
+    }
+
+    public List<Loop> getRootLoops() {
+        return Collections.unmodifiableList(roots);
+    }
+
+    public List<Loop> getLoops() {
+        return new ArrayList<>(loopsByHeader.values());
+    }
+
+    public Loop loopWithHeader(GraphNode aNode) {
+        return loopsByHeader.get(aNode);
+    }
+
+    /**
+     * The innermost loop containing the given node, or null if the node is not part of a loop.
+     */
+    public Loop innermostLoopOf(GraphNode aNode) {
+        return innermostLoop.get(aNode);
+    }
+
+    public boolean isLoopHeader(GraphNode aNode) {
+        return loopsByHeader.containsKey(aNode);
+    }
+
+    public int loopDepthOf(GraphNode aNode) {
+        Loop theLoop = innermostLoop.get(aNode);
+        if (theLoop == null) {
+            return 0;
+        }
+        return theLoop.getDepth();
+    }
+}
@@ -391,6 +391,12 @@ public class NaiveProgramGenerator implements ProgramGenerator {
             return theHelper;
         }
 
+        public ParsingHelper resolveInitialExceptionHandlerStateForNode(GraphNode aBlock) {
+            // The stack is discarded when an exception is thrown, so only local variables are imported
+            ParsingHelper.ValueProvider theProvider = aDescription -> newPHIFor(aBlock.getPredecessorsIgnoringBackEdges(), aDescription, aBlock);
+            return new ParsingHelper(localVariableTableAttributeInfo, aBlock, theProvider);
+        }
+
         private Value newPHIFor(Set<GraphNode> aNodes, VariableDescription aDescription, GraphNode aImportingBlock) {
             Set<Value> theValues = new HashSet<>();
             for (GraphNode thePredecessor : aNodes) {
@@ -403,7 +409,9 @@ public class NaiveProgramGenerator implements ProgramGenerator {
             if (theValues.isEmpty()) {
                 throw new IllegalStateException("No values for " + aDescription + " in block " + aImportingBlock.getStartAddress().getAddress());
             }
-            if (theValues.size() == 1) {
+            // A loop header always needs its own variable, as it is reassigned by the back edges. Reusing the
+            // imported value would also change it for all other users
+            if (theValues.size() == 1 && aNodes.size() == aImportingBlock.getPredecessors().size()) {
                 Value theValue = theValues.iterator().next();
                 aImportingBlock.addToImportedList(theValue, aDescription);
                 return theValue;
@@ -437,7 +445,7 @@ public class NaiveProgramGenerator implements ProgramGenerator {
 
         BytecodeCodeAttributeInfo theCode = aMethod.getCode(aOwningClass);
 
-        Program theProgram = new Program();
+        Program theProgram = new Program(this);
 
         // Initialize programm arguments
         BytecodeLocalVariableTableAttributeInfo theDebugInfos = null;
@@ -535,7 +543,10 @@ public class NaiveProgramGenerator implements ProgramGenerator {
                 currentBlock = null;
             } else if (theInstruction instanceof BytecodeInstructionInvoke) {
                 // invocation, start new basic block
-                // currentBlock = null;
+                // This is only required inside try blocks, as the invocation might continue at an exception handler
+                if (!theBytecode.getCoveringExceptionHandlers(theInstruction.getOpcodeAddress()).isEmpty()) {
+                    currentBlock = null;
+                }
             }
         }
 
@@ -568,6 +579,20 @@ public class NaiveProgramGenerator implements ProgramGenerator {
             }
         }
 
+        // Invocations and throws inside try blocks might also continue at the covering exception handlers
+        for (BytecodeBasicBlock theBlock : theBlocks) {
+            List<BytecodeInstruction> theInstructions = theBlock.getInstructions();
+            BytecodeInstruction theLast = theInstructions.get(theInstructions.size() - 1);
+            if (theLast instanceof BytecodeInstructionInvoke || theLast instanceof BytecodeInstructionATHROW) {
+                for (BytecodeExceptionTableEntry theHandler : theBytecode.getCoveringExceptionHandlers(theLast.getOpcodeAddress())) {
+                    BytecodeBasicBlock theHandlerBlock = theBasicBlockByAddress.apply(theHandler.getHandlerPc());
+                    if (!theBlock.getSuccessors().contains(theHandlerBlock)) {
+                        theBlock.addSuccessor(theHandlerBlock);
+                    }
+                }
+            }
+        }
+
         // Ok, now we transform it to GraphNodes with yet empty content
         Map<BytecodeBasicBlock, GraphNode> theCreatedBlocks = new HashMap<>();
 
@@ -605,6 +630,23 @@ public class NaiveProgramGenerator implements ProgramGenerator {
         Set<GraphNode> theVisited = new HashSet<>();
         GraphNode theStart = theProgram.getControlFlowGraph().startNode();
 
+        // Exception handlers not covering any invocation or throw are never entered, so we remove them
+        // together with all the blocks only reachable from them
+        Set<GraphNode> theReachable = new HashSet<>();
+        Stack<GraphNode> theToVisit = new Stack<>();
+        theToVisit.push(theStart);
+        while (!theToVisit.isEmpty()) {
+            GraphNode theNode = theToVisit.pop();
+            if (theReachable.add(theNode)) {
+                theToVisit.addAll(theNode.getSuccessors().values());
+            }
+        }
+        for (GraphNode theNode : new ArrayList<>(theGraph.getKnownNodes())) {
+            if (!theReachable.contains(theNode)) {
+                theGraph.delete(theNode);
+            }
+        }
+
         // First of all, we need to mark the back-edges of the graph
         theProgram.getControlFlowGraph().calculateReachabilityAndMarkBackEdges();
 
@@ -618,15 +660,6 @@ public class NaiveProgramGenerator implements ProgramGenerator {
                         theBasicBlockByAddress);
             }
 
-            // Finally, we have to check for blocks what were not directly accessible, for instance exception handlers or
-            // finally blocks
-            for (Map.Entry<BytecodeBasicBlock, GraphNode> theEntry : theCreatedBlocks.entrySet()) {
-                GraphNode theBlock = theEntry.getValue();
-                if (theBlock.getType() != GraphNode.BlockType.NORMAL) {
-                    initializeBlock(theProgram, aOwningClass, aMethod, theBlock, theVisited, theParsingHelperCache, theBasicBlockByAddress);
-                }
-            }
-
             // Check if there are infinite looping blocks
             // Additionally, we have to add gotos
             for (GraphNode theNode : theProgram.getControlFlowGraph().getKnownNodes()) {
@@ -647,6 +680,15 @@ public class NaiveProgramGenerator implements ProgramGenerator {
                             theSuccessors = theSuccessors.entrySet().stream().filter(t -> !t.getValue().getStartAddress().equals(theGoto)).collect(
                                     Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
                         }
+                        if (theExpression instanceof ExceptionDispatchExpression) {
+                            // Exception handlers are no pass thru successors
+                            ExceptionDispatchExpression theDispatch = (ExceptionDispatchExpression) theExpression;
+                            for (ExceptionDispatchExpression.Handler theHandler : theDispatch.getHandlers()) {
+                                BytecodeOpcodeAddress theGoto = ((GotoExpression) theHandler.getExpressions().lastExpression()).getJumpTarget();
+                                theSuccessors = theSuccessors.entrySet().stream().filter(t -> !t.getValue().getStartAddress().equals(theGoto)).collect(
+                                        Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                            }
+                        }
                     }
                     if (theSuccessors.size() == 1) {
                         theNode.getExpressions().add(new GotoExpression(theSuccessors.values().iterator().next().getStartAddress()).withComment("Resolving pass thru direct"));
@@ -776,16 +818,14 @@ public class NaiveProgramGenerator implements ProgramGenerator {
             if (aCurrentBlock.getType() != GraphNode.BlockType.NORMAL) {
                 // Exception handler or finally code
                 // We only have the thrown exception on the stack!
-                // Everything else is at the same state as on control flow enter
-                // In case of synchronized blocks there is an additional reference with the semaphore to release
-                theParsingState = aCache.resolveFinalStateForNode(null);
-                theParsingState.setLocalVariable(aCurrentBlock.getStartAddress(), theParsingState.numberOfLocalVariables(), Variable.createThisRef());
+                // The local variables are imported from the throwing blocks
+                theParsingState = aCache.resolveInitialExceptionHandlerStateForNode(aCurrentBlock);
                 theParsingState.push(aCurrentBlock.newVariable(TypeRef.toType(BytecodeObjectTypeRef.fromRuntimeClass(TException.class)), new CurrentExceptionValue()));
             } else if (aCurrentBlock.getStartAddress().getAddress() == 0) {
                 // Programm is at start address, so we need the initial state
                 theParsingState = aCache.resolveFinalStateForNode(null);
-            } else if (thePredecessors.size() == 1) {
-                // Only one predecessor
+            } else if (thePredecessors.size() == 1 && aCurrentBlock.getPredecessors().size() == 1) {
+                // Only one predecessor and no back edges
                 GraphNode thePredecessor = thePredecessors.iterator().next();
                 ParsingHelper theResolved = aCache.resolveFinalStateForNode(thePredecessor);
                 if (theResolved == null) {
@@ -851,7 +891,7 @@ public class NaiveProgramGenerator implements ProgramGenerator {
 
                     aHelper.push(theValue1);
                     aHelper.push(theValue2);
-                    aHelper.push(theValue2);
+                    aHelper.push(theValue1);
                 } else {
                     Value theValue2 = aHelper.pop();
                     Value theValue3 = aHelper.pop();
@@ -860,7 +900,7 @@ public class NaiveProgramGenerator implements ProgramGenerator {
                     aHelper.push(theValue1);
                     aHelper.push(theValue3);
                     aHelper.push(theValue2);
-                    aHelper.push(theValue2);
+                    aHelper.push(theValue1);
                 }
             } else if (theInstruction instanceof BytecodeInstructionDUPX1) {
                 BytecodeInstructionDUPX1 theINS = (BytecodeInstructionDUPX1) theInstruction;
@@ -1209,6 +1249,10 @@ public class NaiveProgramGenerator implements ProgramGenerator {
             } else if (theInstruction instanceof BytecodeInstructionATHROW) {
                 BytecodeInstructionATHROW theINS = (BytecodeInstructionATHROW) theInstruction;
                 Value theValue = aHelper.pop();
+                List<BytecodeExceptionTableEntry> theHandlers = aMethod.getCode(aOwningClass).getProgramm().getCoveringExceptionHandlers(theINS.getOpcodeAddress());
+                if (!theHandlers.isEmpty()) {
+                    aTargetBlock.addExpression(newExceptionDispatch(new ExceptionDispatchExpression(theValue), theHandlers));
+                }
                 aTargetBlock.addExpression(new ThrowExpression(theValue));
             } else if (theInstruction instanceof BytecodeInstructionRETURN) {
                 BytecodeInstructionRETURN theINS = (BytecodeInstructionRETURN) theInstruction;
@@ -1325,23 +1369,22 @@ public class NaiveProgramGenerator implements ProgramGenerator {
                     Value theValue = new TypeOfValue(aHelper.pop());
                     Variable theNewVariable = aTargetBlock.newVariable(TypeRef.toType(theSignature.getReturnType()), theValue);
                     aHelper.push(theNewVariable);
-                    continue;
-                }
-
-                List<Value> theArguments = new ArrayList<>();
-                BytecodeTypeRef[] theArgumentTypes = theSignature.getArguments();
-                for (BytecodeTypeRef theArgumentType : theArgumentTypes) {
-                    theArguments.add(aHelper.pop());
-                }
-                Collections.reverse(theArguments);
-
-                Value theTarget = aHelper.pop();
-                InvokeVirtualMethodValue theValue = new InvokeVirtualMethodValue(theINS.getMethodReference().getNameAndTypeIndex().getNameAndType(), theTarget, theArguments);
-                if (theSignature.getReturnType().isVoid()) {
-                    aTargetBlock.addExpression(new InvokeVirtualMethodExpression(theValue));
                 } else {
-                    Variable theNewVariable = aTargetBlock.newVariable(TypeRef.toType(theSignature.getReturnType()), theValue);
-                    aHelper.push(theNewVariable);
+                    List<Value> theArguments = new ArrayList<>();
+                    BytecodeTypeRef[] theArgumentTypes = theSignature.getArguments();
+                    for (BytecodeTypeRef theArgumentType : theArgumentTypes) {
+                        theArguments.add(aHelper.pop());
+                    }
+                    Collections.reverse(theArguments);
+
+                    Value theTarget = aHelper.pop();
+                    InvokeVirtualMethodValue theValue = new InvokeVirtualMethodValue(theINS.getMethodReference().getNameAndTypeIndex().getNameAndType(), theTarget, theArguments);
+                    if (theSignature.getReturnType().isVoid()) {
+                        aTargetBlock.addExpression(new InvokeVirtualMethodExpression(theValue));
+                    } else {
+                        Variable theNewVariable = aTargetBlock.newVariable(TypeRef.toType(theSignature.getReturnType()), theValue);
+                        aHelper.push(theNewVariable);
+                    }
                 }
             } else if (theInstruction instanceof BytecodeInstructionINVOKEINTERFACE) {
                 BytecodeInstructionINVOKEINTERFACE theINS = (BytecodeInstructionINVOKEINTERFACE) theInstruction;
@@ -1558,7 +1601,7 @@ public class NaiveProgramGenerator implements ProgramGenerator {
                         }
                         if (theArgumentConstant instanceof BytecodeIntegerConstant) {
                             BytecodeIntegerConstant thePrimitive = (BytecodeIntegerConstant) theArgumentConstant;
-                            theArguments.add(theInitNode.newVariable(TypeRef.Native.INT, new LongValue(thePrimitive.getIntegerValue())));
+                            theArguments.add(theInitNode.newVariable(TypeRef.Native.INT, new IntegerValue(thePrimitive.getIntegerValue())));
                             continue;
                         }
                         if (theArgumentConstant instanceof BytecodeFloatConstant) {
@@ -1664,8 +1707,29 @@ public class NaiveProgramGenerator implements ProgramGenerator {
             } else {
                 throw new IllegalArgumentException("Not implemented : " + theInstruction);
             }
+
+            if (theInstruction instanceof BytecodeInstructionInvoke) {
+                // An invocation inside a try block might continue at one of the exception handlers
+                List<BytecodeExceptionTableEntry> theHandlers = aMethod.getCode(aOwningClass).getProgramm().getCoveringExceptionHandlers(theInstruction.getOpcodeAddress());
+                if (!theHandlers.isEmpty()) {
+                    aTargetBlock.addExpression(newExceptionDispatch(new ExceptionDispatchExpression(), theHandlers));
+                }
+            }
         }
 
         aHelper.finalizeExportState();
     }
+
+    private ExceptionDispatchExpression newExceptionDispatch(ExceptionDispatchExpression aDispatch, List<BytecodeExceptionTableEntry> aHandlers) {
+        for (BytecodeExceptionTableEntry theHandler : aHandlers) {
+            ExpressionList theJump = new ExpressionList();
+            theJump.add(new GotoExpression(theHandler.getHandlerPc()));
+            if (theHandler.isFinally()) {
+                aDispatch.addHandler(null, theJump);
+            } else {
+                aDispatch.addHandler(theHandler.getCatchType(), theJump);
+            }
+        }
+        return aDispatch;
+    }
 }
\ No newline at end of file
@@ -41,12 +41,19 @@ public class Program {
         }
     }
 
+    private final ProgramGenerator generator;
     private final ControlFlowGraph controlFlowGraph;
     private final List<Variable> variables;
     private final Set<Variable> globals;
     private final List<Argument> arguments;
+    private int variableCounter;
 
     public Program() {
+        this(null);
+    }
+
+    public Program(ProgramGenerator aGenerator) {
+        generator = aGenerator;
         controlFlowGraph = new ControlFlowGraph(this);
         variables = new ArrayList<>();
         globals = new HashSet<>();
@@ -71,6 +78,13 @@ public class Program {
         throw new IllegalStateException("No argument matching " + aVariableDescription);
     }
 
+    /**
+     * The generator this program was created by, or null if it was built by hand.
+     */
+    public ProgramGenerator getGenerator() {
+        return generator;
+    }
+
     public ControlFlowGraph getControlFlowGraph() {
         return controlFlowGraph;
     }
@@ -105,7 +119,8 @@ public class Program {
     }
 
     public Variable createVariable(TypeRef aType) {
-        int theIndex = variables.size();
+        // Deleted variables must not free their names, so a counter is used instead of the list size
+        int theIndex = variableCounter++;
         Variable theNewVariable = new Variable(aType, "var" + theIndex);
         variables.add(theNewVariable);
         return theNewVariable;
@@ -16,6 +16,7 @@
 package de.mirkosertic.bytecoder.ssa;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -48,6 +49,10 @@ public abstract class Value {
         return providesValueFor.size();
     }
 
+    public Set<Value> usedBy() {
+        return Collections.unmodifiableSet(providesValueFor);
+    }
+
     public void replaceInConsumedValues(Value aOldValue, Value aNewValue) {
         if (providesValueFor.contains(aOldValue)) {
             providesValueFor.remove(aOldValue);
@@ -56,6 +61,7 @@ public abstract class Value {
         for (Consumption theConsumption : consumesValueFrom) {
             if (theConsumption.value == aOldValue) {
                 theConsumption.value = aNewValue;
+                aNewValue.providesValueFor.add(this);
             }
         }
     }
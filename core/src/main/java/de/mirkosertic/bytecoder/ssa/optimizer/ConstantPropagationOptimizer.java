@@ -0,0 +1,779 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.ssa.BinaryValue;
+import de.mirkosertic.bytecoder.ssa.CompareValue;
+import de.mirkosertic.bytecoder.ssa.ControlFlowGraph;
+import de.mirkosertic.bytecoder.ssa.DoubleValue;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
+import de.mirkosertic.bytecoder.ssa.FixedBinaryValue;
+import de.mirkosertic.bytecoder.ssa.FloatValue;
+import de.mirkosertic.bytecoder.ssa.GotoExpression;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.IFExpression;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.InstanceOfValue;
+import de.mirkosertic.bytecoder.ssa.IntegerValue;
+import de.mirkosertic.bytecoder.ssa.LongValue;
+import de.mirkosertic.bytecoder.ssa.LookupSwitchExpression;
+import de.mirkosertic.bytecoder.ssa.NegatedValue;
+import de.mirkosertic.bytecoder.ssa.PrimitiveValue;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.ReturnExpression;
+import de.mirkosertic.bytecoder.ssa.ReturnValueExpression;
+import de.mirkosertic.bytecoder.ssa.StringValue;
+import de.mirkosertic.bytecoder.ssa.TableSwitchExpression;
+import de.mirkosertic.bytecoder.ssa.ThrowExpression;
+import de.mirkosertic.bytecoder.ssa.TypeConversionValue;
+import de.mirkosertic.bytecoder.ssa.TypeRef;
+import de.mirkosertic.bytecoder.ssa.UnreachableExpression;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+
+/**
+ * Sparse conditional constant propagation followed by dead code elimination.
+ *
+ * Every variable is assigned a lattice value, which is either still unknown, a constant or not constant.
+ * PHI functions are variables initialized by more than one InitVariableExpression, so the value of a
+ * variable is the meet of all its initializations in executable code. Starting with the start node,
+ * nodes become executable only if a jump to them is taken, and branches on constant conditions take
+ * only one direction. This is repeated until nothing changes anymore.
+ *
+ * Afterwards, constant variables and values are replaced by literals, branches on constant conditions
+ * are resolved, nodes never becoming executable are removed from the graph and initializations of
+ * unused variables without side effects are deleted.
+ */
+public class ConstantPropagationOptimizer implements Optimizer {
+
+    private static final Object UNKNOWN = new Object();
+    private static final Object NOT_CONSTANT = new Object();
+
+    private static class Analysis {
+
+        private final ControlFlowGraph graph;
+        private final Set<Variable> definedVariables;
+        private final Map<Variable, Object> lattice;
+        private final Set<GraphNode> executableNodes;
+        private boolean changed;
+        private boolean unresolvedBranch;
+
+        private Analysis(ControlFlowGraph aGraph) {
+            graph = aGraph;
+            definedVariables = new HashSet<>();
+            lattice = new HashMap<>();
+            executableNodes = new HashSet<>();
+        }
+
+        private void run() {
+            for (GraphNode theNode : graph.getKnownNodes()) {
+                collectDefinitions(theNode.getExpressions());
+            }
+            executableNodes.add(graph.startNode());
+            do {
+                changed = false;
+                unresolvedBranch = false;
+                for (GraphNode theNode : graph.getKnownNodes()) {
+                    if (executableNodes.contains(theNode)) {
+                        if (evaluate(theNode.getExpressions())) {
+                            // Control flow falls out of the node without an explicit jump
+                            for (GraphNode theSuccessor : theNode.getSuccessors().values()) {
+                                markExecutable(theSuccessor);
+                            }
+                        }
+                    }
+                }
+            } while (changed);
+        }
+
+        private void collectDefinitions(ExpressionList aList) {
+            for (Expression theExpression : aList.toList()) {
+                if (theExpression instanceof ExpressionListContainer) {
+                    for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                        collectDefinitions(theList);
+                    }
+                }
+                if (theExpression instanceof InitVariableExpression) {
+                    definedVariables.add(((InitVariableExpression) theExpression).getVariable());
+                }
+            }
+        }
+
+        private void markExecutable(GraphNode aNode) {
+            if (executableNodes.add(aNode)) {
+                changed = true;
+            }
+        }
+
+        /**
+         * Evaluates a list of expressions, and returns true if control flow reaches the end of the list.
+         */
+        private boolean evaluate(ExpressionList aList) {
+            for (Expression theExpression : aList.toList()) {
+                if (theExpression instanceof InitVariableExpression) {
+                    InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                    Variable theVariable = theInit.getVariable();
+                    Object theOld = valueOf(theVariable);
+                    Object theNew = meet(theOld, compatible(theVariable, evaluate(theInit.getValue())));
+                    if (theNew != theOld) {
+                        lattice.put(theVariable, theNew);
+                        changed = true;
+                    }
+                } else if (theExpression instanceof IFExpression) {
+                    IFExpression theIF = (IFExpression) theExpression;
+                    Object theCondition = evaluateCondition(theIF.getBooleanValue());
+                    if (theCondition == UNKNOWN) {
+                        // Nothing after this branch is known to be executable yet
+                        unresolvedBranch = true;
+                        return false;
+                    }
+                    if (theCondition == Boolean.TRUE) {
+                        if (!evaluate(theIF.getExpressions())) {
+                            return false;
+                        }
+                    } else if (theCondition == NOT_CONSTANT) {
+                        evaluate(theIF.getExpressions());
+                    }
+                } else if (theExpression instanceof GotoExpression) {
+                    markExecutable(graph.nodeStartingAt(((GotoExpression) theExpression).getJumpTarget()));
+                    return false;
+                } else if (theExpression instanceof ExpressionListContainer) {
+                    for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                        evaluate(theList);
+                    }
+                    if (theExpression instanceof TableSwitchExpression || theExpression instanceof LookupSwitchExpression) {
+                        return false;
+                    }
+                } else if (isNeverReturning(theExpression)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Object valueOf(Variable aVariable) {
+            if (!definedVariables.contains(aVariable)) {
+                // Arguments and other implicitly initialized variables
+                return NOT_CONSTANT;
+            }
+            Object theValue = lattice.get(aVariable);
+            if (theValue == null) {
+                return UNKNOWN;
+            }
+            return theValue;
+        }
+
+        private Object evaluate(Value aValue) {
+            if (aValue instanceof Variable) {
+                return valueOf((Variable) aValue);
+            }
+            if (aValue instanceof IntegerValue) {
+                return ((IntegerValue) aValue).getIntValue();
+            }
+            if (aValue instanceof LongValue) {
+                return ((LongValue) aValue).getLongValue();
+            }
+            if (aValue instanceof FloatValue) {
+                return checked(((FloatValue) aValue).getFloatValue());
+            }
+            if (aValue instanceof DoubleValue) {
+                return checked(((DoubleValue) aValue).getDoubleValue());
+            }
+            if (aValue instanceof BinaryValue) {
+                BinaryValue theBinary = (BinaryValue) aValue;
+                Object theFirst = evaluate(theBinary.resolveFirstArgument());
+                Object theSecond = evaluate(theBinary.resolveSecondArgument());
+                if (theFirst == UNKNOWN || theSecond == UNKNOWN) {
+                    return UNKNOWN;
+                }
+                if (!(theFirst instanceof Number) || !(theSecond instanceof Number)) {
+                    return NOT_CONSTANT;
+                }
+                return fold(theBinary.resolveType().resolve(), theBinary.getOperator(), (Number) theFirst, (Number) theSecond);
+            }
+            if (aValue instanceof CompareValue) {
+                Object theFirst = evaluate(aValue.resolveFirstArgument());
+                Object theSecond = evaluate(aValue.resolveSecondArgument());
+                if (theFirst == UNKNOWN || theSecond == UNKNOWN) {
+                    return UNKNOWN;
+                }
+                if (!(theFirst instanceof Number) || theFirst.getClass() != theSecond.getClass()) {
+                    return NOT_CONSTANT;
+                }
+                return compare((Number) theFirst, (Number) theSecond);
+            }
+            if (aValue instanceof NegatedValue) {
+                Object theArgument = evaluate(aValue.resolveFirstArgument());
+                if (theArgument == UNKNOWN) {
+                    return UNKNOWN;
+                }
+                if (!(theArgument instanceof Number)) {
+                    return NOT_CONSTANT;
+                }
+                return negate((Number) theArgument);
+            }
+            if (aValue instanceof TypeConversionValue) {
+                Object theArgument = evaluate(aValue.resolveFirstArgument());
+                if (theArgument == UNKNOWN) {
+                    return UNKNOWN;
+                }
+                if (!(theArgument instanceof Number)) {
+                    return NOT_CONSTANT;
+                }
+                return convert((Number) theArgument, aValue.resolveType().resolve());
+            }
+            return NOT_CONSTANT;
+        }
+
+        private Object evaluateCondition(Value aValue) {
+            if (aValue instanceof FixedBinaryValue) {
+                FixedBinaryValue theFixed = (FixedBinaryValue) aValue;
+                if (theFixed.getOperator() != FixedBinaryValue.Operator.ISZERO) {
+                    return NOT_CONSTANT;
+                }
+                Object theArgument = evaluate(theFixed.resolveFirstArgument());
+                if (theArgument instanceof Integer) {
+                    return (Integer) theArgument == 0;
+                }
+                return theArgument == UNKNOWN ? UNKNOWN : NOT_CONSTANT;
+            }
+            Object theResult = evaluate(aValue);
+            if (theResult instanceof Integer) {
+                return (Integer) theResult != 0;
+            }
+            return theResult;
+        }
+    }
+
+    @Override
+    public void optimize(ControlFlowGraph aGraph, BytecodeLinkerContext aLinkerContext) {
+        if (aGraph.getKnownNodes().isEmpty()) {
+            // Abstract and native methods have no code at all
+            return;
+        }
+
+        Analysis theAnalysis = new Analysis(aGraph);
+        theAnalysis.run();
+
+        if (theAnalysis.unresolvedBranch) {
+            // A branch depends on a variable never initialized in executable code, so the
+            // graph is not in a shape we can safely transform
+            return;
+        }
+
+        for (GraphNode theNode : aGraph.getKnownNodes()) {
+            if (!theAnalysis.executableNodes.contains(theNode)) {
+                aGraph.delete(theNode);
+            }
+        }
+
+        for (GraphNode theNode : aGraph.getKnownNodes()) {
+            if (rewrite(theAnalysis, theNode.getExpressions()) && !fallsThrough(theNode.getExpressions())) {
+                // Branches were resolved, so some successors might not be jumped to anymore
+                Set<GraphNode> theTargets = new HashSet<>();
+                collectJumpTargets(aGraph, theNode.getExpressions(), theTargets);
+                for (GraphNode theSuccessor : new ArrayList<>(theNode.getSuccessors().values())) {
+                    if (!theTargets.contains(theSuccessor)) {
+                        theNode.removeEdgesTo(theSuccessor);
+                    }
+                }
+            }
+        }
+
+        removeDeadDefinitions(aGraph);
+    }
+
+    private boolean rewrite(Analysis aAnalysis, ExpressionList aList) {
+        boolean theBranchResolved = false;
+        boolean theReachable = true;
+        for (Expression theExpression : aList.toList()) {
+            if (!theReachable) {
+                aList.remove(theExpression);
+                continue;
+            }
+            if (theExpression instanceof IFExpression) {
+                IFExpression theIF = (IFExpression) theExpression;
+                Object theCondition = aAnalysis.evaluateCondition(theIF.getBooleanValue());
+                if (theCondition == Boolean.TRUE) {
+                    rewrite(aAnalysis, theIF.getExpressions());
+                    aList.replace(theIF, theIF.getExpressions());
+                    theReachable = fallsThrough(theIF.getExpressions());
+                    theBranchResolved = true;
+                    continue;
+                }
+                if (theCondition == Boolean.FALSE) {
+                    aList.remove(theIF);
+                    theBranchResolved = true;
+                    continue;
+                }
+            }
+            if (theExpression instanceof InitVariableExpression) {
+                replaceConstants(aAnalysis, theExpression, ((InitVariableExpression) theExpression).getVariable());
+            } else {
+                replaceConstants(aAnalysis, theExpression, null);
+            }
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    theBranchResolved |= rewrite(aAnalysis, theList);
+                }
+            }
+            if (theExpression instanceof GotoExpression || isNeverReturning(theExpression)) {
+                theReachable = false;
+            }
+        }
+        return theBranchResolved;
+    }
+
+    private void replaceConstants(Analysis aAnalysis, Value aValue, Variable aDefinedVariable) {
+        if (aValue instanceof FixedBinaryValue) {
+            // Backends expect a variable as the argument
+            return;
+        }
+        for (Value.ConsumptionType theType : new Value.ConsumptionType[] {Value.ConsumptionType.ARGUMENT, Value.ConsumptionType.INVOCATIONTARGET}) {
+            for (Value theValue : aValue.consumedValues(theType)) {
+                if (theValue == aDefinedVariable || theValue instanceof PrimitiveValue) {
+                    continue;
+                }
+                Object theConstant = aAnalysis.evaluate(theValue);
+                Value theLiteral = toLiteral(theConstant, theValue.resolveType());
+                if (theLiteral != null) {
+                    aValue.replaceInConsumedValues(theValue, theLiteral);
+                } else if (!(theValue instanceof Variable)) {
+                    replaceConstants(aAnalysis, theValue, null);
+                }
+            }
+        }
+    }
+
+    private void removeDeadDefinitions(ControlFlowGraph aGraph) {
+        Program theProgram = aGraph.getProgram();
+        boolean theChanged = true;
+        while (theChanged) {
+            theChanged = false;
+            Set<Variable> theUsed = new HashSet<>();
+            for (GraphNode theNode : aGraph.getKnownNodes()) {
+                collectUsedVariables(theNode.getExpressions(), theUsed);
+            }
+            for (GraphNode theNode : aGraph.getKnownNodes()) {
+                theChanged |= removeDeadDefinitions(theNode.getExpressions(), theUsed);
+            }
+            Set<Variable> theDefined = new HashSet<>();
+            for (GraphNode theNode : aGraph.getKnownNodes()) {
+                collectDefinedVariables(theNode.getExpressions(), theDefined);
+            }
+            for (Variable theVariable : theProgram.getVariables()) {
+                if (!theUsed.contains(theVariable) && !theDefined.contains(theVariable) && !theProgram.isTrulyGlobal(theVariable)) {
+                    theProgram.deleteVariable(theVariable);
+                }
+            }
+        }
+    }
+
+    private boolean removeDeadDefinitions(ExpressionList aList, Set<Variable> aUsed) {
+        boolean theChanged = false;
+        for (Expression theExpression : aList.toList()) {
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    theChanged |= removeDeadDefinitions(theList, aUsed);
+                }
+            }
+            if (theExpression instanceof InitVariableExpression) {
+                InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                if (!aUsed.contains(theInit.getVariable()) && isSideEffectFree(theInit.getValue())) {
+                    aList.remove(theInit);
+                    theChanged = true;
+                }
+            }
+        }
+        return theChanged;
+    }
+
+    private static void collectDefinedVariables(ExpressionList aList, Set<Variable> aResult) {
+        for (Expression theExpression : aList.toList()) {
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    collectDefinedVariables(theList, aResult);
+                }
+            }
+            if (theExpression instanceof InitVariableExpression) {
+                aResult.add(((InitVariableExpression) theExpression).getVariable());
+            }
+        }
+    }
+
+    private static void collectUsedVariables(ExpressionList aList, Set<Variable> aResult) {
+        for (Expression theExpression : aList.toList()) {
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    collectUsedVariables(theList, aResult);
+                }
+            }
+            if (theExpression instanceof InitVariableExpression) {
+                collectUsedVariables(((InitVariableExpression) theExpression).getValue(), aResult);
+            } else {
+                collectUsedVariables(theExpression, aResult);
+            }
+        }
+    }
+
+    private static void collectUsedVariables(Value aValue, Set<Variable> aResult) {
+        if (aValue instanceof Variable) {
+            aResult.add((Variable) aValue);
+            return;
+        }
+        for (Value.ConsumptionType theType : new Value.ConsumptionType[] {Value.ConsumptionType.ARGUMENT, Value.ConsumptionType.INVOCATIONTARGET}) {
+            for (Value theValue : aValue.consumedValues(theType)) {
+                collectUsedVariables(theValue, aResult);
+            }
+        }
+    }
+
+    private static boolean isSideEffectFree(Value aValue) {
+        if (aValue instanceof Variable || aValue instanceof PrimitiveValue || aValue instanceof StringValue) {
+            return true;
+        }
+        if (aValue instanceof BinaryValue) {
+            BinaryValue theBinary = (BinaryValue) aValue;
+            switch (theBinary.getOperator()) {
+                case DIV:
+                case REMAINDER:
+                    // Integer division by zero throws an exception
+                    TypeRef.Native theType = theBinary.resolveType().resolve();
+                    if (theType != TypeRef.Native.FLOAT && theType != TypeRef.Native.DOUBLE) {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } else if (!(aValue instanceof CompareValue) && !(aValue instanceof NegatedValue)
+                && !(aValue instanceof TypeConversionValue) && !(aValue instanceof FixedBinaryValue)
+                && !(aValue instanceof InstanceOfValue)) {
+            return false;
+        }
+        for (Value theValue : aValue.consumedValues(Value.ConsumptionType.ARGUMENT)) {
+            if (!isSideEffectFree(theValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void collectJumpTargets(ControlFlowGraph aGraph, ExpressionList aList, Set<GraphNode> aResult) {
+        for (Expression theExpression : aList.toList()) {
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    collectJumpTargets(aGraph, theList, aResult);
+                }
+            }
+            if (theExpression instanceof GotoExpression) {
+                aResult.add(aGraph.nodeStartingAt(((GotoExpression) theExpression).getJumpTarget()));
+            }
+        }
+    }
+
+    private static boolean fallsThrough(ExpressionList aList) {
+        Expression theLast = aList.lastExpression();
+        return !(theLast instanceof GotoExpression) && !isNeverReturning(theLast)
+                && !(theLast instanceof TableSwitchExpression) && !(theLast instanceof LookupSwitchExpression);
+    }
+
+    private static boolean isNeverReturning(Expression aExpression) {
+        return aExpression instanceof ReturnExpression
+                || aExpression instanceof ReturnValueExpression
+                || aExpression instanceof ThrowExpression
+                || aExpression instanceof UnreachableExpression;
+    }
+
+    private static Object meet(Object aFirst, Object aSecond) {
+        if (aFirst == UNKNOWN) {
+            return aSecond;
+        }
+        if (aSecond == UNKNOWN) {
+            return aFirst;
+        }
+        if (aFirst == NOT_CONSTANT || aSecond == NOT_CONSTANT) {
+            return NOT_CONSTANT;
+        }
+        if (aFirst.equals(aSecond)) {
+            return aFirst;
+        }
+        return NOT_CONSTANT;
+    }
+
+    private static Object compatible(Variable aVariable, Object aValue) {
+        if (aValue == UNKNOWN || aValue == NOT_CONSTANT) {
+            return aValue;
+        }
+        if (toLiteral(aValue, aVariable.resolveType()) == null) {
+            return NOT_CONSTANT;
+        }
+        return aValue;
+    }
+
+    private static Value toLiteral(Object aConstant, TypeRef aType) {
+        switch (aType.resolve()) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case CHAR:
+            case INT:
+                if (aConstant instanceof Integer) {
+                    return new IntegerValue((Integer) aConstant);
+                }
+                return null;
+            case LONG:
+                if (aConstant instanceof Long) {
+                    return new LongValue((Long) aConstant);
+                }
+                return null;
+            case FLOAT:
+                if (aConstant instanceof Float) {
+                    return new FloatValue((Float) aConstant);
+                }
+                return null;
+            case DOUBLE:
+                if (aConstant instanceof Double) {
+                    return new DoubleValue((Double) aConstant);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static Object checked(float aValue) {
+        if (Float.isNaN(aValue) || Float.isInfinite(aValue)) {
+            return NOT_CONSTANT;
+        }
+        return aValue;
+    }
+
+    private static Object checked(double aValue) {
+        if (Double.isNaN(aValue) || Double.isInfinite(aValue)) {
+            return NOT_CONSTANT;
+        }
+        return aValue;
+    }
+
+    private static Object fold(TypeRef.Native aType, BinaryValue.Operator aOperator, Number aFirst, Number aSecond) {
+        switch (aOperator) {
+            case EQUALS:
+            case NOTEQUALS:
+            case LESSTHAN:
+            case LESSTHANOREQUALS:
+            case GREATERTHAN:
+            case GREATEROREQUALS: {
+                if (aFirst.getClass() != aSecond.getClass()) {
+                    return NOT_CONSTANT;
+                }
+                int theResult = (Integer) compare(aFirst, aSecond);
+                switch (aOperator) {
+                    case EQUALS:
+                        return theResult == 0;
+                    case NOTEQUALS:
+                        return theResult != 0;
+                    case LESSTHAN:
+                        return theResult < 0;
+                    case LESSTHANOREQUALS:
+                        return theResult <= 0;
+                    case GREATERTHAN:
+                        return theResult > 0;
+                    default:
+                        return theResult >= 0;
+                }
+            }
+            default:
+                break;
+        }
+        switch (aType) {
+            case INT:
+                if (aFirst instanceof Integer && aSecond instanceof Integer) {
+                    return foldInt(aOperator, aFirst.intValue(), aSecond.intValue());
+                }
+                return NOT_CONSTANT;
+            case LONG:
+                if (aFirst instanceof Long && (aSecond instanceof Long || aSecond instanceof Integer)) {
+                    return foldLong(aOperator, aFirst.longValue(), aSecond.longValue());
+                }
+                return NOT_CONSTANT;
+            case FLOAT:
+                if (aFirst instanceof Float && aSecond instanceof Float) {
+                    return foldFloat(aOperator, aFirst.floatValue(), aSecond.floatValue());
+                }
+                return NOT_CONSTANT;
+            case DOUBLE:
+                if (aFirst instanceof Double && aSecond instanceof Double) {
+                    return foldDouble(aOperator, aFirst.doubleValue(), aSecond.doubleValue());
+                }
+                return NOT_CONSTANT;
+            default:
+                return NOT_CONSTANT;
+        }
+    }
+
+    private static Object foldInt(BinaryValue.Operator aOperator, int aFirst, int aSecond) {
+        switch (aOperator) {
+            case ADD:
+                return aFirst + aSecond;
+            case SUB:
+                return aFirst - aSecond;
+            case MUL:
+                return aFirst * aSecond;
+            case DIV:
+                return aSecond == 0 ? NOT_CONSTANT : aFirst / aSecond;
+            case REMAINDER:
+                return aSecond == 0 ? NOT_CONSTANT : aFirst % aSecond;
+            case BINARYXOR:
+                return aFirst ^ aSecond;
+            case BINARYOR:
+                return aFirst | aSecond;
+            case BINARYAND:
+                return aFirst & aSecond;
+            case BINARYSHIFTLEFT:
+                return aFirst << aSecond;
+            case BINARYSHIFTRIGHT:
+                return aFirst >> aSecond;
+            case BINARYUNSIGNEDSHIFTRIGHT:
+                return aFirst >>> aSecond;
+            default:
+                return NOT_CONSTANT;
+        }
+    }
+
+    private static Object foldLong(BinaryValue.Operator aOperator, long aFirst, long aSecond) {
+        switch (aOperator) {
+            case ADD:
+                return aFirst + aSecond;
+            case SUB:
+                return aFirst - aSecond;
+            case MUL:
+                return aFirst * aSecond;
+            case DIV:
+                return aSecond == 0 ? NOT_CONSTANT : aFirst / aSecond;
+            case REMAINDER:
+                return aSecond == 0 ? NOT_CONSTANT : aFirst % aSecond;
+            case BINARYXOR:
+                return aFirst ^ aSecond;
+            case BINARYOR:
+                return aFirst | aSecond;
+            case BINARYAND:
+                return aFirst & aSecond;
+            case BINARYSHIFTLEFT:
+                return aFirst << aSecond;
+            case BINARYSHIFTRIGHT:
+                return aFirst >> aSecond;
+            case BINARYUNSIGNEDSHIFTRIGHT:
+                return aFirst >>> aSecond;
+            default:
+                return NOT_CONSTANT;
+        }
+    }
+
+    private static Object foldFloat(BinaryValue.Operator aOperator, float aFirst, float aSecond) {
+        switch (aOperator) {
+            case ADD:
+                return checked(aFirst + aSecond);
+            case SUB:
+                return checked(aFirst - aSecond);
+            case MUL:
+                return checked(aFirst * aSecond);
+            case DIV:
+                return checked(aFirst / aSecond);
+            case REMAINDER:
+                return checked(aFirst % aSecond);
+            default:
+                return NOT_CONSTANT;
+        }
+    }
+
+    private static Object foldDouble(BinaryValue.Operator aOperator, double aFirst, double aSecond) {
+        switch (aOperator) {
+            case ADD:
+                return checked(aFirst + aSecond);
+            case SUB:
+                return checked(aFirst - aSecond);
+            case MUL:
+                return checked(aFirst * aSecond);
+            case DIV:
+                return checked(aFirst / aSecond);
+            case REMAINDER:
+                return checked(aFirst % aSecond);
+            default:
+                return NOT_CONSTANT;
+        }
+    }
+
+    private static Object compare(Number aFirst, Number aSecond) {
+        // Constants are never NaN, so floating point values can be compared like integers
+        if (aFirst instanceof Integer || aFirst instanceof Long) {
+            return Long.compare(aFirst.longValue(), aSecond.longValue());
+        }
+        double theFirst = aFirst.doubleValue();
+        double theSecond = aSecond.doubleValue();
+        if (theFirst < theSecond) {
+            return -1;
+        }
+        if (theFirst > theSecond) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static Object negate(Number aValue) {
+        if (aValue instanceof Integer) {
+            return -aValue.intValue();
+        }
+        if (aValue instanceof Long) {
+            return -aValue.longValue();
+        }
+        if (aValue instanceof Float) {
+            return -aValue.floatValue();
+        }
+        return -aValue.doubleValue();
+    }
+
+    private static Object convert(Number aValue, TypeRef.Native aTargetType) {
+        switch (aTargetType) {
+            case INT:
+                return aValue.intValue();
+            case LONG:
+                return aValue.longValue();
+            case FLOAT:
+                return checked(aValue.floatValue());
+            case DOUBLE:
+                return checked(aValue.doubleValue());
+            case BYTE:
+                return (int) (byte) aValue.intValue();
+            case SHORT:
+                return (int) (short) aValue.intValue();
+            case CHAR:
+                return (int) (char) aValue.intValue();
+            default:
+                return NOT_CONSTANT;
+        }
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import de.mirkosertic.bytecoder.core.BytecodeFieldRefConstant;
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.ssa.ArrayEntryValue;
+import de.mirkosertic.bytecoder.ssa.ArrayLengthValue;
+import de.mirkosertic.bytecoder.ssa.BinaryValue;
+import de.mirkosertic.bytecoder.ssa.CompareValue;
+import de.mirkosertic.bytecoder.ssa.ControlFlowGraph;
+import de.mirkosertic.bytecoder.ssa.DominatorTree;
+import de.mirkosertic.bytecoder.ssa.DoubleValue;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
+import de.mirkosertic.bytecoder.ssa.FixedBinaryValue;
+import de.mirkosertic.bytecoder.ssa.FloatValue;
+import de.mirkosertic.bytecoder.ssa.FloorValue;
+import de.mirkosertic.bytecoder.ssa.GetFieldValue;
+import de.mirkosertic.bytecoder.ssa.GetStaticValue;
+import de.mirkosertic.bytecoder.ssa.GotoExpression;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.InstanceOfValue;
+import de.mirkosertic.bytecoder.ssa.IntegerValue;
+import de.mirkosertic.bytecoder.ssa.LongValue;
+import de.mirkosertic.bytecoder.ssa.NegatedValue;
+import de.mirkosertic.bytecoder.ssa.NullValue;
+import de.mirkosertic.bytecoder.ssa.PrimitiveValue;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.ReturnExpression;
+import de.mirkosertic.bytecoder.ssa.ReturnValueExpression;
+import de.mirkosertic.bytecoder.ssa.SqrtValue;
+import de.mirkosertic.bytecoder.ssa.ThrowExpression;
+import de.mirkosertic.bytecoder.ssa.TypeConversionValue;
+import de.mirkosertic.bytecoder.ssa.UnreachableExpression;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+
+/**
+ * Global value numbering, replacing values already computed by a dominating initialization
+ * with the variable holding the result.
+ *
+ * Values are numbered by their kind, their attributes like operators or fields, and their operands.
+ * Operands are either literals or variables initialized exactly once, as PHI functions are variables
+ * with multiple initializations and hence do not denote a single value. Copies of such variables
+ * are numbered like the variable they were copied from.
+ *
+ * The dominator tree is walked from the start node, every node sees the values computed by its
+ * dominators before control left them. Reads of fields, static fields and array elements are numbered
+ * as well, but are forgotten as soon as memory might have changed. Stores only invalidate reads of
+ * the same field name or the same array element type, while invocations invalidate all reads. Reads
+ * are only passed on to a dominated node if the dominator is its only predecessor, as there might be
+ * stores on other paths.
+ */
+public class GlobalValueNumberingOptimizer implements Optimizer {
+
+    private static final Object NULL_OPERAND = new Object();
+
+    private static class ValueKey {
+
+        private final Class<? extends Value> type;
+        private final Object attribute;
+        private final List<Object> operands;
+        private final MemoryLocation location;
+
+        private ValueKey(Class<? extends Value> aType, Object aAttribute, List<Object> aOperands, MemoryLocation aLocation) {
+            type = aType;
+            attribute = aAttribute;
+            operands = aOperands;
+            location = aLocation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ValueKey theOther = (ValueKey) o;
+            return type == theOther.type && Objects.equals(attribute, theOther.attribute) && operands.equals(theOther.operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, attribute, operands);
+        }
+    }
+
+    private static class Numbering {
+
+        private final Map<Expression, Integer> occurrences;
+        private final Map<Variable, Integer> definitions;
+        private final Set<Variable> arguments;
+        private final Map<Variable, Variable> leaders;
+
+        private Numbering(ControlFlowGraph aGraph) {
+            occurrences = new IdentityHashMap<>();
+            definitions = new HashMap<>();
+            arguments = new HashSet<>();
+            leaders = new HashMap<>();
+            for (Program.Argument theArgument : aGraph.getProgram().getArguments()) {
+                arguments.add(theArgument.getVariable());
+            }
+            for (GraphNode theNode : aGraph.getKnownNodes()) {
+                count(theNode.getExpressions());
+            }
+        }
+
+        private void count(ExpressionList aList) {
+            // Expressions might be shared by more than one list, so every occurrence is a definition
+            for (Expression theExpression : aList.toList()) {
+                occurrences.merge(theExpression, 1, Integer::sum);
+                if (theExpression instanceof InitVariableExpression) {
+                    definitions.merge(((InitVariableExpression) theExpression).getVariable(), 1, Integer::sum);
+                }
+                if (theExpression instanceof ExpressionListContainer) {
+                    for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                        count(theList);
+                    }
+                }
+            }
+        }
+
+        private boolean isSingleDefinition(Variable aVariable) {
+            Integer theCount = definitions.get(aVariable);
+            return theCount != null && theCount == 1;
+        }
+
+        private boolean isStable(Variable aVariable) {
+            Integer theCount = definitions.get(aVariable);
+            if (theCount == null) {
+                return arguments.contains(aVariable);
+            }
+            return theCount == 1;
+        }
+
+        private boolean isRewritable(Expression aExpression) {
+            return occurrences.get(aExpression) == 1;
+        }
+
+        private Variable leaderOf(Variable aVariable) {
+            Variable theLeader = leaders.get(aVariable);
+            return theLeader != null ? theLeader : aVariable;
+        }
+
+        private Object operand(Value aValue) {
+            if (aValue instanceof Variable) {
+                Variable theVariable = (Variable) aValue;
+                if (!isStable(theVariable)) {
+                    return null;
+                }
+                return leaderOf(theVariable);
+            }
+            if (aValue instanceof IntegerValue) {
+                return ((IntegerValue) aValue).getIntValue();
+            }
+            if (aValue instanceof LongValue) {
+                return ((LongValue) aValue).getLongValue();
+            }
+            if (aValue instanceof FloatValue) {
+                return ((FloatValue) aValue).getFloatValue();
+            }
+            if (aValue instanceof DoubleValue) {
+                return ((DoubleValue) aValue).getDoubleValue();
+            }
+            if (aValue instanceof NullValue) {
+                return NULL_OPERAND;
+            }
+            return null;
+        }
+
+        private ValueKey keyOf(Value aValue) {
+            Object theAttribute = null;
+            boolean theCommutative = false;
+            if (aValue instanceof BinaryValue) {
+                BinaryValue theBinary = (BinaryValue) aValue;
+                theAttribute = Arrays.asList(theBinary.getOperator(), theBinary.resolveType().resolve());
+                switch (theBinary.getOperator()) {
+                    case ADD:
+                    case MUL:
+                    case EQUALS:
+                    case NOTEQUALS:
+                    case BINARYAND:
+                    case BINARYOR:
+                    case BINARYXOR:
+                        theCommutative = true;
+                        break;
+                    default:
+                        break;
+                }
+            } else if (aValue instanceof TypeConversionValue || aValue instanceof FloorValue || aValue instanceof SqrtValue) {
+                theAttribute = aValue.resolveType().resolve();
+            } else if (aValue instanceof FixedBinaryValue) {
+                theAttribute = ((FixedBinaryValue) aValue).getOperator();
+            } else if (aValue instanceof InstanceOfValue) {
+                theAttribute = ((InstanceOfValue) aValue).getType().getConstant().stringValue();
+            } else if (aValue instanceof GetFieldValue) {
+                BytecodeFieldRefConstant theField = ((GetFieldValue) aValue).getField();
+                theAttribute = qualifiedNameOf(theField);
+            } else if (aValue instanceof GetStaticValue) {
+                BytecodeFieldRefConstant theField = ((GetStaticValue) aValue).getField();
+                theAttribute = qualifiedNameOf(theField);
+            } else if (aValue instanceof ArrayEntryValue) {
+                theAttribute = aValue.resolveType().resolve();
+            } else if (!(aValue instanceof CompareValue) && !(aValue instanceof NegatedValue) && !(aValue instanceof ArrayLengthValue)) {
+                return null;
+            }
+
+            List<Object> theOperands = new ArrayList<>();
+            for (Value theArgument : aValue.consumedValues(Value.ConsumptionType.ARGUMENT)) {
+                Object theOperand = operand(theArgument);
+                if (theOperand == null) {
+                    return null;
+                }
+                theOperands.add(theOperand);
+            }
+            if (theCommutative && orderOf(theOperands.get(0)).compareTo(orderOf(theOperands.get(1))) > 0) {
+                theOperands.add(theOperands.remove(0));
+            }
+            return new ValueKey(aValue.getClass(), theAttribute, theOperands, MemoryLocation.readBy(aValue));
+        }
+
+        private static String orderOf(Object aOperand) {
+            if (aOperand instanceof Variable) {
+                return "V" + ((Variable) aOperand).getName();
+            }
+            if (aOperand == NULL_OPERAND) {
+                return "N";
+            }
+            return "L" + aOperand.getClass().getSimpleName() + aOperand;
+        }
+    }
+
+    private static String qualifiedNameOf(BytecodeFieldRefConstant aField) {
+        return aField.getClassIndex().getClassConstant().getConstant().stringValue() + "." + MemoryLocation.nameOf(aField);
+    }
+
+    private static class NodeState {
+
+        private final GraphNode node;
+        private final Map<ValueKey, Variable> available;
+
+        private NodeState(GraphNode aNode, Map<ValueKey, Variable> aAvailable) {
+            node = aNode;
+            available = aAvailable;
+        }
+    }
+
+    @Override
+    public void optimize(ControlFlowGraph aGraph, BytecodeLinkerContext aLinkerContext) {
+        if (aGraph.getKnownNodes().isEmpty()) {
+            return;
+        }
+
+        Numbering theNumbering = new Numbering(aGraph);
+        DominatorTree theTree = aGraph.dominatorTree();
+
+        Deque<NodeState> theWorkList = new ArrayDeque<>();
+        theWorkList.push(new NodeState(theTree.getStart(), new HashMap<>()));
+        while (!theWorkList.isEmpty()) {
+            NodeState theState = theWorkList.pop();
+            Map<ValueKey, Variable> theAvailable = theState.available;
+
+            Map<ValueKey, Variable> theExitState = process(theNumbering, theState.node.getExpressions(), theAvailable);
+
+            for (GraphNode theChild : theTree.childrenOf(theState.node)) {
+                Map<ValueKey, Variable> theChildState = new HashMap<>();
+                boolean theOnlyPredecessor = new HashSet<>(theTree.predecessorsOf(theChild)).equals(Collections.singleton(theState.node));
+                for (Map.Entry<ValueKey, Variable> theEntry : theExitState.entrySet()) {
+                    ValueKey theKey = theEntry.getKey();
+                    if (theKey.location == null) {
+                        theChildState.put(theKey, theEntry.getValue());
+                    } else if (theOnlyPredecessor && theAvailable.get(theKey) == theEntry.getValue()) {
+                        // The read was not invalidated by the rest of the node
+                        theChildState.put(theKey, theEntry.getValue());
+                    }
+                }
+                theWorkList.push(new NodeState(theChild, theChildState));
+            }
+        }
+    }
+
+    /**
+     * Numbers the values of a list, and returns the values known at the point where control might
+     * leave the list for the first time.
+     */
+    private Map<ValueKey, Variable> process(Numbering aNumbering, ExpressionList aList, Map<ValueKey, Variable> aAvailable) {
+        Map<ValueKey, Variable> theExitState = null;
+        for (Expression theExpression : aList.toList()) {
+            if (theExitState == null && leavesList(theExpression)) {
+                theExitState = new HashMap<>(aAvailable);
+            }
+
+            boolean theRewritable = aNumbering.isRewritable(theExpression);
+            if (theExpression instanceof InitVariableExpression) {
+                InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                Variable theVariable = theInit.getVariable();
+                Value theValue = theInit.getValue();
+
+                if (theValue instanceof Variable) {
+                    Variable theSource = (Variable) theValue;
+                    if (aNumbering.isSingleDefinition(theVariable) && aNumbering.isStable(theSource)) {
+                        aNumbering.leaders.put(theVariable, aNumbering.leaderOf(theSource));
+                    }
+                    continue;
+                }
+
+                boolean theValueRewritable = theRewritable;
+                for (Value theUser : theValue.usedBy()) {
+                    if (theUser != theInit && theUser != theVariable) {
+                        theValueRewritable = false;
+                    }
+                }
+                visitArguments(aNumbering, theValue, theValueRewritable, aAvailable);
+
+                ValueKey theKey = aNumbering.keyOf(theValue);
+                Variable theExisting = theKey != null ? aAvailable.get(theKey) : null;
+                if (theExisting != null && theRewritable && isCompatible(theValue, theExisting)) {
+                    theInit.replaceInConsumedValues(theValue, theExisting);
+                    theVariable.replaceInConsumedValues(theValue, theExisting);
+                    if (aNumbering.isSingleDefinition(theVariable)) {
+                        aNumbering.leaders.put(theVariable, aNumbering.leaderOf(theExisting));
+                    }
+                    continue;
+                }
+
+                invalidate(theValue, aAvailable);
+                if (theKey != null && theExisting == null && aNumbering.isSingleDefinition(theVariable)) {
+                    aAvailable.put(theKey, theVariable);
+                }
+                continue;
+            }
+
+            visitArguments(aNumbering, theExpression, theRewritable, aAvailable);
+            invalidate(theExpression, aAvailable);
+
+            if (theExpression instanceof ExpressionListContainer) {
+                ExpressionListContainer theContainer = (ExpressionListContainer) theExpression;
+                for (ExpressionList theList : theContainer.getExpressionLists()) {
+                    // Values computed in a nested list do not dominate the rest of this list
+                    process(aNumbering, theList, new HashMap<>(aAvailable));
+                }
+                for (ExpressionList theList : theContainer.getExpressionLists()) {
+                    invalidateAll(theList, aAvailable);
+                }
+            }
+        }
+        if (theExitState == null) {
+            theExitState = new HashMap<>(aAvailable);
+        }
+        return theExitState;
+    }
+
+    private static boolean leavesList(Expression aExpression) {
+        return aExpression instanceof ExpressionListContainer
+                || aExpression instanceof GotoExpression
+                || aExpression instanceof ReturnExpression
+                || aExpression instanceof ReturnValueExpression
+                || aExpression instanceof ThrowExpression
+                || aExpression instanceof UnreachableExpression;
+    }
+
+    private void visitArguments(Numbering aNumbering, Value aConsumer, boolean aRewritable, Map<ValueKey, Variable> aAvailable) {
+        List<Value> theArguments = new ArrayList<>();
+        theArguments.addAll(aConsumer.consumedValues(Value.ConsumptionType.INVOCATIONTARGET));
+        theArguments.addAll(aConsumer.consumedValues(Value.ConsumptionType.ARGUMENT));
+        for (Value theArgument : theArguments) {
+            if (theArgument instanceof Variable || theArgument instanceof PrimitiveValue) {
+                continue;
+            }
+            // Values used more than once must not be changed, the other usages might see other values
+            visitArguments(aNumbering, theArgument, aRewritable && theArgument.getUsageCount() == 1, aAvailable);
+            if (aRewritable) {
+                ValueKey theKey = aNumbering.keyOf(theArgument);
+                Variable theExisting = theKey != null ? aAvailable.get(theKey) : null;
+                if (theExisting != null && isCompatible(theArgument, theExisting)) {
+                    aConsumer.replaceInConsumedValues(theArgument, theExisting);
+                    continue;
+                }
+            }
+            invalidate(theArgument, aAvailable);
+        }
+    }
+
+    private static boolean isCompatible(Value aValue, Variable aVariable) {
+        return aValue.resolveType().resolve() == aVariable.resolveType().resolve();
+    }
+
+    private void invalidateAll(ExpressionList aList, Map<ValueKey, Variable> aAvailable) {
+        for (Expression theExpression : aList.toList()) {
+            invalidateRecursive(theExpression, aAvailable);
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    invalidateAll(theList, aAvailable);
+                }
+            }
+        }
+    }
+
+    private void invalidateRecursive(Value aValue, Map<ValueKey, Variable> aAvailable) {
+        if (aValue instanceof Variable) {
+            return;
+        }
+        for (Value theArgument : aValue.consumedValues(Value.ConsumptionType.INVOCATIONTARGET)) {
+            invalidateRecursive(theArgument, aAvailable);
+        }
+        for (Value theArgument : aValue.consumedValues(Value.ConsumptionType.ARGUMENT)) {
+            invalidateRecursive(theArgument, aAvailable);
+        }
+        invalidate(aValue, aAvailable);
+    }
+
+    /**
+     * Removes all reads from the available values that might see another value after evaluation
+     * of the given value or expression. Only the value itself is considered, not its arguments.
+     */
+    private void invalidate(Value aValue, Map<ValueKey, Variable> aAvailable) {
+        MemoryLocation theLocation = MemoryLocation.writtenBy(aValue);
+        if (theLocation != null) {
+            invalidate(aAvailable, theLocation);
+        } else if (MemoryLocation.mightWriteAnything(aValue)) {
+            // Invocations and everything else we do not know might write to any location
+            invalidate(aAvailable, null);
+        }
+    }
+
+    private void invalidate(Map<ValueKey, Variable> aAvailable, MemoryLocation aLocation) {
+        for (Iterator<ValueKey> theIterator = aAvailable.keySet().iterator(); theIterator.hasNext(); ) {
+            ValueKey theKey = theIterator.next();
+            if (theKey.location != null && (aLocation == null || aLocation.equals(theKey.location))) {
+                theIterator.remove();
+            }
+        }
+    }
+}
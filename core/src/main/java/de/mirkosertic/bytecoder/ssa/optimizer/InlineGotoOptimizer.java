@@ -58,7 +58,9 @@ public class InlineGotoOptimizer implements Optimizer {
                 GotoExpression theGOTO = (GotoExpression) theExpression;
                 GraphNode theTargetNode = aGraph.nodeStartingAt(theGOTO.getJumpTarget());
 
-                if (theTargetNode.isStrictlyDominatedBy(aNode)) {
+                // A node can only be inlined if it is jumped to once, as every other
+                // jump would otherwise point to the inlining node itself
+                if (theTargetNode.isStrictlyDominatedBy(aNode) && countGotosTo(aNode.getExpressions(), theTargetNode) == 1) {
                     // Node can be inlined
                     aGraph.delete(theTargetNode);
                     aList.replace(theGOTO, theTargetNode.getExpressions());
@@ -76,6 +78,25 @@ public class InlineGotoOptimizer implements Optimizer {
         return false;
     }
 
+    private int countGotosTo(ExpressionList aList, GraphNode aTarget) {
+        int theCount = 0;
+        for (Expression theExpression : aList.toList()) {
+            if (theExpression instanceof ExpressionListContainer) {
+                ExpressionListContainer theContainer = (ExpressionListContainer) theExpression;
+                for (ExpressionList theList : theContainer.getExpressionLists()) {
+                    theCount += countGotosTo(theList, aTarget);
+                }
+            }
+            if (theExpression instanceof GotoExpression) {
+                GotoExpression theGoto = (GotoExpression) theExpression;
+                if (Objects.equals(theGoto.getJumpTarget(), aTarget.getStartAddress())) {
+                    theCount++;
+                }
+            }
+        }
+        return theCount;
+    }
+
     private void recomputeGotos(ExpressionList aList, BytecodeOpcodeAddress aOriginal, BytecodeOpcodeAddress aNew) {
         for (Expression theExpression : aList.toList()) {
             if (theExpression instanceof ExpressionListContainer) {
@@ -0,0 +1,593 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.mirkosertic.bytecoder.core.BytecodeAnnotationAttributeInfo;
+import de.mirkosertic.bytecoder.core.BytecodeClass;
+import de.mirkosertic.bytecoder.core.BytecodeCodeAttributeInfo;
+import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeMethod;
+import de.mirkosertic.bytecoder.core.BytecodeMethodSignature;
+import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodeOpcodeAddress;
+import de.mirkosertic.bytecoder.core.BytecodeProgram;
+import de.mirkosertic.bytecoder.ssa.ArrayStoreExpression;
+import de.mirkosertic.bytecoder.ssa.CheckCastExpression;
+import de.mirkosertic.bytecoder.ssa.ComputedMemoryLocationReadValue;
+import de.mirkosertic.bytecoder.ssa.ComputedMemoryLocationWriteValue;
+import de.mirkosertic.bytecoder.ssa.ControlFlowGraph;
+import de.mirkosertic.bytecoder.ssa.CurrentExceptionValue;
+import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodExpression;
+import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodValue;
+import de.mirkosertic.bytecoder.ssa.ExceptionDispatchExpression;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
+import de.mirkosertic.bytecoder.ssa.GotoExpression;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.IFExpression;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.InvocationValue;
+import de.mirkosertic.bytecoder.ssa.InvokeStaticMethodExpression;
+import de.mirkosertic.bytecoder.ssa.InvokeStaticMethodValue;
+import de.mirkosertic.bytecoder.ssa.InvokeVirtualMethodExpression;
+import de.mirkosertic.bytecoder.ssa.MethodHandlesGeneratedLookupValue;
+import de.mirkosertic.bytecoder.ssa.MethodParameterValue;
+import de.mirkosertic.bytecoder.ssa.PHIFunction;
+import de.mirkosertic.bytecoder.ssa.PrimitiveValue;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.ProgramGenerator;
+import de.mirkosertic.bytecoder.ssa.PutFieldExpression;
+import de.mirkosertic.bytecoder.ssa.PutStaticExpression;
+import de.mirkosertic.bytecoder.ssa.ResolveCallsiteObjectValue;
+import de.mirkosertic.bytecoder.ssa.ReturnExpression;
+import de.mirkosertic.bytecoder.ssa.ReturnValueExpression;
+import de.mirkosertic.bytecoder.ssa.RuntimeGeneratedTypeValue;
+import de.mirkosertic.bytecoder.ssa.SelfReferenceParameterValue;
+import de.mirkosertic.bytecoder.ssa.StackVariableDescription;
+import de.mirkosertic.bytecoder.ssa.StackTopValue;
+import de.mirkosertic.bytecoder.ssa.UnknownValue;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+import de.mirkosertic.bytecoder.ssa.VariableDescription;
+
+/**
+ * Replaces calls to small, statically bound methods by the body of the called method.
+ *
+ * Only invocations with a single possible target are considered, this means static methods,
+ * constructors, private methods and virtual invocations devirtualized by the {@link InvokeVirtualOptimizer}.
+ * The callee program is generated again from its bytecode for every callsite, using the generator of the
+ * calling program, so its values and variables are fresh and can be moved into the calling program.
+ *
+ * A callee consisting of a single basic block replaces the invocation expression. A callee with control
+ * flow, for instance a branch or a diamond, is only inlined for invocations at the top level of a node.
+ * The node is split after the invocation, the nodes of the callee are added to the graph in between, and
+ * every return of the callee becomes a jump to the continuation node. The node is not split if the
+ * continuation leads to a node the code in front of the invocation jumps to, as the relooper could not
+ * place that node. Callees with loops, exception handlers or thrown exceptions are not inlined, and
+ * neither are static methods of classes with a class initializer.
+ *
+ * The size of an inlined callee is limited by its number of bytecode instructions, and the total
+ * growth of a program is limited by an instruction budget shared by all callsites of the program.
+ */
+public class InlineMethodsOptimizer implements Optimizer {
+
+    public static final int DEFAULT_MAX_CALLEE_SIZE = 24;
+    public static final int DEFAULT_INSTRUCTION_BUDGET = 256;
+
+    private static class Budget {
+
+        private int remaining;
+
+        private Budget(int aRemaining) {
+            remaining = aRemaining;
+        }
+    }
+
+    private final int maxCalleeSize;
+    private final int instructionBudget;
+
+    public InlineMethodsOptimizer() {
+        this(DEFAULT_MAX_CALLEE_SIZE, DEFAULT_INSTRUCTION_BUDGET);
+    }
+
+    public InlineMethodsOptimizer(int aMaxCalleeSize, int aInstructionBudget) {
+        maxCalleeSize = aMaxCalleeSize;
+        instructionBudget = aInstructionBudget;
+    }
+
+    @Override
+    public void optimize(ControlFlowGraph aGraph, BytecodeLinkerContext aLinkerContext) {
+        ProgramGenerator theGenerator = aGraph.getProgram().getGenerator();
+        if (theGenerator == null) {
+            // Callees are generated the same way as the calling program, which is unknown here
+            return;
+        }
+        int theNodeCount = aGraph.getKnownNodes().size();
+        inlineInto(aGraph, true, theGenerator, aLinkerContext, new HashSet<>(), new Budget(instructionBudget));
+        if (aGraph.getKnownNodes().size() != theNodeCount) {
+            // Join the split nodes with the entry and exit nodes of the inlined callees
+            new InlineGotoOptimizer().optimize(aGraph, aLinkerContext);
+        }
+    }
+
+    private void inlineInto(ControlFlowGraph aGraph, boolean aSplitNodes, ProgramGenerator aGenerator,
+            BytecodeLinkerContext aLinkerContext, Set<String> aInlineStack, Budget aBudget) {
+        for (GraphNode theNode : aGraph.getDominatedNodes()) {
+            // A split node continues with the rest of its expressions in a new node
+            GraphNode theCurrent = theNode;
+            while (theCurrent != null) {
+                theCurrent = inlineInto(aGraph, aSplitNodes ? theCurrent : null, theCurrent.getExpressions(), aGenerator,
+                        aLinkerContext, aInlineStack, aBudget);
+            }
+        }
+    }
+
+    private GraphNode inlineInto(ControlFlowGraph aGraph, GraphNode aNode, ExpressionList aExpressions, ProgramGenerator aGenerator,
+            BytecodeLinkerContext aLinkerContext, Set<String> aInlineStack, Budget aBudget) {
+        List<Expression> theExpressions = aExpressions.toList();
+        for (int i = 0; i < theExpressions.size(); i++) {
+            Expression theExpression = theExpressions.get(i);
+
+            if (theExpression instanceof ExpressionListContainer) {
+                ExpressionListContainer theContainer = (ExpressionListContainer) theExpression;
+                for (ExpressionList theSub : theContainer.getExpressionLists()) {
+                    // Nested expression lists cannot be split into nodes
+                    inlineInto(aGraph, null, theSub, aGenerator, aLinkerContext, aInlineStack, aBudget);
+                }
+                continue;
+            }
+
+            if (i < theExpressions.size() - 1 && theExpressions.get(i + 1) instanceof ExceptionDispatchExpression) {
+                // The invocation is covered by an exception handler, exceptions thrown by the
+                // inlined code would not be dispatched to it
+                continue;
+            }
+
+            GraphNode theContinuation = null;
+            if (theExpression instanceof DirectInvokeMethodExpression) {
+                DirectInvokeMethodValue theValue = ((DirectInvokeMethodExpression) theExpression).getValue();
+                theContinuation = inline(aGraph, aNode, aExpressions, theExpression, null, theValue, aGenerator, aLinkerContext, aInlineStack, aBudget);
+            } else if (theExpression instanceof InvokeStaticMethodExpression) {
+                InvokeStaticMethodValue theValue = ((InvokeStaticMethodExpression) theExpression).getValue();
+                theContinuation = inline(aGraph, aNode, aExpressions, theExpression, null, theValue, aGenerator, aLinkerContext, aInlineStack, aBudget);
+            } else if (theExpression instanceof InitVariableExpression) {
+                InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                Value theValue = theInit.getValue();
+                if (theValue instanceof DirectInvokeMethodValue || theValue instanceof InvokeStaticMethodValue) {
+                    theContinuation = inline(aGraph, aNode, aExpressions, theExpression, theInit.getVariable(), (InvocationValue) theValue,
+                            aGenerator, aLinkerContext, aInlineStack, aBudget);
+                }
+            }
+            if (theContinuation != null) {
+                // The remaining expressions were moved to the continuation
+                return theContinuation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inlines the invocation if possible. If the node had to be split, the node continuing after the
+     * inlined code is returned, otherwise null.
+     */
+    private GraphNode inline(ControlFlowGraph aGraph, GraphNode aNode, ExpressionList aExpressions, Expression aInvocation, Variable aResult,
+            InvocationValue aValue, ProgramGenerator aGenerator, BytecodeLinkerContext aLinkerContext, Set<String> aInlineStack, Budget aBudget) {
+
+        BytecodeObjectTypeRef theClassName;
+        String theMethodName;
+        BytecodeMethodSignature theSignature;
+        List<Value> theArguments = new ArrayList<>();
+        boolean theStatic;
+        if (aValue instanceof DirectInvokeMethodValue) {
+            DirectInvokeMethodValue theDirect = (DirectInvokeMethodValue) aValue;
+            theClassName = theDirect.getClazz();
+            theMethodName = theDirect.getMethodName();
+            theSignature = theDirect.getSignature();
+            theArguments.add(theDirect.consumedValues(Value.ConsumptionType.INVOCATIONTARGET).get(0));
+            theStatic = false;
+        } else {
+            InvokeStaticMethodValue theInvokeStatic = (InvokeStaticMethodValue) aValue;
+            theClassName = theInvokeStatic.getClassName();
+            theMethodName = theInvokeStatic.getMethodName();
+            theSignature = theInvokeStatic.getSignature();
+            theStatic = true;
+        }
+        theArguments.addAll(aValue.consumedValues(Value.ConsumptionType.ARGUMENT));
+
+        BytecodeLinkedClass theLinkedClass = aLinkerContext.linkClass(theClassName);
+        if (theLinkedClass.emulatedByRuntime()) {
+            return null;
+        }
+        if (theStatic && theLinkedClass.hasClassInitializer()) {
+            // Invoking a static method initializes its class, the inlined body would not do so
+            return null;
+        }
+        BytecodeClass theBytecodeClass = theLinkedClass.getBytecodeClass();
+        BytecodeMethod theMethod = theBytecodeClass.methodByNameAndSignatureOrNull(theMethodName, theSignature);
+        if (theMethod == null || theMethod.getAccessFlags().isStatic() != theStatic) {
+            // Inherited methods are not resolved here
+            return null;
+        }
+        if (theMethod.getAccessFlags().isAbstract() || theMethod.getAccessFlags().isNative() || theMethod.isClassInitializer()) {
+            return null;
+        }
+        if (theMethod.getAttributes().getByType(BytecodeAnnotationAttributeInfo.class) != null) {
+            // Annotated methods might be imported, exported or otherwise special to a backend
+            return null;
+        }
+
+        String theKey = theClassName.name() + "." + theMethodName + theSignature;
+        if (aInlineStack.contains(theKey)) {
+            // Recursive invocation
+            return null;
+        }
+
+        BytecodeCodeAttributeInfo theCode = theMethod.getCode(theBytecodeClass);
+        if (theCode == null) {
+            return null;
+        }
+        BytecodeProgram theBytecode = theCode.getProgramm();
+        int theSize = theBytecode.getInstructions().size();
+        if (theSize > maxCalleeSize || theSize > aBudget.remaining || !theBytecode.getExceptionHandlers().isEmpty()) {
+            return null;
+        }
+
+        Program theCallee = aGenerator.generateFrom(theBytecodeClass, theMethod);
+        ControlFlowGraph theCalleeGraph = theCallee.getControlFlowGraph();
+        if (!isInlineable(theCallee, aResult != null || theSignature.getReturnType().isVoid())) {
+            return null;
+        }
+        if (!isStraightLine(theCalleeGraph) && (aNode == null || !canSplit(aGraph, aNode, aInvocation))) {
+            return null;
+        }
+
+        aBudget.remaining -= theSize;
+
+        // Invocations in the callee are inlined first, they are part of the same budget
+        new InvokeVirtualOptimizer().optimize(theCalleeGraph, aLinkerContext);
+        Set<String> theInlineStack = new HashSet<>(aInlineStack);
+        theInlineStack.add(theKey);
+        inlineInto(theCalleeGraph, aNode != null, aGenerator, aLinkerContext, theInlineStack, aBudget);
+
+        ExpressionList theInlined = new ExpressionList();
+        Map<Value, Value> theRenaming = new HashMap<>();
+
+        // Arguments are bound to the values passed to the invocation
+        List<Program.Argument> theCalleeArguments = theCallee.getArguments();
+        for (int i = 0; i < theCalleeArguments.size(); i++) {
+            Variable theParameter = theCalleeArguments.get(i).getVariable();
+            Value theArgument = theArguments.get(i);
+            if (theArgument instanceof Variable) {
+                rebind(theParameter, theArgument);
+                theRenaming.put(theParameter, theArgument);
+            } else {
+                Variable theBound = aGraph.getProgram().createVariable(theArgument.resolveType());
+                theBound.initializeWith(theArgument);
+                theInlined.add(new InitVariableExpression(theBound, theArgument));
+                rebind(theParameter, theBound);
+                theRenaming.put(theParameter, theBound);
+            }
+        }
+
+        // Callee variables are renamed to fresh variables of the calling program
+        for (Variable theVariable : theCallee.getVariables()) {
+            Variable theRenamed = aGraph.getProgram().createVariable(theVariable.resolveType());
+            theRenamed.consume(Value.ConsumptionType.INITIALIZATION, theVariable.consumedValues(Value.ConsumptionType.INITIALIZATION));
+            theRenamed.consume(Value.ConsumptionType.PHIPROPAGATE, theVariable.consumedValues(Value.ConsumptionType.PHIPROPAGATE));
+            rebind(theVariable, theRenamed);
+            theRenaming.put(theVariable, theRenamed);
+        }
+
+        GraphNode theContinuation = null;
+        if (isStraightLine(theCalleeGraph)) {
+            for (Expression theExpression : theCalleeGraph.startNode().getExpressions().toList()) {
+                if (theExpression instanceof ReturnValueExpression) {
+                    if (aResult != null) {
+                        Value theReturned = ((ReturnValueExpression) theExpression).getValue();
+                        aResult.replaceInConsumedValues(aValue, theReturned);
+                        theInlined.add(new InitVariableExpression(aResult, theReturned));
+                    }
+                } else if (!(theExpression instanceof ReturnExpression)) {
+                    theInlined.add(theExpression);
+                }
+            }
+            aExpressions.replace(aInvocation, theInlined);
+        } else {
+            theContinuation = splice(aGraph, aNode, aInvocation, theInlined, theCalleeGraph, aResult, aValue, theRenaming);
+        }
+
+        aValue.unbind();
+
+        return theContinuation;
+    }
+
+    private static GraphNode splice(ControlFlowGraph aGraph, GraphNode aNode, Expression aInvocation, ExpressionList aPrologue,
+            ControlFlowGraph aCalleeGraph, Variable aResult, InvocationValue aValue, Map<Value, Value> aRenaming) {
+
+        // Callee nodes get fresh addresses behind all nodes of the calling program
+        int theOffset = maxAddressOf(aGraph) + 1;
+        Map<GraphNode, GraphNode> theNodes = new LinkedHashMap<>();
+        for (GraphNode theCalleeNode : aCalleeGraph.getKnownNodes()) {
+            GraphNode theNode = aGraph.createAt(theCalleeNode.getStartAddress().add(theOffset), GraphNode.BlockType.NORMAL);
+            for (Map.Entry<VariableDescription, Value> thePort : theCalleeNode.toStartState().getPorts().entrySet()) {
+                Value theValue = thePort.getValue();
+                Value theRenamed = aRenaming.get(theValue);
+                theNode.addToImportedList(theRenamed != null ? theRenamed : theValue, thePort.getKey());
+            }
+            theNodes.put(theCalleeNode, theNode);
+        }
+        GraphNode theContinuation = aGraph.createAt(new BytecodeOpcodeAddress(theOffset + maxAddressOf(aCalleeGraph) + 1), GraphNode.BlockType.NORMAL);
+
+        // Everything after the invocation continues in a new node
+        List<Expression> theExpressions = aNode.getExpressions().toList();
+        for (int i = theExpressions.indexOf(aInvocation) + 1; i < theExpressions.size(); i++) {
+            Expression theExpression = theExpressions.get(i);
+            aNode.getExpressions().remove(theExpression);
+            theContinuation.addExpression(theExpression);
+        }
+        // Jumps in front of the invocation, for instance to an exception handler, keep their edge
+        Set<BytecodeOpcodeAddress> theMoved = new HashSet<>();
+        jumpTargetsOf(theContinuation.getExpressions().toList(), theMoved);
+        Set<BytecodeOpcodeAddress> theKept = new HashSet<>();
+        jumpTargetsOf(aNode.getExpressions().toList(), theKept);
+        for (Map.Entry<GraphNode.Edge, GraphNode> theEdge : new ArrayList<>(aNode.getSuccessors().entrySet())) {
+            BytecodeOpcodeAddress theTarget = theEdge.getValue().getStartAddress();
+            if (theMoved.contains(theTarget)) {
+                theContinuation.addSuccessor(theEdge.getValue());
+                if (!theKept.contains(theTarget)) {
+                    aNode.removeEdgesTo(theEdge.getValue());
+                }
+            }
+        }
+
+        GraphNode theEntry = theNodes.get(aCalleeGraph.startNode());
+        aPrologue.add(new GotoExpression(theEntry.getStartAddress()));
+        aNode.getExpressions().replace(aInvocation, aPrologue);
+        aNode.addSuccessor(theEntry);
+
+        List<Value> theReturned = new ArrayList<>();
+        for (Map.Entry<GraphNode, GraphNode> theEntries : theNodes.entrySet()) {
+            GraphNode theCalleeNode = theEntries.getKey();
+            GraphNode theNode = theEntries.getValue();
+            ExpressionList theCalleeExpressions = theCalleeNode.getExpressions();
+            if (redirect(theCalleeExpressions, theOffset, theContinuation.getStartAddress(), aResult, theReturned)) {
+                theNode.addSuccessor(theContinuation);
+            }
+            for (Expression theExpression : theCalleeExpressions.toList()) {
+                theNode.addExpression(theExpression);
+            }
+            for (GraphNode theSuccessor : theCalleeNode.getSuccessors().values()) {
+                theNode.addSuccessor(theNodes.get(theSuccessor));
+            }
+        }
+
+        if (aResult != null) {
+            // The result is assigned by every return of the callee, so it is imported by the continuation
+            aResult.replaceInConsumedValues(aValue, theReturned.get(0));
+            for (int i = 1; i < theReturned.size(); i++) {
+                aResult.initializeWith(theReturned.get(i));
+            }
+            theContinuation.addToImportedList(aResult, new StackVariableDescription(0));
+        }
+
+        return theContinuation;
+    }
+
+    /**
+     * Moves the jumps of a callee node to the new addresses, and replaces returns by a jump to the continuation.
+     * Returns true if the expressions contain a return.
+     */
+    private static boolean redirect(ExpressionList aExpressions, int aOffset, BytecodeOpcodeAddress aContinuation,
+            Variable aResult, List<Value> aReturned) {
+        boolean theReturns = false;
+        for (Expression theExpression : aExpressions.toList()) {
+            if (theExpression instanceof ExpressionListContainer) {
+                ExpressionListContainer theContainer = (ExpressionListContainer) theExpression;
+                for (ExpressionList theSub : theContainer.getExpressionLists()) {
+                    theReturns |= redirect(theSub, aOffset, aContinuation, aResult, aReturned);
+                }
+            } else if (theExpression instanceof GotoExpression) {
+                GotoExpression theGoto = (GotoExpression) theExpression;
+                aExpressions.replace(theGoto, new GotoExpression(theGoto.getJumpTarget().add(aOffset)));
+            } else if (theExpression instanceof ReturnValueExpression || theExpression instanceof ReturnExpression) {
+                ExpressionList theJump = new ExpressionList();
+                if (aResult != null && theExpression instanceof ReturnValueExpression) {
+                    Value theValue = ((ReturnValueExpression) theExpression).getValue();
+                    aReturned.add(theValue);
+                    theJump.add(new InitVariableExpression(aResult, theValue));
+                }
+                theJump.add(new GotoExpression(aContinuation));
+                aExpressions.replace(theExpression, theJump);
+                theReturns = true;
+            }
+        }
+        return theReturns;
+    }
+
+    /**
+     * The relooper turns the successors of a node into sibling blocks, so after splitting, no successor
+     * of the node may be reachable from the continuation, which becomes a block behind them.
+     */
+    private static boolean canSplit(ControlFlowGraph aGraph, GraphNode aNode, Expression aInvocation) {
+        List<Expression> theExpressions = aNode.getExpressions().toList();
+        int theIndex = theExpressions.indexOf(aInvocation);
+        Set<BytecodeOpcodeAddress> theBefore = new HashSet<>();
+        jumpTargetsOf(theExpressions.subList(0, theIndex), theBefore);
+        Set<BytecodeOpcodeAddress> theAfter = new HashSet<>();
+        jumpTargetsOf(theExpressions.subList(theIndex + 1, theExpressions.size()), theAfter);
+
+        // Back edges are marked by the dominator tree, jumping back to a loop header is fine
+        aGraph.dominatorTree();
+        Set<GraphNode> theReachable = new HashSet<>();
+        for (Map.Entry<GraphNode.Edge, GraphNode> theEdge : aNode.getSuccessors().entrySet()) {
+            GraphNode theSuccessor = theEdge.getValue();
+            if (theEdge.getKey().getType() == GraphNode.EdgeType.NORMAL && theAfter.contains(theSuccessor.getStartAddress())) {
+                theReachable.addAll(theSuccessor.forwardReachableNodes());
+            }
+        }
+        for (GraphNode theReached : theReachable) {
+            if (theBefore.contains(theReached.getStartAddress())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void jumpTargetsOf(List<Expression> aExpressions, Set<BytecodeOpcodeAddress> aResult) {
+        for (Expression theExpression : aExpressions) {
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theSub : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    jumpTargetsOf(theSub.toList(), aResult);
+                }
+            } else if (theExpression instanceof GotoExpression) {
+                aResult.add(((GotoExpression) theExpression).getJumpTarget());
+            }
+        }
+    }
+
+    private static int maxAddressOf(ControlFlowGraph aGraph) {
+        int theMax = 0;
+        for (GraphNode theNode : aGraph.getKnownNodes()) {
+            theMax = Math.max(theMax, theNode.getStartAddress().getAddress());
+        }
+        return theMax;
+    }
+
+    private static void rebind(Variable aVariable, Value aNewValue) {
+        for (Value theUser : new ArrayList<>(aVariable.usedBy())) {
+            theUser.replaceInConsumedValues(aVariable, aNewValue);
+        }
+    }
+
+    /**
+     * A single node ending with the only return of the callee, it can replace the invocation expression.
+     */
+    private static boolean isStraightLine(ControlFlowGraph aGraph) {
+        if (aGraph.getKnownNodes().size() != 1) {
+            return false;
+        }
+        List<Expression> theExpressions = aGraph.startNode().getExpressions().toList();
+        for (int i = 0; i < theExpressions.size() - 1; i++) {
+            Expression theExpression = theExpressions.get(i);
+            if (theExpression instanceof ExpressionListContainer || theExpression instanceof GotoExpression
+                    || theExpression instanceof ReturnExpression || theExpression instanceof ReturnValueExpression) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInlineable(Program aCallee, boolean aResultUsed) {
+        for (Variable theVariable : aCallee.getVariables()) {
+            if (aCallee.isTrulyGlobal(theVariable)) {
+                return false;
+            }
+        }
+        ControlFlowGraph theGraph = aCallee.getControlFlowGraph();
+        theGraph.calculateReachabilityAndMarkBackEdges();
+        for (GraphNode theNode : theGraph.getKnownNodes()) {
+            if (theNode.getType() != GraphNode.BlockType.NORMAL) {
+                return false;
+            }
+            for (GraphNode.Edge theEdge : theNode.getSuccessors().keySet()) {
+                if (theEdge.getType() == GraphNode.EdgeType.BACK) {
+                    // Loops are not inlined
+                    return false;
+                }
+            }
+            Expression theLast = theNode.getExpressions().lastExpression();
+            if (!(theLast instanceof GotoExpression) && !(theLast instanceof ReturnExpression) && !(theLast instanceof ReturnValueExpression)) {
+                return false;
+            }
+            if (!isInlineable(theNode.getExpressions(), aResultUsed)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInlineable(ExpressionList aExpressions, boolean aResultUsed) {
+        for (Expression theExpression : aExpressions.toList()) {
+            if (theExpression instanceof ReturnValueExpression) {
+                Value theReturned = ((ReturnValueExpression) theExpression).getValue();
+                if (!aResultUsed && !(theReturned instanceof Variable) && !(theReturned instanceof PrimitiveValue)) {
+                    // The returned value would have to be evaluated for its side effects
+                    return false;
+                }
+            } else if (theExpression instanceof IFExpression) {
+                if (!isInlineable(((IFExpression) theExpression).getExpressions(), aResultUsed)) {
+                    return false;
+                }
+            } else if (!(theExpression instanceof ReturnExpression) && !(theExpression instanceof GotoExpression)
+                    && !isInlineable(theExpression)) {
+                return false;
+            }
+            if (!hasInlineableValues(theExpression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInlineable(Expression aExpression) {
+        return aExpression instanceof InitVariableExpression
+                || aExpression instanceof PutFieldExpression
+                || aExpression instanceof PutStaticExpression
+                || aExpression instanceof ArrayStoreExpression
+                || aExpression instanceof CheckCastExpression
+                || aExpression instanceof DirectInvokeMethodExpression
+                || aExpression instanceof InvokeStaticMethodExpression
+                || aExpression instanceof InvokeVirtualMethodExpression;
+    }
+
+    private static boolean hasInlineableValues(Value aValue) {
+        for (Value.ConsumptionType theType : Value.ConsumptionType.values()) {
+            for (Value theValue : aValue.consumedValues(theType)) {
+                if (theValue instanceof Variable) {
+                    // Variables are renamed, their initialization is checked as an expression
+                    continue;
+                }
+                if (theValue instanceof MethodParameterValue
+                        || theValue instanceof SelfReferenceParameterValue
+                        || theValue instanceof CurrentExceptionValue
+                        || theValue instanceof PHIFunction
+                        || theValue instanceof StackTopValue
+                        || theValue instanceof UnknownValue
+                        || theValue instanceof RuntimeGeneratedTypeValue
+                        || theValue instanceof ResolveCallsiteObjectValue
+                        || theValue instanceof MethodHandlesGeneratedLookupValue
+                        || theValue instanceof ComputedMemoryLocationReadValue
+                        || theValue instanceof ComputedMemoryLocationWriteValue) {
+                    return false;
+                }
+                if (!hasInlineableValues(theValue)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
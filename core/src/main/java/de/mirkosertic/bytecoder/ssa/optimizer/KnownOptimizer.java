@@ -31,6 +31,11 @@ public enum KnownOptimizer implements Optimizer {
             theOptimizer.add(new InlineFinalNodesOptimizer());
             theOptimizer.add(new InlineGotoOptimizer());
             theOptimizer.add(new InvokeVirtualOptimizer());
+            theOptimizer.add(new InlineMethodsOptimizer());
+            theOptimizer.add(new ScalarReplacementOptimizer());
+            theOptimizer.add(new ConstantPropagationOptimizer());
+            theOptimizer.add(new GlobalValueNumberingOptimizer());
+            theOptimizer.add(new LoopInvariantCodeMotionOptimizer());
             theOptimizer.add(new RedundantAssignmentOptimizer());
             run(aGraph, aLinkerContext, theOptimizer);
         }
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.ssa.ArrayEntryValue;
+import de.mirkosertic.bytecoder.ssa.ArrayLengthValue;
+import de.mirkosertic.bytecoder.ssa.BinaryValue;
+import de.mirkosertic.bytecoder.ssa.CompareValue;
+import de.mirkosertic.bytecoder.ssa.ControlFlowGraph;
+import de.mirkosertic.bytecoder.ssa.DominatorTree;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
+import de.mirkosertic.bytecoder.ssa.FixedBinaryValue;
+import de.mirkosertic.bytecoder.ssa.FloorValue;
+import de.mirkosertic.bytecoder.ssa.GetFieldValue;
+import de.mirkosertic.bytecoder.ssa.GetStaticValue;
+import de.mirkosertic.bytecoder.ssa.GotoExpression;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.InstanceOfValue;
+import de.mirkosertic.bytecoder.ssa.IntegerValue;
+import de.mirkosertic.bytecoder.ssa.LoopNestingForest;
+import de.mirkosertic.bytecoder.ssa.NegatedValue;
+import de.mirkosertic.bytecoder.ssa.PrimitiveValue;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.ReturnExpression;
+import de.mirkosertic.bytecoder.ssa.ReturnValueExpression;
+import de.mirkosertic.bytecoder.ssa.SelfReferenceParameterValue;
+import de.mirkosertic.bytecoder.ssa.SqrtValue;
+import de.mirkosertic.bytecoder.ssa.ThrowExpression;
+import de.mirkosertic.bytecoder.ssa.TypeConversionValue;
+import de.mirkosertic.bytecoder.ssa.TypeRef;
+import de.mirkosertic.bytecoder.ssa.UnreachableExpression;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+
+/**
+ * Moves computations not changing inside a loop in front of the loop, and replaces multiplications
+ * of induction variables by additions.
+ *
+ * Loops are taken from the {@link LoopNestingForest} and processed innermost first. The pre-header
+ * of a loop is the only node entering the loop header from outside, which must jump to the header
+ * with its last expression. Loops without such a node are left alone. Hoisted initializations
+ * are inserted in front of this jump, after all PHI copies of the pre-header.
+ *
+ * A value is invariant if all its operands are literals or variables only initialized outside
+ * of the loop. Memory reads are only invariant if the loop contains no invocation and no store
+ * to a possibly aliased location. Values which might fail, like memory reads, integer divisions
+ * or float to integer conversions, are only hoisted if they are always evaluated once the loop is
+ * entered, which means they are part of the header before control might leave it.
+ *
+ * An induction variable is a PHI variable initialized once outside and once inside of the loop,
+ * where the initialization inside of the loop adds a constant. A multiplication of such a variable
+ * by an invariant factor is replaced by a new induction variable, initialized with the product in
+ * the pre-header and incremented by the constant times the factor right after the original variable.
+ */
+public class LoopInvariantCodeMotionOptimizer implements Optimizer {
+
+    private static class Definition {
+
+        private GraphNode node;
+        private ExpressionList list;
+        private final InitVariableExpression expression;
+
+        private Definition(GraphNode aNode, ExpressionList aList, InitVariableExpression aExpression) {
+            node = aNode;
+            list = aList;
+            expression = aExpression;
+        }
+    }
+
+    private static class Definitions {
+
+        private final Map<Expression, Integer> occurrences;
+        private final Map<Variable, List<Definition>> definitions;
+        private final Set<Variable> arguments;
+
+        private Definitions(ControlFlowGraph aGraph) {
+            occurrences = new IdentityHashMap<>();
+            definitions = new HashMap<>();
+            arguments = new HashSet<>();
+            for (Program.Argument theArgument : aGraph.getProgram().getArguments()) {
+                arguments.add(theArgument.getVariable());
+            }
+            for (GraphNode theNode : aGraph.getKnownNodes()) {
+                collect(theNode, theNode.getExpressions());
+            }
+        }
+
+        private void collect(GraphNode aNode, ExpressionList aList) {
+            for (Expression theExpression : aList.toList()) {
+                occurrences.merge(theExpression, 1, Integer::sum);
+                if (theExpression instanceof InitVariableExpression) {
+                    InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                    definitions.computeIfAbsent(theInit.getVariable(), t -> new ArrayList<>()).add(new Definition(aNode, aList, theInit));
+                }
+                if (theExpression instanceof ExpressionListContainer) {
+                    for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                        collect(aNode, theList);
+                    }
+                }
+            }
+        }
+
+        private List<Definition> of(Variable aVariable) {
+            List<Definition> theResult = definitions.get(aVariable);
+            if (theResult == null) {
+                return new ArrayList<>();
+            }
+            return theResult;
+        }
+
+        private Definition singleDefinitionOf(Variable aVariable) {
+            List<Definition> theDefinitions = of(aVariable);
+            if (theDefinitions.size() != 1) {
+                return null;
+            }
+            return theDefinitions.get(0);
+        }
+
+        private boolean isShared(Expression aExpression) {
+            // Expressions created by this optimizer are not known here and never touched again
+            Integer theCount = occurrences.get(aExpression);
+            return theCount == null || theCount != 1;
+        }
+
+        private boolean isInvariant(Variable aVariable, LoopNestingForest.Loop aLoop) {
+            List<Definition> theDefinitions = of(aVariable);
+            if (theDefinitions.isEmpty()) {
+                return arguments.contains(aVariable);
+            }
+            for (Definition theDefinition : theDefinitions) {
+                if (aLoop.contains(theDefinition.node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class LoopMemory {
+
+        private final Set<MemoryLocation> written;
+        private boolean writesAnything;
+
+        private LoopMemory(LoopNestingForest.Loop aLoop) {
+            written = new HashSet<>();
+            for (GraphNode theNode : aLoop.getBody()) {
+                collect(theNode.getExpressions());
+            }
+        }
+
+        private void collect(ExpressionList aList) {
+            for (Expression theExpression : aList.toList()) {
+                collect(theExpression);
+                if (theExpression instanceof ExpressionListContainer) {
+                    for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                        collect(theList);
+                    }
+                }
+            }
+        }
+
+        private void collect(Value aValue) {
+            if (aValue instanceof Variable) {
+                return;
+            }
+            MemoryLocation theLocation = MemoryLocation.writtenBy(aValue);
+            if (theLocation != null) {
+                written.add(theLocation);
+            } else if (MemoryLocation.mightWriteAnything(aValue)) {
+                writesAnything = true;
+            }
+            for (Value theArgument : aValue.consumedValues(Value.ConsumptionType.INVOCATIONTARGET)) {
+                collect(theArgument);
+            }
+            for (Value theArgument : aValue.consumedValues(Value.ConsumptionType.ARGUMENT)) {
+                collect(theArgument);
+            }
+        }
+
+        private boolean mightChange(MemoryLocation aLocation) {
+            return writesAnything || written.contains(aLocation);
+        }
+    }
+
+    @Override
+    public void optimize(ControlFlowGraph aGraph, BytecodeLinkerContext aLinkerContext) {
+        if (aGraph.getKnownNodes().isEmpty()) {
+            return;
+        }
+
+        DominatorTree theTree = aGraph.dominatorTree();
+        List<LoopNestingForest.Loop> theLoops = aGraph.loopNestingForest().getLoops();
+        theLoops.sort((o1, o2) -> Integer.compare(o2.getDepth(), o1.getDepth()));
+
+        Definitions theDefinitions = new Definitions(aGraph);
+        for (LoopNestingForest.Loop theLoop : theLoops) {
+            GraphNode thePreHeader = preHeaderOf(theTree, theLoop);
+            if (thePreHeader != null) {
+                List<GraphNode> theNodes = new ArrayList<>();
+                for (GraphNode theNode : theTree.reversePostOrder()) {
+                    if (theLoop.contains(theNode)) {
+                        theNodes.add(theNode);
+                    }
+                }
+                hoistInvariants(theDefinitions, theLoop, theNodes, thePreHeader);
+                reduceStrength(aGraph.getProgram(), theDefinitions, theLoop, theNodes, thePreHeader);
+            }
+        }
+    }
+
+    private static GraphNode preHeaderOf(DominatorTree aTree, LoopNestingForest.Loop aLoop) {
+        GraphNode theHeader = aLoop.getHeader();
+        GraphNode theResult = null;
+        for (GraphNode thePredecessor : aTree.predecessorsOf(theHeader)) {
+            if (!aLoop.contains(thePredecessor)) {
+                if (theResult != null && theResult != thePredecessor) {
+                    return null;
+                }
+                theResult = thePredecessor;
+            }
+        }
+        if (theResult == null) {
+            return null;
+        }
+        Expression theLast = theResult.getExpressions().lastExpression();
+        if (!(theLast instanceof GotoExpression) || !((GotoExpression) theLast).getJumpTarget().equals(theHeader.getStartAddress())) {
+            return null;
+        }
+        // The header must not be entered by another jump, as this would bypass hoisted code
+        for (Expression theExpression : theResult.getExpressions().toList()) {
+            if (theExpression instanceof ExpressionListContainer && jumpsTo((ExpressionListContainer) theExpression, theHeader)) {
+                return null;
+            }
+        }
+        return theResult;
+    }
+
+    private static boolean jumpsTo(ExpressionListContainer aContainer, GraphNode aNode) {
+        for (ExpressionList theList : aContainer.getExpressionLists()) {
+            for (Expression theExpression : theList.toList()) {
+                if (theExpression instanceof GotoExpression && ((GotoExpression) theExpression).getJumpTarget().equals(aNode.getStartAddress())) {
+                    return true;
+                }
+                if (theExpression instanceof ExpressionListContainer && jumpsTo((ExpressionListContainer) theExpression, aNode)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void hoistInvariants(Definitions aDefinitions, LoopNestingForest.Loop aLoop, List<GraphNode> aNodes, GraphNode aPreHeader) {
+        LoopMemory theMemory = new LoopMemory(aLoop);
+
+        // Expressions of the header before control might leave it for the first time are evaluated
+        // every time the loop is entered
+        Set<Expression> theAlwaysEvaluated = new HashSet<>();
+        for (Expression theExpression : aLoop.getHeader().getExpressions().toList()) {
+            if (leavesList(theExpression)) {
+                break;
+            }
+            theAlwaysEvaluated.add(theExpression);
+        }
+
+        boolean theChanged;
+        do {
+            theChanged = false;
+            for (GraphNode theNode : aNodes) {
+                if (hoistInvariants(aDefinitions, aLoop, theMemory, theAlwaysEvaluated, theNode.getExpressions(), aPreHeader)) {
+                    theChanged = true;
+                }
+            }
+        } while (theChanged);
+    }
+
+    private boolean hoistInvariants(Definitions aDefinitions, LoopNestingForest.Loop aLoop, LoopMemory aMemory,
+            Set<Expression> aAlwaysEvaluated, ExpressionList aList, GraphNode aPreHeader) {
+        boolean theChanged = false;
+        for (Expression theExpression : aList.toList()) {
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    if (hoistInvariants(aDefinitions, aLoop, aMemory, aAlwaysEvaluated, theList, aPreHeader)) {
+                        theChanged = true;
+                    }
+                }
+            }
+            if (theExpression instanceof InitVariableExpression) {
+                InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                if (isHoistable(aDefinitions, aLoop, aMemory, aAlwaysEvaluated.contains(theInit), theInit)) {
+                    Definition theDefinition = aDefinitions.singleDefinitionOf(theInit.getVariable());
+                    aList.remove(theInit);
+                    aPreHeader.getExpressions().addBefore(theInit, aPreHeader.getExpressions().lastExpression());
+                    theDefinition.node = aPreHeader;
+                    theDefinition.list = aPreHeader.getExpressions();
+                    theChanged = true;
+                }
+            }
+        }
+        return theChanged;
+    }
+
+    private boolean isHoistable(Definitions aDefinitions, LoopNestingForest.Loop aLoop, LoopMemory aMemory,
+            boolean aAlwaysEvaluated, InitVariableExpression aInit) {
+        Variable theVariable = aInit.getVariable();
+        Value theValue = aInit.getValue();
+        if (aDefinitions.isShared(aInit) || aDefinitions.singleDefinitionOf(theVariable) == null) {
+            return false;
+        }
+        for (Value theUser : theValue.usedBy()) {
+            if (theUser != aInit && theUser != theVariable) {
+                return false;
+            }
+        }
+        for (Value theArgument : theValue.consumedValues(Value.ConsumptionType.ARGUMENT)) {
+            if (theArgument instanceof Variable) {
+                if (!aDefinitions.isInvariant((Variable) theArgument, aLoop)) {
+                    return false;
+                }
+            } else if (!(theArgument instanceof PrimitiveValue)) {
+                return false;
+            }
+        }
+
+        if (theValue instanceof BinaryValue) {
+            BinaryValue theBinary = (BinaryValue) theValue;
+            switch (theBinary.getOperator()) {
+                case DIV:
+                case REMAINDER:
+                    // Integer division by zero fails
+                    return aAlwaysEvaluated || !isIntegral(theBinary.resolveType());
+                default:
+                    return true;
+            }
+        }
+        if (theValue instanceof TypeConversionValue) {
+            // Float to integer conversions might fail
+            return aAlwaysEvaluated || isIntegral(theValue.resolveFirstArgument().resolveType());
+        }
+        if (theValue instanceof CompareValue || theValue instanceof NegatedValue || theValue instanceof SqrtValue
+                || theValue instanceof FixedBinaryValue || theValue instanceof InstanceOfValue) {
+            return true;
+        }
+        if (theValue instanceof FloorValue || theValue instanceof ArrayLengthValue) {
+            return aAlwaysEvaluated;
+        }
+        if (theValue instanceof GetStaticValue) {
+            return !aMemory.mightChange(MemoryLocation.readBy(theValue));
+        }
+        if (theValue instanceof GetFieldValue) {
+            if (aMemory.mightChange(MemoryLocation.readBy(theValue))) {
+                return false;
+            }
+            // Fields of the this reference can always be read
+            return aAlwaysEvaluated || isThisReference(theValue.resolveFirstArgument());
+        }
+        if (theValue instanceof ArrayEntryValue) {
+            return aAlwaysEvaluated && !aMemory.mightChange(MemoryLocation.readBy(theValue));
+        }
+        return false;
+    }
+
+    private static boolean isIntegral(TypeRef aType) {
+        switch (aType.resolve()) {
+            case BYTE:
+            case SHORT:
+            case CHAR:
+            case INT:
+            case LONG:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isThisReference(Value aValue) {
+        if (aValue instanceof Variable) {
+            for (Value theInit : aValue.consumedValues(Value.ConsumptionType.INITIALIZATION)) {
+                if (theInit instanceof SelfReferenceParameterValue) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean leavesList(Expression aExpression) {
+        return aExpression instanceof ExpressionListContainer
+                || aExpression instanceof GotoExpression
+                || aExpression instanceof ReturnExpression
+                || aExpression instanceof ReturnValueExpression
+                || aExpression instanceof ThrowExpression
+                || aExpression instanceof UnreachableExpression;
+    }
+
+    private void reduceStrength(Program aProgram, Definitions aDefinitions, LoopNestingForest.Loop aLoop, List<GraphNode> aNodes, GraphNode aPreHeader) {
+        Map<List<Object>, Variable> theReduced = new HashMap<>();
+        for (GraphNode theNode : aNodes) {
+            reduceStrength(aProgram, aDefinitions, aLoop, theNode.getExpressions(), aPreHeader, theReduced);
+        }
+    }
+
+    private void reduceStrength(Program aProgram, Definitions aDefinitions, LoopNestingForest.Loop aLoop, ExpressionList aList,
+            GraphNode aPreHeader, Map<List<Object>, Variable> aReduced) {
+        for (Expression theExpression : aList.toList()) {
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    reduceStrength(aProgram, aDefinitions, aLoop, theList, aPreHeader, aReduced);
+                }
+            }
+            if (!(theExpression instanceof InitVariableExpression) || aDefinitions.isShared(theExpression)) {
+                continue;
+            }
+            InitVariableExpression theInit = (InitVariableExpression) theExpression;
+            Value theValue = theInit.getValue();
+            if (!(theValue instanceof BinaryValue) || ((BinaryValue) theValue).getOperator() != BinaryValue.Operator.MUL
+                    || theValue.resolveType().resolve() != TypeRef.Native.INT) {
+                continue;
+            }
+
+            Value theFirst = theValue.resolveFirstArgument();
+            Value theSecond = theValue.resolveSecondArgument();
+            Integer theIncrement = null;
+            Variable theInductionVariable = null;
+            Value theFactor = null;
+            if (theFirst instanceof Variable) {
+                theIncrement = incrementOf(aDefinitions, aLoop, (Variable) theFirst);
+                theInductionVariable = (Variable) theFirst;
+                theFactor = theSecond;
+            }
+            if (theIncrement == null && theSecond instanceof Variable) {
+                theIncrement = incrementOf(aDefinitions, aLoop, (Variable) theSecond);
+                theInductionVariable = (Variable) theSecond;
+                theFactor = theFirst;
+            }
+            if (theIncrement == null) {
+                continue;
+            }
+            Object theFactorKey;
+            if (theFactor instanceof IntegerValue) {
+                theFactorKey = ((IntegerValue) theFactor).getIntValue();
+            } else if (theFactor instanceof Variable && theFactor.resolveType().resolve() == TypeRef.Native.INT
+                    && aDefinitions.isInvariant((Variable) theFactor, aLoop)) {
+                theFactorKey = theFactor;
+            } else {
+                continue;
+            }
+
+            List<Object> theKey = new ArrayList<>();
+            theKey.add(theInductionVariable);
+            theKey.add(theFactorKey);
+            Variable theReduced = aReduced.get(theKey);
+            if (theReduced == null) {
+                theReduced = newInductionVariable(aProgram, aDefinitions, aLoop, theInductionVariable, theIncrement, theFactor, aPreHeader);
+                aReduced.put(theKey, theReduced);
+            }
+
+            theInit.replaceInConsumedValues(theValue, theReduced);
+            theInit.getVariable().replaceInConsumedValues(theValue, theReduced);
+        }
+    }
+
+    /**
+     * The constant added to an induction variable in every iteration, or null if the variable
+     * is not an induction variable of the loop.
+     */
+    private static Integer incrementOf(Definitions aDefinitions, LoopNestingForest.Loop aLoop, Variable aVariable) {
+        if (aVariable.resolveType().resolve() != TypeRef.Native.INT) {
+            return null;
+        }
+        Definition theInside = insideDefinitionOf(aDefinitions, aLoop, aVariable);
+        if (theInside == null) {
+            return null;
+        }
+        Value theValue = theInside.expression.getValue();
+        if (theValue instanceof Variable) {
+            // The next value might be computed into a temporary first
+            Definition theTemporary = aDefinitions.singleDefinitionOf((Variable) theValue);
+            if (theTemporary == null || !aLoop.contains(theTemporary.node)) {
+                return null;
+            }
+            theValue = theTemporary.expression.getValue();
+        }
+        if (!(theValue instanceof BinaryValue) || theValue.resolveType().resolve() != TypeRef.Native.INT) {
+            return null;
+        }
+        BinaryValue theBinary = (BinaryValue) theValue;
+        Value theFirst = theBinary.resolveFirstArgument();
+        Value theSecond = theBinary.resolveSecondArgument();
+        switch (theBinary.getOperator()) {
+            case ADD:
+                if (theFirst == aVariable && theSecond instanceof IntegerValue) {
+                    return ((IntegerValue) theSecond).getIntValue();
+                }
+                if (theSecond == aVariable && theFirst instanceof IntegerValue) {
+                    return ((IntegerValue) theFirst).getIntValue();
+                }
+                return null;
+            case SUB:
+                if (theFirst == aVariable && theSecond instanceof IntegerValue) {
+                    return -((IntegerValue) theSecond).getIntValue();
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The only initialization of a variable inside of the loop, if the variable has exactly one
+     * other initialization outside of the loop.
+     */
+    private static Definition insideDefinitionOf(Definitions aDefinitions, LoopNestingForest.Loop aLoop, Variable aVariable) {
+        List<Definition> theDefinitions = aDefinitions.of(aVariable);
+        if (theDefinitions.size() != 2) {
+            return null;
+        }
+        Definition theInside = null;
+        for (Definition theDefinition : theDefinitions) {
+            if (aLoop.contains(theDefinition.node)) {
+                if (theInside != null || aDefinitions.isShared(theDefinition.expression)) {
+                    return null;
+                }
+                theInside = theDefinition;
+            }
+        }
+        return theInside;
+    }
+
+    private Variable newInductionVariable(Program aProgram, Definitions aDefinitions, LoopNestingForest.Loop aLoop,
+            Variable aInductionVariable, int aIncrement, Value aFactor, GraphNode aPreHeader) {
+        ExpressionList thePreHeaderList = aPreHeader.getExpressions();
+        Expression theJump = thePreHeaderList.lastExpression();
+
+        Value theStep;
+        if (aFactor instanceof IntegerValue) {
+            theStep = new IntegerValue(aIncrement * ((IntegerValue) aFactor).getIntValue());
+        } else if (aIncrement == 1) {
+            // Constant propagation already ran, so it would not fold a multiplication by one
+            theStep = aFactor;
+        } else {
+            Variable theStepVariable = aProgram.createVariable(TypeRef.Native.INT);
+            BinaryValue theStepValue = new BinaryValue(TypeRef.Native.INT, aFactor, BinaryValue.Operator.MUL, new IntegerValue(aIncrement));
+            theStepVariable.initializeWith(theStepValue);
+            thePreHeaderList.addBefore(new InitVariableExpression(theStepVariable, theStepValue), theJump);
+            theStep = theStepVariable;
+        }
+
+        Variable theResult = aProgram.createVariable(TypeRef.Native.INT);
+
+        BinaryValue theStart = new BinaryValue(TypeRef.Native.INT, aInductionVariable, BinaryValue.Operator.MUL, aFactor);
+        theResult.initializeWith(theStart);
+        thePreHeaderList.addBefore(new InitVariableExpression(theResult, theStart), theJump);
+
+        // The new variable is incremented right after the induction variable, so both are
+        // always in sync
+        Definition theInside = insideDefinitionOf(aDefinitions, aLoop, aInductionVariable);
+        BinaryValue theNext = new BinaryValue(TypeRef.Native.INT, theResult, BinaryValue.Operator.ADD, theStep);
+        theResult.initializeWith(theNext);
+        InitVariableExpression theIncrement = new InitVariableExpression(theResult, theNext);
+        List<Expression> theExpressions = theInside.list.toList();
+        int theIndex = theExpressions.indexOf(theInside.expression);
+        if (theIndex + 1 < theExpressions.size()) {
+            theInside.list.addBefore(theIncrement, theExpressions.get(theIndex + 1));
+        } else {
+            theInside.list.add(theIncrement);
+        }
+        return theResult;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.Objects;
+
+import de.mirkosertic.bytecoder.core.BytecodeFieldRefConstant;
+import de.mirkosertic.bytecoder.ssa.ArrayEntryValue;
+import de.mirkosertic.bytecoder.ssa.ArrayLengthValue;
+import de.mirkosertic.bytecoder.ssa.ArrayStoreExpression;
+import de.mirkosertic.bytecoder.ssa.BinaryValue;
+import de.mirkosertic.bytecoder.ssa.CheckCastExpression;
+import de.mirkosertic.bytecoder.ssa.ClassReferenceValue;
+import de.mirkosertic.bytecoder.ssa.CompareValue;
+import de.mirkosertic.bytecoder.ssa.CurrentExceptionValue;
+import de.mirkosertic.bytecoder.ssa.ExceptionDispatchExpression;
+import de.mirkosertic.bytecoder.ssa.FixedBinaryValue;
+import de.mirkosertic.bytecoder.ssa.FloorValue;
+import de.mirkosertic.bytecoder.ssa.GetFieldValue;
+import de.mirkosertic.bytecoder.ssa.GetStaticValue;
+import de.mirkosertic.bytecoder.ssa.GotoExpression;
+import de.mirkosertic.bytecoder.ssa.IFExpression;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.InstanceOfValue;
+import de.mirkosertic.bytecoder.ssa.LookupSwitchExpression;
+import de.mirkosertic.bytecoder.ssa.NegatedValue;
+import de.mirkosertic.bytecoder.ssa.NewArrayValue;
+import de.mirkosertic.bytecoder.ssa.NewObjectValue;
+import de.mirkosertic.bytecoder.ssa.PrimitiveValue;
+import de.mirkosertic.bytecoder.ssa.PutFieldExpression;
+import de.mirkosertic.bytecoder.ssa.PutStaticExpression;
+import de.mirkosertic.bytecoder.ssa.ReturnExpression;
+import de.mirkosertic.bytecoder.ssa.ReturnValueExpression;
+import de.mirkosertic.bytecoder.ssa.SqrtValue;
+import de.mirkosertic.bytecoder.ssa.StringValue;
+import de.mirkosertic.bytecoder.ssa.TableSwitchExpression;
+import de.mirkosertic.bytecoder.ssa.ThrowExpression;
+import de.mirkosertic.bytecoder.ssa.TypeConversionValue;
+import de.mirkosertic.bytecoder.ssa.UnreachableExpression;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+
+/**
+ * A set of memory locations which might alias each other.
+ *
+ * Fields are distinguished by their name only, as the same field might be accessed using the
+ * owning class or any subclass. Array elements are distinguished by their element type, an array
+ * store can only alias reads of arrays of the same type.
+ */
+class MemoryLocation {
+
+    private enum Kind {
+        FIELD, STATIC, ARRAY
+    }
+
+    private final Kind kind;
+    private final Object name;
+
+    private MemoryLocation(Kind aKind, Object aName) {
+        kind = aKind;
+        name = aName;
+    }
+
+    static String nameOf(BytecodeFieldRefConstant aField) {
+        return aField.getNameAndTypeIndex().getNameAndType().getNameIndex().getName().stringValue();
+    }
+
+    /**
+     * The location read by a value, or null if the value does not read mutable memory.
+     */
+    static MemoryLocation readBy(Value aValue) {
+        if (aValue instanceof GetFieldValue) {
+            return new MemoryLocation(Kind.FIELD, nameOf(((GetFieldValue) aValue).getField()));
+        }
+        if (aValue instanceof GetStaticValue) {
+            return new MemoryLocation(Kind.STATIC, nameOf(((GetStaticValue) aValue).getField()));
+        }
+        if (aValue instanceof ArrayEntryValue) {
+            return new MemoryLocation(Kind.ARRAY, aValue.resolveType().resolve());
+        }
+        return null;
+    }
+
+    /**
+     * The location written by a value or expression, or null if it is not a store.
+     */
+    static MemoryLocation writtenBy(Value aValue) {
+        if (aValue instanceof PutFieldExpression) {
+            return new MemoryLocation(Kind.FIELD, nameOf(((PutFieldExpression) aValue).getField()));
+        }
+        if (aValue instanceof PutStaticExpression) {
+            return new MemoryLocation(Kind.STATIC, nameOf(((PutStaticExpression) aValue).getField()));
+        }
+        if (aValue instanceof ArrayStoreExpression) {
+            return new MemoryLocation(Kind.ARRAY, ((ArrayStoreExpression) aValue).getArrayType().resolve());
+        }
+        return null;
+    }
+
+    /**
+     * True if evaluating the value or expression itself, not counting its arguments, might write
+     * to any location. This is the case for invocations and everything else not known to be harmless.
+     */
+    static boolean mightWriteAnything(Value aValue) {
+        if (writtenBy(aValue) != null) {
+            return false;
+        }
+        return !(aValue instanceof Variable
+                || aValue instanceof PrimitiveValue
+                || aValue instanceof StringValue
+                || aValue instanceof ClassReferenceValue
+                || aValue instanceof BinaryValue
+                || aValue instanceof CompareValue
+                || aValue instanceof NegatedValue
+                || aValue instanceof TypeConversionValue
+                || aValue instanceof FixedBinaryValue
+                || aValue instanceof InstanceOfValue
+                || aValue instanceof FloorValue
+                || aValue instanceof SqrtValue
+                || aValue instanceof GetFieldValue
+                || aValue instanceof GetStaticValue
+                || aValue instanceof ArrayEntryValue
+                || aValue instanceof ArrayLengthValue
+                || aValue instanceof NewObjectValue
+                || aValue instanceof NewArrayValue
+                || aValue instanceof CurrentExceptionValue
+                || aValue instanceof InitVariableExpression
+                || aValue instanceof IFExpression
+                || aValue instanceof GotoExpression
+                || aValue instanceof ReturnExpression
+                || aValue instanceof ReturnValueExpression
+                || aValue instanceof ThrowExpression
+                || aValue instanceof UnreachableExpression
+                || aValue instanceof CheckCastExpression
+                || aValue instanceof TableSwitchExpression
+                || aValue instanceof LookupSwitchExpression
+                || aValue instanceof ExceptionDispatchExpression);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MemoryLocation theOther = (MemoryLocation) o;
+        return kind == theOther.kind && name.equals(theOther.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, name);
+    }
+}
@@ -56,7 +56,8 @@ public class RedundantAssignmentOptimizer implements Optimizer {
                     Expression thePredecessor = aExpressions.predecessorOf(theInit);
                     if (thePredecessor instanceof InitVariableExpression) {
                         InitVariableExpression thePred = (InitVariableExpression) thePredecessor;
-                        if (thePred.getVariable() == theValue) {
+                        // The variable can only be dropped if this is its only usage
+                        if (thePred.getVariable() == theValue && isOnlyUsedBy(theValue, thePred, theInit)) {
                             theInit.replaceInConsumedValues(theValue, thePred.getValue());
                             aExpressions.remove(thePred);
                             return true;
@@ -80,4 +81,13 @@ public class RedundantAssignmentOptimizer implements Optimizer {
         }
         return false;
     }
+
+    private boolean isOnlyUsedBy(Value aValue, InitVariableExpression aDefinition, InitVariableExpression aUsage) {
+        for (Value theUser : aValue.usedBy()) {
+            if (theUser != aDefinition && theUser != aUsage && theUser != aUsage.getVariable()) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.mirkosertic.bytecoder.classlib.java.lang.TObject;
+import de.mirkosertic.bytecoder.core.BytecodeFieldRefConstant;
+import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
+import de.mirkosertic.bytecoder.ssa.ControlFlowGraph;
+import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodExpression;
+import de.mirkosertic.bytecoder.ssa.DirectInvokeMethodValue;
+import de.mirkosertic.bytecoder.ssa.DoubleValue;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
+import de.mirkosertic.bytecoder.ssa.FloatValue;
+import de.mirkosertic.bytecoder.ssa.GetFieldValue;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.IntegerValue;
+import de.mirkosertic.bytecoder.ssa.LongValue;
+import de.mirkosertic.bytecoder.ssa.NewObjectValue;
+import de.mirkosertic.bytecoder.ssa.NullValue;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.PutFieldExpression;
+import de.mirkosertic.bytecoder.ssa.TypeRef;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+
+/**
+ * Replaces objects not escaping the program by a set of variables, one for every field.
+ *
+ * An object is a candidate if it is created by the only initialization of a variable. Copies of
+ * this variable to other variables initialized only once refer to the same object. The object
+ * escapes as soon as any of these variables is used for anything else than reading or writing
+ * one of its fields, for instance as an invocation argument, as the value of a store, as part of
+ * a comparison, or as the initialization of a PHI variable. Invocations of constructors and
+ * other small methods are resolved by the {@link InlineMethodsOptimizer} before, so objects only
+ * handled by inlined code do not escape. The remaining invocation of the empty constructor of
+ * Object is removed together with the allocation.
+ *
+ * For a non escaping object, the allocation is replaced by initializations of the field variables
+ * with their default values, field stores become initializations and field reads become reads of
+ * the field variables. As the variables of the object are only initialized once, every use of
+ * them refers to the last object created, hence the field variables always hold its state.
+ */
+public class ScalarReplacementOptimizer implements Optimizer {
+
+    private static final BytecodeObjectTypeRef OBJECT_CLASS = BytecodeObjectTypeRef.fromRuntimeClass(TObject.class);
+
+    private static class Occurrence {
+
+        private final ExpressionList list;
+        private final Expression expression;
+
+        private Occurrence(ExpressionList aList, Expression aExpression) {
+            list = aList;
+            expression = aExpression;
+        }
+    }
+
+    private static class Candidate {
+
+        private final List<Variable> variables;
+        private final List<Occurrence> allocations;
+        private final List<GetFieldValue> reads;
+        private final List<PutFieldExpression> writes;
+        private final List<Expression> constructors;
+        private boolean escapes;
+
+        private Candidate(Variable aVariable) {
+            variables = new ArrayList<>();
+            variables.add(aVariable);
+            allocations = new ArrayList<>();
+            reads = new ArrayList<>();
+            writes = new ArrayList<>();
+            constructors = new ArrayList<>();
+        }
+    }
+
+    private final Map<Expression, List<Occurrence>> occurrences = new IdentityHashMap<>();
+    private final Map<Variable, List<InitVariableExpression>> definitions = new HashMap<>();
+    private final Map<Variable, Candidate> candidates = new HashMap<>();
+    private BytecodeLinkerContext linkerContext;
+
+    @Override
+    public void optimize(ControlFlowGraph aGraph, BytecodeLinkerContext aLinkerContext) {
+        linkerContext = aLinkerContext;
+        occurrences.clear();
+        definitions.clear();
+        candidates.clear();
+
+        for (GraphNode theNode : aGraph.getKnownNodes()) {
+            collect(theNode.getExpressions());
+        }
+
+        findCandidates();
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        for (Expression theExpression : occurrences.keySet()) {
+            classify(theExpression);
+        }
+
+        Program theProgram = aGraph.getProgram();
+        for (Map.Entry<Variable, Candidate> theEntry : candidates.entrySet()) {
+            Candidate theCandidate = theEntry.getValue();
+            if (!theCandidate.escapes && theCandidate.variables.get(0) == theEntry.getKey()) {
+                replace(theProgram, theCandidate);
+            }
+        }
+    }
+
+    private void collect(ExpressionList aList) {
+        for (Expression theExpression : aList.toList()) {
+            List<Occurrence> theOccurrences = occurrences.computeIfAbsent(theExpression, t -> new ArrayList<>());
+            theOccurrences.add(new Occurrence(aList, theExpression));
+            if (theOccurrences.size() == 1 && theExpression instanceof InitVariableExpression) {
+                InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                definitions.computeIfAbsent(theInit.getVariable(), t -> new ArrayList<>()).add(theInit);
+            }
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    collect(theList);
+                }
+            }
+        }
+    }
+
+    private void findCandidates() {
+        for (Map.Entry<Variable, List<InitVariableExpression>> theEntry : definitions.entrySet()) {
+            List<InitVariableExpression> theDefinitions = theEntry.getValue();
+            if (theDefinitions.size() == 1 && theDefinitions.get(0).getValue() instanceof NewObjectValue) {
+                candidates.put(theEntry.getKey(), new Candidate(theEntry.getKey()));
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        // Copies of a candidate refer to the same object, copies of copies are found by iterating
+        boolean theChanged = true;
+        while (theChanged) {
+            theChanged = false;
+            for (Map.Entry<Variable, List<InitVariableExpression>> theEntry : definitions.entrySet()) {
+                Variable theVariable = theEntry.getKey();
+                List<InitVariableExpression> theDefinitions = theEntry.getValue();
+                if (candidates.containsKey(theVariable) || theDefinitions.size() != 1) {
+                    continue;
+                }
+                Candidate theSource = candidates.get(theDefinitions.get(0).getValue());
+                if (theSource != null) {
+                    theSource.variables.add(theVariable);
+                    candidates.put(theVariable, theSource);
+                    theChanged = true;
+                }
+            }
+        }
+    }
+
+    private void classify(Expression aExpression) {
+        if (aExpression instanceof InitVariableExpression) {
+            InitVariableExpression theInit = (InitVariableExpression) aExpression;
+            Variable theVariable = theInit.getVariable();
+            Value theValue = theInit.getValue();
+            Candidate theTarget = candidates.get(theVariable);
+            if (theValue instanceof NewObjectValue && theTarget != null) {
+                // The allocation might be part of several lists, defaults are initialized in all of them
+                theTarget.allocations.addAll(occurrences.get(aExpression));
+                return;
+            }
+            Candidate theSource = candidates.get(theValue);
+            if (theSource != null) {
+                if (theTarget != theSource) {
+                    // Copy to a PHI variable, the object might be merged with others
+                    theSource.escapes = true;
+                }
+                return;
+            }
+            classify(theValue);
+            return;
+        }
+
+        if (aExpression instanceof PutFieldExpression) {
+            PutFieldExpression thePutField = (PutFieldExpression) aExpression;
+            Candidate theTarget = candidates.get(thePutField.getTarget());
+            if (theTarget != null) {
+                if (candidates.get(thePutField.getValue()) != null) {
+                    candidates.get(thePutField.getValue()).escapes = true;
+                } else {
+                    classify(thePutField.getValue());
+                }
+                theTarget.writes.add(thePutField);
+                return;
+            }
+        }
+
+        if (aExpression instanceof DirectInvokeMethodExpression) {
+            DirectInvokeMethodValue theValue = ((DirectInvokeMethodExpression) aExpression).getValue();
+            Candidate theTarget = candidates.get(theValue.consumedValues(Value.ConsumptionType.INVOCATIONTARGET).get(0));
+            if (theTarget != null && OBJECT_CLASS.equals(theValue.getClazz()) && "<init>".equals(theValue.getMethodName())) {
+                // The constructor of Object does nothing, but cannot be inlined as it delegates to another method
+                theTarget.constructors.add(aExpression);
+                return;
+            }
+        }
+
+        classifyArguments(aExpression);
+    }
+
+    private void classify(Value aValue) {
+        if (aValue instanceof Variable) {
+            Candidate theCandidate = candidates.get(aValue);
+            if (theCandidate != null) {
+                theCandidate.escapes = true;
+            }
+            return;
+        }
+        if (aValue instanceof GetFieldValue) {
+            Candidate theTarget = candidates.get(aValue.resolveFirstArgument());
+            if (theTarget != null) {
+                theTarget.reads.add((GetFieldValue) aValue);
+                return;
+            }
+        }
+        classifyArguments(aValue);
+    }
+
+    private void classifyArguments(Value aValue) {
+        for (Value.ConsumptionType theType : Value.ConsumptionType.values()) {
+            for (Value theArgument : aValue.consumedValues(theType)) {
+                classify(theArgument);
+            }
+        }
+    }
+
+    private void replace(Program aProgram, Candidate aCandidate) {
+        Map<String, Variable> theFields = new LinkedHashMap<>();
+
+        List<Set<String>> theWrittenFirst = new ArrayList<>();
+        for (Occurrence theAllocation : aCandidate.allocations) {
+            theWrittenFirst.add(writtenBeforeRead(aCandidate, theAllocation));
+        }
+
+        for (GetFieldValue theRead : aCandidate.reads) {
+            Variable theField = fieldVariable(aProgram, theFields, keyOf(theRead.getField()), theRead.resolveType());
+            for (Value theUser : new ArrayList<>(theRead.usedBy())) {
+                theUser.replaceInConsumedValues(theRead, theField);
+            }
+        }
+
+        for (PutFieldExpression thePutField : aCandidate.writes) {
+            Variable theField = fieldVariable(aProgram, theFields, keyOf(thePutField.getField()),
+                    TypeRef.toType(thePutField.getField().getNameAndTypeIndex().getNameAndType().getDescriptorIndex().fieldType()));
+            Value theValue = thePutField.getValue();
+            InitVariableExpression theInit = new InitVariableExpression(theField, theValue);
+            theField.initializeWith(theValue);
+            for (Occurrence theOccurrence : occurrences.get(thePutField)) {
+                theOccurrence.list.replace(thePutField, theInit);
+            }
+        }
+
+        // Fields might be read before they are written, so they start with their default values
+        for (int i = 0; i < aCandidate.allocations.size(); i++) {
+            Occurrence theAllocation = aCandidate.allocations.get(i);
+            for (Map.Entry<String, Variable> theEntry : theFields.entrySet()) {
+                if (theWrittenFirst.get(i).contains(theEntry.getKey())) {
+                    continue;
+                }
+                Variable theField = theEntry.getValue();
+                Value theDefault = defaultValueFor(theField.resolveType());
+                theField.initializeWith(theDefault);
+                theAllocation.list.addBefore(new InitVariableExpression(theField, theDefault), theAllocation.expression);
+            }
+        }
+
+        for (Expression theConstructor : aCandidate.constructors) {
+            for (Occurrence theOccurrence : occurrences.get(theConstructor)) {
+                theOccurrence.list.remove(theConstructor);
+            }
+        }
+
+        for (Variable theVariable : aCandidate.variables) {
+            aProgram.deleteVariable(theVariable);
+        }
+    }
+
+    /**
+     * Fields written right after the allocation, before they are read and before control might
+     * leave the straight line of expressions, do not need a default value.
+     */
+    private Set<String> writtenBeforeRead(Candidate aCandidate, Occurrence aAllocation) {
+        Set<GetFieldValue> theReads = Collections.newSetFromMap(new IdentityHashMap<>());
+        theReads.addAll(aCandidate.reads);
+        Set<String> theRead = new HashSet<>();
+        Set<String> theWritten = new HashSet<>();
+
+        List<Expression> theExpressions = aAllocation.list.toList();
+        for (int i = theExpressions.indexOf(aAllocation.expression) + 1; i < theExpressions.size(); i++) {
+            Expression theExpression = theExpressions.get(i);
+            if (aCandidate.constructors.contains(theExpression)) {
+                continue;
+            }
+            if (aCandidate.writes.contains(theExpression)) {
+                PutFieldExpression thePutField = (PutFieldExpression) theExpression;
+                collectReads(thePutField.getValue(), theReads, theRead);
+                String theKey = keyOf(thePutField.getField());
+                if (!theRead.contains(theKey)) {
+                    theWritten.add(theKey);
+                }
+                continue;
+            }
+            if (!(theExpression instanceof InitVariableExpression) && !(theExpression instanceof PutFieldExpression)) {
+                break;
+            }
+            collectReads(theExpression, theReads, theRead);
+        }
+        return theWritten;
+    }
+
+    private void collectReads(Value aValue, Set<GetFieldValue> aReads, Set<String> aResult) {
+        if (aValue instanceof Variable) {
+            return;
+        }
+        if (aReads.contains(aValue)) {
+            aResult.add(keyOf(((GetFieldValue) aValue).getField()));
+        }
+        for (Value.ConsumptionType theType : Value.ConsumptionType.values()) {
+            for (Value theArgument : aValue.consumedValues(theType)) {
+                collectReads(theArgument, aReads, aResult);
+            }
+        }
+    }
+
+    /**
+     * A field might shadow a field of the same name declared by a superclass, so fields are
+     * identified by their declaring class and their name.
+     */
+    private String keyOf(BytecodeFieldRefConstant aField) {
+        BytecodeObjectTypeRef theClass = BytecodeObjectTypeRef.fromUtf8Constant(aField.getClassIndex().getClassConstant().getConstant());
+        String theName = MemoryLocation.nameOf(aField);
+        BytecodeLinkedClass.LinkedField theField = linkerContext.linkClass(theClass).memberFieldByName(theName);
+        return theField.getDeclaringType().name() + "." + theName;
+    }
+
+    private static Variable fieldVariable(Program aProgram, Map<String, Variable> aFields, String aName, TypeRef aType) {
+        return aFields.computeIfAbsent(aName, t -> {
+            switch (aType.resolve()) {
+                case BOOLEAN:
+                case BYTE:
+                case SHORT:
+                case CHAR:
+                    // Stored values are computed as integers
+                    return aProgram.createVariable(TypeRef.Native.INT);
+                default:
+                    return aProgram.createVariable(aType);
+            }
+        });
+    }
+
+    private static Value defaultValueFor(TypeRef aType) {
+        switch (aType.resolve()) {
+            case LONG:
+                return new LongValue(0);
+            case FLOAT:
+                return new FloatValue(0);
+            case DOUBLE:
+                return new DoubleValue(0);
+            case REFERENCE:
+                return new NullValue();
+            default:
+                return new IntegerValue(0);
+        }
+    }
+}
@@ -24,10 +24,10 @@ import java.io.StringWriter;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.logging.Level;
 
-import org.apache.commons.io.IOUtils;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.Description;
@@ -176,7 +176,7 @@ public class BytecoderUnitTestRunner extends ParentRunner<FrameworkMethod> {
             StringWriter theStrWriter = new StringWriter();
             PrintWriter theCodeWriter = new PrintWriter(theStrWriter);
 
-            CompileOptions theOptions = new CompileOptions(LOGGER, true, KnownOptimizer.ALL, aRelooper);
+            CompileOptions theOptions = new CompileOptions(LOGGER, true, KnownOptimizer.ALL, aRelooper, true);
             theCodeWriter.println(theCompileTarget.compileToJS(theOptions, testClass.getJavaClass(), aFrameworkMethod.getName(), theSignature).getData());
 
             String theFilename = theCompileTarget.toClassName(theTypeRef) + "." + theCompileTarget.toMethodName(aFrameworkMethod.getName(), theSignature) + "_js.html";
@@ -269,25 +269,18 @@ public class BytecoderUnitTestRunner extends ParentRunner<FrameworkMethod> {
             theGeneratedFilesDir.mkdirs();
             File theGeneratedFile = new File(theGeneratedFilesDir, theFileName);
 
-            // Copy WABT Tools
-            File theWABTFile = new File(theGeneratedFilesDir, "libwabt.js");
-            try (FileOutputStream theOS = new FileOutputStream(theWABTFile)) {
-                IOUtils.copy(getClass().getResourceAsStream("/libwabt.js"), theOS);
-            }
+            byte[] theBinary = theResult.getBinary(true);
 
             PrintWriter theWriter = new PrintWriter(theGeneratedFile);
             theWriter.println("<html>");
             theWriter.println("    <body>");
-            theWriter.println("        <h1>Module code</h1>");
-            theWriter.println("        <pre id=\"modulecode\">");
-            theWriter.println(theResult.getData());
-            theWriter.println("        </pre>");
             theWriter.println("        <h1>Compilation result</h1>");
             theWriter.println("        <pre id=\"compileresult\">");
             theWriter.println("        </pre>");
-            theWriter.println("        <script src=\"libwabt.js\">");
-            theWriter.println("        </script>");
             theWriter.println("        <script>");
+            theWriter.print("            var bytecoder_module = '");
+            theWriter.print(Base64.getEncoder().encodeToString(theBinary));
+            theWriter.println("';");
             theWriter.println("            var runningInstance;");
             theWriter.println("            var runningInstanceMemory;");
             theWriter.println();
@@ -321,18 +314,17 @@ public class BytecoderUnitTestRunner extends ParentRunner<FrameworkMethod> {
             theWriter.println("            function compile() {");
             theWriter.println("                console.log('Test started');");
             theWriter.println("                try {");
-            theWriter.println("                    var module = wabt.parseWat('test.wast', document.getElementById(\"modulecode\").innerText);");
-            theWriter.println("                    module.resolveNames();");
-            theWriter.println("                    module.validate();");
-            theWriter.println("                    var binaryOutput = module.toBinary({log: true, write_debug_names:true});");
-            theWriter.println("                    document.getElementById(\"compileresult\").innerText = binaryOutput.log;");
-            theWriter.println("                    var binaryBuffer = binaryOutput.buffer;");
+            theWriter.println("                    var theDecoded = atob(bytecoder_module);");
+            theWriter.println("                    var binaryBuffer = new Uint8Array(theDecoded.length);");
+            theWriter.println("                    for (var i=0;i<theDecoded.length;i++) {");
+            theWriter.println("                        binaryBuffer[i] = theDecoded.charCodeAt(i);");
+            theWriter.println("                    }");
             theWriter.println("                    console.log('Size of compiled WASM binary is ' + binaryBuffer.length);");
             theWriter.println();
             theWriter.println("                    var theInstantiatePromise = WebAssembly.instantiate(binaryBuffer, {");
             theWriter.println("                         system: {");
-            theWriter.println("                             currentTimeMillis: function() {return Date.now();},");
-            theWriter.println("                             nanoTime: function() {return Date.now() * 1000000;},");
+            theWriter.println("                             currentTimeMillis: function() {return BigInt(Date.now());},");
+            theWriter.println("                             nanoTime: function() {return BigInt(Date.now()) * 1000000n;},");
             theWriter.println("                             logDebug: bytecoder_logDebug,");
             theWriter.println("                             logByteArrayAsString: bytecoder_logByteArrayAsString,");
             theWriter.println("                         },");
@@ -376,7 +368,7 @@ public class BytecoderUnitTestRunner extends ParentRunner<FrameworkMethod> {
             theWriter.print(",");
             theWriter.print(theResult.getTypeIDFor(theTypeRef));
             theWriter.print(",");
-            theWriter.print(theResult.getVTableIndexOf(theTypeRef));
+            theWriter.print(theResult.getVTableAddressOf(theTypeRef));
             theWriter.println(", 0);");
             theWriter.println("                             runningInstance.exports.logMemoryLayout(0);");
             theWriter.println("                             console.log(\"Bootstrapped\")");
@@ -384,6 +376,9 @@ public class BytecoderUnitTestRunner extends ParentRunner<FrameworkMethod> {
             theWriter.println("                                 runningInstance.exports.logMemoryLayout(0);");
             theWriter.println("                                 console.log(\"Starting main method\")");
             theWriter.println("                                 runningInstance.exports.main(theTest);");
+            theWriter.println("                                 if (runningInstance.exports.takePendingException() !== 0) {");
+            theWriter.println("                                     throw \"Test threw an exception\";");
+            theWriter.println("                                 }");
             theWriter.println("                                 console.log(\"Main finished\")");
             theWriter.println("                                 runningInstance.exports.logMemoryLayout(0);");
             theWriter.println("                                 wasmHexDump(runningInstanceMemory);");
@@ -447,6 +442,9 @@ public class BytecoderUnitTestRunner extends ParentRunner<FrameworkMethod> {
             try  (PrintWriter theWATWriter = new PrintWriter(new FileWriter(new File(theGeneratedFilesDir, theCompileTarget.toClassName(theTypeRef) + "." + theCompileTarget.toMethodName(aFrameworkMethod.getName(), theSignature) + ".wat")))) {
                 theWATWriter.println(theResult.getData());
             }
+            try (FileOutputStream theWASMStream = new FileOutputStream(new File(theGeneratedFilesDir, theCompileTarget.toClassName(theTypeRef) + "." + theCompileTarget.toMethodName(aFrameworkMethod.getName(), theSignature) + ".wasm"))) {
+                theWASMStream.write(theBinary);
+            }
 
             // Invoke test in browser
             theDriver = newDriverForTest();
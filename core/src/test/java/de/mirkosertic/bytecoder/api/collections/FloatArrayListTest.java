@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class FloatArrayListTest {
+
+    @Test
+    public void addAndGet() throws Exception {
+        FloatArrayList theList = new FloatArrayList(2);
+        for (int i = 0; i < 20; i++) {
+            theList.add(i * 0.5f);
+        }
+        Assert.assertEquals(20, theList.size(), 0);
+        Assert.assertEquals(0f, theList.get(0), 0);
+        Assert.assertEquals(9.5f, theList.get(19), 0);
+        Assert.assertEquals(4, theList.indexOf(2.0f), 0);
+        Assert.assertEquals(-1, theList.indexOf(2.25f), 0);
+        Assert.assertTrue(theList.contains(9.5f));
+    }
+
+    @Test
+    public void setAndRemove() throws Exception {
+        FloatArrayList theList = new FloatArrayList();
+        theList.add(1.5f);
+        theList.add(2.5f);
+        theList.add(3.5f);
+        Assert.assertEquals(2.5f, theList.set(1, 20f), 0);
+        Assert.assertEquals(1.5f, theList.removeAt(0), 0);
+        Assert.assertEquals(2, theList.size(), 0);
+        Assert.assertEquals(20f, theList.get(0), 0);
+        Assert.assertEquals(3.5f, theList.get(1), 0);
+        float[] theArray = theList.toArray();
+        Assert.assertEquals(2, theArray.length, 0);
+        Assert.assertEquals(3.5f, theArray[1], 0);
+        theList.clear();
+        Assert.assertTrue(theList.isEmpty());
+    }
+}
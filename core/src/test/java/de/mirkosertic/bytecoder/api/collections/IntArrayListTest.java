@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class IntArrayListTest {
+
+    @Test
+    public void addAndGet() throws Exception {
+        IntArrayList theList = new IntArrayList(2);
+        for (int i = 0; i < 100; i++) {
+            theList.add(i * 3);
+        }
+        Assert.assertEquals(100, theList.size(), 0);
+        Assert.assertEquals(0, theList.get(0), 0);
+        Assert.assertEquals(297, theList.get(99), 0);
+        Assert.assertTrue(theList.contains(42));
+        Assert.assertFalse(theList.contains(43));
+    }
+
+    @Test
+    public void setAndRemove() throws Exception {
+        IntArrayList theList = new IntArrayList();
+        theList.add(1);
+        theList.add(2);
+        theList.add(3);
+        Assert.assertEquals(2, theList.set(1, 20), 0);
+        Assert.assertEquals(1, theList.removeAt(0), 0);
+        Assert.assertEquals(2, theList.size(), 0);
+        Assert.assertEquals(20, theList.get(0), 0);
+        Assert.assertEquals(3, theList.get(1), 0);
+        Assert.assertEquals(2, theList.toArray().length, 0);
+        theList.clear();
+        Assert.assertTrue(theList.isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class IntIntHashMapTest {
+
+    @Test
+    public void putAndGet() throws Exception {
+        IntIntHashMap theMap = new IntIntHashMap();
+        for (int i = 0; i < 1000; i++) {
+            theMap.put(i * 16, i);
+        }
+        Assert.assertEquals(1000, theMap.size(), 0);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, theMap.get(i * 16, -1), 0);
+        }
+        Assert.assertEquals(-1, theMap.get(1, -1), 0);
+        theMap.put(16, 42);
+        Assert.assertEquals(42, theMap.get(16, -1), 0);
+        Assert.assertEquals(1000, theMap.size(), 0);
+    }
+
+    @Test
+    public void remove() throws Exception {
+        IntIntHashMap theMap = new IntIntHashMap(4);
+        for (int i = 0; i < 200; i++) {
+            theMap.put(i, i + 1);
+        }
+        for (int i = 0; i < 200; i += 2) {
+            Assert.assertTrue(theMap.remove(i));
+        }
+        Assert.assertFalse(theMap.remove(0));
+        Assert.assertEquals(100, theMap.size(), 0);
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals(i % 2 == 1, theMap.containsKey(i));
+        }
+        theMap.clear();
+        Assert.assertTrue(theMap.isEmpty());
+    }
+
+    @Test
+    public void growWhileRemoving() throws Exception {
+        IntIntHashMap theMap = new IntIntHashMap(2);
+        for (int i = 0; i < 2000; i++) {
+            theMap.put(i * 7, i);
+            if (i % 3 == 0) {
+                Assert.assertTrue(theMap.remove(i * 7));
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertEquals(i % 3 == 0 ? -1 : i, theMap.get(i * 7, -1), 0);
+        }
+        Assert.assertEquals(1333, theMap.size(), 0);
+        Assert.assertEquals(1333, theMap.keys().length, 0);
+    }
+
+    @Test
+    public void tableSizeIsCappedAtMaximumCapacity() throws Exception {
+        Assert.assertEquals(4, HashSupport.tableSizeFor(0), 0);
+        Assert.assertEquals(4, HashSupport.tableSizeFor(1), 0);
+        Assert.assertEquals(32, HashSupport.tableSizeFor(16), 0);
+        Assert.assertEquals(1 << 30, HashSupport.tableSizeFor((3 << 28) - 1), 0);
+        Assert.assertEquals(1 << 30, HashSupport.tableSizeFor(3 << 28), 0);
+        Assert.assertEquals(1 << 30, HashSupport.tableSizeFor(1 << 30), 0);
+        Assert.assertEquals(1 << 30, HashSupport.tableSizeFor(Integer.MAX_VALUE), 0);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class IntObjectHashMapTest {
+
+    @Test
+    public void putGetAndRemove() throws Exception {
+        IntObjectHashMap<String> theMap = new IntObjectHashMap<>();
+        Assert.assertNull(theMap.put(-5, "A"));
+        Assert.assertEquals("A", theMap.put(-5, "B"));
+        Assert.assertEquals("B", theMap.get(-5));
+        Assert.assertTrue(theMap.containsKey(-5));
+        Assert.assertEquals("B", theMap.remove(-5));
+        Assert.assertNull(theMap.get(-5));
+        Assert.assertNull(theMap.remove(-5));
+        Assert.assertTrue(theMap.isEmpty());
+    }
+
+    @Test
+    public void manyEntries() throws Exception {
+        IntObjectHashMap<Integer> theMap = new IntObjectHashMap<>(4);
+        for (int i = 0; i < 500; i++) {
+            Assert.assertNull(theMap.put(i * 32, new Integer(i)));
+        }
+        for (int i = 0; i < 500; i += 2) {
+            Assert.assertEquals(new Integer(i), theMap.remove(i * 32));
+        }
+        Assert.assertEquals(250, theMap.size(), 0);
+        Assert.assertEquals(250, theMap.keys().length, 0);
+        for (int i = 0; i < 500; i++) {
+            if (i % 2 == 0) {
+                Assert.assertNull(theMap.get(i * 32));
+            } else {
+                Assert.assertEquals(new Integer(i), theMap.get(i * 32));
+            }
+        }
+        theMap.clear();
+        Assert.assertTrue(theMap.isEmpty());
+        Assert.assertNull(theMap.get(32));
+    }
+}
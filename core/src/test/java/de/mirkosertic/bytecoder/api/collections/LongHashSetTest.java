@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.api.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class LongHashSetTest {
+
+    @Test
+    public void addContainsAndRemove() throws Exception {
+        LongHashSet theSet = new LongHashSet();
+        for (long i = 0; i < 100; i++) {
+            Assert.assertTrue(theSet.add(i << 33));
+        }
+        Assert.assertFalse(theSet.add(1L << 33));
+        Assert.assertEquals(100, theSet.size(), 0);
+        Assert.assertTrue(theSet.contains(5L << 33));
+        Assert.assertFalse(theSet.contains(5L));
+        Assert.assertTrue(theSet.remove(5L << 33));
+        Assert.assertFalse(theSet.remove(5L << 33));
+        Assert.assertFalse(theSet.contains(5L << 33));
+        Assert.assertEquals(99, theSet.toArray().length, 0);
+    }
+
+    @Test
+    public void growWhileRemoving() throws Exception {
+        LongHashSet theSet = new LongHashSet(2);
+        for (long i = 0; i < 1000; i++) {
+            Assert.assertTrue(theSet.add(i * 1000000007L));
+            if (i % 4 == 1) {
+                Assert.assertTrue(theSet.remove(i * 1000000007L));
+            }
+        }
+        Assert.assertEquals(750, theSet.size(), 0);
+        for (long i = 0; i < 1000; i++) {
+            Assert.assertEquals(i % 4 != 1, theSet.contains(i * 1000000007L));
+        }
+        theSet.clear();
+        Assert.assertTrue(theSet.isEmpty());
+        Assert.assertFalse(theSet.contains(0L));
+    }
+}
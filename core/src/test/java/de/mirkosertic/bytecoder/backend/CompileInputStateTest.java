@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.mirkosertic.bytecoder.core.BytecodeLoader;
+import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodePackageReplacer;
+
+public class CompileInputStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BytecodeLoader loaderWithLinkedClass() throws IOException, ClassNotFoundException {
+        BytecodeLoader theLoader = new BytecodeLoader(getClass().getClassLoader(), new BytecodePackageReplacer());
+        theLoader.loadByteCode(BytecodeObjectTypeRef.fromRuntimeClass(CompileInputStateTest.class));
+        return theLoader;
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException, ClassNotFoundException {
+        BytecodeLoader theLoader = loaderWithLinkedClass();
+        CompileInputState theState = CompileInputState.of("js", theLoader);
+        Assert.assertEquals(1, theState.getResourceHashes().size());
+
+        File theFile = folder.newFile("bytecoder.state");
+        theState.writeTo(theFile);
+
+        CompileInputState theLoaded = CompileInputState.readFrom(theFile);
+        Assert.assertEquals("js", theLoaded.getConfiguration());
+        Assert.assertEquals(theState.getResourceHashes(), theLoaded.getResourceHashes());
+        Assert.assertTrue(theLoaded.isUpToDate("js", theLoader));
+    }
+
+    @Test
+    public void testChangedConfiguration() throws IOException, ClassNotFoundException {
+        BytecodeLoader theLoader = loaderWithLinkedClass();
+        CompileInputState theState = CompileInputState.of("js", theLoader);
+        Assert.assertFalse(theState.isUpToDate("wasm", theLoader));
+    }
+
+    @Test
+    public void testChangedClass() throws IOException, ClassNotFoundException {
+        BytecodeLoader theLoader = loaderWithLinkedClass();
+        Map<String, String> theHashes = new HashMap<>(CompileInputState.of("js", theLoader).getResourceHashes());
+        theHashes.replaceAll((aKey, aValue) -> "00");
+        Assert.assertFalse(new CompileInputState("js", theHashes).isUpToDate("js", theLoader));
+    }
+
+    @Test
+    public void testRemovedClass() throws IOException, ClassNotFoundException {
+        BytecodeLoader theLoader = loaderWithLinkedClass();
+        Map<String, String> theHashes = new HashMap<>();
+        theHashes.put("does/not/Exist.class", "00");
+        Assert.assertFalse(new CompileInputState("js", theHashes).isUpToDate("js", theLoader));
+    }
+}
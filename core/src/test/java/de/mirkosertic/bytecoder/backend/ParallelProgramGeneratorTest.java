@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.backend;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeLoader;
+import de.mirkosertic.bytecoder.core.BytecodeMethod;
+import de.mirkosertic.bytecoder.core.BytecodeMethodSignature;
+import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodePackageReplacer;
+import de.mirkosertic.bytecoder.core.BytecodePrimitiveTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodeTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodeVirtualMethodIdentifier;
+import de.mirkosertic.bytecoder.ssa.NaiveProgramGenerator;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.optimizer.KnownOptimizer;
+import de.mirkosertic.bytecoder.unittest.Slf4JLogger;
+
+public class ParallelProgramGeneratorTest {
+
+    public static class Computation {
+
+        public static int compute(int aValue) {
+            int theResult = 0;
+            for (int i = 0; i < aValue; i++) {
+                theResult += Math.max(i, square(aValue - i));
+            }
+            return theResult;
+        }
+
+        private static int square(int aValue) {
+            return aValue * aValue;
+        }
+    }
+
+    private BytecodeLinkerContext linkComputation() {
+        BytecodeLoader theLoader = new BytecodeLoader(getClass().getClassLoader(), new BytecodePackageReplacer());
+        BytecodeLinkerContext theLinkerContext = new BytecodeLinkerContext(theLoader, Slf4JLogger.INSTANCE);
+        theLinkerContext.linkClass(BytecodeObjectTypeRef.fromRuntimeClass(Computation.class))
+                .linkStaticMethod("compute", new BytecodeMethodSignature(BytecodePrimitiveTypeRef.INT, new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT}));
+        return theLinkerContext;
+    }
+
+    @Test
+    public void testProgramForEveryMethod() {
+        BytecodeLinkerContext theLinkerContext = linkComputation();
+        CompileOptions theOptions = new CompileOptions(Slf4JLogger.INSTANCE, false, KnownOptimizer.ALL, true);
+
+        AtomicInteger theCount = new AtomicInteger();
+        theLinkerContext.forEachClass(aEntry -> aEntry.getValue().forEachMethod(aMethod -> {
+            if (!aMethod.getAccessFlags().isAbstract() && !aMethod.getAccessFlags().isNative()) {
+                theCount.incrementAndGet();
+            }
+        }));
+
+        Map<BytecodeMethod, Program> thePrograms = new ParallelProgramGenerator(NaiveProgramGenerator.FACTORY).generate(theLinkerContext, theOptions,
+                (aClass, aMethod) -> !aMethod.getAccessFlags().isAbstract() && !aMethod.getAccessFlags().isNative());
+
+        Assert.assertTrue(theCount.get() >= 2);
+        Assert.assertEquals(theCount.get(), thePrograms.size());
+        for (Program theProgram : thePrograms.values()) {
+            Assert.assertNotNull(theProgram.getControlFlowGraph());
+        }
+    }
+
+    @Test
+    public void testLinkingIsFrozen() {
+        BytecodeLinkerContext theLinkerContext = linkComputation();
+        CompileOptions theOptions = new CompileOptions(Slf4JLogger.INSTANCE, false, KnownOptimizer.ALL, true);
+
+        new ParallelProgramGenerator(NaiveProgramGenerator.FACTORY).generate(theLinkerContext, theOptions, (aClass, aMethod) -> false);
+        Assert.assertTrue(theLinkerContext.isFrozen());
+
+        // Lookups of already linked elements are still possible
+        BytecodeLinkedClass theClass = theLinkerContext.linkClass(BytecodeObjectTypeRef.fromRuntimeClass(Computation.class));
+        Assert.assertSame(theClass, theClass.linkStaticMethod("square", new BytecodeMethodSignature(BytecodePrimitiveTypeRef.INT, new BytecodeTypeRef[] {BytecodePrimitiveTypeRef.INT})));
+
+        try {
+            theLinkerContext.linkClass(BytecodeObjectTypeRef.fromRuntimeClass(ParallelProgramGeneratorTest.class));
+            Assert.fail("Exception expected");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    private static Map<String, Integer> identifiersAfterGeneration() {
+        BytecodeLinkerContext theLinkerContext = new ParallelProgramGeneratorTest().linkComputation();
+        CompileOptions theOptions = new CompileOptions(Slf4JLogger.INSTANCE, false, KnownOptimizer.ALL, true);
+
+        Map<String, Integer> theIdentifiers = new HashMap<>();
+        new ParallelProgramGenerator(NaiveProgramGenerator.FACTORY).generate(theLinkerContext, theOptions,
+                (aClass, aMethod) -> !aMethod.getAccessFlags().isAbstract() && !aMethod.getAccessFlags().isNative());
+        theLinkerContext.forEachClass(aEntry -> {
+            for (BytecodeMethod theMethod : aEntry.getValue().getBytecodeClass().getMethods()) {
+                if (!theMethod.isClassInitializer()) {
+                    BytecodeVirtualMethodIdentifier theIdentifier = theLinkerContext.getMethodCollection()
+                            .toIdentifier(theMethod.getName().stringValue(), theMethod.getSignature());
+                    Assert.assertNotNull(theIdentifier);
+                    theIdentifiers.put(theMethod.getName().stringValue() + theMethod.getSignature(), theIdentifier.getIdentifier());
+                }
+            }
+        });
+        return theIdentifiers;
+    }
+
+    @Test
+    public void testIdentifiersAreNumberedBeforeGeneration() {
+        Map<String, Integer> theFirst = identifiersAfterGeneration();
+        Map<String, Integer> theSecond = identifiersAfterGeneration();
+        Assert.assertFalse(theFirst.isEmpty());
+        Assert.assertEquals(theFirst, theSecond);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.backend.wasm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WASMBinaryEncoderTest {
+
+    private static String encode(String aModule, boolean aWithNames) {
+        byte[] theData = new WASMBinaryEncoder(aModule).encode(aWithNames);
+        StringBuilder theResult = new StringBuilder();
+        for (byte theByte : theData) {
+            if (theResult.length() > 0) {
+                theResult.append(' ');
+            }
+            theResult.append(String.format("%02x", theByte & 0xff));
+        }
+        return theResult.toString();
+    }
+
+    @Test
+    public void testEmptyModule() {
+        assertEquals("00 61 73 6d 01 00 00 00", encode("(module)", false));
+    }
+
+    @Test
+    public void testExportedFunction() {
+        String theResult = encode("(module (func $add (export \"add\") (param $a i32) (param $b i32) (result i32) "
+                + "(i32.add (get_local $a) (get_local $b))))", false);
+        assertEquals("00 61 73 6d 01 00 00 00 "
+                + "01 07 01 60 02 7f 7f 01 7f "
+                + "03 02 01 00 "
+                + "07 07 01 03 61 64 64 00 00 "
+                + "0a 09 01 07 00 20 00 20 01 6a 0b", theResult);
+    }
+
+    @Test
+    public void testSignedConstants() {
+        assertTrue(encode("(module (func (result i32) (i32.const -1)))", false).endsWith("00 41 7f 0b"));
+        assertTrue(encode("(module (func (result i32) (i32.const 0xffffffff)))", false).endsWith("00 41 7f 0b"));
+        assertTrue(encode("(module (func (result i32) (i32.const 64)))", false).endsWith("00 41 c0 00 0b"));
+        assertTrue(encode("(module (func (result i32) (i32.const -64)))", false).endsWith("00 41 40 0b"));
+        assertTrue(encode("(module (func (result i64) (i64.const 624485)))", false).endsWith("00 42 e5 8e 26 0b"));
+    }
+
+    @Test
+    public void testFloatConstants() {
+        assertTrue(encode("(module (func (result f32) (f32.const 1.5)))", false).endsWith("00 43 00 00 c0 3f 0b"));
+        assertTrue(encode("(module (func (result f64) (f64.const -inf)))", false).endsWith("00 44 00 00 00 00 00 00 f0 ff 0b"));
+    }
+
+    @Test
+    public void testLabels() {
+        String theResult = encode("(module (func $f (param $a i32) (block $outer (loop $inner "
+                + "(br_if $outer (get_local $a)) (br $inner)))))", false);
+        assertTrue(theResult.endsWith("00 02 40 03 40 20 00 0d 01 0c 00 0b 0b 0b"));
+    }
+
+    @Test
+    public void testIfWithResult() {
+        String theResult = encode("(module (func $f (param $a i32) (result i32) "
+                + "(if (result i32) (get_local $a) (then (i32.const 1)) (else (i32.const 2)))))", false);
+        assertTrue(theResult.endsWith("00 20 00 04 7f 41 01 05 41 02 0b 0b"));
+    }
+
+    @Test
+    public void testLocalsAndMemoryAccess() {
+        String theResult = encode("(module (memory 1) (func $f (param $a i32) (local $b i32) (local $c i32) (local $d f64) "
+                + "(set_local $d (f64.load offset=8 (get_local $c)))))", false);
+        assertTrue(theResult.endsWith("02 02 7f 01 7c 20 02 2b 03 08 21 03 0b"));
+    }
+
+    @Test
+    public void testTypeDeclaredAfterUse() {
+        String theResult = encode("(module (table 1 anyfunc) (elem (i32.const 0) $f) "
+                + "(func $f (param $a i32) (result i32) (call_indirect $t_sig (get_local $a) (i32.const 0))) "
+                + "(type $t_sig (func (param i32) (result i32))))", false);
+        assertTrue(theResult.contains("01 06 01 60 01 7f 01 7f 03 02 01 00 04 04 01 70 00 01 09 07 01 00 41 00 0b 01 00"));
+        assertTrue(theResult.endsWith("20 00 41 00 11 00 00 0b"));
+    }
+
+    @Test
+    public void testImportsComeFirst() {
+        String theResult = encode("(module (func $a (call $b)) (func $b (import \"m\" \"b\")))", false);
+        assertEquals("00 61 73 6d 01 00 00 00 "
+                + "01 04 01 60 00 00 "
+                + "02 07 01 01 6d 01 62 00 00 "
+                + "03 02 01 00 "
+                + "0a 06 01 04 00 10 00 0b", theResult);
+    }
+
+    @Test
+    public void testMemoryAndData() {
+        String theResult = encode("(module (memory (export \"memory\") 1 2) (data (i32.const 8) \"\\01\\ffA\"))", false);
+        assertEquals("00 61 73 6d 01 00 00 00 "
+                + "05 04 01 01 01 02 "
+                + "07 0a 01 06 6d 65 6d 6f 72 79 02 00 "
+                + "0b 09 01 00 41 08 0b 03 01 ff 41", theResult);
+    }
+
+    @Test
+    public void testGlobals() {
+        String theResult = encode("(module (global $g (mut i32) (i32.const 16)) (func $f (set_global $g (i32.const 1))))", false);
+        assertTrue(theResult.contains("06 06 01 7f 01 41 10 0b"));
+        assertTrue(theResult.endsWith("00 41 01 24 00 0b"));
+    }
+
+    @Test
+    public void testNamesSection() {
+        String theModule = "(module (func $f (param $a i32)))";
+        assertTrue(encode(theModule, true).endsWith("00 13 04 6e 61 6d 65 01 04 01 00 01 66 02 06 01 00 01 00 01 61"));
+        assertFalse(encode(theModule, false).contains("6e 61 6d 65"));
+    }
+
+    @Test
+    public void testStandardizedInstructionNames() {
+        String theLegacy = "(module (func $f (param $a i32) (result i64) (i64.extend_s/i32 (get_local $a))))";
+        String theStandard = "(module (func $f (param $a i32) (result i64) (i64.extend_i32_s (local.get $a))))";
+        assertArrayEquals(new WASMBinaryEncoder(theLegacy).encode(false), new WASMBinaryEncoder(theStandard).encode(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFunction() {
+        encode("(module (func $f (call $g)))", false);
+    }
+}
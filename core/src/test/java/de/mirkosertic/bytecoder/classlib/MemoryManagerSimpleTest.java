@@ -15,100 +15,221 @@
  */
 package de.mirkosertic.bytecoder.classlib;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
 public class MemoryManagerSimpleTest {
 
+    private static final int OBJECT_VTABLE = 32;
+    private static final int OBJECT_POINTERMAP = 48;
+    private static final int ARRAY_VTABLE = 40;
+    private static final int ARRAY_POINTERMAP = 56;
+
+    private static void initStaticData() {
+        // Objects with a single reference at offset 8
+        Address.setIntValue(new Address(OBJECT_VTABLE), MemoryManager.VTABLE_POINTERMAP_OFFSET, OBJECT_POINTERMAP);
+        Address.setIntValue(new Address(OBJECT_POINTERMAP), 0, 1);
+        Address.setIntValue(new Address(OBJECT_POINTERMAP), 4, 8);
+
+        // Arrays of references
+        Address.setIntValue(new Address(ARRAY_VTABLE), MemoryManager.VTABLE_POINTERMAP_OFFSET, ARRAY_POINTERMAP);
+        Address.setIntValue(new Address(ARRAY_POINTERMAP), 0, MemoryManager.ARRAY_OF_REFERENCES);
+    }
+
+    @After
+    public void resetStack() {
+        Address.setStackSize(0);
+    }
+
     @Test
     public void testInit() {
         MemoryManager.initWithSize(1000);
-        Assert.assertEquals(1000, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(768, MemoryManager.freeMem(), 0);
         Assert.assertEquals(0, MemoryManager.usedMem(), 0);
     }
 
     @Test
     public void testMalloc() {
         MemoryManager.initWithSize(1000);
-        Assert.assertEquals(1000, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(768, MemoryManager.freeMem(), 0);
         Assert.assertEquals(0, MemoryManager.usedMem(), 0);
 
         Address theMalloc = MemoryManager.malloc(100);
-        Assert.assertEquals(36, Address.getStart(theMalloc) , 0);
+        Assert.assertEquals(240, Address.getStart(theMalloc) , 0);
 
-        Assert.assertEquals(892, MemoryManager.freeMem(), 0);
-        Assert.assertEquals(108, MemoryManager.usedMem(), 0);
+        Assert.assertEquals(656, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(112, MemoryManager.usedMem(), 0);
 
         Address theMalloc2 = MemoryManager.malloc(150);
-        Assert.assertEquals(144, Address.getStart(theMalloc2) , 0);
+        Assert.assertEquals(352, Address.getStart(theMalloc2) , 0);
 
-        Assert.assertEquals(734, MemoryManager.freeMem(), 0);
-        Assert.assertEquals(266, MemoryManager.usedMem(), 0);
+        Assert.assertEquals(496, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(272, MemoryManager.usedMem(), 0);
     }
 
     @Test
     public void testMallocFree() {
         MemoryManager.initWithSize(1000);
-        Assert.assertEquals(1000, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(768, MemoryManager.freeMem(), 0);
         Assert.assertEquals(0, MemoryManager.usedMem(), 0);
 
         Address theMalloc = MemoryManager.malloc(100);
-        Assert.assertEquals(36, Address.getStart(theMalloc) , 0);
-        Assert.assertEquals(892, MemoryManager.freeMem(), 0);
-        Assert.assertEquals(108, MemoryManager.usedMem(), 0);
+        Assert.assertEquals(240, Address.getStart(theMalloc) , 0);
+        Assert.assertEquals(656, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(112, MemoryManager.usedMem(), 0);
 
         MemoryManager.free(theMalloc);
-        Assert.assertEquals(1000, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(768, MemoryManager.freeMem(), 0);
         Assert.assertEquals(0, MemoryManager.usedMem(), 0);
 
         theMalloc = MemoryManager.malloc(100);
-        Assert.assertEquals(36, Address.getStart(theMalloc) , 0);
-        Assert.assertEquals(892, MemoryManager.freeMem(), 0);
-        Assert.assertEquals(108, MemoryManager.usedMem(), 0);
+        Assert.assertEquals(240, Address.getStart(theMalloc) , 0);
+        Assert.assertEquals(656, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(112, MemoryManager.usedMem(), 0);
+    }
+
+    @Test
+    public void testSizeClassReuse() {
+        MemoryManager.initWithSize(1000);
+
+        Address theMalloc1 = MemoryManager.malloc(100);
+        Address theMalloc2 = MemoryManager.malloc(100);
+        Address.setIntValue(theMalloc1, 0, 42);
+        MemoryManager.free(theMalloc1);
+
+        // A block of another size class is taken from the bump pointer region
+        Address theMalloc3 = MemoryManager.malloc(40);
+        Assert.assertEquals(464, Address.getStart(theMalloc3), 0);
+
+        // The released block is reused and wiped out
+        Address theMalloc4 = MemoryManager.malloc(100);
+        Assert.assertEquals(Address.getStart(theMalloc1), Address.getStart(theMalloc4), 0);
+        Assert.assertEquals(0, Address.getIntValue(theMalloc4, 0), 0);
+
+        Assert.assertEquals(272, MemoryManager.usedMem(), 0);
+    }
+
+    @Test
+    public void testLargeBlockSplit() {
+        MemoryManager.initWithSize(1000);
+
+        Address theMalloc1 = MemoryManager.malloc(400);
+        MemoryManager.free(theMalloc1);
+        Assert.assertEquals(0, MemoryManager.usedMem(), 0);
+
+        // The large block is split, the remainder belongs to a small size class
+        Address theMalloc2 = MemoryManager.malloc(300);
+        Assert.assertEquals(240, Address.getStart(theMalloc2), 0);
+        Assert.assertEquals(312, MemoryManager.usedMem(), 0);
+
+        Address theMalloc3 = MemoryManager.malloc(88);
+        Assert.assertEquals(552, Address.getStart(theMalloc3), 0);
+        Assert.assertEquals(408, MemoryManager.usedMem(), 0);
     }
 
     @Test
     public void testMallocGC() {
         MemoryManager.initWithSize(1000);
-        Assert.assertEquals(1000, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(768, MemoryManager.freeMem(), 0);
         Assert.assertEquals(0, MemoryManager.usedMem(), 0);
 
         Address theMalloc1 = MemoryManager.malloc(100);
         Address theMalloc2 = MemoryManager.malloc(200);
 
-        Assert.assertEquals(684, MemoryManager.freeMem(), 0);
-        Assert.assertEquals(316, MemoryManager.usedMem(), 0);
+        Assert.assertEquals(448, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(320, MemoryManager.usedMem(), 0);
 
         MemoryManager.GC();
 
-        Assert.assertEquals(1000, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(768, MemoryManager.freeMem(), 0);
         Assert.assertEquals(0, MemoryManager.usedMem(), 0);
     }
 
     @Test
     public void testMallocGCPartial() {
         MemoryManager.initWithSize(1000);
-        Assert.assertEquals(1000, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(768, MemoryManager.freeMem(), 0);
         Assert.assertEquals(0, MemoryManager.usedMem(), 0);
 
         Address theMalloc1 = MemoryManager.malloc(100);
         Address theMalloc2 = MemoryManager.malloc(200);
         Address.setIntValue(theMalloc1, 0, Address.getStart(theMalloc2));
 
-        // Malloc1 references malloc2, but it is not references
-        // Malloc2 will be GCed first, then Malloc2
+        // Malloc1 references malloc2, but nothing references malloc1,
+        // so both are garbage
 
-        Assert.assertEquals(684, MemoryManager.freeMem(), 0);
-        Assert.assertEquals(316, MemoryManager.usedMem(), 0);
+        Assert.assertEquals(448, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(320, MemoryManager.usedMem(), 0);
 
         MemoryManager.GC();
 
-        Assert.assertEquals(792, MemoryManager.freeMem(), 0);
-        Assert.assertEquals(208, MemoryManager.usedMem(), 0);
+        Assert.assertEquals(768, MemoryManager.freeMem(), 0);
+        Assert.assertEquals(0, MemoryManager.usedMem(), 0);
+    }
+
+    @Test
+    public void testGCJoinsFreeBlocks() {
+        MemoryManager.initWithSize(1000);
+
+        MemoryManager.malloc(100);
+        MemoryManager.malloc(100);
+        MemoryManager.malloc(100);
 
         MemoryManager.GC();
 
-        Assert.assertEquals(1000, MemoryManager.freeMem(), 0);
-        Assert.assertEquals(0, MemoryManager.usedMem(), 0);
+        // Only the joined blocks are large enough
+        Address theMalloc = MemoryManager.malloc(300);
+        Assert.assertEquals(240, Address.getStart(theMalloc), 0);
+    }
+
+    @Test
+    public void testGCKeepsReachableObjects() {
+        MemoryManager.initWithSize(1000);
+        initStaticData();
+
+        Address theRoot = MemoryManager.newObject(12, 0, OBJECT_VTABLE);
+        Address theChild = MemoryManager.newObject(12, 0, OBJECT_VTABLE);
+        Address theGarbage = MemoryManager.newObject(12, 0, OBJECT_VTABLE);
+        Address.setIntValue(theRoot, 8, Address.getStart(theChild));
+        Address.setIntValue(theGarbage, 8, Address.getStart(theChild));
+
+        Address.setStackSize(4);
+        Address.setIntValue(new Address(Address.getStackTop()), 0, Address.getStart(theRoot));
+
+        MemoryManager.GC();
+
+        Assert.assertEquals(48, MemoryManager.usedMem(), 0);
+
+        Address theNew = MemoryManager.newObject(12, 0, OBJECT_VTABLE);
+        Assert.assertEquals(Address.getStart(theGarbage), Address.getStart(theNew), 0);
+    }
+
+    @Test
+    public void testGCMarkStackOverflow() {
+        MemoryManager.initWithSize(1000);
+        initStaticData();
+
+        Address theArray = MemoryManager.newArray(3, 4, 0, ARRAY_VTABLE);
+        Address theDeep = null;
+        for (int i=0;i<3;i++) {
+            Address theElement = MemoryManager.newObject(12, 0, OBJECT_VTABLE);
+            Address.setIntValue(theArray, 20 + i * 4, Address.getStart(theElement));
+            if (i == 1) {
+                theDeep = MemoryManager.newObject(12, 0, OBJECT_VTABLE);
+                Address.setIntValue(theElement, 8, Address.getStart(theDeep));
+            }
+        }
+        Address theGarbage = MemoryManager.newObject(12, 0, OBJECT_VTABLE);
+
+        // The stack starts right behind the heap, so the mark stack has room for one entry only
+        int theMarkStack = Address.getStart(theGarbage) + 16;
+        Address.setStackSize(1000 - theMarkStack - 4);
+        Address.setIntValue(new Address(Address.getStackTop()), 0, Address.getStart(theArray));
+
+        MemoryManager.GC();
+
+        Assert.assertEquals(40 + 4 * 24, MemoryManager.usedMem(), 0);
+        Assert.assertEquals(0, Address.getIntValue(new Address(theMarkStack), 0), 0);
     }
 }
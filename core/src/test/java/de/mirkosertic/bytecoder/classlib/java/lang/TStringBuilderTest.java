@@ -87,4 +87,83 @@ public class TStringBuilderTest {
         theBuilder.append(-123.123d);
         assertEquals("-123.123", theBuilder.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAppendSmallFraction() {
+        TStringBuilder theBuilder = new TStringBuilder();
+        theBuilder.append(1.0625d);
+        assertEquals("1.0625", theBuilder.toString());
+    }
+
+    @Test
+    public void testAppendNegativeFraction() {
+        TStringBuilder theBuilder = new TStringBuilder();
+        theBuilder.append(-0.5d);
+        assertEquals("-0.5", theBuilder.toString());
+    }
+
+    @Test
+    public void testAppendMinValues() {
+        TStringBuilder theBuilder = new TStringBuilder();
+        theBuilder.append(Integer.MIN_VALUE);
+        theBuilder.append(' ');
+        theBuilder.append(Long.MIN_VALUE);
+        assertEquals("-2147483648 -9223372036854775808", theBuilder.toString());
+    }
+
+    @Test
+    public void testAppendLargeLong() {
+        TStringBuilder theBuilder = new TStringBuilder();
+        theBuilder.append(1234567890123L);
+        assertEquals("1234567890123", theBuilder.toString());
+    }
+
+    @Test
+    public void testAppendMany() {
+        StringBuilder theBuilder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            theBuilder.append((char) ('a' + i % 26));
+        }
+        assertEquals(1000, theBuilder.length(), 0);
+        assertEquals('a', theBuilder.charAt(0), 0);
+        assertEquals('l', theBuilder.charAt(999), 0);
+    }
+
+    @Test
+    public void testToStringIsNotChangedByAppend() {
+        StringBuilder theBuilder = new StringBuilder();
+        theBuilder.append("Hello");
+        String theFirst = theBuilder.toString();
+        theBuilder.setLength(2);
+        theBuilder.append("y");
+        assertEquals("Hello", theFirst);
+        assertEquals("Hey", theBuilder.toString());
+    }
+
+    @Test
+    public void testInsert() {
+        StringBuilder theBuilder = new StringBuilder();
+        theBuilder.append("Held");
+        theBuilder.insert(3, "lo Worl");
+        theBuilder.insert(0, '>');
+        theBuilder.insert(1, 42);
+        assertEquals(">42Hello World", theBuilder.toString());
+    }
+
+    @Test
+    public void testDelete() {
+        StringBuilder theBuilder = new StringBuilder();
+        theBuilder.append("Hello World");
+        theBuilder.delete(5, 100);
+        theBuilder.deleteCharAt(0);
+        assertEquals("ello", theBuilder.toString());
+    }
+
+    @Test
+    public void testReverse() {
+        StringBuilder theBuilder = new StringBuilder();
+        theBuilder.append("Hello");
+        theBuilder.reverse();
+        assertEquals("olleH", theBuilder.toString());
+    }
+}
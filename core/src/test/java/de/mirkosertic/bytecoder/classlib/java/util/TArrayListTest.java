@@ -16,7 +16,9 @@
 package de.mirkosertic.bytecoder.classlib.java.util;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -154,4 +156,118 @@ public class TArrayListTest {
         Assert.assertTrue(theList.contains("A"));
         Assert.assertTrue(theList.contains("C"));
     }
-}
\ No newline at end of file
+    @Test
+    public void testGrowth() {
+        TArrayList theList = new TArrayList(2);
+        for (int i = 0; i < 1000; i++) {
+            theList.add(new Integer(i));
+        }
+        Assert.assertEquals(1000, theList.size(), 0);
+        Assert.assertEquals(new Integer(0), theList.get(0));
+        Assert.assertEquals(new Integer(999), theList.get(999));
+
+        theList.trimToSize();
+        Assert.assertEquals(1000, theList.size(), 0);
+        theList.ensureCapacity(2000);
+        Assert.assertEquals(new Integer(500), theList.get(500));
+    }
+
+    @Test
+    public void testCopyConstructor() {
+        TArrayList theList = new TArrayList();
+        theList.add("A");
+        theList.add("B");
+        TArrayList theCopy = new TArrayList(theList);
+        theCopy.add("C");
+        Assert.assertEquals(2, theList.size(), 0);
+        Assert.assertEquals(3, theCopy.size(), 0);
+        Assert.assertEquals("B", theCopy.get(1));
+    }
+
+    @Test
+    public void testRemoveAllOccurrences() {
+        ArrayList theList = new ArrayList();
+        theList.add("A");
+        theList.add("B");
+        theList.add("A");
+        theList.add("C");
+
+        ArrayList theList2 = new ArrayList();
+        theList2.add("A");
+
+        Assert.assertTrue(theList.removeAll(theList2));
+        Assert.assertEquals(2, theList.size(), 0);
+        Assert.assertEquals("B", theList.get(0));
+        Assert.assertEquals("C", theList.get(1));
+        Assert.assertFalse(theList.removeAll(theList2));
+    }
+
+    @Test
+    public void testRemoveIf() {
+        ArrayList<Integer> theList = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            theList.add(new Integer(i));
+        }
+        Assert.assertTrue(theList.removeIf(new Predicate<Integer>() {
+            @Override
+            public boolean test(Integer aValue) {
+                return aValue.intValue() % 2 == 1;
+            }
+        }));
+        Assert.assertEquals(10, theList.size(), 0);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(new Integer(i * 2), theList.get(i));
+        }
+    }
+
+    @Test
+    public void testSortWithComparator() {
+        ArrayList<Integer> theList = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            theList.add(new Integer((i * 37) % 50));
+        }
+        theList.sort(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer aValue1, Integer aValue2) {
+                return aValue2.intValue() - aValue1.intValue();
+            }
+        });
+        Assert.assertEquals(50, theList.size(), 0);
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(new Integer(49 - i), theList.get(i));
+        }
+    }
+
+    @Test
+    public void testSortIsStable() {
+        ArrayList<String> theList = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            theList.add(i % 3 == 0 ? "A" + i : "B" + i);
+        }
+        theList.sort(new Comparator<String>() {
+            @Override
+            public int compare(String aValue1, String aValue2) {
+                return aValue1.charAt(0) - aValue2.charAt(0);
+            }
+        });
+        Assert.assertEquals("A0", theList.get(0));
+        Assert.assertEquals("A3", theList.get(1));
+        Assert.assertEquals("A27", theList.get(9));
+        Assert.assertEquals("B1", theList.get(10));
+        Assert.assertEquals("B29", theList.get(29));
+    }
+
+    @Test
+    public void testSortNaturalOrder() {
+        ArrayList<String> theList = new ArrayList<>();
+        theList.add("Charlie");
+        theList.add("Alpha");
+        theList.add("Bravo");
+        theList.add("Al");
+        theList.sort(null);
+        Assert.assertEquals("Al", theList.get(0));
+        Assert.assertEquals("Alpha", theList.get(1));
+        Assert.assertEquals("Bravo", theList.get(2));
+        Assert.assertEquals("Charlie", theList.get(3));
+    }
+}
@@ -44,4 +44,63 @@ public class THashMapTest {
         assertEquals(new Integer(3000), theOldValue2);
         assertEquals(new Integer(4000), theMap.get(new Integer(255)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void manyEntries() throws Exception {
+        HashMap<Integer, Integer> theMap = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            assertNull(theMap.put(new Integer(i), new Integer(i * 2)));
+        }
+        assertEquals(1000, theMap.size(), 0);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(new Integer(i * 2), theMap.get(new Integer(i)));
+        }
+        assertNull(theMap.get(new Integer(1000)));
+        assertEquals(1000, theMap.keySet().size(), 0);
+        assertEquals(1000, theMap.values().size(), 0);
+        assertEquals(1000, theMap.entrySet().size(), 0);
+    }
+
+    @Test
+    public void removeAndClear() throws Exception {
+        HashMap<String, String> theMap = new HashMap<>();
+        assertTrue(theMap.isEmpty());
+        for (int i = 0; i < 100; i++) {
+            theMap.put("Key" + i, "Value" + i);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            assertEquals("Value" + i, theMap.remove("Key" + i));
+        }
+        assertNull(theMap.remove("Key0"));
+        assertEquals(50, theMap.size(), 0);
+        assertFalse(theMap.containsKey("Key10"));
+        assertTrue(theMap.containsKey("Key11"));
+        theMap.clear();
+        assertTrue(theMap.isEmpty());
+        assertFalse(theMap.containsKey("Key11"));
+    }
+
+    @Test
+    public void collidingHashCodes() throws Exception {
+        HashMap<String, Integer> theMap = new HashMap<>();
+        // "Aa" and "BB" have the same hash code
+        theMap.put("Aa", new Integer(1));
+        theMap.put("BB", new Integer(2));
+        assertEquals(new Integer(1), theMap.get("Aa"));
+        assertEquals(new Integer(2), theMap.get("BB"));
+        assertEquals(new Integer(1), theMap.remove("Aa"));
+        assertNull(theMap.get("Aa"));
+        assertEquals(new Integer(2), theMap.get("BB"));
+    }
+
+    @Test
+    public void tableSizeIsCappedAtMaximumCapacity() throws Exception {
+        assertEquals(1, THashMap.tableSizeFor(0), 0);
+        assertEquals(16, THashMap.tableSizeFor(16), 0);
+        assertEquals(32, THashMap.tableSizeFor(17), 0);
+        assertEquals(1 << 30, THashMap.tableSizeFor((1 << 29) + 1), 0);
+        assertEquals(1 << 30, THashMap.tableSizeFor(1 << 30), 0);
+        assertEquals(1 << 30, THashMap.tableSizeFor((1 << 30) + 1), 0);
+        assertEquals(1 << 30, THashMap.tableSizeFor(Integer.MAX_VALUE), 0);
+    }
+}
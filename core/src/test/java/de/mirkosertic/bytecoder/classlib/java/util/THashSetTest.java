@@ -47,4 +47,31 @@ public class THashSetTest {
         assertTrue(theValue.isEmpty());
         assertFalse(theValue.contains("1"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testManyElements() {
+        HashSet<Integer> theValue = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(theValue.add(new Integer(i)));
+        }
+        assertEquals(500, theValue.size(), 0);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(theValue.contains(new Integer(i)));
+            assertFalse(theValue.add(new Integer(i)));
+        }
+        assertEquals(500, theValue.toArray().length, 0);
+    }
+
+    @Test
+    public void testIterator() {
+        HashSet<Integer> theValue = new HashSet<>();
+        theValue.add(new Integer(1));
+        theValue.add(new Integer(2));
+        theValue.add(new Integer(3));
+        int theSum = 0;
+        for (Integer theElement : theValue) {
+            theSum += theElement.intValue();
+        }
+        assertEquals(6, theSum, 0);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.core;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BytecodeMethodCollectionTest {
+
+    private static final BytecodeMethodSignature SIGNATURE = new BytecodeMethodSignature(BytecodePrimitiveTypeRef.VOID, new BytecodeTypeRef[0]);
+
+    @Test
+    public void testSameSignatureGivesSameIdentifier() {
+        BytecodeMethodCollection theCollection = new BytecodeMethodCollection();
+        BytecodeVirtualMethodIdentifier theIdentifier = theCollection.identifierFor("run", SIGNATURE);
+        Assert.assertSame(theIdentifier, theCollection.identifierFor("run", SIGNATURE));
+        Assert.assertSame(theIdentifier, theCollection.toIdentifier("run", SIGNATURE));
+        Assert.assertNull(theCollection.toIdentifier("stop", SIGNATURE));
+    }
+
+    @Test
+    public void testConcurrentIdentifiersAreUnique() {
+        BytecodeMethodCollection theCollection = new BytecodeMethodCollection();
+        Set<Integer> theIdentifiers = ConcurrentHashMap.newKeySet();
+        IntStream.range(0, 4000).parallel().forEach(i -> {
+            BytecodeVirtualMethodIdentifier theIdentifier = theCollection.identifierFor("method" + (i % 1000), SIGNATURE);
+            theIdentifiers.add(theIdentifier.getIdentifier());
+        });
+        Assert.assertEquals(1000, theIdentifiers.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(theIdentifiers.contains(i));
+        }
+    }
+}
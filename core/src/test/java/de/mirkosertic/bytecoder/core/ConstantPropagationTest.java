@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.core;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class ConstantPropagationTest {
+
+    private static final boolean DEBUG = false;
+
+    private static int counter;
+
+    private static int folded(int aValue) {
+        int theFactor = 3 * 4;
+        int theShift = 1 << 3;
+        return aValue * theFactor + theShift;
+    }
+
+    private static int deadBranch(int aValue) {
+        if (DEBUG) {
+            counter = counter + 1000;
+            return -1;
+        }
+        return aValue + 1;
+    }
+
+    private static int constantLoop() {
+        int theResult = 0;
+        int theStep = 2;
+        for (int i = 0; i < 5; i++) {
+            theResult = theResult + theStep;
+        }
+        return theResult;
+    }
+
+    private static long foldedLong() {
+        long theValue = 1L << 40;
+        return theValue + 7L;
+    }
+
+    private static long foldedLongOverflow() {
+        long theValue = Long.MAX_VALUE;
+        return theValue + 1L;
+    }
+
+    private static int division(int aValue) {
+        int theDivisor = 0;
+        if (aValue > 0) {
+            theDivisor = aValue;
+        }
+        return 100 / (theDivisor + 1);
+    }
+
+    @Test
+    public void testFoldedArithmetic() {
+        Assert.assertEquals(68, folded(5), 0);
+    }
+
+    @Test
+    public void testDeadBranchRemoved() {
+        counter = 0;
+        Assert.assertEquals(11, deadBranch(10), 0);
+        Assert.assertEquals(0, counter, 0);
+    }
+
+    @Test
+    public void testLoopWithConstantStep() {
+        Assert.assertEquals(10, constantLoop(), 0);
+    }
+
+    @Test
+    public void testFoldedLong() {
+        Assert.assertEquals(1099511627783L, foldedLong());
+        Assert.assertEquals(Long.MIN_VALUE, foldedLongOverflow());
+    }
+
+    @Test
+    public void testMergedValues() {
+        Assert.assertEquals(100, division(0), 0);
+        Assert.assertEquals(20, division(4), 0);
+    }
+}
@@ -63,4 +63,10 @@ public class DoubleMathTest {
         Assert.assertEquals(3, theResult, 0);
     }
 
+    @Test
+    public void testPrecision() {
+        Assert.assertEquals(0.3, add(0.1, 0.2), 0.000000000001);
+        Assert.assertEquals(1, mul(div(1, 3), 3), 0.000000000001);
+        Assert.assertEquals(16777217, add(16777216, 1), 0);
+    }
 }
@@ -44,6 +44,13 @@ public class ExceptionHandlerTest {
         throwSomething();
     }
 
+    private static int checkPositive(int aValue) {
+        if (aValue < 0) {
+            throw new IllegalArgumentException();
+        }
+        return aValue;
+    }
+
     @Test
     public void testSimpleExceptionFlow() {
         Assert.assertEquals(9f, flowTest(), 0);
@@ -64,4 +71,34 @@ public class ExceptionHandlerTest {
 
         Assert.assertEquals(5f, theCounter, 0f);
     }
+
+    @Test
+    public void testNestedHandlers() {
+        int theCounter = 0;
+        try {
+            try {
+                theCounter += checkPositive(-1);
+            } finally {
+                theCounter += 10;
+            }
+        } catch (IllegalArgumentException e) {
+            theCounter += 1;
+        }
+
+        Assert.assertEquals(11, theCounter);
+    }
+
+    @Test
+    public void testCatchBySuperclass() {
+        int theCounter = checkPositive(2);
+        try {
+            theCounter += checkPositive(-2);
+        } catch (IllegalStateException e) {
+            theCounter += 4;
+        } catch (RuntimeException e) {
+            theCounter += 8;
+        }
+
+        Assert.assertEquals(10, theCounter);
+    }
 }
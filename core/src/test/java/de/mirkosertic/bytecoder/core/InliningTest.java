@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.core;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class InliningTest {
+
+    public static class Point {
+
+        private final int x;
+        private int y;
+
+        public Point(int aX, int aY) {
+            x = aX;
+            y = aY;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public void moveBy(int aDelta) {
+            y = y + aDelta;
+        }
+
+        public int sum() {
+            return getX() + getY();
+        }
+    }
+
+    private static int twice(int aValue) {
+        return aValue + aValue;
+    }
+
+    private static int quad(int aValue) {
+        return twice(twice(aValue));
+    }
+
+    private static int countDown(int aValue) {
+        if (aValue <= 0) {
+            return 0;
+        }
+        return countDown(aValue - 1) + 1;
+    }
+
+    private static int sign(int aValue) {
+        return aValue < 0 ? -1 : (aValue > 0 ? 1 : 0);
+    }
+
+    private static void clampCounter(int aMax) {
+        if (counter > aMax) {
+            counter = aMax;
+        }
+    }
+
+    private static int counter;
+
+    private static int increment() {
+        counter = counter + 1;
+        return counter;
+    }
+
+    @Test
+    public void testGettersAndSetters() {
+        Point thePoint = new Point(10, 20);
+        thePoint.moveBy(5);
+        Assert.assertEquals(10, thePoint.getX(), 0);
+        Assert.assertEquals(25, thePoint.getY(), 0);
+        Assert.assertEquals(35, thePoint.sum(), 0);
+    }
+
+    @Test
+    public void testNestedStaticInvocations() {
+        Assert.assertEquals(28, quad(7), 0);
+        Assert.assertEquals(8, twice(quad(1)), 0);
+    }
+
+    @Test
+    public void testRecursion() {
+        Assert.assertEquals(5, countDown(5), 0);
+    }
+
+    @Test
+    public void testSideEffectsOfUnusedResult() {
+        counter = 0;
+        increment();
+        increment();
+        Assert.assertEquals(3, increment(), 0);
+    }
+
+    @Test
+    public void testBranchingCallee() {
+        float theValue = -3.5f;
+        Assert.assertEquals(3.5f, Math.abs(theValue), 0);
+        Assert.assertEquals(2.0f, Math.abs(2.0f), 0);
+        Assert.assertEquals(1.5d, Math.abs(-1.5d) + Math.abs(0d), 0);
+        Assert.assertEquals(-1, sign(-7), 0);
+        Assert.assertEquals(0, sign(0), 0);
+        Assert.assertEquals(1, sign(sign(12) + 3), 0);
+    }
+
+    @Test
+    public void testBranchingCalleeWithoutResult() {
+        counter = 12;
+        clampCounter(10);
+        Assert.assertEquals(10, counter, 0);
+        clampCounter(20);
+        Assert.assertEquals(10, counter, 0);
+    }
+}
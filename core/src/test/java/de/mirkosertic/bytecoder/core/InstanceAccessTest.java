@@ -28,6 +28,14 @@ public class InstanceAccessTest {
         public int member;
     }
 
+    public static class StaticClassWithWideMembers {
+
+        public int first;
+        public long second;
+        public double third;
+        public int fourth;
+    }
+
     @Test
     public void testInstanceGetAndSet() {
         StaticClassWithStuffInside theInstance = new StaticClassWithStuffInside();
@@ -35,4 +43,17 @@ public class InstanceAccessTest {
         int theResult = theInstance.member;
         Assert.assertEquals(12, theResult, 0);
     }
+
+    @Test
+    public void testWideMembers() {
+        StaticClassWithWideMembers theInstance = new StaticClassWithWideMembers();
+        theInstance.first = 1;
+        theInstance.second = 4294967296L;
+        theInstance.third = 0.1;
+        theInstance.fourth = 4;
+        Assert.assertEquals(1, theInstance.first, 0);
+        Assert.assertTrue(theInstance.second == 4294967296L);
+        Assert.assertEquals(0.1, theInstance.third, 0);
+        Assert.assertEquals(4, theInstance.fourth, 0);
+    }
 }
@@ -29,6 +29,18 @@ public class InstanceOfTest {
     public static class Type2 extends Type1 {
     }
 
+    public interface Marker1 {
+    }
+
+    public interface Marker2 extends Marker1 {
+    }
+
+    public static class Type3 extends Type1 implements Marker2 {
+    }
+
+    public static class Type4 extends Type3 {
+    }
+
     @Test
     public void testInstanceOf() {
         Assert.assertFalse(null instanceof Object);
@@ -40,4 +52,41 @@ public class InstanceOfTest {
         Assert.assertTrue(new Type2() instanceof Type1);
         Assert.assertTrue(new Type2() instanceof Type2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testInstanceOfSiblings() {
+        Object theType2 = new Type2();
+        Object theType4 = new Type4();
+
+        Assert.assertTrue(theType4 instanceof Type1);
+        Assert.assertTrue(theType4 instanceof Type3);
+        Assert.assertFalse(theType4 instanceof Type2);
+        Assert.assertFalse(theType2 instanceof Type3);
+    }
+
+    @Test
+    public void testInstanceOfInterface() {
+        Object theType1 = new Type1();
+        Object theType3 = new Type3();
+        Object theType4 = new Type4();
+
+        Assert.assertFalse(theType1 instanceof Marker1);
+        Assert.assertTrue(theType3 instanceof Marker1);
+        Assert.assertTrue(theType3 instanceof Marker2);
+        Assert.assertTrue(theType4 instanceof Marker1);
+        Assert.assertTrue(theType4 instanceof Marker2);
+    }
+
+    @Test
+    public void testCheckCast() {
+        Object theObject = new Type4();
+        Object theNull = null;
+
+        Marker1 theMarker = (Marker1) theObject;
+        Type3 theType = (Type3) theObject;
+        Type2 theNullType = (Type2) theNull;
+
+        Assert.assertSame(theMarker, theType);
+        Assert.assertNull(theNullType);
+    }
+}
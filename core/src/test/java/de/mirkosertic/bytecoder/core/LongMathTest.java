@@ -39,6 +39,10 @@ public class LongMathTest {
         return a - b;
     }
 
+    public static long rem(long a, long b) {
+        return a % b;
+    }
+
     public static long sleft(long aValue, int aOtherValue) {
         return aValue >>> aOtherValue;
     }
@@ -83,4 +87,34 @@ public class LongMathTest {
         Assert.assertEquals(2000, theResult, 0);
     }
 
+    @Test
+    public void testLargeValues() {
+        long theValue = mul(1099511627776L, 3);
+        Assert.assertTrue(theValue == 3298534883328L);
+        Assert.assertTrue(div(theValue + 1, 3) == 1099511627776L);
+        Assert.assertTrue(rem(theValue + 1, 3) == 1);
+        Assert.assertTrue(rem(-7, 3) == -1);
+        Assert.assertTrue(theValue > 4294967296L);
+    }
+
+    @Test
+    public void testArrayOfLongs() {
+        long[] theValues = new long[3];
+        theValues[0] = 4294967296L;
+        theValues[1] = -1;
+        theValues[2] = 1099511627776L;
+        Assert.assertTrue(theValues[0] == 4294967296L);
+        Assert.assertTrue(theValues[1] == -1);
+        Assert.assertTrue(theValues[2] == 1099511627776L);
+    }
+
+    @Test
+    public void testBeyondDoublePrecision() {
+        long theValue = add(9007199254740992L, 1);
+        Assert.assertTrue(theValue == 9007199254740993L);
+        Assert.assertTrue(add(Long.MAX_VALUE, 1) == Long.MIN_VALUE);
+        Assert.assertTrue(mul(6364136223846793005L, 1442695040888963407L) == 433315962919513059L);
+        Assert.assertTrue(sleft(-1L, 60) == 15);
+        Assert.assertTrue(sright(1L, 63) == Long.MIN_VALUE);
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.core;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class LoopOptimizationTest {
+
+    public static class Matrix {
+
+        private final int columns;
+        private final float[] data;
+        private float scale;
+
+        public Matrix(int aRows, int aColumns) {
+            columns = aColumns;
+            data = new float[aRows * aColumns];
+            scale = 1;
+        }
+
+        public void set(int aRow, int aColumn, float aValue) {
+            data[aRow * columns + aColumn] = aValue;
+        }
+
+        public float sumOfColumn(int aColumn) {
+            float theResult = 0;
+            int theRows = data.length / columns;
+            for (int i = 0; i < theRows; i++) {
+                theResult = theResult + data[i * columns + aColumn] * scale;
+            }
+            return theResult;
+        }
+
+        public float getScale() {
+            return scale;
+        }
+
+        public void scaleWhileSumming(float aFactor) {
+            for (int i = 0; i < data.length; i++) {
+                scale = scale * aFactor;
+            }
+        }
+    }
+
+    public static class Holder {
+
+        public int[] values;
+    }
+
+    private static int sumWithStride(int[] aData, int aStride, int aCount) {
+        int theResult = 0;
+        for (int i = 0; i < aCount; i++) {
+            theResult = theResult + aData[i * aStride] + aStride * 3;
+        }
+        return theResult;
+    }
+
+    private static int countDown(int[] aData) {
+        int theResult = 0;
+        for (int i = aData.length - 1; i >= 0; i--) {
+            theResult = theResult + aData[i * 2 - i];
+        }
+        return theResult;
+    }
+
+    private static int sumOrZero(Holder aHolder, int aCount) {
+        int theResult = 0;
+        for (int i = 0; i < aCount; i++) {
+            theResult = theResult + aHolder.values.length;
+        }
+        return theResult;
+    }
+
+    private static int nested(int aSize) {
+        int theResult = 0;
+        for (int i = 0; i < aSize; i++) {
+            for (int j = 0; j < aSize; j++) {
+                theResult = theResult + i * aSize + j * 4;
+            }
+        }
+        return theResult;
+    }
+
+    private static int divideInLoop(int aDivisor, int aCount) {
+        int theResult = 0;
+        for (int i = 0; i < aCount; i++) {
+            theResult = theResult + 100 / aDivisor;
+        }
+        return theResult;
+    }
+
+    @Test
+    public void testInvariantFieldsAndStride() {
+        Matrix theMatrix = new Matrix(3, 2);
+        for (int i = 0; i < 3; i++) {
+            theMatrix.set(i, 0, i);
+            theMatrix.set(i, 1, 10 * i);
+        }
+        Assert.assertEquals(3, theMatrix.sumOfColumn(0), 0);
+        Assert.assertEquals(30, theMatrix.sumOfColumn(1), 0);
+    }
+
+    @Test
+    public void testStoreInLoop() {
+        Matrix theMatrix = new Matrix(1, 3);
+        theMatrix.scaleWhileSumming(2);
+        Assert.assertEquals(8, theMatrix.getScale(), 0);
+    }
+
+    @Test
+    public void testStrengthReduction() {
+        int[] theData = new int[] {1, 2, 3, 4, 5, 6};
+        Assert.assertEquals(27, sumWithStride(theData, 2, 3), 0);
+        Assert.assertEquals(21, countDown(theData), 0);
+    }
+
+    @Test
+    public void testNoSpeculativeReads() {
+        Assert.assertEquals(0, sumOrZero(null, 0), 0);
+        Holder theHolder = new Holder();
+        theHolder.values = new int[3];
+        Assert.assertEquals(6, sumOrZero(theHolder, 2), 0);
+    }
+
+    @Test
+    public void testNoSpeculativeDivision() {
+        Assert.assertEquals(0, divideInLoop(0, 0), 0);
+        Assert.assertEquals(60, divideInLoop(5, 3), 0);
+    }
+
+    @Test
+    public void testNestedLoops() {
+        Assert.assertEquals(63, nested(3), 0);
+    }
+}
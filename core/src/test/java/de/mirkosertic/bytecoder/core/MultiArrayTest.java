@@ -31,4 +31,21 @@ public class MultiArrayTest {
         Assert.assertEquals("Hello", theStrings[0][0]);
         Assert.assertEquals("World", theStrings[4][11]);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMultiIntArray() {
+        int[][] theInts = new int[3][4];
+        Assert.assertEquals(0, theInts[1][2], 0);
+        theInts[2][3] = 42;
+        Assert.assertEquals(42, theInts[2][3], 0);
+        Assert.assertEquals(4, theInts[0].length, 0);
+    }
+
+    @Test
+    public void testPartialMultiFloatArray() {
+        float[][][] theFloats = new float[2][3][];
+        Assert.assertNull(theFloats[1][2]);
+        theFloats[1][2] = new float[5];
+        Assert.assertEquals(0f, theFloats[1][2][4], 0);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.core;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class ScalarReplacementTest {
+
+    public static class Vec2 {
+
+        public float x;
+        public float y;
+
+        public Vec2(float aX, float aY) {
+            x = aX;
+            y = aY;
+        }
+
+        public Vec2 add(Vec2 aOther) {
+            return new Vec2(x + aOther.x, y + aOther.y);
+        }
+
+        public float dot(Vec2 aOther) {
+            return x * aOther.x + y * aOther.y;
+        }
+    }
+
+    public static class Counter {
+
+        public int count;
+        public boolean touched;
+        public Counter next;
+    }
+
+    public static class Base {
+
+        public int value;
+    }
+
+    public static class Derived extends Base {
+
+        public int value;
+    }
+
+    private static Vec2 lastCreated;
+
+    private static float dotOfSum(float aX, float aY) {
+        Vec2 theFirst = new Vec2(aX, aY);
+        Vec2 theSecond = new Vec2(1, 2);
+        Vec2 theSum = theFirst.add(theSecond);
+        return theSum.dot(theSecond);
+    }
+
+    private static float sumInLoop(int aCount) {
+        float theResult = 0;
+        for (int i = 0; i < aCount; i++) {
+            Vec2 theVec = new Vec2(i, 2 * i);
+            theResult = theResult + theVec.dot(theVec);
+        }
+        return theResult;
+    }
+
+    private static int defaults(boolean aStore) {
+        Counter theCounter = new Counter();
+        if (aStore) {
+            theCounter.count = 5;
+            theCounter.touched = true;
+        }
+        int theResult = theCounter.count;
+        if (theCounter.touched) {
+            theResult = theResult + 100;
+        }
+        if (theCounter.next == null) {
+            theResult = theResult + 1000;
+        }
+        return theResult;
+    }
+
+    private static float escapesByStore(float aX) {
+        Vec2 theVec = new Vec2(aX, aX);
+        lastCreated = theVec;
+        theVec.x = theVec.x + 1;
+        return lastCreated.x;
+    }
+
+    private static Vec2 escapesByReturn(float aX) {
+        Vec2 theVec = new Vec2(aX, aX);
+        theVec.y = 7;
+        return theVec;
+    }
+
+    private static boolean escapesByComparison() {
+        Vec2 theFirst = new Vec2(1, 1);
+        Vec2 theSecond = new Vec2(1, 1);
+        return theFirst == theSecond;
+    }
+
+    private static int merged(boolean aFirst) {
+        Counter theCounter;
+        if (aFirst) {
+            theCounter = new Counter();
+            theCounter.count = 1;
+        } else {
+            theCounter = new Counter();
+            theCounter.count = 2;
+        }
+        return theCounter.count;
+    }
+
+    private static int shadowed() {
+        Derived theDerived = new Derived();
+        ((Base) theDerived).value = 1;
+        theDerived.value = 2;
+        return ((Base) theDerived).value * 10 + theDerived.value;
+    }
+
+    @Test
+    public void testInlinedConstructorsAndMethods() {
+        Assert.assertEquals(12, dotOfSum(3, 2), 0);
+    }
+
+    @Test
+    public void testAllocationInLoop() {
+        Assert.assertEquals(70, sumInLoop(4), 0);
+    }
+
+    @Test
+    public void testDefaultValues() {
+        Assert.assertEquals(1000, defaults(false), 0);
+        Assert.assertEquals(1105, defaults(true), 0);
+    }
+
+    @Test
+    public void testEscapingObjects() {
+        Assert.assertEquals(4, escapesByStore(3), 0);
+        Vec2 theVec = escapesByReturn(3);
+        Assert.assertEquals(3, theVec.x, 0);
+        Assert.assertEquals(7, theVec.y, 0);
+        Assert.assertFalse(escapesByComparison());
+    }
+
+    @Test
+    public void testShadowedField() {
+        Assert.assertEquals(12, shadowed());
+    }
+
+    @Test
+    public void testMergedObjects() {
+        Assert.assertEquals(1, merged(true), 0);
+        Assert.assertEquals(2, merged(false), 0);
+    }
+}
@@ -150,4 +150,17 @@ public class SimpleMathTest {
     public void testDoubleSum() {
         Assert.assertEquals(300.5d, doubleSum(getDouble(), 60), 0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIntOverflow() {
+        Assert.assertEquals(Integer.MIN_VALUE, sum(Integer.MAX_VALUE, 1), 0);
+        Assert.assertEquals(Integer.MAX_VALUE, sub(Integer.MIN_VALUE, 1), 0);
+        Assert.assertEquals(-67153019, mul(123456789, 987654321), 0);
+    }
+
+    @Test
+    public void testNegativeIntDivision() {
+        Assert.assertEquals(-3, div(-7, 2), 0);
+        Assert.assertEquals(-1, rem(-7, 2), 0);
+    }
+}
@@ -48,4 +48,17 @@ public class SimpleStringTest {
             throw new IllegalStateException();
         }
     }
+
+    private static String literal() {
+        return "Lala";
+    }
+
+    @Test
+    public void testLiteralIdentity() {
+        String theData = "Lala";
+        Assert.assertTrue(theData == literal());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(literal() == literal());
+        }
+    }
 }
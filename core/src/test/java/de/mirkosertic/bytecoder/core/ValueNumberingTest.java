@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.core;
+
+import de.mirkosertic.bytecoder.unittest.BytecoderUnitTestRunner;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(BytecoderUnitTestRunner.class)
+public class ValueNumberingTest {
+
+    public static class Vec {
+
+        public float x;
+        public float y;
+
+        public Vec(float aX, float aY) {
+            x = aX;
+            y = aY;
+        }
+    }
+
+    public static class Transform {
+
+        public Vec p;
+
+        public Transform(Vec aP) {
+            p = aP;
+        }
+    }
+
+    private static int calls;
+
+    private static void touch(Transform aTransform) {
+        calls = calls + 1;
+        aTransform.p.x = aTransform.p.x + 1;
+    }
+
+    private static float sumOfSquares(Transform aTransform) {
+        return aTransform.p.x * aTransform.p.x + aTransform.p.y * aTransform.p.y;
+    }
+
+    private static float readWriteRead(Transform aTransform) {
+        float theBefore = aTransform.p.x;
+        aTransform.p.x = 10;
+        return theBefore + aTransform.p.x;
+    }
+
+    private static float readInvokeRead(Transform aTransform) {
+        float theBefore = aTransform.p.x;
+        touch(aTransform);
+        return theBefore + aTransform.p.x;
+    }
+
+    private static float storeOnOnePath(Transform aTransform, boolean aStore) {
+        float theBefore = aTransform.p.x;
+        if (aStore) {
+            aTransform.p.x = 5;
+        }
+        return theBefore + aTransform.p.x;
+    }
+
+    private static int arrays(int[] aData, int aIndex) {
+        int theFirst = aData[aIndex] + aData.length;
+        aData[aIndex] = 7;
+        return theFirst + aData[aIndex] + aData.length;
+    }
+
+    private static int loop(int[] aData, int aFactor) {
+        int theSum = 0;
+        for (int i = 0; i < aData.length; i++) {
+            aData[i] = aData[i] * aFactor + aFactor * 2;
+            theSum = theSum + aData[i] + aFactor * 2;
+        }
+        return theSum;
+    }
+
+    @Test
+    public void testRepeatedReads() {
+        Transform theTransform = new Transform(new Vec(3, 4));
+        Assert.assertEquals(25, sumOfSquares(theTransform), 0);
+    }
+
+    @Test
+    public void testStoreInvalidatesRead() {
+        Transform theTransform = new Transform(new Vec(3, 4));
+        Assert.assertEquals(13, readWriteRead(theTransform), 0);
+    }
+
+    @Test
+    public void testInvocationInvalidatesRead() {
+        calls = 0;
+        Transform theTransform = new Transform(new Vec(3, 4));
+        Assert.assertEquals(7, readInvokeRead(theTransform), 0);
+        Assert.assertEquals(1, calls, 0);
+    }
+
+    @Test
+    public void testStoreOnOnePath() {
+        Transform theTransform = new Transform(new Vec(3, 4));
+        Assert.assertEquals(6, storeOnOnePath(theTransform, false), 0);
+        Assert.assertEquals(8, storeOnOnePath(theTransform, true), 0);
+    }
+
+    @Test
+    public void testArrayStoreInvalidatesRead() {
+        int[] theData = new int[] {1, 2, 3};
+        Assert.assertEquals(15, arrays(theData, 1), 0);
+    }
+
+    @Test
+    public void testLoop() {
+        int[] theData = new int[] {1, 2, 3};
+        Assert.assertEquals(36, loop(theData, 2), 0);
+        Assert.assertEquals(10, theData[2], 0);
+    }
+}
@@ -118,9 +118,64 @@ public class DominanceTest {
         assertFalse(theNode4.isOnlyReachableThru(theNode3));
 
         Set<GraphNode> theDom1 = theGraph.dominatedNodesOf(theNode1);
-        assertEquals(3, theDom1.size(), 0);
+        assertEquals(4, theDom1.size(), 0);
+        assertTrue(theDom1.contains(theNode1));
         assertTrue(theDom1.contains(theNode2));
         assertTrue(theDom1.contains(theNode3));
         assertTrue(theDom1.contains(theNode4));
+
+        assertEquals(theNode1, theGraph.dominatorTree().immediateDominatorOf(theNode4));
+        assertTrue(theGraph.loopNestingForest().getLoops().isEmpty());
+    }
+
+    @Test
+    public void testNestedLoops() {
+        Program theProgram = new Program();
+        ControlFlowGraph theGraph = new ControlFlowGraph(theProgram);
+
+        GraphNode theNode1 = theGraph.createAt(BytecodeOpcodeAddress.START_AT_ZERO, GraphNode.BlockType.NORMAL);
+        GraphNode theOuterHeader = theGraph.createAt(new BytecodeOpcodeAddress(10), GraphNode.BlockType.NORMAL);
+        GraphNode theInnerHeader = theGraph.createAt(new BytecodeOpcodeAddress(20), GraphNode.BlockType.NORMAL);
+        GraphNode theInnerBody = theGraph.createAt(new BytecodeOpcodeAddress(30), GraphNode.BlockType.NORMAL);
+        GraphNode theOuterLatch = theGraph.createAt(new BytecodeOpcodeAddress(40), GraphNode.BlockType.NORMAL);
+        GraphNode theExit = theGraph.createAt(new BytecodeOpcodeAddress(50), GraphNode.BlockType.NORMAL);
+
+        theNode1.addSuccessor(theOuterHeader);
+        theOuterHeader.addSuccessor(theInnerHeader);
+        theOuterHeader.addSuccessor(theExit);
+        theInnerHeader.addSuccessor(theInnerBody);
+        theInnerHeader.addSuccessor(theOuterLatch);
+        theInnerBody.addSuccessor(theInnerHeader);
+        theOuterLatch.addSuccessor(theOuterHeader);
+
+        theGraph.calculateReachabilityAndMarkBackEdges();
+
+        assertTrue(theInnerBody.hasBackEdgeTo(theInnerHeader));
+        assertTrue(theOuterLatch.hasBackEdgeTo(theOuterHeader));
+        assertFalse(theOuterHeader.hasBackEdgeTo(theInnerHeader));
+
+        assertEquals(1, theInnerHeader.getPredecessorsIgnoringBackEdges().size());
+        assertTrue(theInnerHeader.getPredecessorsIgnoringBackEdges().contains(theOuterHeader));
+        assertEquals(2, theInnerHeader.getPredecessors().size());
+
+        assertTrue(theExit.isOnlyReachableThru(theOuterHeader));
+        assertFalse(theExit.isOnlyReachableThru(theInnerHeader));
+        assertTrue(theOuterLatch.isOnlyReachableThru(theInnerHeader));
+        assertTrue(theInnerBody.isStrictlyDominatedBy(theInnerHeader));
+        assertFalse(theInnerHeader.isStrictlyDominatedBy(theOuterHeader));
+
+        LoopNestingForest theForest = theGraph.loopNestingForest();
+        assertEquals(2, theForest.getLoops().size());
+        assertEquals(1, theForest.getRootLoops().size());
+
+        LoopNestingForest.Loop theOuterLoop = theForest.loopWithHeader(theOuterHeader);
+        LoopNestingForest.Loop theInnerLoop = theForest.loopWithHeader(theInnerHeader);
+        assertEquals(4, theOuterLoop.getBody().size());
+        assertEquals(2, theInnerLoop.getBody().size());
+        assertEquals(theOuterLoop, theInnerLoop.getParent());
+        assertEquals(theInnerLoop, theForest.innermostLoopOf(theInnerBody));
+        assertEquals(theOuterLoop, theForest.innermostLoopOf(theOuterLatch));
+        assertEquals(2, theForest.loopDepthOf(theInnerBody));
+        assertEquals(0, theForest.loopDepthOf(theExit));
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mirkosertic.bytecoder.ssa.BinaryValue;
+import de.mirkosertic.bytecoder.ssa.IFExpression;
+import de.mirkosertic.bytecoder.ssa.IntegerValue;
+import de.mirkosertic.bytecoder.ssa.PrimitiveValue;
+import de.mirkosertic.bytecoder.ssa.ReturnValueExpression;
+import de.mirkosertic.bytecoder.ssa.Value;
+
+public class ConstantPropagationOptimizerTest {
+
+    // Constants are kept in local variables, as javac already folds constant expressions
+
+    public static int folded(int aValue) {
+        int theThree = 3;
+        int theOne = 1;
+        int theFactor = theThree * 4;
+        int theShift = theOne << 3;
+        return aValue * theFactor + theShift;
+    }
+
+    public static int constantBranch(int aValue) {
+        int theMode = 1;
+        if (theMode > 0) {
+            return aValue + 1;
+        }
+        return aValue - 1;
+    }
+
+    public static int divisionByZero() {
+        int theHundred = 100;
+        int theZero = 0;
+        return theHundred / theZero;
+    }
+
+    public static float notANumber() {
+        float theZero = 0;
+        return theZero / theZero;
+    }
+
+    public static double infinity() {
+        double theOne = 1;
+        double theZero = 0;
+        return theOne / theZero;
+    }
+
+    private static OptimizedProgram optimize(String aMethodName) {
+        // The optimizers running in front of this one in KnownOptimizer.ALL
+        return new OptimizedProgram(ConstantPropagationOptimizerTest.class, aMethodName,
+                new InefficientIFOptimizer(),
+                new InlineFinalNodesOptimizer(),
+                new InlineGotoOptimizer(),
+                new InvokeVirtualOptimizer(),
+                new InlineMethodsOptimizer(),
+                new ScalarReplacementOptimizer(),
+                new ConstantPropagationOptimizer());
+    }
+
+    private static List<BinaryValue> binaryValues(OptimizedProgram aProgram, BinaryValue.Operator aOperator) {
+        List<BinaryValue> theResult = new ArrayList<>();
+        for (BinaryValue theValue : aProgram.valuesOf(BinaryValue.class)) {
+            if (theValue.getOperator() == aOperator) {
+                theResult.add(theValue);
+            }
+        }
+        return theResult;
+    }
+
+    private static boolean hasIntegerArgument(Value aValue, int aExpected) {
+        for (Value theArgument : aValue.consumedValues(Value.ConsumptionType.ARGUMENT)) {
+            if (theArgument instanceof IntegerValue && ((IntegerValue) theArgument).getIntValue() == aExpected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Value returnedValue(OptimizedProgram aProgram) {
+        List<ReturnValueExpression> theReturns = aProgram.valuesOf(ReturnValueExpression.class);
+        Assert.assertEquals(1, theReturns.size());
+        return theReturns.get(0).getValue();
+    }
+
+    @Test
+    public void testArithmeticIsFolded() {
+        OptimizedProgram theProgram = optimize("folded");
+
+        Assert.assertTrue(binaryValues(theProgram, BinaryValue.Operator.BINARYSHIFTLEFT).isEmpty());
+        List<BinaryValue> theProducts = binaryValues(theProgram, BinaryValue.Operator.MUL);
+        Assert.assertEquals(1, theProducts.size());
+        Assert.assertTrue(hasIntegerArgument(theProducts.get(0), 12));
+        List<BinaryValue> theSums = binaryValues(theProgram, BinaryValue.Operator.ADD);
+        Assert.assertEquals(1, theSums.size());
+        Assert.assertTrue(hasIntegerArgument(theSums.get(0), 8));
+    }
+
+    @Test
+    public void testConstantBranchIsResolved() {
+        OptimizedProgram theProgram = optimize("constantBranch");
+
+        Assert.assertTrue(theProgram.valuesOf(IFExpression.class).isEmpty());
+        Assert.assertTrue(binaryValues(theProgram, BinaryValue.Operator.SUB).isEmpty());
+        Assert.assertEquals(1, binaryValues(theProgram, BinaryValue.Operator.ADD).size());
+    }
+
+    @Test
+    public void testIntegerDivisionByZeroIsNotFolded() {
+        OptimizedProgram theProgram = optimize("divisionByZero");
+
+        Assert.assertEquals(1, binaryValues(theProgram, BinaryValue.Operator.DIV).size());
+        Assert.assertFalse(returnedValue(theProgram) instanceof PrimitiveValue);
+    }
+
+    @Test
+    public void testNaNIsNotFolded() {
+        OptimizedProgram theProgram = optimize("notANumber");
+
+        Assert.assertEquals(1, binaryValues(theProgram, BinaryValue.Operator.DIV).size());
+        Assert.assertFalse(returnedValue(theProgram) instanceof PrimitiveValue);
+    }
+
+    @Test
+    public void testInfinityIsNotFolded() {
+        OptimizedProgram theProgram = optimize("infinity");
+
+        Assert.assertEquals(1, binaryValues(theProgram, BinaryValue.Operator.DIV).size());
+        Assert.assertFalse(returnedValue(theProgram) instanceof PrimitiveValue);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mirkosertic.bytecoder.ssa.BinaryValue;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.GetFieldValue;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.InvokeVirtualMethodValue;
+import de.mirkosertic.bytecoder.ssa.PutFieldExpression;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+
+public class GlobalValueNumberingOptimizerTest {
+
+    public static class Vec {
+
+        public float x;
+    }
+
+    public static int repeated(int aA, int aB) {
+        int theFirst = aA * aB;
+        int theSecond = aA * aB;
+        return theFirst + theSecond;
+    }
+
+    public static float readRead(Vec aVec) {
+        float theBefore = aVec.x;
+        return theBefore + aVec.x;
+    }
+
+    public static float readWriteRead(Vec aVec) {
+        float theBefore = aVec.x;
+        aVec.x = 10;
+        return theBefore + aVec.x;
+    }
+
+    public static float readInvokeRead(Vec aVec, Runnable aCallback) {
+        float theBefore = aVec.x;
+        aCallback.run();
+        return theBefore + aVec.x;
+    }
+
+    private static OptimizedProgram optimize(String aMethodName) {
+        // The optimizers running in front of this one in KnownOptimizer.ALL
+        return new OptimizedProgram(GlobalValueNumberingOptimizerTest.class, aMethodName,
+                new InefficientIFOptimizer(),
+                new InlineFinalNodesOptimizer(),
+                new InlineGotoOptimizer(),
+                new InvokeVirtualOptimizer(),
+                new InlineMethodsOptimizer(),
+                new ScalarReplacementOptimizer(),
+                new ConstantPropagationOptimizer(),
+                new GlobalValueNumberingOptimizer());
+    }
+
+    private static List<BinaryValue> binaryValues(OptimizedProgram aProgram, BinaryValue.Operator aOperator) {
+        List<BinaryValue> theResult = new ArrayList<>();
+        for (BinaryValue theValue : aProgram.valuesOf(BinaryValue.class)) {
+            if (theValue.getOperator() == aOperator) {
+                theResult.add(theValue);
+            }
+        }
+        return theResult;
+    }
+
+    private static BinaryValue onlySum(OptimizedProgram aProgram) {
+        List<BinaryValue> theSums = binaryValues(aProgram, BinaryValue.Operator.ADD);
+        Assert.assertEquals(1, theSums.size());
+        return theSums.get(0);
+    }
+
+    /**
+     * The variable a copy was made from, as copies are only removed by a later optimizer.
+     */
+    private static Value withoutCopies(OptimizedProgram aProgram, Value aValue) {
+        for (Expression theExpression : aProgram.expressions()) {
+            if (theExpression instanceof InitVariableExpression) {
+                InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                if (theInit.getVariable() == aValue && theInit.getValue() instanceof Variable) {
+                    return withoutCopies(aProgram, theInit.getValue());
+                }
+            }
+        }
+        return aValue;
+    }
+
+    private static void assertSameOperands(OptimizedProgram aProgram, BinaryValue aValue) {
+        Value theFirst = withoutCopies(aProgram, aValue.resolveFirstArgument());
+        Assert.assertTrue(theFirst instanceof Variable);
+        Assert.assertSame(theFirst, withoutCopies(aProgram, aValue.resolveSecondArgument()));
+    }
+
+    @Test
+    public void testRepeatedExpressionIsReused() {
+        OptimizedProgram theProgram = optimize("repeated");
+
+        Assert.assertEquals(1, binaryValues(theProgram, BinaryValue.Operator.MUL).size());
+        assertSameOperands(theProgram, onlySum(theProgram));
+    }
+
+    @Test
+    public void testRepeatedFieldReadIsReused() {
+        OptimizedProgram theProgram = optimize("readRead");
+
+        Assert.assertEquals(1, theProgram.valuesOf(GetFieldValue.class).size());
+        assertSameOperands(theProgram, onlySum(theProgram));
+    }
+
+    @Test
+    public void testFieldReadAfterStoreIsNotReused() {
+        OptimizedProgram theProgram = optimize("readWriteRead");
+
+        Assert.assertEquals(1, theProgram.valuesOf(PutFieldExpression.class).size());
+        Assert.assertEquals(2, theProgram.valuesOf(GetFieldValue.class).size());
+    }
+
+    @Test
+    public void testFieldReadAfterInvocationIsNotReused() {
+        OptimizedProgram theProgram = optimize("readInvokeRead");
+
+        Assert.assertEquals(1, theProgram.valuesOf(InvokeVirtualMethodValue.class).size());
+        Assert.assertEquals(2, theProgram.valuesOf(GetFieldValue.class).size());
+    }
+}
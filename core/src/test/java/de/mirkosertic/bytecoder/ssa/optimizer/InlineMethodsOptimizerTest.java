@@ -0,0 +1,259 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeLoader;
+import de.mirkosertic.bytecoder.core.BytecodeMethod;
+import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodeOpcodeAddress;
+import de.mirkosertic.bytecoder.core.BytecodePackageReplacer;
+import de.mirkosertic.bytecoder.relooper.Relooper;
+import de.mirkosertic.bytecoder.ssa.ControlFlowGraph;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
+import de.mirkosertic.bytecoder.ssa.GotoExpression;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.IFExpression;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.InvokeStaticMethodValue;
+import de.mirkosertic.bytecoder.ssa.NaiveProgramGenerator;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.ReturnValueExpression;
+import de.mirkosertic.bytecoder.unittest.Slf4JLogger;
+
+public class InlineMethodsOptimizerTest {
+
+    public static class Initialized {
+
+        public static int initializations;
+
+        static {
+            initializations++;
+        }
+
+        public static int twice(int aValue) {
+            return aValue * 2;
+        }
+    }
+
+    public static float twiceTheAbs(float aValue) {
+        float theAbs = Math.abs(aValue);
+        return theAbs * 2;
+    }
+
+    public static int sumUpTo(int aValue) {
+        int theResult = 0;
+        for (int i = 0; i < aValue; i++) {
+            theResult = theResult + i;
+        }
+        return theResult;
+    }
+
+    public static int callLoop(int aValue) {
+        int theSum = sumUpTo(aValue);
+        return theSum + 1;
+    }
+
+    private static int parse(String aValue) {
+        if (aValue.length() == 0) {
+            throw new IllegalArgumentException();
+        }
+        return aValue.length();
+    }
+
+    public static float handledBeforeAbs(String aValue, float aOther) {
+        int theLength = 0;
+        try {
+            try {
+                theLength += parse(aValue);
+            } finally {
+                theLength += 10;
+            }
+        } catch (IllegalArgumentException e) {
+            theLength += 1;
+        }
+        return Math.abs(aOther) + theLength;
+    }
+
+    public static int indexOfLarge(float[] aValues, float aLimit) {
+        for (int i = 0; i < aValues.length; i++) {
+            float theValue = aValues[i];
+            if (theValue != 0 && Math.abs(theValue) > aLimit) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static int callInitialized(int aValue) {
+        int theResult = Initialized.twice(aValue);
+        return theResult + 1;
+    }
+
+    private Program optimizedProgramOf(String aMethodName) {
+        BytecodeLoader theLoader = new BytecodeLoader(getClass().getClassLoader(), new BytecodePackageReplacer());
+        BytecodeLinkerContext theLinkerContext = new BytecodeLinkerContext(theLoader, Slf4JLogger.INSTANCE);
+        BytecodeLinkedClass theClass = theLinkerContext.linkClass(BytecodeObjectTypeRef.fromRuntimeClass(InlineMethodsOptimizerTest.class));
+        for (BytecodeMethod theMethod : theClass.getBytecodeClass().getMethods()) {
+            if (theMethod.getName().stringValue().equals(aMethodName)) {
+                Program theProgram = NaiveProgramGenerator.FACTORY.createFor(theLinkerContext).generateFrom(theClass.getBytecodeClass(), theMethod);
+                // Same order as in KnownOptimizer.ALL, the earlier optimizers move handlers and final nodes into the caller
+                ControlFlowGraph theGraph = theProgram.getControlFlowGraph();
+                new InefficientIFOptimizer().optimize(theGraph, theLinkerContext);
+                new InlineFinalNodesOptimizer().optimize(theGraph, theLinkerContext);
+                new InlineGotoOptimizer().optimize(theGraph, theLinkerContext);
+                new InlineMethodsOptimizer().optimize(theGraph, theLinkerContext);
+                return theProgram;
+            }
+        }
+        throw new IllegalArgumentException("No method " + aMethodName);
+    }
+
+    private static List<Expression> expressionsOf(ControlFlowGraph aGraph) {
+        List<Expression> theResult = new ArrayList<>();
+        for (GraphNode theNode : aGraph.getKnownNodes()) {
+            collect(theNode.getExpressions(), theResult);
+        }
+        return theResult;
+    }
+
+    private static List<Expression> expressionsOf(ExpressionList aList) {
+        List<Expression> theResult = new ArrayList<>();
+        collect(aList, theResult);
+        return theResult;
+    }
+
+    private static void collect(ExpressionList aList, List<Expression> aResult) {
+        for (Expression theExpression : aList.toList()) {
+            aResult.add(theExpression);
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    collect(theList, aResult);
+                }
+            }
+        }
+    }
+
+    private static boolean invokes(ControlFlowGraph aGraph, String aMethodName) {
+        for (Expression theExpression : expressionsOf(aGraph)) {
+            if (theExpression instanceof InitVariableExpression) {
+                InitVariableExpression theInit = (InitVariableExpression) theExpression;
+                if (theInit.getValue() instanceof InvokeStaticMethodValue
+                        && aMethodName.equals(((InvokeStaticMethodValue) theInit.getValue()).getMethodName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testBranchingCalleeIsInlined() {
+        Program theProgram = optimizedProgramOf("twiceTheAbs");
+        ControlFlowGraph theGraph = theProgram.getControlFlowGraph();
+
+        Assert.assertFalse(invokes(theGraph, "abs"));
+
+        // The branch of Math.abs is now part of the calling program, which still returns once
+        int theBranches = 0;
+        int theReturns = 0;
+        for (Expression theExpression : expressionsOf(theGraph)) {
+            if (theExpression instanceof IFExpression) {
+                theBranches++;
+            }
+            if (theExpression instanceof ReturnValueExpression) {
+                theReturns++;
+            }
+        }
+        Assert.assertEquals(1, theBranches);
+        Assert.assertEquals(1, theReturns);
+        Assert.assertTrue(theGraph.getKnownNodes().size() > 1);
+
+        new Relooper().reloop(theGraph);
+    }
+
+    @Test
+    public void testJumpsBeforeTheInvocationKeepTheirEdges() {
+        Program theProgram = optimizedProgramOf("handledBeforeAbs");
+        ControlFlowGraph theGraph = theProgram.getControlFlowGraph();
+
+        Assert.assertFalse(invokes(theGraph, "abs"));
+        for (GraphNode theNode : theGraph.getKnownNodes()) {
+            Set<BytecodeOpcodeAddress> theTargets = new HashSet<>();
+            for (Expression theExpression : expressionsOf(theNode.getExpressions())) {
+                if (theExpression instanceof GotoExpression) {
+                    theTargets.add(((GotoExpression) theExpression).getJumpTarget());
+                }
+            }
+            Set<BytecodeOpcodeAddress> theSuccessors = new HashSet<>();
+            for (GraphNode theSuccessor : theNode.getSuccessors().values()) {
+                theSuccessors.add(theSuccessor.getStartAddress());
+            }
+            Assert.assertEquals(theTargets, theSuccessors);
+        }
+
+        new Relooper().reloop(theGraph);
+    }
+
+    @Test
+    public void testNodeIsNotSplitIfTheContinuationJumpsToItsSuccessors() {
+        Program theProgram = optimizedProgramOf("indexOfLarge");
+        ControlFlowGraph theGraph = theProgram.getControlFlowGraph();
+
+        // Both the test before and after the invocation continue with the next iteration,
+        // the relooper cannot place that successor behind the inlined branches
+        Assert.assertTrue(invokes(theGraph, "abs"));
+    }
+
+    @Test
+    public void testCalleeWithLoopIsNotInlined() {
+        Program theProgram = optimizedProgramOf("callLoop");
+        ControlFlowGraph theGraph = theProgram.getControlFlowGraph();
+
+        Assert.assertTrue(invokes(theGraph, "sumUpTo"));
+        Assert.assertEquals(1, theGraph.getKnownNodes().size());
+    }
+
+    @Test
+    public void testStaticCalleeOfClassWithInitializerIsNotInlined() {
+        Program theProgram = optimizedProgramOf("callInitialized");
+        ControlFlowGraph theGraph = theProgram.getControlFlowGraph();
+
+        Assert.assertTrue(invokes(theGraph, "twice"));
+    }
+
+    @Test
+    public void testProgramWithoutGeneratorIsNotChanged() {
+        Program theProgram = new Program();
+        ControlFlowGraph theGraph = theProgram.getControlFlowGraph();
+        theGraph.createAt(BytecodeOpcodeAddress.START_AT_ZERO, GraphNode.BlockType.NORMAL);
+
+        new InlineMethodsOptimizer().optimize(theGraph, null);
+
+        Assert.assertEquals(1, theGraph.getKnownNodes().size());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mirkosertic.bytecoder.ssa.ArrayEntryValue;
+import de.mirkosertic.bytecoder.ssa.BinaryValue;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.GotoExpression;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.InitVariableExpression;
+import de.mirkosertic.bytecoder.ssa.IntegerValue;
+import de.mirkosertic.bytecoder.ssa.LoopNestingForest;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+
+public class LoopInvariantCodeMotionOptimizerTest {
+
+    public static int sumWithStride(int[] aData, int aStride, int aCount) {
+        int theResult = 0;
+        for (int i = 0; i < aCount; i++) {
+            theResult = theResult + aData[i * aStride] + aStride * 3;
+        }
+        return theResult;
+    }
+
+    public static int loadInLoop(int[] aData, int aIndex, int aCount) {
+        int theResult = 0;
+        for (int i = 0; i < aCount; i++) {
+            theResult = theResult + aData[aIndex];
+        }
+        return theResult;
+    }
+
+    public static int divideInLoop(int aDivisor, int aCount) {
+        int theResult = 0;
+        for (int i = 0; i < aCount; i++) {
+            theResult = theResult + 100 / aDivisor;
+        }
+        return theResult;
+    }
+
+    public static int remainderInLoop(int aDivisor, int aCount) {
+        int theResult = 0;
+        for (int i = 0; i < aCount; i++) {
+            theResult = theResult + 100 % aDivisor;
+        }
+        return theResult;
+    }
+
+    private static OptimizedProgram optimize(String aMethodName) {
+        // The optimizers running in front of this one in KnownOptimizer.ALL
+        return new OptimizedProgram(LoopInvariantCodeMotionOptimizerTest.class, aMethodName,
+                new InefficientIFOptimizer(),
+                new InlineFinalNodesOptimizer(),
+                new InlineGotoOptimizer(),
+                new InvokeVirtualOptimizer(),
+                new InlineMethodsOptimizer(),
+                new ScalarReplacementOptimizer(),
+                new ConstantPropagationOptimizer(),
+                new GlobalValueNumberingOptimizer(),
+                new LoopInvariantCodeMotionOptimizer());
+    }
+
+    private static LoopNestingForest.Loop onlyLoopOf(OptimizedProgram aProgram) {
+        List<LoopNestingForest.Loop> theLoops = aProgram.getControlFlowGraph().loopNestingForest().getLoops();
+        Assert.assertEquals(1, theLoops.size());
+        return theLoops.get(0);
+    }
+
+    private static <T extends Value> List<T> valuesInLoop(OptimizedProgram aProgram, LoopNestingForest.Loop aLoop, Class<T> aType) {
+        List<T> theResult = new ArrayList<>();
+        for (GraphNode theNode : aLoop.getBody()) {
+            theResult.addAll(aProgram.valuesOf(aType, theNode));
+        }
+        return theResult;
+    }
+
+    private static List<BinaryValue> binaryValues(List<BinaryValue> aValues, BinaryValue.Operator aOperator) {
+        List<BinaryValue> theResult = new ArrayList<>();
+        for (BinaryValue theValue : aValues) {
+            if (theValue.getOperator() == aOperator) {
+                theResult.add(theValue);
+            }
+        }
+        return theResult;
+    }
+
+    /**
+     * The variable an argument is copied to, as redundant copies are only removed by a later optimizer.
+     */
+    private static Variable copyOf(OptimizedProgram aProgram, Variable aArgument) {
+        for (Expression theExpression : aProgram.expressions()) {
+            if (theExpression instanceof InitVariableExpression && ((InitVariableExpression) theExpression).getValue() == aArgument) {
+                return ((InitVariableExpression) theExpression).getVariable();
+            }
+        }
+        return aArgument;
+    }
+
+    private static boolean isInteger(Value aValue, int aExpected) {
+        return aValue instanceof IntegerValue && ((IntegerValue) aValue).getIntValue() == aExpected;
+    }
+
+    @Test
+    public void testInvariantProductIsHoisted() {
+        OptimizedProgram theProgram = optimize("sumWithStride");
+        LoopNestingForest.Loop theLoop = onlyLoopOf(theProgram);
+
+        GraphNode thePreHeader = null;
+        for (GraphNode theNode : theProgram.getControlFlowGraph().getKnownNodes()) {
+            for (BinaryValue theValue : binaryValues(theProgram.valuesOf(BinaryValue.class, theNode), BinaryValue.Operator.MUL)) {
+                if (isInteger(theValue.resolveSecondArgument(), 3)) {
+                    thePreHeader = theNode;
+                }
+            }
+        }
+        Assert.assertNotNull(thePreHeader);
+        Assert.assertFalse(theLoop.contains(thePreHeader));
+        Expression theJump = thePreHeader.getExpressions().lastExpression();
+        Assert.assertTrue(theJump instanceof GotoExpression);
+        Assert.assertEquals(theLoop.getHeader().getStartAddress(), ((GotoExpression) theJump).getJumpTarget());
+    }
+
+    @Test
+    public void testInductionVariableMultiplicationIsReduced() {
+        OptimizedProgram theProgram = optimize("sumWithStride");
+        LoopNestingForest.Loop theLoop = onlyLoopOf(theProgram);
+        Variable theStride = copyOf(theProgram, theProgram.getProgram().getArguments().get(1).getVariable());
+
+        List<BinaryValue> theLoopValues = valuesInLoop(theProgram, theLoop, BinaryValue.class);
+        Assert.assertTrue(binaryValues(theLoopValues, BinaryValue.Operator.MUL).isEmpty());
+
+        // The reduced variable is incremented by the stride itself, as the loop counts by one
+        boolean theIncrementedByStride = false;
+        for (BinaryValue theValue : binaryValues(theLoopValues, BinaryValue.Operator.ADD)) {
+            if (theValue.resolveSecondArgument() == theStride) {
+                theIncrementedByStride = true;
+            }
+        }
+        Assert.assertTrue(theIncrementedByStride);
+        for (BinaryValue theValue : binaryValues(theProgram.valuesOf(BinaryValue.class), BinaryValue.Operator.MUL)) {
+            Assert.assertFalse(isInteger(theValue.resolveSecondArgument(), 1));
+        }
+    }
+
+    @Test
+    public void testArrayLoadOutsideOfHeaderIsNotHoisted() {
+        OptimizedProgram theProgram = optimize("loadInLoop");
+        LoopNestingForest.Loop theLoop = onlyLoopOf(theProgram);
+
+        Assert.assertEquals(1, valuesInLoop(theProgram, theLoop, ArrayEntryValue.class).size());
+    }
+
+    @Test
+    public void testDivisionOutsideOfHeaderIsNotHoisted() {
+        OptimizedProgram theProgram = optimize("divideInLoop");
+        LoopNestingForest.Loop theLoop = onlyLoopOf(theProgram);
+
+        Assert.assertEquals(1, binaryValues(valuesInLoop(theProgram, theLoop, BinaryValue.class), BinaryValue.Operator.DIV).size());
+    }
+
+    @Test
+    public void testRemainderOutsideOfHeaderIsNotHoisted() {
+        OptimizedProgram theProgram = optimize("remainderInLoop");
+        LoopNestingForest.Loop theLoop = onlyLoopOf(theProgram);
+
+        Assert.assertEquals(1, binaryValues(valuesInLoop(theProgram, theLoop, BinaryValue.class), BinaryValue.Operator.REMAINDER).size());
+    }
+}
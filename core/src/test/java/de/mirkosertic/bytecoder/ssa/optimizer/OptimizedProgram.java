@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.mirkosertic.bytecoder.core.BytecodeLinkedClass;
+import de.mirkosertic.bytecoder.core.BytecodeLinkerContext;
+import de.mirkosertic.bytecoder.core.BytecodeLoader;
+import de.mirkosertic.bytecoder.core.BytecodeMethod;
+import de.mirkosertic.bytecoder.core.BytecodeObjectTypeRef;
+import de.mirkosertic.bytecoder.core.BytecodePackageReplacer;
+import de.mirkosertic.bytecoder.ssa.ControlFlowGraph;
+import de.mirkosertic.bytecoder.ssa.Expression;
+import de.mirkosertic.bytecoder.ssa.ExpressionList;
+import de.mirkosertic.bytecoder.ssa.ExpressionListContainer;
+import de.mirkosertic.bytecoder.ssa.GraphNode;
+import de.mirkosertic.bytecoder.ssa.NaiveProgramGenerator;
+import de.mirkosertic.bytecoder.ssa.Program;
+import de.mirkosertic.bytecoder.ssa.Value;
+import de.mirkosertic.bytecoder.ssa.Variable;
+import de.mirkosertic.bytecoder.unittest.Slf4JLogger;
+
+/**
+ * The program of a static method of a test class after running the given optimizers, for tests
+ * checking the expressions an optimizer leaves behind.
+ */
+class OptimizedProgram {
+
+    private final Program program;
+
+    OptimizedProgram(Class<?> aClass, String aMethodName, Optimizer... aOptimizers) {
+        BytecodeLoader theLoader = new BytecodeLoader(aClass.getClassLoader(), new BytecodePackageReplacer());
+        BytecodeLinkerContext theLinkerContext = new BytecodeLinkerContext(theLoader, Slf4JLogger.INSTANCE);
+        BytecodeLinkedClass theClass = theLinkerContext.linkClass(BytecodeObjectTypeRef.fromRuntimeClass(aClass));
+        Program theProgram = null;
+        for (BytecodeMethod theMethod : theClass.getBytecodeClass().getMethods()) {
+            if (theMethod.getName().stringValue().equals(aMethodName)) {
+                // Linking the method links the classes, fields and methods it uses, as the compiler does
+                theClass.linkStaticMethod(aMethodName, theMethod.getSignature());
+                theProgram = NaiveProgramGenerator.FACTORY.createFor(theLinkerContext).generateFrom(theClass.getBytecodeClass(), theMethod);
+            }
+        }
+        if (theProgram == null) {
+            throw new IllegalArgumentException("No method " + aMethodName + " in " + aClass.getName());
+        }
+        for (Optimizer theOptimizer : aOptimizers) {
+            theOptimizer.optimize(theProgram.getControlFlowGraph(), theLinkerContext);
+        }
+        program = theProgram;
+    }
+
+    Program getProgram() {
+        return program;
+    }
+
+    ControlFlowGraph getControlFlowGraph() {
+        return program.getControlFlowGraph();
+    }
+
+    /**
+     * All expressions of the program, including those of nested expression lists.
+     */
+    List<Expression> expressions() {
+        List<Expression> theResult = new ArrayList<>();
+        for (GraphNode theNode : program.getControlFlowGraph().getKnownNodes()) {
+            collect(theNode.getExpressions(), theResult);
+        }
+        return theResult;
+    }
+
+    /**
+     * All expressions of a node, including those of nested expression lists.
+     */
+    List<Expression> expressionsOf(GraphNode aNode) {
+        List<Expression> theResult = new ArrayList<>();
+        collect(aNode.getExpressions(), theResult);
+        return theResult;
+    }
+
+    /**
+     * All expressions and values of a type computed by the program. Variables are not followed
+     * to their initializations, as these are expressions of their own.
+     */
+    <T extends Value> List<T> valuesOf(Class<T> aType) {
+        return valuesOf(aType, expressions());
+    }
+
+    /**
+     * All expressions and values of a type computed by a node.
+     */
+    <T extends Value> List<T> valuesOf(Class<T> aType, GraphNode aNode) {
+        return valuesOf(aType, expressionsOf(aNode));
+    }
+
+    private static <T extends Value> List<T> valuesOf(Class<T> aType, List<Expression> aExpressions) {
+        List<T> theResult = new ArrayList<>();
+        for (Expression theExpression : aExpressions) {
+            collect(theExpression, aType, theResult);
+        }
+        return theResult;
+    }
+
+    private static void collect(ExpressionList aList, List<Expression> aResult) {
+        for (Expression theExpression : aList.toList()) {
+            aResult.add(theExpression);
+            if (theExpression instanceof ExpressionListContainer) {
+                for (ExpressionList theList : ((ExpressionListContainer) theExpression).getExpressionLists()) {
+                    collect(theList, aResult);
+                }
+            }
+        }
+    }
+
+    private static <T extends Value> void collect(Value aValue, Class<T> aType, List<T> aResult) {
+        if (aType.isInstance(aValue)) {
+            aResult.add(aType.cast(aValue));
+        }
+        if (aValue instanceof Variable) {
+            return;
+        }
+        for (Value theArgument : aValue.consumedValues(Value.ConsumptionType.ARGUMENT)) {
+            collect(theArgument, aType, aResult);
+        }
+        for (Value theTarget : aValue.consumedValues(Value.ConsumptionType.INVOCATIONTARGET)) {
+            collect(theTarget, aType, aResult);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Mirko Sertic
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mirkosertic.bytecoder.ssa.optimizer;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.mirkosertic.bytecoder.ssa.GetFieldValue;
+import de.mirkosertic.bytecoder.ssa.IntegerValue;
+import de.mirkosertic.bytecoder.ssa.NewObjectValue;
+import de.mirkosertic.bytecoder.ssa.PutFieldExpression;
+import de.mirkosertic.bytecoder.ssa.ReturnValueExpression;
+
+public class ScalarReplacementOptimizerTest {
+
+    public static class Vec2 {
+
+        public float x;
+        public float y;
+
+        public Vec2(float aX, float aY) {
+            x = aX;
+            y = aY;
+        }
+    }
+
+    public static class Base {
+
+        public int value;
+    }
+
+    public static class Derived extends Base {
+
+        public int value;
+    }
+
+    public static float product(float aX, float aY) {
+        Vec2 theVec = new Vec2(aX, aY);
+        return theVec.x * theVec.y;
+    }
+
+    public static Vec2 escapesByReturn(float aX) {
+        Vec2 theVec = new Vec2(aX, aX);
+        theVec.y = 7;
+        return theVec;
+    }
+
+    public static int shadowed() {
+        Derived theDerived = new Derived();
+        ((Base) theDerived).value = 1;
+        theDerived.value = 2;
+        return ((Base) theDerived).value * 10 + theDerived.value;
+    }
+
+    private static OptimizedProgram optimize(String aMethodName, Optimizer... aFollowing) {
+        // Constructors are inlined first, as in KnownOptimizer.ALL
+        Optimizer[] theOptimizers = new Optimizer[6 + aFollowing.length];
+        theOptimizers[0] = new InefficientIFOptimizer();
+        theOptimizers[1] = new InlineFinalNodesOptimizer();
+        theOptimizers[2] = new InlineGotoOptimizer();
+        theOptimizers[3] = new InvokeVirtualOptimizer();
+        theOptimizers[4] = new InlineMethodsOptimizer();
+        theOptimizers[5] = new ScalarReplacementOptimizer();
+        System.arraycopy(aFollowing, 0, theOptimizers, 6, aFollowing.length);
+        return new OptimizedProgram(ScalarReplacementOptimizerTest.class, aMethodName, theOptimizers);
+    }
+
+    @Test
+    public void testNonEscapingObjectIsReplaced() {
+        OptimizedProgram theProgram = optimize("product");
+
+        Assert.assertTrue(theProgram.valuesOf(NewObjectValue.class).isEmpty());
+        Assert.assertTrue(theProgram.valuesOf(GetFieldValue.class).isEmpty());
+        Assert.assertTrue(theProgram.valuesOf(PutFieldExpression.class).isEmpty());
+    }
+
+    @Test
+    public void testEscapingObjectIsKept() {
+        OptimizedProgram theProgram = optimize("escapesByReturn");
+
+        Assert.assertEquals(1, theProgram.valuesOf(NewObjectValue.class).size());
+        Assert.assertEquals(3, theProgram.valuesOf(PutFieldExpression.class).size());
+    }
+
+    @Test
+    public void testShadowedFieldsAreReplacedSeparately() {
+        OptimizedProgram theProgram = optimize("shadowed", new ConstantPropagationOptimizer());
+
+        Assert.assertTrue(theProgram.valuesOf(NewObjectValue.class).isEmpty());
+        List<ReturnValueExpression> theReturns = theProgram.valuesOf(ReturnValueExpression.class);
+        Assert.assertEquals(1, theReturns.size());
+        Assert.assertEquals(12, ((IntegerValue) theReturns.get(0).getValue()).getIntValue());
+    }
+}
@@ -18,16 +18,13 @@ package de.mirkosertic.bytecoder.maven;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
-import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Level;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -38,16 +35,7 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
-import org.openqa.selenium.chrome.ChromeDriverService;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.openqa.selenium.logging.LogEntry;
-import org.openqa.selenium.logging.LogType;
-import org.openqa.selenium.logging.LoggingPreferences;
-import org.openqa.selenium.remote.CapabilityType;
-import org.openqa.selenium.remote.DesiredCapabilities;
-import org.openqa.selenium.remote.RemoteWebDriver;
-
-import com.google.common.io.Files;
+
 import com.google.javascript.jscomp.CommandLineRunner;
 import com.google.javascript.jscomp.CompilationLevel;
 import com.google.javascript.jscomp.Compiler;
@@ -57,6 +45,7 @@ import com.google.javascript.jscomp.SourceFile;
 import de.mirkosertic.bytecoder.backend.CompileOptions;
 import de.mirkosertic.bytecoder.backend.CompileResult;
 import de.mirkosertic.bytecoder.backend.CompileTarget;
+import de.mirkosertic.bytecoder.backend.CompileInputState;
 import de.mirkosertic.bytecoder.backend.wasm.WASMCompileResult;
 import de.mirkosertic.bytecoder.classlib.java.lang.TString;
 import de.mirkosertic.bytecoder.core.BytecodeArrayTypeRef;
@@ -116,12 +105,27 @@ public class BytecoderMavenMojo extends AbstractMojo {
     @Parameter(required = false, defaultValue = "true")
     protected boolean relooperEnabled;
 
+    /**
+     * Shall longs be represented as BigInt in JavaScript? This gives exact 64 bit arithmetic.
+     */
+    @Parameter(required = false, defaultValue = "false")
+    protected boolean preciseLongs;
+
     /**
      * The closure optimization level.
      */
     @Parameter(required = false, defaultValue = "SIMPLE_OPTIMIZATIONS")
     protected String closureOptimizationLevel;
 
+    /**
+     * Shall the compilation be skipped if the configuration and all linked classes are unchanged since the last run?
+     * If anything changed, the whole program is compiled again.
+     */
+    @Parameter(required = false, defaultValue = "false")
+    protected boolean skipIfUnchanged;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    protected String pluginVersion;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -135,11 +139,26 @@ public class BytecoderMavenMojo extends AbstractMojo {
 
             CompileTarget theCompileTarget = new CompileTarget(theLoader, CompileTarget.BackendType.valueOf(backend));
             File theBytecoderFileName = new File(theBytecoderDirectory, theCompileTarget.generatedFileName());
+            File theBytecoderClosureFileName = new File(theBytecoderDirectory, "bytecoder-closure.js");
+            File theBytecoderWASMFileName = new File(theBytecoderDirectory, "bytecoder.wasm");
+            File theStateFile = new File(theBytecoderDirectory, "bytecoder.state");
+
+            String theConfiguration = pluginVersion + "," + backend + "," + mainClass + "," + debugOutput + "," + relooperEnabled
+                    + "," + optimizeWithGoogleClosure + "," + closureOptimizationLevel + "," + preciseLongs;
+            if (skipIfUnchanged && theStateFile.exists() && theBytecoderFileName.exists()
+                    && (!optimizeWithGoogleClosure || theBytecoderClosureFileName.exists())
+                    && (!"wasm".equals(backend) || theBytecoderWASMFileName.exists())) {
+                CompileInputState theState = CompileInputState.readFrom(theStateFile);
+                if (theState.isUpToDate(theConfiguration, theCompileTarget.getBytecodeLoader())) {
+                    getLog().info("Skipping compilation, the configuration and all " + theState.getResourceHashes().size() + " linked classes are unchanged");
+                    return;
+                }
+            }
 
             BytecodeMethodSignature theSignature = new BytecodeMethodSignature(BytecodePrimitiveTypeRef.VOID,
                     new BytecodeTypeRef[] { new BytecodeArrayTypeRef(BytecodeObjectTypeRef.fromRuntimeClass(TString.class), 1) });
 
-            CompileOptions theOptions = new CompileOptions(new Slf4JLogger(), debugOutput, KnownOptimizer.ALL, relooperEnabled);
+            CompileOptions theOptions = new CompileOptions(new Slf4JLogger(), debugOutput, KnownOptimizer.ALL, relooperEnabled, preciseLongs);
             CompileResult theCode = theCompileTarget.compileToJS(theOptions, theTargetClass, "main", theSignature);
             try (PrintWriter theWriter = new PrintWriter(new FileWriter(theBytecoderFileName))) {
                 theWriter.println(theCode.getData());
@@ -158,8 +177,6 @@ public class BytecoderMavenMojo extends AbstractMojo {
                 theCompiler.compile(new ArrayList<>(), theSourceFiles, theClosureOptions);
                 String theClosureCode = theCompiler.toSource();
 
-                File theBytecoderClosureFileName = new File(theBytecoderDirectory, "bytecoder-closure.js");
-
                 try (PrintWriter theWriter = new PrintWriter(new FileWriter(theBytecoderClosureFileName))) {
                     theWriter.println(theClosureCode);
                 }
@@ -167,110 +184,20 @@ public class BytecoderMavenMojo extends AbstractMojo {
 
             if (theCode instanceof WASMCompileResult) {
                 WASMCompileResult theWASMCompileResult = (WASMCompileResult) theCode;
-                int[] theWASM = wat2wasm(theWASMCompileResult);
-                File theBytecoderWASMFileName = new File(theBytecoderDirectory, "bytecoder.wasm");
                 try (FileOutputStream theFos = new FileOutputStream(theBytecoderWASMFileName)) {
-                    for (int aTheWASM : theWASM) {
-                        theFos.write(aTheWASM);
-                    }
+                    theFos.write(theWASMCompileResult.getBinary(debugOutput));
                 }
 
             }
 
+            // The state is always written, so it always describes the current output
+            CompileInputState.of(theConfiguration, theCompileTarget.getBytecodeLoader()).writeTo(theStateFile);
+
         } catch (Exception e) {
             throw new MojoExecutionException("Error running bytecoder", e);
         }
     }
 
-    private int[] wat2wasm(WASMCompileResult aResult) throws IOException {
-        String theChromeDriverBinary = System.getenv("CHROMEDRIVER_BINARY");
-        if (theChromeDriverBinary == null || theChromeDriverBinary.isEmpty()) {
-            throw new RuntimeException("No chromedriver binary found! Please set CHROMEDRIVER_BINARY environment variable!");
-        }
-
-        ChromeDriverService.Builder theDriverServiceBuilder = new ChromeDriverService.Builder();
-        theDriverServiceBuilder = theDriverServiceBuilder.withVerbose(false);
-        theDriverServiceBuilder = theDriverServiceBuilder.usingDriverExecutable(new File(theChromeDriverBinary));
-
-        ChromeDriverService theDriverService = theDriverServiceBuilder.build();
-        theDriverService.start();
-
-        File theTempDirectory = Files.createTempDir();
-        File theGeneratedFile = new File(theTempDirectory, "compile.html");
-
-        // Copy WABT Tools
-        File theWABTFile = new File(theTempDirectory, "libwabt.js");
-        try (FileOutputStream theOS = new FileOutputStream(theWABTFile)) {
-            IOUtils.copy(getClass().getResourceAsStream("/libwabt.js"), theOS);
-        }
-
-        PrintWriter theWriter = new PrintWriter(theGeneratedFile);
-        theWriter.println("<html>");
-        theWriter.println("    <body>");
-        theWriter.println("        <h1>Module code</h1>");
-        theWriter.println("        <pre id=\"modulecode\">");
-        theWriter.println(aResult.getData());
-        theWriter.println("        </pre>");
-        theWriter.println("        <h1>Compilation result</h1>");
-        theWriter.println("        <pre id=\"compileresult\">");
-        theWriter.println("        </pre>");
-        theWriter.println("        <script src=\"libwabt.js\">");
-        theWriter.println("        </script>");
-        theWriter.println("        <script>");
-        theWriter.println("            function compile() {");
-        theWriter.println("                console.log('Compilation started');");
-        theWriter.println("                try {");
-        theWriter.println("                    var module = wabt.parseWat('test.wast', document.getElementById(\"modulecode\").innerText);");
-        theWriter.println("                    module.resolveNames();");
-        theWriter.println("                    module.validate();");
-        theWriter.println("                    var binaryOutput = module.toBinary({log: true, write_debug_names:true});");
-        theWriter.println("                    document.getElementById(\"compileresult\").innerText = binaryOutput.log;");
-        theWriter.println("                    return binaryOutput.buffer;");
-        theWriter.println("                } catch (e) {");
-        theWriter.println("                    document.getElementById(\"compileresult\").innerText = e.toString();");
-        theWriter.println("                    console.log(e.toString());");
-        theWriter.println("                    console.log(e.stack);");
-        theWriter.println("                }");
-        theWriter.println("            }");
-        theWriter.println("        </script>");
-        theWriter.println("    </body>");
-        theWriter.println("</html>");
-
-        theWriter.flush();
-        theWriter.close();
-
-        ChromeOptions theOptions = new ChromeOptions();
-        theOptions.addArguments("headless");
-        theOptions.addArguments("disable-gpu");
-
-        LoggingPreferences theLoggingPreferences = new LoggingPreferences();
-        theLoggingPreferences.enable(LogType.BROWSER, Level.ALL);
-        theOptions.setCapability(CapabilityType.LOGGING_PREFS, theLoggingPreferences);
-
-        DesiredCapabilities theCapabilities = DesiredCapabilities.chrome();
-        theCapabilities.setCapability(ChromeOptions.CAPABILITY, theOptions);
-
-        RemoteWebDriver theDriver = new RemoteWebDriver(theDriverService.getUrl(), theCapabilities);
-
-        theDriver.get(theGeneratedFile.toURI().toURL().toString());
-
-        ArrayList<Long> theResult = (ArrayList<Long>) theDriver.executeScript("return compile();");
-        int[] theBinaryDara = new int[theResult.size()];
-        for (int i=0;i<theResult.size();i++) {
-            long theLongValue = theResult.get(i);
-            theBinaryDara[i] = (int) (theLongValue);
-        }
-        List<LogEntry> theAll = theDriver.manage().logs().get(LogType.BROWSER).getAll();
-        for (LogEntry theEntry : theAll) {
-            System.out.println(theEntry.getMessage());
-        }
-
-        theDriver.close();
-        theDriverService.stop();
-
-        return theBinaryDara;
-    }
-
     protected boolean isSupportedScope(String scope) {
         switch (scope) {
         case Artifact.SCOPE_COMPILE: